@@ -0,0 +1,147 @@
+package com.leonarduk.finance.analysis;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The criteria measured by a {@link WalkForwardBacktester} for each
+ * instrument, strategy and window. Instruments can have different numbers of
+ * windows, as their series have different lengths.
+ */
+public class ScoreMatrix {
+
+	private final List<String> instruments;
+
+	private final List<String> strategies;
+
+	private final List<String> criteria;
+
+	private final Map<String, Integer> instrumentIndex;
+
+	private final Map<String, Integer> strategyIndex;
+
+	private final Map<String, Integer> criterionIndex;
+
+	/**
+	 * The last date of each window, by instrument
+	 */
+	private final LocalDate[][] windowEnds;
+
+	/**
+	 * By instrument, strategy, window and criterion
+	 */
+	private final double[][][][] values;
+
+	ScoreMatrix(final List<String> instruments, final List<String> strategies, final List<String> criteria,
+			final LocalDate[][] windowEnds, final double[][][][] values) {
+		this.instruments = Collections.unmodifiableList(instruments);
+		this.strategies = Collections.unmodifiableList(strategies);
+		this.criteria = Collections.unmodifiableList(criteria);
+		this.instrumentIndex = ScoreMatrix.index(instruments);
+		this.strategyIndex = ScoreMatrix.index(strategies);
+		this.criterionIndex = ScoreMatrix.index(criteria);
+		this.windowEnds = windowEnds;
+		this.values = values;
+	}
+
+	private static Map<String, Integer> index(final List<String> names) {
+		final Map<String, Integer> index = new HashMap<>();
+		for (int i = 0; i < names.size(); i++) {
+			index.put(names.get(i), i);
+		}
+		return index;
+	}
+
+	private static int indexOf(final Map<String, Integer> index, final String name, final String kind) {
+		final Integer i = index.get(name);
+		if (i == null) {
+			throw new IllegalArgumentException("No " + kind + " " + name);
+		}
+		return i;
+	}
+
+	public List<String> getInstruments() {
+		return this.instruments;
+	}
+
+	public List<String> getStrategies() {
+		return this.strategies;
+	}
+
+	public List<String> getCriteria() {
+		return this.criteria;
+	}
+
+	public int getWindowCount(final String instrument) {
+		return this.windowEnds[ScoreMatrix.indexOf(this.instrumentIndex, instrument, "instrument")].length;
+	}
+
+	public LocalDate getWindowEnd(final String instrument, final int window) {
+		return this.windowEnds[ScoreMatrix.indexOf(this.instrumentIndex, instrument, "instrument")][window];
+	}
+
+	public double get(final String instrument, final String strategy, final String criterion, final int window) {
+		return this.windows(instrument, strategy)[window][ScoreMatrix.indexOf(this.criterionIndex, criterion,
+				"criterion")];
+	}
+
+	/**
+	 * @return the mean of the criterion over the instrument's windows, or NaN
+	 *         if it has none
+	 */
+	public double getMean(final String instrument, final String strategy, final String criterion) {
+		final double[][] windows = this.windows(instrument, strategy);
+		final int c = ScoreMatrix.indexOf(this.criterionIndex, criterion, "criterion");
+		double sum = 0;
+		for (final double[] window : windows) {
+			sum += window[c];
+		}
+		return sum / windows.length;
+	}
+
+	/**
+	 * @return for each strategy, the number of windows of the instrument it
+	 *         made a profit in less the number it made a loss in. Windows whose
+	 *         profit could not be measured count as neither.
+	 */
+	public Map<String, Integer> getScores(final String instrument) {
+		final Map<String, Integer> scores = new LinkedHashMap<>();
+		final int c = ScoreMatrix.indexOf(this.criterionIndex, WalkForwardBacktester.TOTAL_PROFIT, "criterion");
+		for (final String strategy : this.strategies) {
+			int score = 0;
+			for (final double[] window : this.windows(instrument, strategy)) {
+				if (!Double.isNaN(window[c])) {
+					score += Integer.signum(Double.compare(window[c], 1));
+				}
+			}
+			scores.put(strategy, score);
+		}
+		return scores;
+	}
+
+	/**
+	 * @return {@link #getScores(String)} summed over every instrument
+	 */
+	public Map<String, Integer> getScores() {
+		final Map<String, Integer> scores = new LinkedHashMap<>();
+		for (final String instrument : this.instruments) {
+			this.getScores(instrument).forEach((strategy, score) -> scores.merge(strategy, score, Integer::sum));
+		}
+		return scores;
+	}
+
+	private double[][] windows(final String instrument, final String strategy) {
+		return this.values[ScoreMatrix.indexOf(this.instrumentIndex, instrument,
+				"instrument")][ScoreMatrix.indexOf(this.strategyIndex, strategy, "strategy")];
+	}
+
+	@Override
+	public String toString() {
+		return "ScoreMatrix [instruments=" + this.instruments.size() + ", strategies=" + this.strategies
+				+ ", criteria=" + this.criteria + "]";
+	}
+}
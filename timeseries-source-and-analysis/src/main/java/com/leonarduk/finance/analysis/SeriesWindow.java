@@ -0,0 +1,145 @@
+package com.leonarduk.finance.analysis;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+import org.ta4j.core.Bar;
+import org.ta4j.core.TimeSeries;
+import org.ta4j.core.num.Num;
+
+/**
+ * A read-only view of the bars from begin to end, inclusive, of a series.
+ * Indices are the series' own, as ta4j numbers the bars of a series that has
+ * dropped its oldest, so a strategy built on the whole series can be run over
+ * the window, with its indicators seeing the bars before it, and criteria
+ * measure the window alone. No bars are copied.
+ */
+final class SeriesWindow implements TimeSeries {
+
+	private static final long serialVersionUID = 1L;
+
+	private final TimeSeries series;
+
+	private final int begin;
+
+	private final int end;
+
+	SeriesWindow(final TimeSeries series, final int begin, final int end) {
+		if ((begin < series.getBeginIndex()) || (end > series.getEndIndex()) || (begin > end)) {
+			throw new IllegalArgumentException("Window " + begin + " to " + end + " is not within " + series.getName()
+					+ " " + series.getBeginIndex() + " to " + series.getEndIndex());
+		}
+		this.series = series;
+		this.begin = begin;
+		this.end = end;
+	}
+
+	@Override
+	public String getName() {
+		return this.series.getName();
+	}
+
+	@Override
+	public Bar getBar(final int i) {
+		if ((i < this.begin) || (i > this.end)) {
+			throw new IndexOutOfBoundsException(i + " is not within " + this.begin + " to " + this.end);
+		}
+		return this.series.getBar(i);
+	}
+
+	@Override
+	public int getBarCount() {
+		return (this.end - this.begin) + 1;
+	}
+
+	@Override
+	public List<Bar> getBarData() {
+		return this.series.getBarData().subList(this.begin - this.series.getBeginIndex(),
+				(this.end - this.series.getBeginIndex()) + 1);
+	}
+
+	@Override
+	public int getBeginIndex() {
+		return this.begin;
+	}
+
+	@Override
+	public int getEndIndex() {
+		return this.end;
+	}
+
+	@Override
+	public void setMaximumBarCount(final int maximumBarCount) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getMaximumBarCount() {
+		return this.getBarCount();
+	}
+
+	@Override
+	public int getRemovedBarsCount() {
+		return this.begin;
+	}
+
+	@Override
+	public void addBar(final Bar bar, final boolean replace) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void addBar(final Duration timePeriod, final ZonedDateTime endTime) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void addBar(final ZonedDateTime endTime, final Num openPrice, final Num highPrice, final Num lowPrice,
+			final Num closePrice, final Num volume, final Num amount) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void addBar(final Duration timePeriod, final ZonedDateTime endTime, final Num openPrice,
+			final Num highPrice, final Num lowPrice, final Num closePrice, final Num volume) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void addBar(final Duration timePeriod, final ZonedDateTime endTime, final Num openPrice,
+			final Num highPrice, final Num lowPrice, final Num closePrice, final Num volume, final Num amount) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void addTrade(final Num tradeVolume, final Num tradePrice) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void addPrice(final Num price) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public TimeSeries getSubSeries(final int startIndex, final int endIndex) {
+		return this.series.getSubSeries(Math.max(startIndex, this.begin), Math.min(endIndex, this.end + 1));
+	}
+
+	@Override
+	public Num numOf(final Number number) {
+		return this.series.numOf(number);
+	}
+
+	@Override
+	public Function<Number, Num> function() {
+		return this.series.function();
+	}
+
+	@Override
+	public String toString() {
+		return "SeriesWindow [name=" + this.getName() + ", begin=" + this.begin + ", end=" + this.end + "]";
+	}
+}
@@ -0,0 +1,275 @@
+package com.leonarduk.finance.analysis;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.ta4j.core.AnalysisCriterion;
+import org.ta4j.core.Strategy;
+import org.ta4j.core.TimeSeries;
+import org.ta4j.core.TimeSeriesManager;
+import org.ta4j.core.TradingRecord;
+import org.ta4j.core.analysis.criteria.BuyAndHoldCriterion;
+import org.ta4j.core.analysis.criteria.MaximumDrawdownCriterion;
+import org.ta4j.core.analysis.criteria.NumberOfTradesCriterion;
+import org.ta4j.core.analysis.criteria.TotalProfitCriterion;
+
+import com.leonarduk.finance.strategies.AbstractStrategy;
+
+/**
+ * Backtests strategies over sliding windows of many series at once, measuring
+ * each window with a set of criteria into a {@link ScoreMatrix}.
+ * <p>
+ * Windows are {@link #getWindowBars()} bars long and start every
+ * {@link #getStepBars()} bars. A strategy is built on the whole series and run
+ * over each window in turn, so its indicators are warmed up by the bars before
+ * the window and computed once for all the windows, while the criteria only see
+ * the window. The series are read, never copied or changed, by every task.
+ * <p>
+ * The work is split by instrument, strategy and, where there are too few of
+ * those to keep every thread of the pool busy, runs of windows, and run as
+ * fork/join tasks so idle threads steal from busy ones. Each task builds its
+ * own strategy, and only that one, as ta4j indicators cache their values
+ * unsynchronised.
+ */
+public class WalkForwardBacktester {
+
+	public static final Logger log = LoggerFactory.getLogger(WalkForwardBacktester.class.getName());
+
+	public static final String TOTAL_PROFIT = "Total profit";
+
+	public static final String BUY_AND_HOLD = "Buy and hold";
+
+	public static final String MAXIMUM_DRAWDOWN = "Maximum drawdown";
+
+	public static final String NUMBER_OF_TRADES = "Number of trades";
+
+	/**
+	 * Around a year of daily bars
+	 */
+	public static final int DEFAULT_WINDOW_BARS = 250;
+
+	/**
+	 * Around a month of daily bars
+	 */
+	public static final int DEFAULT_STEP_BARS = 20;
+
+	/**
+	 * Tasks to aim for per thread, so threads that finish early have work to
+	 * steal
+	 */
+	private static final int TASKS_PER_THREAD = 4;
+
+	private final ForkJoinPool pool;
+
+	private final int windowBars;
+
+	private final int stepBars;
+
+	private final Map<String, AnalysisCriterion> criteria;
+
+	public WalkForwardBacktester() {
+		this(ForkJoinPool.commonPool(), WalkForwardBacktester.DEFAULT_WINDOW_BARS,
+				WalkForwardBacktester.DEFAULT_STEP_BARS, WalkForwardBacktester.standardCriteria());
+	}
+
+	/**
+	 * @param criteria by name, in the order they should be reported. Must
+	 *                 include {@link #TOTAL_PROFIT} for
+	 *                 {@link ScoreMatrix#getScores()}.
+	 */
+	public WalkForwardBacktester(final ForkJoinPool pool, final int windowBars, final int stepBars,
+			final Map<String, AnalysisCriterion> criteria) {
+		if ((windowBars < 1) || (stepBars < 1)) {
+			throw new IllegalArgumentException(
+					"Window and step must be at least a bar, not " + windowBars + " and " + stepBars);
+		}
+		this.pool = pool;
+		this.windowBars = windowBars;
+		this.stepBars = stepBars;
+		this.criteria = new LinkedHashMap<>(criteria);
+	}
+
+	public static Map<String, AnalysisCriterion> standardCriteria() {
+		final Map<String, AnalysisCriterion> criteria = new LinkedHashMap<>();
+		criteria.put(WalkForwardBacktester.TOTAL_PROFIT, new TotalProfitCriterion());
+		criteria.put(WalkForwardBacktester.BUY_AND_HOLD, new BuyAndHoldCriterion());
+		criteria.put(WalkForwardBacktester.MAXIMUM_DRAWDOWN, new MaximumDrawdownCriterion());
+		criteria.put(WalkForwardBacktester.NUMBER_OF_TRADES, new NumberOfTradesCriterion());
+		return criteria;
+	}
+
+	public int getWindowBars() {
+		return this.windowBars;
+	}
+
+	public int getStepBars() {
+		return this.stepBars;
+	}
+
+	/**
+	 * @param universe   series by instrument
+	 * @param strategies builds each strategy to test on a series. Each must
+	 *                   build a strategy of the same name for every series.
+	 */
+	public ScoreMatrix run(final Map<String, ? extends TimeSeries> universe,
+			final List<Function<TimeSeries, AbstractStrategy>> strategies) {
+		final List<String> instruments = new ArrayList<>(universe.keySet());
+		final List<TimeSeries> series = new ArrayList<>(universe.values());
+		final List<String> strategyNames = series.isEmpty() ? new ArrayList<>()
+				: strategies.stream().map(strategy -> strategy.apply(series.get(0)).getName())
+						.collect(Collectors.toList());
+
+		final int[][] windowStarts = new int[series.size()][];
+		final LocalDate[][] windowEnds = new LocalDate[series.size()][];
+		int cells = 0;
+		for (int i = 0; i < series.size(); i++) {
+			windowStarts[i] = this.windowStarts(series.get(i));
+			windowEnds[i] = new LocalDate[windowStarts[i].length];
+			for (int w = 0; w < windowStarts[i].length; w++) {
+				windowEnds[i][w] = series.get(i).getBar((windowStarts[i][w] + this.windowBars) - 1).getEndTime()
+						.toLocalDate();
+			}
+			if (windowStarts[i].length > 0) {
+				cells += strategyNames.size();
+			}
+		}
+
+		final double[][][][] values = new double[series.size()][strategyNames.size()][][];
+		final int tasksPerCell = cells == 0 ? 1
+				: Math.max(1, ((this.pool.getParallelism() * WalkForwardBacktester.TASKS_PER_THREAD) + cells - 1)
+						/ cells);
+		final List<Backtest> tasks = new ArrayList<>();
+		for (int i = 0; i < series.size(); i++) {
+			final int windows = windowStarts[i].length;
+			final int runs = Math.min(tasksPerCell, windows);
+			for (int s = 0; s < strategyNames.size(); s++) {
+				values[i][s] = new double[windows][this.criteria.size()];
+				for (int r = 0; r < runs; r++) {
+					tasks.add(new Backtest(instruments.get(i), series.get(i), strategies.get(s),
+							strategyNames.get(s), windowStarts[i], (r * windows) / runs, ((r + 1) * windows) / runs,
+							values[i][s]));
+				}
+			}
+		}
+		WalkForwardBacktester.log.info("Backtesting " + strategyNames.size() + " strategies on " + series.size()
+				+ " series in " + tasks.size() + " tasks");
+		if (!tasks.isEmpty()) {
+			this.pool.invoke(new Backtests(tasks, 0, tasks.size()));
+		}
+		return new ScoreMatrix(instruments, strategyNames, new ArrayList<>(this.criteria.keySet()), windowEnds,
+				values);
+	}
+
+	private int[] windowStarts(final TimeSeries series) {
+		final int first = series.getBeginIndex();
+		final int bars = series.getBarCount();
+		if (bars < this.windowBars) {
+			return new int[0];
+		}
+		final int[] starts = new int[((bars - this.windowBars) / this.stepBars) + 1];
+		for (int w = 0; w < starts.length; w++) {
+			starts[w] = first + (w * this.stepBars);
+		}
+		return starts;
+	}
+
+	/**
+	 * One strategy over a run of windows of one series, writing a row of
+	 * criteria per window
+	 */
+	private final class Backtest {
+
+		private final String instrument;
+
+		private final TimeSeries series;
+
+		private final Function<TimeSeries, AbstractStrategy> strategy;
+
+		private final String strategyName;
+
+		private final int[] windowStarts;
+
+		private final int fromWindow;
+
+		private final int toWindow;
+
+		private final double[][] values;
+
+		Backtest(final String instrument, final TimeSeries series,
+				final Function<TimeSeries, AbstractStrategy> strategy, final String strategyName,
+				final int[] windowStarts, final int fromWindow, final int toWindow, final double[][] values) {
+			this.instrument = instrument;
+			this.series = series;
+			this.strategy = strategy;
+			this.strategyName = strategyName;
+			this.windowStarts = windowStarts;
+			this.fromWindow = fromWindow;
+			this.toWindow = toWindow;
+			this.values = values;
+		}
+
+		void run() {
+			final AbstractStrategy strategy = this.strategy.apply(this.series);
+			if (!this.strategyName.equals(strategy.getName())) {
+				throw new IllegalArgumentException("Strategy for " + this.instrument + " is " + strategy.getName()
+						+ " rather than " + this.strategyName);
+			}
+			final Strategy built = strategy.getStrategy();
+			for (int w = this.fromWindow; w < this.toWindow; w++) {
+				final TimeSeries window = new SeriesWindow(this.series, this.windowStarts[w],
+						(this.windowStarts[w] + WalkForwardBacktester.this.windowBars) - 1);
+				final TradingRecord record = new TimeSeriesManager(window).run(built);
+				int c = 0;
+				for (final Entry<String, AnalysisCriterion> criterion : WalkForwardBacktester.this.criteria
+						.entrySet()) {
+					this.values[w][c++] = criterion.getValue().calculate(window, record).doubleValue();
+				}
+			}
+		}
+	}
+
+	private static final class Backtests extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Backtest> tasks;
+
+		private final int from;
+
+		private final int to;
+
+		Backtests(final List<Backtest> tasks, final int from, final int to) {
+			this.tasks = tasks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if ((this.to - this.from) == 1) {
+				this.tasks.get(this.from).run();
+				return;
+			}
+			final int middle = (this.from + this.to) >>> 1;
+			ForkJoinTask.invokeAll(new Backtests(this.tasks, this.from, middle),
+					new Backtests(this.tasks, middle, this.to));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "WalkForwardBacktester [windowBars=" + this.windowBars + ", stepBars=" + this.stepBars
+				+ ", criteria=" + this.criteria.keySet() + ", parallelism=" + this.pool.getParallelism() + "]";
+	}
+}
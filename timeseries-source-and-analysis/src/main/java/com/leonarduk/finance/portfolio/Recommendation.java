@@ -7,19 +7,40 @@ public class Recommendation {
 
 	private final Instrument		instrument;
 	private final AbstractStrategy	strategy;
+	private final String			strategyName;
 	private final RecommendedTrade	tradeRecommendation;
 
 	public Recommendation(final RecommendedTrade tradeRecommendation,
 	        final AbstractStrategy strategy, final Instrument stock2) {
 		this.tradeRecommendation = tradeRecommendation;
 		this.strategy = strategy;
+		this.strategyName = strategy == null ? null : strategy.getName();
 		this.instrument = stock2;
 	}
 
+	/**
+	 * For a recommendation from a strategy that was evaluated without building
+	 * an {@link AbstractStrategy}, such as by a StrategyEngine
+	 */
+	public Recommendation(final RecommendedTrade tradeRecommendation,
+	        final String strategyName, final Instrument stock2) {
+		this.tradeRecommendation = tradeRecommendation;
+		this.strategy = null;
+		this.strategyName = strategyName;
+		this.instrument = stock2;
+	}
+
+	/**
+	 * @return the strategy, or null if only its name is known
+	 */
 	public AbstractStrategy getStrategy() {
 		return this.strategy;
 	}
 
+	public String getStrategyName() {
+		return this.strategyName;
+	}
+
 	public Instrument getSymbol() {
 		return this.instrument;
 	}
@@ -31,7 +52,7 @@ public class Recommendation {
 	@Override
 	public String toString() {
 		return "Recommendation [tradeRecommendation=" + this.tradeRecommendation
-		        + ", strategy=" + this.strategy + ", symbol=" + this.instrument
+		        + ", strategy=" + this.strategyName + ", symbol=" + this.instrument
 		        + "]";
 	}
 
@@ -1,17 +1,13 @@
 package com.leonarduk.finance.stockfeed;
 
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import org.ta4j.core.Bar;
 
+import com.leonarduk.finance.stockfeed.SeriesMerger.ConflictPolicy;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockQuoteBuilder;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
 import com.leonarduk.finance.utils.TimeseriesUtils;
@@ -71,26 +67,25 @@ public abstract class AbstractStockFeed implements StockFeed {
 	@Override
 	public abstract boolean isAvailable();
 
-	public void mergeSeries(final StockV1 stock, final List<Bar> original) throws IOException {
+	public SeriesMerger.Result mergeSeries(final StockV1 stock, final List<Bar> original) throws IOException {
 		final List<Bar> newSeries = stock.getHistory();
-		this.mergeSeries(stock, original, newSeries);
+		return this.mergeSeries(stock, original, newSeries);
 	}
 
-	public void mergeSeries(final StockV1 stock, final List<Bar> original, final List<Bar> newSeries) {
-		final Map<LocalDate, Bar> dates = original.stream()
-				.collect(Collectors.toMap(quote -> quote.getEndTime().toLocalDate(), Function.identity()));
-		newSeries.stream().forEach(historicalQuote -> {
-			final LocalDate date = historicalQuote.getEndTime().toLocalDate();
-			if ((date != null) && !dates.containsKey(date)
-					&& !historicalQuote.getClosePrice().equals(BigDecimal.valueOf(0))) {
-				dates.putIfAbsent(date, historicalQuote);
-			}
-		});
-
-		final List<Bar> sortedList = new LinkedList<>(dates.values());
-		sortedList.sort((quote1, quote2) -> quote1.getEndTime().compareTo(quote2.getEndTime()));
-		stock.setHistory(sortedList);
+	/**
+	 * Set the history to the union of both series, keeping the original bar
+	 * where both have one for a date.
+	 */
+	public SeriesMerger.Result mergeSeries(final StockV1 stock, final List<Bar> original,
+			final List<Bar> newSeries) {
+		return this.mergeSeries(stock, original, newSeries, ConflictPolicy.PREFER_CACHED);
+	}
 
+	public SeriesMerger.Result mergeSeries(final StockV1 stock, final List<Bar> cached, final List<Bar> fresh,
+			final ConflictPolicy policy) {
+		final SeriesMerger.Result result = SeriesMerger.merge(cached, fresh, policy);
+		stock.setHistory(result.getMerged());
+		return result;
 	}
 
 }
@@ -5,8 +5,13 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,8 +29,19 @@ public class CachedStockFeed extends AbstractStockFeed {
 	        .getLogger(CachedStockFeed.class.getName());
 	private final DataStore dataStore;
 
+	private final SeriesCache seriesCache;
+
+	private final LongAdder storedBars = new LongAdder();
+
+	private final List<StoredSeriesListener> listeners = new CopyOnWriteArrayList<>();
+
 	public CachedStockFeed(final DataStore dataStore) {
+		this(dataStore, new SeriesCache());
+	}
+
+	public CachedStockFeed(final DataStore dataStore, final SeriesCache seriesCache) {
 		this.dataStore = dataStore;
+		this.seriesCache = seriesCache;
 	}
 
 	public List<Bar> loadSeries(final StockV1 stock)
@@ -37,26 +53,107 @@ public class CachedStockFeed extends AbstractStockFeed {
 		return Lists.newArrayList();
 	}
 
-	private void mergeSeries(final StockV1 stock) throws IOException {
+	private SeriesMerger.Result mergeSeries(final StockV1 stock) throws IOException {
 		final List<Bar> original = this.loadSeries(stock);
-		this.mergeSeries(stock, original);
+		return this.mergeSeries(stock, original);
 	}
 
+	/**
+	 * Store the series, merging it into what is stored first if the store
+	 * rewrites whole series. Nothing is written if the merge adds nothing, and
+	 * only cached reads overlapping the new dates are dropped.
+	 */
 	public void storeSeries(final StockV1 stock) throws IOException{
-		if (this.dataStore.contains(stock)) {
-			this.mergeSeries(stock);
+		if (!this.dataStore.isIncremental() && this.dataStore.contains(stock)) {
+			final SeriesMerger.Result result = this.mergeSeries(stock);
+			if (!result.hasChanges()) {
+				CachedStockFeed.log.debug("Nothing new to store for " + stock.getInstrument());
+				return;
+			}
+			this.dataStore.storeSeries(stock);
+			this.seriesWritten(stock, result.getChangedDates().size(), result.getFirstChangedDate().get(),
+					result.getLastChangedDate().get());
+			return;
+		}
+		final List<Bar> history = SeriesMerger.oldestFirst(stock.getHistory());
+		if (history.isEmpty()) {
+			this.dataStore.storeSeries(stock);
+			this.seriesCache.invalidate(stock.getInstrument());
+			return;
 		}
-		this.dataStore.storeSeries(stock);
+		final int written = this.dataStore.writeSeries(stock);
+		this.seriesWritten(stock, written, history.get(0).getEndTime().toLocalDate(),
+				history.get(history.size() - 1).getEndTime().toLocalDate());
+	}
+
+	private void seriesWritten(final StockV1 stock, final int written, final LocalDate fromDate,
+			final LocalDate toDate) throws IOException {
+		this.storedBars.add(written);
+		this.seriesCache.invalidate(stock.getInstrument(), fromDate, toDate);
+		if (!this.listeners.isEmpty()) {
+			final List<Bar> history = SeriesMerger.oldestFirst(stock.getHistory());
+			this.listeners.forEach(listener -> listener.seriesStored(stock.getInstrument(), history));
+		}
+	}
+
+	public void addListener(final StoredSeriesListener listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * @return bars the store has written, new or changed, since this feed was
+	 *         created
+	 */
+	public long getStoredBarCount() {
+		return this.storedBars.sum();
 	}
 
 	@Override
 	public Optional<StockV1> get(Instrument instrument, int years) throws IOException {
-		return this.dataStore.get(instrument, years);
+		return this.get(instrument, LocalDate.now().minusYears(years), LocalDate.now());
 	}
 
 	@Override
 	public Optional<StockV1> get(Instrument instrument, LocalDate fromDate, LocalDate toDate) throws IOException {
-		return this.dataStore.get(instrument, fromDate,toDate);
+		final Optional<StockV1> cached = this.seriesCache.get(instrument, fromDate, toDate);
+		if (cached.isPresent()) {
+			return cached;
+		}
+		final Optional<StockV1> stored = this.dataStore.get(instrument, fromDate, toDate);
+		if (stored.isPresent()) {
+			this.seriesCache.put(instrument, fromDate, toDate, stored.get().getHistory());
+		}
+		return stored;
+	}
+
+	/**
+	 * Serves what it can from the series cache and reads the rest from the
+	 * store in one call.
+	 */
+	public Map<Instrument, StockV1> getAll(final Collection<Instrument> instruments, final LocalDate fromDate,
+			final LocalDate toDate) throws IOException {
+		final Map<Instrument, StockV1> results = new HashMap<>();
+		final List<Instrument> toLoad = Lists.newArrayList();
+		for (final Instrument instrument : instruments) {
+			final Optional<StockV1> cached = this.seriesCache.get(instrument, fromDate, toDate);
+			if (cached.isPresent()) {
+				results.put(instrument, cached.get());
+			} else {
+				toLoad.add(instrument);
+			}
+		}
+		if (!toLoad.isEmpty()) {
+			for (final Map.Entry<Instrument, StockV1> entry : this.dataStore.getAll(toLoad, fromDate, toDate)
+					.entrySet()) {
+				this.seriesCache.put(entry.getKey(), fromDate, toDate, entry.getValue().getHistory());
+				results.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return results;
+	}
+
+	public SeriesCache getSeriesCache() {
+		return this.seriesCache;
 	}
 
 	@Override
@@ -4,17 +4,56 @@ import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
 
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 
 public interface DataStore {
 
     void storeSeries(final StockV1 stock) throws IOException;
 
+    /**
+     * Store the series as {@link #storeSeries(StockV1)} does. Stores that can
+     * tell which bars were new or changed should override it; by default every
+     * bar passed in is counted.
+     *
+     * @return the number of bars written
+     */
+    default int writeSeries(final StockV1 stock) throws IOException {
+        this.storeSeries(stock);
+        return stock.getHistory().size();
+    }
+
     boolean isAvailable();
 
     Optional<StockV1> get(Instrument instrument, int years) throws  IOException;
 
     Optional<StockV1> get(Instrument instrument, LocalDate fromDate, LocalDate toDate)  throws  IOException;
 
+    /**
+     * Fetch several instruments at once. Instruments with no data are left out
+     * of the result. Stores that can answer this in one round trip should
+     * override it; by default each instrument is fetched in turn.
+     */
+    default Map<Instrument, StockV1> getAll(Collection<Instrument> instruments, LocalDate fromDate,
+                                            LocalDate toDate) throws IOException {
+        final Map<Instrument, StockV1> results = new LinkedHashMap<>();
+        for (final Instrument instrument : instruments) {
+            final Optional<StockV1> stock = this.get(instrument, fromDate, toDate);
+            stock.ifPresent(value -> results.put(instrument, value));
+        }
+        return results;
+    }
+
     boolean contains(StockV1 stock) throws IOException;
+
+    /**
+     * @return true if {@link #storeSeries(StockV1)} merges the new bars with what
+     *         is already stored, so callers need not load and merge the full
+     *         history first
+     */
+    default boolean isIncremental() {
+        return false;
+    }
 }
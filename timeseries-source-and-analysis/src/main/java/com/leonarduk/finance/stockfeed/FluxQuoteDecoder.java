@@ -0,0 +1,109 @@
+package com.leonarduk.finance.stockfeed;
+
+import com.influxdb.query.FluxRecord;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
+import org.ta4j.core.Bar;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns the rows of a pivoted HistoricalQuote query - one row per exchange,
+ * symbol and time with open, high, low, close, adjClose and volume columns,
+ * sorted by time - into bars as they stream in.
+ * <p>
+ * Only the finished bars are kept, in a {@link PrimitiveTimeSeries} per
+ * instrument, so memory is bounded by the size of the result rather than the
+ * number of raw field values. Rows must arrive in time order per instrument; a
+ * repeated date replaces the bar before it. Rows written before points carried
+ * an exchange tag go to every instrument asked for with that symbol.
+ */
+class FluxQuoteDecoder {
+
+    private final Set<Instrument> instruments;
+    private final Map<String, List<Instrument>> instrumentsBySymbol = new HashMap<>();
+    private final Map<Instrument, PrimitiveTimeSeries> seriesByInstrument = new HashMap<>();
+
+    FluxQuoteDecoder(final Collection<Instrument> instruments) {
+        this.instruments = new LinkedHashSet<>(instruments);
+        this.instruments.forEach(instrument -> this.instrumentsBySymbol
+                .computeIfAbsent(instrument.getCode(), code -> new ArrayList<>()).add(instrument));
+    }
+
+    void accept(final FluxRecord record) {
+        final Map<String, Object> values = record.getValues();
+        final List<Instrument> candidates = this.instrumentsBySymbol.get((String) values.get("symbol"));
+        final Instant time = record.getTime();
+        if (candidates == null || time == null) {
+            return;
+        }
+        final Object exchange = values.get(InfluxDBWritePipeline.EXCHANGE_TAG);
+
+        final LocalDate date = LocalDate.ofInstant(time, ZoneId.systemDefault());
+        if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            return;
+        }
+
+        final double open = toDouble(values.get("open"));
+        final double low = toDouble(values.get("low"));
+        final double high = toDouble(values.get("high"));
+        final double close = toDouble(values.get("close"));
+        final double adjClose = toDouble(values.get("adjClose"));
+        final long volume = (long) toDouble(values.get("volume"));
+        final Object comment = values.get("comment");
+
+        for (final Instrument instrument : candidates) {
+            if (exchange == null || exchange.equals(instrument.getExchange().name())) {
+                this.seriesByInstrument.computeIfAbsent(instrument, i -> new PrimitiveTimeSeries(i.getCode()))
+                        .add(date, open, low, high, close, adjClose, volume, comment == null ? "" : comment.toString());
+            }
+        }
+    }
+
+    /**
+     * Volume is stored as a string field, prices as floats
+     */
+    private static double toDouble(final Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String && !((String) value).isEmpty()) {
+            return Double.parseDouble((String) value);
+        }
+        return 0.0;
+    }
+
+    /**
+     * @return the bars for the instrument, oldest first
+     */
+    List<Bar> getBars(final Instrument instrument) {
+        final PrimitiveTimeSeries series = this.seriesByInstrument.get(instrument);
+        return series == null ? new ArrayList<>() : series.toBarList();
+    }
+
+    /**
+     * @return a stock for each instrument asked for that had any rows, in the
+     *         order asked for
+     */
+    Map<Instrument, StockV1> getStocks() {
+        final Map<Instrument, StockV1> stocks = new LinkedHashMap<>();
+        for (final Instrument instrument : this.instruments) {
+            final PrimitiveTimeSeries series = this.seriesByInstrument.get(instrument);
+            if (series != null && series.getBarCount() > 0) {
+                stocks.put(instrument, AbstractStockFeed.createStock(instrument, series.toBarList()));
+            }
+        }
+        return stocks;
+    }
+}
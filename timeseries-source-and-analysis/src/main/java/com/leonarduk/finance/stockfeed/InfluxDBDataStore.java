@@ -2,31 +2,36 @@ package com.leonarduk.finance.stockfeed;
 
 import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.InfluxDBClientFactory;
-import com.influxdb.client.WriteApi;
 import com.influxdb.client.domain.Ready;
-import com.influxdb.client.domain.WritePrecision;
-import com.influxdb.query.FluxRecord;
-import com.influxdb.query.FluxTable;
-import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.StockFeed.Exchange;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
 import org.ta4j.core.Bar;
 
 import java.io.IOException;
-import java.time.DayOfWeek;
-import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 public class InfluxDBDataStore implements DataStore, AutoCloseable {
+    static final long WRITE_TIMEOUT_MILLIS = 60000;
+
     private final InfluxDBClient client;
     private final String bucket;
     private final String org;
     private final String token;
     private final String serverUrl;
+    private final InfluxDBWritePipeline writePipeline;
 
     public InfluxDBDataStore(final String bucket, final String org, final String token, final String serverUrl) {
+        this(bucket, org, token, serverUrl, InfluxDBWritePipeline.DEFAULT_BATCH_SIZE,
+                InfluxDBWritePipeline.DEFAULT_FLUSH_INTERVAL_MILLIS, InfluxDBWritePipeline.DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public InfluxDBDataStore(final String bucket, final String org, final String token, final String serverUrl,
+                             final int batchSize, final long flushIntervalMillis, final int queueCapacity) {
         this.bucket = bucket;
         this.org = org;
         this.token = token;
@@ -34,17 +39,45 @@ public class InfluxDBDataStore implements DataStore, AutoCloseable {
 
         // You can generate a Token from the "Tokens Tab" in the UI
         this.client = InfluxDBClientFactory.create(this.serverUrl, token.toCharArray());
+        this.writePipeline = new InfluxDBWritePipeline(this.client.getWriteApiBlocking(), bucket, org, batchSize,
+                flushIntervalMillis, queueCapacity, InfluxDBWritePipeline.DEFAULT_OFFER_TIMEOUT_MILLIS,
+                InfluxDBWritePipeline.DEFAULT_MAX_RETRIES, InfluxDBWritePipeline.DEFAULT_RETRY_BASE_MILLIS);
     }
 
+    /**
+     * Queues the bars on the shared write pipeline, where they are batched
+     * with writes for other instruments, and waits for these bars, not those
+     * of other writers, to reach InfluxDB so that a read straight after this
+     * returns sees them.
+     *
+     * @throws IOException if any of the bars was not written
+     */
     @Override
     public void storeSeries(StockV1 stock) throws IOException {
-        try (WriteApi writeApi = this.client.getWriteApi()) {
-            for (final Bar historicalQuote : stock.getHistory()) {
-                writeApi.writeMeasurement(bucket, org, WritePrecision.NS, historicalQuote);
+        final Instrument instrument = stock.getInstrument();
+        final String symbol = instrument.getCode();
+        final InfluxDBWritePipeline.Receipt receipt = new InfluxDBWritePipeline.Receipt();
+        for (final Bar historicalQuote : stock.getHistory()) {
+            this.writePipeline.write(instrument, historicalQuote, receipt);
+        }
+        try {
+            if (!receipt.await(WRITE_TIMEOUT_MILLIS)) {
+                throw new IOException("Timed out writing " + symbol + " to InfluxDB");
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted writing " + symbol + " to InfluxDB", e);
+        }
+        if (receipt.getRejected() > 0) {
+            throw new IOException(receipt.getRejected() + " of " + receipt.getPoints() + " bars for " + symbol
+                    + " were not written to InfluxDB");
         }
     }
 
+    public InfluxDBWritePipeline getWritePipeline() {
+        return this.writePipeline;
+    }
+
     @Override
     public boolean isAvailable() {
         try {
@@ -58,71 +91,116 @@ public class InfluxDBDataStore implements DataStore, AutoCloseable {
 
     @Override
     public Optional<StockV1> get(Instrument instrument, int years) throws IOException {
-        String query = String.format("from(bucket: \"%s\") |> range(start: -%dy)" +
+        return getResultFromQuery(instrument, this.org, buildQuery(String.format("start: -%dy", years),
+                instrumentFilter(instrument)));
+    }
+
+    @Override
+    public Optional<StockV1> get(Instrument instrument, LocalDate fromDate, LocalDate toDate) throws IOException {
+        return getResultFromQuery(instrument, this.org, buildQuery(getRange(fromDate, toDate),
+                instrumentFilter(instrument)));
+    }
+
+    /**
+     * One query for all the instruments, filtering on each exchange and its
+     * set of symbols. Instruments with no rows are left out.
+     */
+    @Override
+    public Map<Instrument, StockV1> getAll(Collection<Instrument> instruments, LocalDate fromDate, LocalDate toDate)
+            throws IOException {
+        final Set<Instrument> distinct = new LinkedHashSet<>(instruments);
+        if (distinct.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+
+        final Map<Exchange, Set<String>> symbolsByExchange = new LinkedHashMap<>();
+        distinct.forEach(instrument -> symbolsByExchange
+                .computeIfAbsent(instrument.getExchange(), exchange -> new LinkedHashSet<>())
+                .add(instrument.getCode()));
+        final String filter = symbolsByExchange.entrySet().stream()
+                .map(entry -> String.format("(%s and contains(value: r[\"symbol\"], set: [%s]))",
+                        exchangeFilter(entry.getKey()), entry.getValue().stream().map(InfluxDBDataStore::quote)
+                                .collect(Collectors.joining(", "))))
+                .collect(Collectors.joining(" or "));
+        final FluxQuoteDecoder decoder = new FluxQuoteDecoder(distinct);
+        streamQuery(buildQuery(getRange(fromDate, toDate), filter), this.org, decoder);
+        return decoder.getStocks();
+    }
+
+    private static String getRange(LocalDate fromDate, LocalDate toDate) {
+        // 2021-03-21T22:00:34.000Z,
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        final String timeSuffix = "T00:00:00.000Z";
+        return String.format("start: %s, stop: %s", formatter.format(fromDate) + timeSuffix,
+                formatter.format(toDate) + timeSuffix);
+    }
+
+    private static String instrumentFilter(Instrument instrument) {
+        return String.format("%s and r[\"symbol\"] == %s", exchangeFilter(instrument.getExchange()),
+                quote(instrument.getCode()));
+    }
+
+    /**
+     * Points written before they carried an exchange tag match any exchange
+     */
+    private static String exchangeFilter(Exchange exchange) {
+        return String.format("(not exists r[\"%s\"] or r[\"%s\"] == %s)", InfluxDBWritePipeline.EXCHANGE_TAG,
+                InfluxDBWritePipeline.EXCHANGE_TAG, quote(exchange.name()));
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * The fields are pivoted into columns on the server, so each result row is
+     * one bar, grouped by symbol and sorted by time, so the bars for each
+     * exchange and symbol arrive in time order.
+     */
+    private String buildQuery(String range, String symbolFilter) {
+        return String.format("from(bucket: \"%s\") |> range(%s)" +
                 "|> filter(fn: (r) => r[\"_measurement\"] == \"HistoricalQuote\")" +
                 "|> filter(fn: (r) => r[\"comment\"] != \"\") " +
                 "|> filter(fn: (r) =>  r[\"_field\"] == \"close\" or r[\"_field\"] == \"open\"" +
                 " or r[\"_field\"] == \"low\" or r[\"_field\"] == \"high\"" +
-                " or r[\"_field\"] == \"comment\" or r[\"_field\"] == \"adjClose\"" +
-                " or r[\"_field\"] == \"symbol\" or r[\"_field\"] == \"volume\")" +
-                "  |> filter(fn: (r) => r[\"symbol\"] == \"%s\")" +
+                " or r[\"_field\"] == \"adjClose\" or r[\"_field\"] == \"volume\")" +
+                "  |> filter(fn: (r) => %s)" +
                 "  |> aggregateWindow(every: 1d, fn: last, createEmpty: false)" +
-                "|> yield(name: \"last\")", this.bucket, years, instrument.getCode());
-
-        return getResultFromQuery(instrument, this.org, query);
+                "  |> pivot(rowKey: [\"_time\"], columnKey: [\"_field\"], valueColumn: \"_value\")" +
+                "  |> group(columns: [\"symbol\"])" +
+                "  |> sort(columns: [\"_time\"])" +
+                "|> yield(name: \"last\")", this.bucket, range, symbolFilter);
+    }
 
+    private Optional<StockV1> getResultFromQuery(Instrument instrument, String org, String query) throws IOException {
+        final FluxQuoteDecoder decoder = new FluxQuoteDecoder(Collections.singleton(instrument));
+        streamQuery(query, org, decoder);
+        return Optional.of(AbstractStockFeed.createStock(instrument, decoder.getBars(instrument)));
     }
 
-    @Override
-    public Optional<StockV1> get(Instrument instrument, LocalDate fromDate, LocalDate toDate) throws IOException {
-        // 2021-03-21T22:00:34.000Z,
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        final String timeSuffix = "T00:00:00.000Z";
-        String query = String.format("from(bucket: \"%s\") |> range(start: %s, stop: %s)" +
-                        "|> filter(fn: (r) => r[\"_measurement\"] == \"HistoricalQuote\")" +
-                        "|> filter(fn: (r) => r[\"comment\"] != \"\") "  +
-                        "|> filter(fn: (r) =>  r[\"_field\"] == \"close\" or r[\"_field\"] == \"open\"" +
-                        " or r[\"_field\"] == \"low\" or r[\"_field\"] == \"high\"" +
-                        " or r[\"_field\"] == \"comment\" or r[\"_field\"] == \"adjClose\"" +
-                        " or r[\"_field\"] == \"symbol\" or r[\"_field\"] == \"volume\")" +
-                        "  |> filter(fn: (r) => r[\"symbol\"] == \"%s\")" +
-                        "  |> aggregateWindow(every: 1d, fn: last, createEmpty: false)" +
-                        "|> yield(name: \"last\")", this.bucket, formatter.format(fromDate) + timeSuffix,
-                formatter.format(toDate) + timeSuffix,
-                instrument.getCode());
-        return getResultFromQuery(instrument, this.org, query);
-    }
-
-    private Optional<StockV1> getResultFromQuery(Instrument instrument, String org, String query) {
-        List<FluxTable> tables = this.client.getQueryApi().query(query, org);
-        ConcurrentHashMap<Instant, Map> dateMap = new ConcurrentHashMap<>();
-        for (FluxTable fluxTable : tables) {
-            List<FluxRecord> records = fluxTable.getRecords();
-            for (FluxRecord fluxRecord : records) {
-                Instant cobInstant = fluxRecord.getTime();
-                Map<String, Object> map = dateMap.getOrDefault(cobInstant, new HashMap<String, Object>());
-                map.put((String) fluxRecord.getValueByKey("_field"),
-                        fluxRecord.getValueByKey("_value"));
-                map.put("date", cobInstant);
-                dateMap.put(cobInstant, map);
-//                System.out.println(dateMap.get(cobInstant));
-            }
+    /**
+     * Feed the query results to the decoder row by row as they arrive rather
+     * than materialising the tables first.
+     */
+    private void streamQuery(String query, String org, FluxQuoteDecoder decoder) throws IOException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        this.client.getQueryApi().query(query, org,
+                (cancellable, fluxRecord) -> decoder.accept(fluxRecord),
+                throwable -> {
+                    failure.set(throwable);
+                    done.countDown();
+                },
+                done::countDown);
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for query", e);
         }
-        final List<Bar> quotes = new LinkedList<>();
-        Iterator<Map> resultIter = dateMap.values().iterator();
-        while (resultIter.hasNext()) {
-            ExtendedHistoricalQuote asHistoricalQuote = new ExtendedHistoricalQuote(instrument, resultIter.next());
-            if (asHistoricalQuote.getDate().getDayOfWeek() != DayOfWeek.SATURDAY
-                    && asHistoricalQuote.getDate().getDayOfWeek() != DayOfWeek.SUNDAY) {
-                quotes.add(asHistoricalQuote);
-            }
+        if (failure.get() != null) {
+            throw new IOException("Query failed: " + failure.get().getMessage(), failure.get());
         }
-
-        Collections.sort(quotes, (o1, o2) -> {
-            return o2.getEndTime().compareTo(o1.getEndTime());
-        });
-
-        return Optional.of(AbstractStockFeed.createStock(instrument, quotes));
     }
 
     @Override
@@ -133,6 +211,7 @@ public class InfluxDBDataStore implements DataStore, AutoCloseable {
     @Override
     public void close() throws Exception {
         // Close it if your application is terminating or you are not using it anymore.
+        writePipeline.close();
         client.close();
     }
 }
@@ -0,0 +1,469 @@
+package com.leonarduk.finance.stockfeed;
+
+import com.influxdb.client.WriteApiBlocking;
+import com.influxdb.client.domain.WritePrecision;
+import com.leonarduk.finance.stockfeed.feed.Commentable;
+import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.ta4j.core.Bar;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived write path into InfluxDB.
+ * <p>
+ * Points are encoded straight to line protocol and put on a bounded queue. A
+ * single background thread drains the queue into batches of up to
+ * {@code batchSize} points, or whatever has arrived within
+ * {@code flushIntervalMillis}, so writes for many instruments share requests.
+ * When the queue is full, producers wait up to {@code offerTimeoutMillis}
+ * before the point is dropped. Failed batches are retried with exponential
+ * backoff and full jitter.
+ * <p>
+ * Points written with a {@link Receipt} can be waited on without waiting for
+ * points other writers queued, and the receipt counts any that were rejected.
+ */
+public class InfluxDBWritePipeline implements AutoCloseable {
+
+    public static final Logger log = LoggerFactory.getLogger(InfluxDBWritePipeline.class.getName());
+
+    public static final String MEASUREMENT = "HistoricalQuote";
+
+    public static final String EXCHANGE_TAG = "exchange";
+
+    public static final int DEFAULT_BATCH_SIZE = 5000;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 100000;
+    public static final long DEFAULT_OFFER_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    public static final long DEFAULT_RETRY_BASE_MILLIS = 200;
+
+    private final WriteApiBlocking writeApi;
+    private final String bucket;
+    private final String org;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long offerTimeoutMillis;
+    private final int maxRetries;
+    private final long retryBaseMillis;
+
+    private final BlockingQueue<Point> queue;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Points accepted but not yet flushed or dropped, guarded by this
+     */
+    private long pending;
+
+    public InfluxDBWritePipeline(final WriteApiBlocking writeApi, final String bucket, final String org) {
+        this(writeApi, bucket, org, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_QUEUE_CAPACITY,
+                DEFAULT_OFFER_TIMEOUT_MILLIS, DEFAULT_MAX_RETRIES, DEFAULT_RETRY_BASE_MILLIS);
+    }
+
+    public InfluxDBWritePipeline(final WriteApiBlocking writeApi, final String bucket, final String org,
+                                 final int batchSize, final long flushIntervalMillis, final int queueCapacity,
+                                 final long offerTimeoutMillis, final int maxRetries, final long retryBaseMillis) {
+        if (batchSize < 1 || queueCapacity < 1 || flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("batchSize, queueCapacity and flushIntervalMillis must be positive");
+        }
+        this.writeApi = writeApi;
+        this.bucket = bucket;
+        this.org = org;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.maxRetries = maxRetries;
+        this.retryBaseMillis = retryBaseMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.flusher = new Thread(this::run, "InfluxDBWritePipeline-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queue a bar, waiting for space if the queue is full.
+     *
+     * @return false if the pipeline is closed or the point was dropped
+     */
+    public boolean write(final String symbol, final Bar bar) {
+        return this.write(toLineProtocol(null, symbol, bar));
+    }
+
+    /**
+     * Queue a bar tagged with the instrument's exchange and code, waiting for
+     * space if the queue is full.
+     *
+     * @return false if the pipeline is closed or the point was dropped
+     */
+    public boolean write(final Instrument instrument, final Bar bar) {
+        return this.write(instrument, bar, null);
+    }
+
+    /**
+     * As {@link #write(Instrument, Bar)}, tracking the point on the receipt.
+     *
+     * @return false if the pipeline is closed or the point was dropped
+     */
+    public boolean write(final Instrument instrument, final Bar bar, final Receipt receipt) {
+        return this.write(toLineProtocol(instrument.getExchange().name(), instrument.getCode(), bar), receipt);
+    }
+
+    /**
+     * Queue a line protocol record, waiting for space if the queue is full.
+     *
+     * @return false if the pipeline is closed or the point was dropped
+     */
+    public boolean write(final String line) {
+        return this.write(line, (Receipt) null);
+    }
+
+    /**
+     * As {@link #write(String)}, tracking the point on the receipt if there is
+     * one.
+     *
+     * @return false if the pipeline is closed or the point was dropped
+     */
+    public boolean write(final String line, final Receipt receipt) {
+        if (receipt != null) {
+            receipt.accepted();
+        }
+        if (!this.running) {
+            this.dropped.incrementAndGet();
+            if (receipt != null) {
+                receipt.completed(false);
+            }
+            return false;
+        }
+        synchronized (this) {
+            this.pending++;
+        }
+        try {
+            if (this.queue.offer(new Point(line, receipt), this.offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                this.queued.incrementAndGet();
+                return true;
+            }
+            InfluxDBWritePipeline.log.warn("Write queue full, dropping point");
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.dropped.incrementAndGet();
+        if (receipt != null) {
+            receipt.completed(false);
+        }
+        this.completed(1);
+        return false;
+    }
+
+    /**
+     * Wait until every point queued so far, by any writer, has been flushed or
+     * dropped. To wait for only some points use a {@link Receipt}.
+     *
+     * @return false if that did not happen within the timeout
+     */
+    public synchronized boolean flush(final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (this.pending > 0) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            this.wait(remaining);
+        }
+        return true;
+    }
+
+    private synchronized void completed(final int points) {
+        this.pending -= points;
+        if (this.pending <= 0) {
+            this.notifyAll();
+        }
+    }
+
+    private void run() {
+        final List<Point> batch = new ArrayList<>(this.batchSize);
+        final List<String> lines = new ArrayList<>(this.batchSize);
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                final Point first = this.queue.poll(this.flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                final long deadline = System.currentTimeMillis() + this.flushIntervalMillis;
+                while (batch.size() < this.batchSize) {
+                    if (this.queue.drainTo(batch, this.batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0 || !this.running) {
+                        break;
+                    }
+                    final Point next = this.queue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (final InterruptedException e) {
+                // closing - write what we have and drain the rest
+                this.running = false;
+                this.queue.drainTo(batch);
+            }
+            if (!batch.isEmpty()) {
+                batch.forEach(point -> lines.add(point.line));
+                final boolean written = this.writeWithRetry(lines);
+                for (final Point point : batch) {
+                    if (point.receipt != null) {
+                        point.receipt.completed(written);
+                    }
+                }
+                this.completed(batch.size());
+                batch.clear();
+                lines.clear();
+            }
+        }
+    }
+
+    /**
+     * @return false if the batch was dropped
+     */
+    private boolean writeWithRetry(final List<String> batch) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                this.writeApi.writeRecords(this.bucket, this.org, WritePrecision.NS, batch);
+                this.flushed.addAndGet(batch.size());
+                this.batches.incrementAndGet();
+                return true;
+            } catch (final RuntimeException e) {
+                if (attempt >= this.maxRetries) {
+                    InfluxDBWritePipeline.log.warn("Dropping batch of " + batch.size() + " points after "
+                            + (attempt + 1) + " attempts: " + e.getMessage());
+                    this.dropped.addAndGet(batch.size());
+                    return false;
+                }
+                final long backoff = this.retryBaseMillis << Math.min(attempt, 16);
+                final long sleep = ThreadLocalRandom.current().nextLong(backoff + 1);
+                InfluxDBWritePipeline.log.info("Write failed (" + e.getMessage() + "), retrying in " + sleep + "ms");
+                try {
+                    Thread.sleep(sleep);
+                } catch (final InterruptedException interrupted) {
+                    // keep retrying, close() is waiting for us to finish
+                    this.running = false;
+                }
+            }
+        }
+    }
+
+    public long getQueued() {
+        return this.queued.get();
+    }
+
+    public long getFlushed() {
+        return this.flushed.get();
+    }
+
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    public long getBatches() {
+        return this.batches.get();
+    }
+
+    public int getQueueDepth() {
+        return this.queue.size();
+    }
+
+    /**
+     * Encode a bar in the same shape the annotated {@link ExtendedHistoricalQuote}
+     * used to be written in: symbol and comment tags, price fields as floats and
+     * volume as a string field. The exchange tag, if given, keeps the same code
+     * on different exchanges apart.
+     */
+    static String toLineProtocol(final String exchange, final String defaultSymbol, final Bar bar) {
+        final StringBuilder sb = new StringBuilder(160).append(MEASUREMENT);
+        final Instant timestamp;
+        if (bar instanceof ExtendedHistoricalQuote) {
+            final ExtendedHistoricalQuote quote = (ExtendedHistoricalQuote) bar;
+            final String symbol = quote.getSymbol();
+            appendTag(sb, "comment", quote.getComment());
+            appendTag(sb, EXCHANGE_TAG, exchange);
+            appendTag(sb, "symbol", symbol == null || symbol.isEmpty() ? defaultSymbol : symbol);
+            sb.append(' ');
+            boolean first = appendField(sb, "adjClose", quote.getAdjClose(), true);
+            first = appendField(sb, "close", quote.getClose(), first);
+            first = appendField(sb, "high", quote.getHigh(), first);
+            first = appendField(sb, "low", quote.getLow(), first);
+            first = appendField(sb, "open", quote.getOpen(), first);
+            appendStringField(sb, "volume", quote.getVolume(), first);
+            timestamp = quote.getDateInstant();
+        } else if (bar instanceof PrimitiveTimeSeries.PrimitiveBar) {
+            final PrimitiveTimeSeries.PrimitiveBar view = (PrimitiveTimeSeries.PrimitiveBar) bar;
+            appendTag(sb, "comment", view.getComment());
+            appendTag(sb, EXCHANGE_TAG, exchange);
+            appendTag(sb, "symbol", view.getSymbol().isEmpty() ? defaultSymbol : view.getSymbol());
+            sb.append(' ');
+            sb.append("adjClose=").append(view.getAdjClose());
+            sb.append(",close=").append(bar.getClosePrice().doubleValue());
+            sb.append(",high=").append(bar.getMaxPrice().doubleValue());
+            sb.append(",low=").append(bar.getMinPrice().doubleValue());
+            sb.append(",open=").append(bar.getOpenPrice().doubleValue());
+            appendStringField(sb, "volume", bar.getVolume(), false);
+            timestamp = bar.getEndTime().toInstant();
+        } else {
+            appendTag(sb, "comment", bar instanceof Commentable ? ((Commentable) bar).getComment() : null);
+            appendTag(sb, EXCHANGE_TAG, exchange);
+            appendTag(sb, "symbol", defaultSymbol);
+            sb.append(' ');
+            sb.append("close=").append(bar.getClosePrice().doubleValue());
+            sb.append(",high=").append(bar.getMaxPrice().doubleValue());
+            sb.append(",low=").append(bar.getMinPrice().doubleValue());
+            sb.append(",open=").append(bar.getOpenPrice().doubleValue());
+            appendStringField(sb, "volume", bar.getVolume(), false);
+            timestamp = bar.getEndTime().toInstant();
+        }
+        return sb.append(' ').append(TimeUnit.SECONDS.toNanos(timestamp.getEpochSecond()) + timestamp.getNano())
+                .toString();
+    }
+
+    private static void appendTag(final StringBuilder sb, final String key, final String value) {
+        // InfluxDB rejects empty tag values, so they are left out
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        sb.append(',').append(key).append('=');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == ',' || c == '=' || c == ' ') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+    }
+
+    private static boolean appendField(final StringBuilder sb, final String key, final BigDecimal value,
+                                       final boolean first) {
+        if (value == null) {
+            return first;
+        }
+        if (!first) {
+            sb.append(',');
+        }
+        sb.append(key).append('=').append(value.toPlainString());
+        return false;
+    }
+
+    private static void appendStringField(final StringBuilder sb, final String key, final Object value,
+                                          final boolean first) {
+        if (value == null) {
+            return;
+        }
+        if (!first) {
+            sb.append(',');
+        }
+        sb.append(key).append("=\"");
+        final String text = value.toString();
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    private static final class Point {
+        private final String line;
+        private final Receipt receipt;
+
+        private Point(final String line, final Receipt receipt) {
+            this.line = line;
+            this.receipt = receipt;
+        }
+    }
+
+    /**
+     * Tracks the points of one caller, such as one series being stored.
+     */
+    public static final class Receipt {
+        private int pending;
+        private int points;
+        private int rejected;
+
+        private synchronized void accepted() {
+            this.pending++;
+            this.points++;
+        }
+
+        private synchronized void completed(final boolean written) {
+            if (!written) {
+                this.rejected++;
+            }
+            if (--this.pending <= 0) {
+                this.notifyAll();
+            }
+        }
+
+        /**
+         * Wait until every point on this receipt has been flushed or dropped.
+         *
+         * @return false if that did not happen within the timeout
+         */
+        public synchronized boolean await(final long timeoutMillis) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (this.pending > 0) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                this.wait(remaining);
+            }
+            return true;
+        }
+
+        public synchronized int getPoints() {
+            return this.points;
+        }
+
+        /**
+         * @return points dropped because the queue was full, the pipeline was
+         *         closed or their batch failed every retry
+         */
+        public synchronized int getRejected() {
+            return this.rejected;
+        }
+    }
+
+    /**
+     * Stop accepting points, flush what is queued and stop the background thread.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        this.running = false;
+        this.flusher.join(Math.max(this.flushIntervalMillis * 2, 1000) + this.offerTimeoutMillis);
+        if (this.flusher.isAlive()) {
+            this.flusher.interrupt();
+            this.flusher.join();
+        }
+        InfluxDBWritePipeline.log.info("Closed write pipeline: queued=" + this.getQueued() + " flushed="
+                + this.getFlushed() + " dropped=" + this.getDropped());
+    }
+}
@@ -3,8 +3,18 @@ package com.leonarduk.finance.stockfeed;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,12 +22,15 @@ import org.ta4j.core.Bar;
 import org.ta4j.core.num.DoubleNum;
 
 import com.google.common.collect.Lists;
+import com.leonarduk.finance.stockfeed.SeriesMerger.ConflictPolicy;
+import com.leonarduk.finance.stockfeed.StockFeed.Exchange;
 import com.leonarduk.finance.stockfeed.datatransformation.interpolation.FlatLineInterpolator;
 import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.ExtendedStockQuote;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockQuoteBuilder;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
 import com.leonarduk.finance.utils.DateUtils;
+import com.leonarduk.finance.utils.SingleFlight;
 import com.leonarduk.finance.utils.TimeseriesUtils;
 
 public class IntelligentStockFeed extends AbstractStockFeed implements StockFeed {
@@ -26,11 +39,17 @@ public class IntelligentStockFeed extends AbstractStockFeed implements StockFeed
 	private final DataStore dataStore;
 
 	public IntelligentStockFeed(final DataStore dataStore){
+		this(dataStore, new SeriesCache());
+	}
+
+	public IntelligentStockFeed(final DataStore dataStore, final SeriesCache seriesCache){
 		this.dataStore = dataStore;
-		stockFeedFactory = new StockFeedFactory(dataStore);
+		stockFeedFactory = new StockFeedFactory(dataStore, seriesCache);
 	}
 	private final StockFeedFactory stockFeedFactory;
 
+	private final SingleFlight<FetchKey, Optional<StockV1>> webFetches = new SingleFlight<>();
+
 	public boolean refresh = true;
 
 	public Optional<StockV1> getFlatCashSeries(final Instrument instrument, final int years) throws IOException {
@@ -103,12 +122,7 @@ public class IntelligentStockFeed extends AbstractStockFeed implements StockFeed
 	public Optional<StockV1> get(final Instrument instrument, final LocalDate fromDateRaw, final LocalDate toDateRaw,
 			final boolean interpolate, boolean cleanData) {
 		try {
-
-			StockFeed webDataFeed = stockFeedFactory.getDataFeed(Source.ALPHAVANTAGE);
-//			if (instrument instanceof FxInstrument) {
-//				webDataFeed = stockFeedFactory.getDataFeed(Source.alphavantage);
-//			}
-			return getUsingCache(instrument, fromDateRaw, toDateRaw, interpolate, cleanData, webDataFeed);
+			return this.load(instrument, fromDateRaw, toDateRaw, interpolate, cleanData);
 		} catch (final Exception e) {
 			IntelligentStockFeed.log.warn(e.getMessage());
 			return Optional.empty();
@@ -116,12 +130,89 @@ public class IntelligentStockFeed extends AbstractStockFeed implements StockFeed
 
 	}
 
+	/**
+	 * As {@link #get(Instrument, LocalDate, LocalDate, boolean, boolean)}, but
+	 * failures are thrown rather than logged, so the caller can report why.
+	 *
+	 * @return empty only if neither the cache nor the web feed has any data
+	 */
+	public Optional<StockV1> load(final Instrument instrument, final LocalDate fromDateRaw,
+			final LocalDate toDateRaw, final boolean interpolate, final boolean cleanData) throws IOException {
+		StockFeed webDataFeed = stockFeedFactory.getDataFeed(Source.ALPHAVANTAGE);
+//		if (instrument instanceof FxInstrument) {
+//			webDataFeed = stockFeedFactory.getDataFeed(Source.alphavantage);
+//		}
+		return getUsingCache(instrument, fromDateRaw, toDateRaw, interpolate, cleanData, webDataFeed);
+	}
+
+	/**
+	 * Fetch several instruments, reading what is already cached in one bulk
+	 * query per exchange and only going to the web feed for the gaps.
+	 *
+	 * @return the series found, keyed by instrument
+	 */
+	public Map<Instrument, StockV1> getAll(final Collection<Instrument> instruments, final LocalDate fromDateRaw,
+			final LocalDate toDateRaw, final boolean interpolate, final boolean cleanData) {
+		final Map<Exchange, Set<Instrument>> byExchange = new LinkedHashMap<>();
+		for (final Instrument instrument : instruments) {
+			if (!instrument.equals(Instrument.CASH)) {
+				byExchange.computeIfAbsent(instrument.getExchange(), exchange -> new LinkedHashSet<>())
+						.add(instrument);
+			}
+		}
+
+		Map<Instrument, StockV1> cached = new HashMap<>();
+		try {
+			final CachedStockFeed cachedDataFeed = (CachedStockFeed) stockFeedFactory.getDataFeed(Source.MANUAL);
+			if (cachedDataFeed.isAvailable()) {
+				// The same range getUsingCache checks the cache against
+				for (final Map.Entry<Exchange, Set<Instrument>> entry : byExchange.entrySet()) {
+					final TradingCalendar calendar = TradingCalendar.of(entry.getKey());
+					cached.putAll(cachedDataFeed.getAll(entry.getValue(), calendar.getLastTradingDay(fromDateRaw),
+							calendar.getLastTradingDay(toDateRaw)));
+				}
+			}
+		} catch (final Exception e) {
+			IntelligentStockFeed.log.warn("Bulk cache read failed: " + e.getMessage());
+			cached = Collections.emptyMap();
+		}
+
+		final Map<Instrument, StockV1> cachedData = cached;
+		final StockFeed webDataFeed = stockFeedFactory.getDataFeed(Source.ALPHAVANTAGE);
+		final Map<Instrument, StockV1> results = new ConcurrentHashMap<>();
+		new LinkedHashSet<>(instruments).parallelStream().forEach(instrument -> {
+			try {
+				this.getUsingCache(instrument, fromDateRaw, toDateRaw, interpolate, cleanData, webDataFeed,
+						Optional.ofNullable(cachedData.get(instrument)))
+						.ifPresent(stock -> results.put(instrument, stock));
+			} catch (final Exception e) {
+				IntelligentStockFeed.log.warn(e.getMessage());
+			}
+		});
+		return results;
+	}
+
 	private Optional<StockV1> getUsingCache(final Instrument instrument, final LocalDate fromDateRaw,
 			final LocalDate toDateRaw, final boolean interpolate, boolean cleanData, StockFeed webDataFeed)
 			throws IOException {
-		// Ignore weekends
-		LocalDate fromDate = DateUtils.getLastWeekday(fromDateRaw);
-		LocalDate toDate = DateUtils.getLastWeekday(toDateRaw);
+		if (instrument.equals(Instrument.CASH)) {
+			return getUsingCache(instrument, fromDateRaw, toDateRaw, interpolate, cleanData, webDataFeed,
+					Optional.empty());
+		}
+		final CachedStockFeed cachedDataFeed = (CachedStockFeed) stockFeedFactory.getDataFeed(Source.MANUAL);
+		final TradingCalendar calendar = TradingCalendar.of(instrument.getExchange());
+		return getUsingCache(instrument, fromDateRaw, toDateRaw, interpolate, cleanData, webDataFeed,
+				this.getDataIfFeedAvailable(instrument, calendar.getLastTradingDay(fromDateRaw),
+						calendar.getLastTradingDay(toDateRaw), cachedDataFeed, true));
+	}
+
+	private Optional<StockV1> getUsingCache(final Instrument instrument, final LocalDate fromDateRaw,
+			final LocalDate toDateRaw, final boolean interpolate, boolean cleanData, StockFeed webDataFeed,
+			final Optional<StockV1> cachedData) throws IOException {
+		// Ignore weekends and the exchange's holidays
+		final TradingCalendar calendar = TradingCalendar.of(instrument.getExchange());
+		LocalDate fromDate = calendar.getLastTradingDay(fromDateRaw);
+		LocalDate toDate = calendar.getLastTradingDay(toDateRaw);
 
 		if (instrument.equals(Instrument.CASH)) {
 			return getFlatCashSeries(instrument, fromDate, toDate);
@@ -129,9 +220,6 @@ public class IntelligentStockFeed extends AbstractStockFeed implements StockFeed
 
 		final CachedStockFeed cachedDataFeed = (CachedStockFeed) stockFeedFactory.getDataFeed(Source.MANUAL);
 
-		final Optional<StockV1> cachedData = this.getDataIfFeedAvailable(instrument, fromDate, toDate, cachedDataFeed,
-				true);
-
 		// If we have the data already, don't bother to refresh
 		// Note will need to update today's live quote still though,
 		// so skip latest date point
@@ -141,24 +229,24 @@ public class IntelligentStockFeed extends AbstractStockFeed implements StockFeed
 			if (cachedData.isPresent()) {
 				final List<Bar> cachedHistory = cachedData.get().getHistory();
 				List<LocalDate> missingDates = TimeseriesUtils.getMissingDataPoints(cachedHistory, fromDate,
-						DateUtils.getPreviousDate(toDate));
+						calendar.getPreviousTradingDay(toDate));
 
 				if (!missingDates.isEmpty()) {
-					liveData = this.getDataIfFeedAvailable(instrument, missingDates.get(0),
-							missingDates.get(missingDates.size() - 1), webDataFeed, refresh);
+					liveData = this.fetchAndStore(instrument, missingDates.get(0),
+							missingDates.get(missingDates.size() - 1), webDataFeed, cachedDataFeed);
 				}
 			} else {
-				liveData = this.getDataIfFeedAvailable(instrument, fromDate, toDate, webDataFeed,
-						refresh);
+				liveData = this.fetchAndStore(instrument, fromDate, toDate, webDataFeed, cachedDataFeed);
 			}
 		}
 
 		if (liveData.isPresent()) {
-			final StockV1 stock = liveData.get();
 			if (cachedData.isPresent()) {
-				this.mergeSeries(cachedData.get(), stock.getHistory(), cachedData.get().getHistory());
+				// Fill in the cached history around the newly fetched dates
+				this.mergeSeries(cachedData.get(), cachedData.get().getHistory(), liveData.get().getHistory(),
+						ConflictPolicy.PREFER_FRESH);
+				liveData = cachedData;
 			}
-			cachedDataFeed.storeSeries(stock);
 			if (!(instrument instanceof FxInstrument)) {
 				this.addLatestQuoteToTheSeries(liveData.get(), stockFeedFactory.getQuoteFeed(Source.YAHOO));
 			}
@@ -175,6 +263,47 @@ public class IntelligentStockFeed extends AbstractStockFeed implements StockFeed
 		return TimeseriesUtils.interpolateAndSortSeries(fromDate, toDate, interpolate, liveData);
 	}
 
+	/**
+	 * Download the range from the web feed and write it to the cache. Concurrent
+	 * requests for the same instrument, source and range share one download and
+	 * one write; each caller gets its own copy of the result.
+	 */
+	private Optional<StockV1> fetchAndStore(final Instrument instrument, final LocalDate fromDate,
+			final LocalDate toDate, final StockFeed webDataFeed, final CachedStockFeed cachedDataFeed)
+			throws IOException {
+		final Optional<StockV1> fetched = this.webFetches.execute(
+				new FetchKey(instrument, (Source) webDataFeed.getSource(), fromDate, toDate), () -> {
+					final Optional<StockV1> data = this.getDataIfFeedAvailable(instrument, fromDate, toDate,
+							webDataFeed, refresh);
+					if (data.isPresent()) {
+						cachedDataFeed.storeSeries(data.get());
+					}
+					return data;
+				});
+		if (!fetched.isPresent()) {
+			return fetched;
+		}
+		return Optional.of(AbstractStockFeed.createStock(instrument, new ArrayList<>(fetched.get().getHistory())));
+	}
+
+	/**
+	 * Listen to each series written to the cache
+	 */
+	public void addListener(final StoredSeriesListener listener) {
+		this.stockFeedFactory.addListener(listener);
+	}
+
+	public SingleFlight<FetchKey, Optional<StockV1>> getWebFetches() {
+		return this.webFetches;
+	}
+
+	/**
+	 * @return bars downloaded and written to the cache so far
+	 */
+	public long getStoredBarCount() {
+		return ((CachedStockFeed) stockFeedFactory.getDataFeed(Source.MANUAL)).getStoredBarCount();
+	}
+
 	public Optional<StockV1> get(final Instrument instrument, final String fromDate, final String toDate,
 			final boolean interpolate, boolean cleanData) {
 		return this.get(instrument, LocalDate.parse(fromDate), LocalDate.parse(toDate), interpolate, cleanData);
@@ -208,4 +337,46 @@ public class IntelligentStockFeed extends AbstractStockFeed implements StockFeed
 				|| stockFeedFactory.getDataFeed(Source.YAHOO).isAvailable();
 	}
 
+	/**
+	 * Identifies one web download: instrument, source and date range
+	 */
+	public static final class FetchKey {
+		private final Instrument instrument;
+		private final Source source;
+		private final LocalDate fromDate;
+		private final LocalDate toDate;
+
+		FetchKey(final Instrument instrument, final Source source, final LocalDate fromDate,
+				final LocalDate toDate) {
+			this.instrument = instrument;
+			this.source = source;
+			this.fromDate = fromDate;
+			this.toDate = toDate;
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof FetchKey)) {
+				return false;
+			}
+			final FetchKey that = (FetchKey) other;
+			return this.instrument.equals(that.instrument) && this.source == that.source
+					&& this.fromDate.equals(that.fromDate) && this.toDate.equals(that.toDate);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.instrument, this.source, this.fromDate, this.toDate);
+		}
+
+		@Override
+		public String toString() {
+			return "FetchKey [instrument=" + this.instrument + ", source=" + this.source + ", fromDate="
+					+ this.fromDate + ", toDate=" + this.toDate + "]";
+		}
+	}
+
 }
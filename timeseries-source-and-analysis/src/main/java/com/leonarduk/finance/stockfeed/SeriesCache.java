@@ -0,0 +1,194 @@
+package com.leonarduk.finance.stockfeed;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
+import org.ta4j.core.Bar;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory cache of series read from a {@link DataStore}, keyed by instrument.
+ * <p>
+ * Each entry remembers the date range the store returned bars for, so any
+ * request inside that range is answered by slicing the cached bars. Loading an
+ * overlapping range widens the entry. Entries are evicted least recently used
+ * first once the estimated size passes {@code maximumBytes}.
+ */
+public class SeriesCache {
+
+    public static final long DEFAULT_MAXIMUM_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * Bars are held as primitive columns, not one object each
+     */
+    static final int BYTES_PER_BAR = PrimitiveTimeSeries.BYTES_PER_BAR;
+
+    private static final int BYTES_PER_ENTRY = 256;
+
+    private final Cache<Instrument, Entry> cache;
+
+    /**
+     * Counted here rather than by Guava, as an entry that does not cover the
+     * requested range is a miss
+     */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public SeriesCache() {
+        this(DEFAULT_MAXIMUM_BYTES);
+    }
+
+    public SeriesCache(final long maximumBytes) {
+        this.cache = CacheBuilder.newBuilder().maximumWeight(maximumBytes)
+                .weigher((Instrument instrument, Entry entry) -> entry.weight()).recordStats().build();
+    }
+
+    /**
+     * @return the bars between the dates, inclusive, if a cached read covered
+     *         that whole range
+     */
+    public Optional<StockV1> get(final Instrument instrument, final LocalDate fromDate, final LocalDate toDate) {
+        final Entry entry = this.cache.getIfPresent(instrument);
+        if (entry == null || entry.fromDate.isAfter(fromDate) || entry.toDate.isBefore(toDate)) {
+            this.misses.increment();
+            return Optional.empty();
+        }
+        this.hits.increment();
+        return Optional.of(AbstractStockFeed.createStock(instrument, entry.slice(fromDate, toDate)));
+    }
+
+    /**
+     * Record the result of reading the range from the store. Only the dates
+     * from the first to the last bar returned are treated as covered, as the
+     * store may not have been able to return all of what was asked for; an
+     * empty result is not cached.
+     */
+    public void put(final Instrument instrument, final LocalDate fromDate, final LocalDate toDate,
+                    final List<Bar> history) {
+        if (history == null || history.isEmpty()) {
+            return;
+        }
+        final PrimitiveTimeSeries bars = PrimitiveTimeSeries.from(instrument.getCode(), history);
+        final LocalDate first = bars.getDate(0);
+        final LocalDate last = bars.getDate(bars.getBarCount() - 1);
+        final Entry loaded = new Entry(first.isAfter(fromDate) ? first : fromDate,
+                last.isBefore(toDate) ? last : toDate, bars);
+        this.cache.asMap().merge(instrument, loaded, Entry::widen);
+    }
+
+    public void invalidate(final Instrument instrument) {
+        this.cache.invalidate(instrument);
+    }
+
+    /**
+     * Drop the cached read of the instrument if it includes any of the dates
+     * between fromDate and toDate, inclusive. A read of other dates is still
+     * accurate and is kept.
+     */
+    public void invalidate(final Instrument instrument, final LocalDate fromDate, final LocalDate toDate) {
+        this.cache.asMap().computeIfPresent(instrument,
+                (key, entry) -> entry.fromDate.isAfter(toDate) || entry.toDate.isBefore(fromDate) ? entry : null);
+    }
+
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return this.cache.stats().evictionCount();
+    }
+
+    public long size() {
+        return this.cache.size();
+    }
+
+    /**
+     * @return estimated bytes held
+     */
+    public long weight() {
+        return this.cache.asMap().values().stream().mapToLong(Entry::weight).sum();
+    }
+
+    @Override
+    public String toString() {
+        return "SeriesCache [instruments=" + this.size() + ", bytes=" + this.weight() + ", hits="
+                + this.getHitCount() + ", misses=" + this.getMissCount() + ", evictions="
+                + this.getEvictionCount() + "]";
+    }
+
+    private static final class Entry {
+        private final LocalDate fromDate;
+        private final LocalDate toDate;
+        /**
+         * Oldest first, never modified once built
+         */
+        private final PrimitiveTimeSeries bars;
+
+        private Entry(final LocalDate fromDate, final LocalDate toDate, final PrimitiveTimeSeries bars) {
+            this.fromDate = fromDate;
+            this.toDate = toDate;
+            this.bars = bars;
+        }
+
+        private int weight() {
+            return BYTES_PER_ENTRY + this.bars.getBarCount() * BYTES_PER_BAR;
+        }
+
+        /**
+         * @return a copy the caller is free to modify
+         */
+        private List<Bar> slice(final LocalDate from, final LocalDate to) {
+            final int start = this.indexOf(from, false);
+            final int end = this.indexOf(to, true);
+            return new ArrayList<>(this.bars.getBarData().subList(start, Math.max(start, end)));
+        }
+
+        /**
+         * @return index of the first bar on or after the date, or strictly
+         *         after it if {@code after} is set
+         */
+        private int indexOf(final LocalDate date, final boolean after) {
+            final int found = this.bars.indexOf(date);
+            if (found < 0) {
+                return -found - 1;
+            }
+            return after ? found + 1 : found;
+        }
+
+        /**
+         * Combine with a newer read. Ranges that overlap or touch are joined,
+         * with the newer read winning on common dates; otherwise the wider range
+         * is kept.
+         */
+        private static Entry widen(final Entry existing, final Entry loaded) {
+            final boolean disjoint = loaded.toDate.plusDays(1).isBefore(existing.fromDate)
+                    || existing.toDate.plusDays(1).isBefore(loaded.fromDate);
+            if (disjoint) {
+                return existing.span() > loaded.span() ? existing : loaded;
+            }
+            final List<Bar> combined = new ArrayList<>(existing.bars.getBarData());
+            combined.addAll(loaded.bars.getBarData());
+            final LocalDate from = existing.fromDate.isBefore(loaded.fromDate) ? existing.fromDate : loaded.fromDate;
+            final LocalDate to = existing.toDate.isAfter(loaded.toDate) ? existing.toDate : loaded.toDate;
+            return new Entry(from, to, PrimitiveTimeSeries.from(existing.bars.getName(), combined));
+        }
+
+        private long span() {
+            return this.toDate.toEpochDay() - this.fromDate.toEpochDay();
+        }
+    }
+}
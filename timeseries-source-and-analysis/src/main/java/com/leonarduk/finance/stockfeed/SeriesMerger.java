@@ -0,0 +1,233 @@
+package com.leonarduk.finance.stockfeed;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import org.ta4j.core.Bar;
+import org.ta4j.core.num.Num;
+
+import com.google.common.collect.Lists;
+import com.leonarduk.finance.stockfeed.datatransformation.interpolation.FlatLineInterpolator;
+import com.leonarduk.finance.stockfeed.datatransformation.interpolation.InterpolatedTimeSeries;
+import com.leonarduk.finance.stockfeed.datatransformation.interpolation.LinearInterpolator;
+import com.leonarduk.finance.stockfeed.feed.Commentable;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+/**
+ * Merges a cached series with freshly fetched bars in one pass.
+ * <p>
+ * Both inputs are expected in date order, oldest or newest first; a list in
+ * neither order is sorted first. Where both have a bar for a date the
+ * {@link ConflictPolicy} picks one. The result lists the dates whose bar is
+ * new or different from the cached one, so callers can leave the rest alone.
+ */
+public class SeriesMerger {
+
+	public enum ConflictPolicy {
+		PREFER_CACHED,
+		PREFER_FRESH,
+		/**
+		 * Prefer a real bar over an interpolated one, otherwise the fresh bar
+		 */
+		PREFER_REAL
+	}
+
+	public static class Result {
+		private final List<Bar> merged;
+		private final List<LocalDate> changedDates;
+
+		Result(final List<Bar> merged, final List<LocalDate> changedDates) {
+			this.merged = merged;
+			this.changedDates = changedDates;
+		}
+
+		/**
+		 * @return the merged bars, oldest first
+		 */
+		public List<Bar> getMerged() {
+			return this.merged;
+		}
+
+		/**
+		 * @return dates, oldest first, whose bar is new or differs from the cached one
+		 */
+		public List<LocalDate> getChangedDates() {
+			return Collections.unmodifiableList(this.changedDates);
+		}
+
+		public boolean hasChanges() {
+			return !this.changedDates.isEmpty();
+		}
+
+		public Optional<LocalDate> getFirstChangedDate() {
+			return this.hasChanges() ? Optional.of(this.changedDates.get(0)) : Optional.empty();
+		}
+
+		public Optional<LocalDate> getLastChangedDate() {
+			return this.hasChanges() ? Optional.of(this.changedDates.get(this.changedDates.size() - 1))
+					: Optional.empty();
+		}
+
+		@Override
+		public String toString() {
+			return "Result [bars=" + this.merged.size() + ", changed=" + this.changedDates.size()
+					+ this.getFirstChangedDate().map(date -> ", from=" + date).orElse("")
+					+ this.getLastChangedDate().map(date -> ", to=" + date).orElse("") + "]";
+		}
+	}
+
+	private SeriesMerger() {
+	}
+
+	public static Result merge(final List<Bar> cached, final List<Bar> fresh, final ConflictPolicy policy) {
+		final List<Bar> older = SeriesMerger
+				.lastPerDate(SeriesMerger.oldestFirst(cached == null ? Collections.emptyList() : cached));
+		final List<Bar> newer = SeriesMerger
+				.lastPerDate(SeriesMerger.oldestFirst(fresh == null ? Collections.emptyList() : fresh));
+		final List<Bar> merged = new ArrayList<>(older.size() + newer.size());
+		final List<LocalDate> changed = new ArrayList<>();
+
+		int i = 0;
+		int j = 0;
+		while (i < older.size() || j < newer.size()) {
+			if (j < newer.size() && SeriesMerger.isUnusable(newer.get(j))) {
+				j++;
+				continue;
+			}
+			final LocalDate cachedDate = i < older.size() ? SeriesMerger.getDate(older.get(i)) : null;
+			final LocalDate freshDate = j < newer.size() ? SeriesMerger.getDate(newer.get(j)) : null;
+			final int order = cachedDate == null ? 1 : freshDate == null ? -1 : cachedDate.compareTo(freshDate);
+			if (order < 0) {
+				SeriesMerger.append(merged, older.get(i++));
+			} else if (order > 0) {
+				SeriesMerger.append(merged, newer.get(j));
+				changed.add(freshDate);
+				j++;
+			} else {
+				final Bar cachedBar = older.get(i++);
+				final Bar freshBar = newer.get(j++);
+				if (SeriesMerger.preferFresh(cachedBar, freshBar, policy)) {
+					SeriesMerger.append(merged, freshBar);
+					if (!SeriesMerger.sameValues(cachedBar, freshBar)) {
+						changed.add(freshDate);
+					}
+				} else {
+					SeriesMerger.append(merged, cachedBar);
+				}
+			}
+		}
+		return new Result(merged, SeriesMerger.distinct(changed));
+	}
+
+	/**
+	 * Drop all but the last bar for each date, so a duplicate on one side
+	 * cannot override the bar the policy chose for that date
+	 *
+	 * @param bars oldest first
+	 */
+	private static List<Bar> lastPerDate(final List<Bar> bars) {
+		final List<Bar> unique = new ArrayList<>(bars.size());
+		bars.forEach(bar -> SeriesMerger.append(unique, bar));
+		return unique.size() == bars.size() ? bars : unique;
+	}
+
+	/**
+	 * A later bar for the same date replaces the one before it, as the map
+	 * this replaced did
+	 */
+	private static void append(final List<Bar> merged, final Bar bar) {
+		final int last = merged.size() - 1;
+		if (last >= 0 && SeriesMerger.getDate(merged.get(last)).equals(SeriesMerger.getDate(bar))) {
+			merged.set(last, bar);
+		} else {
+			merged.add(bar);
+		}
+	}
+
+	private static List<LocalDate> distinct(final List<LocalDate> dates) {
+		final List<LocalDate> unique = new ArrayList<>(dates.size());
+		for (final LocalDate date : dates) {
+			if (unique.isEmpty() || !unique.get(unique.size() - 1).equals(date)) {
+				unique.add(date);
+			}
+		}
+		return unique;
+	}
+
+	private static LocalDate getDate(final Bar bar) {
+		return bar.getEndTime().toLocalDate();
+	}
+
+	private static boolean isUnusable(final Bar bar) {
+		return bar.getClosePrice() == null || bar.getClosePrice().doubleValue() == 0;
+	}
+
+	static boolean isInterpolated(final Bar bar) {
+		if (bar instanceof PrimitiveTimeSeries.PrimitiveBar) {
+			return ((PrimitiveTimeSeries.PrimitiveBar) bar).isInterpolated();
+		}
+		if (bar instanceof InterpolatedTimeSeries.InterpolatedBar) {
+			return ((InterpolatedTimeSeries.InterpolatedBar) bar).isInterpolated();
+		}
+		if (bar instanceof Commentable) {
+			final String comment = ((Commentable) bar).getComment();
+			return comment != null && (comment.startsWith(LinearInterpolator.COMMENT)
+					|| comment.startsWith(FlatLineInterpolator.COMMENT));
+		}
+		return false;
+	}
+
+	private static boolean preferFresh(final Bar cached, final Bar fresh, final ConflictPolicy policy) {
+		switch (policy) {
+		case PREFER_CACHED:
+			return false;
+		case PREFER_REAL:
+			return !SeriesMerger.isInterpolated(fresh) || SeriesMerger.isInterpolated(cached);
+		case PREFER_FRESH:
+		default:
+			return true;
+		}
+	}
+
+	private static boolean sameValues(final Bar cached, final Bar fresh) {
+		return SeriesMerger.sameValue(cached.getOpenPrice(), fresh.getOpenPrice())
+				&& SeriesMerger.sameValue(cached.getMaxPrice(), fresh.getMaxPrice())
+				&& SeriesMerger.sameValue(cached.getMinPrice(), fresh.getMinPrice())
+				&& SeriesMerger.sameValue(cached.getClosePrice(), fresh.getClosePrice())
+				&& SeriesMerger.sameValue(cached.getVolume(), fresh.getVolume());
+	}
+
+	private static boolean sameValue(final Num cached, final Num fresh) {
+		if (cached == null || fresh == null) {
+			return cached == fresh;
+		}
+		return Double.compare(cached.doubleValue(), fresh.doubleValue()) == 0;
+	}
+
+	/**
+	 * @return the bars oldest first, without copying if they are in date order
+	 *         already
+	 */
+	static List<Bar> oldestFirst(final List<Bar> bars) {
+		boolean ascending = true;
+		boolean descending = true;
+		for (int i = 1; i < bars.size() && (ascending || descending); i++) {
+			final int order = bars.get(i - 1).getEndTime().compareTo(bars.get(i).getEndTime());
+			ascending &= order <= 0;
+			descending &= order >= 0;
+		}
+		if (ascending) {
+			return bars;
+		}
+		if (descending) {
+			return Lists.reverse(bars);
+		}
+		final List<Bar> sorted = new ArrayList<>(bars);
+		sorted.sort(Comparator.comparing(Bar::getEndTime));
+		return sorted;
+	}
+}
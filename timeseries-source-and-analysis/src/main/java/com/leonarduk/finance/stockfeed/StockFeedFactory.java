@@ -8,19 +8,31 @@ public class StockFeedFactory {
 
     private final DataStore dataStore;
 
+    /**
+     * Shared so that the series cache behind them is too
+     */
+    private final CachedStockFeed cachedStockFeed;
+    private final CachedStockFeed localFileFeed;
+
     public StockFeedFactory(DataStore dataStore) {
+        this(dataStore, new SeriesCache());
+    }
+
+    public StockFeedFactory(DataStore dataStore, SeriesCache seriesCache) {
         this.dataStore = dataStore;
+        this.cachedStockFeed = new CachedStockFeed(dataStore, seriesCache);
+        this.localFileFeed = new CachedStockFeed(new FileBasedDataStore("db"), new SeriesCache());
     }
 
     public StockFeed getDataFeed(final Source source) {
         switch (source) {
             case MANUAL:
                 if (dataStore.isAvailable())
-                    return new CachedStockFeed(dataStore);
+                    return cachedStockFeed;
 
                 // If db not available,  use local files
                 //TODO log
-                return new CachedStockFeed(new FileBasedDataStore("db"));
+                return localFileFeed;
 //			case Google:
 //				return new GoogleFeed();
             case YAHOO:
@@ -31,6 +43,14 @@ public class StockFeedFactory {
         }
     }
 
+    /**
+     * Listen to writes through either of the cached feeds
+     */
+    public void addListener(final StoredSeriesListener listener) {
+        this.cachedStockFeed.addListener(listener);
+        this.localFileFeed.addListener(listener);
+    }
+
     public QuoteFeed getQuoteFeed(final Source yahoo) {
         return new YahooFeed();
     }
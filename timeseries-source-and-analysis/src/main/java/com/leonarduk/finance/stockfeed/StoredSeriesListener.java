@@ -0,0 +1,19 @@
+package com.leonarduk.finance.stockfeed;
+
+import java.util.List;
+
+import org.ta4j.core.Bar;
+
+/**
+ * Told by a {@link CachedStockFeed} each time it writes a series to its store,
+ * so state derived from the series can follow it.
+ */
+public interface StoredSeriesListener {
+
+	/**
+	 * @param history the bars written, oldest first. For a store that merges
+	 *                writes these may be only the new bars.
+	 */
+	void seriesStored(Instrument instrument, List<Bar> history);
+
+}
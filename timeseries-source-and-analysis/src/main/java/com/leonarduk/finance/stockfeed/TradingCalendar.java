@@ -0,0 +1,244 @@
+package com.leonarduk.finance.stockfeed;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.leonarduk.finance.stockfeed.StockFeed.Exchange;
+import com.leonarduk.finance.utils.DateUtils;
+import com.leonarduk.finance.utils.ResourceTools;
+
+/**
+ * The days an exchange is open: weekdays less the holidays in
+ * resources/data/holidays_&lt;Exchange&gt;.csv. An exchange without a file is
+ * open every weekday.
+ * <p>
+ * Trading days are numbered consecutively so that gaps are a subtraction and
+ * stepping over weekends and holidays is a lookup. For the years the holiday
+ * file covers, each year is a bitset of its trading days plus the count before
+ * it, so {@link #getTradingDayCount(long)} is a few popcounts. Outside those
+ * years every weekday counts.
+ */
+public class TradingCalendar {
+	public static final Logger log = LoggerFactory.getLogger(TradingCalendar.class.getName());
+
+	/**
+	 * Every weekday a trading day
+	 */
+	public static final TradingCalendar WEEKDAYS = new TradingCalendar(new ArrayList<>());
+
+	private static final Map<Exchange, TradingCalendar> CALENDARS = new EnumMap<>(Exchange.class);
+
+	private static final int WORDS_PER_YEAR = 6;
+
+	private final int firstYear;
+
+	/**
+	 * Epoch days of 1 January of firstYear and of the year after the last
+	 */
+	private final long startDay;
+
+	private final long endDay;
+
+	/**
+	 * Bit d of year y is set if day d (0 based) of the year is a trading day
+	 */
+	private final long[][] tradingDays;
+
+	/**
+	 * Trading days from startDay up to 1 January of each year, and the total
+	 */
+	private final int[] countBeforeYear;
+
+	/**
+	 * @param holidays weekdays the exchange is closed, in any order
+	 */
+	public TradingCalendar(final Collection<LocalDate> holidays) {
+		if (holidays.isEmpty()) {
+			this.firstYear = 1970;
+			this.startDay = 0;
+			this.endDay = 0;
+			this.tradingDays = new long[0][];
+			this.countBeforeYear = new int[] { 0 };
+			return;
+		}
+		final int first = holidays.stream().mapToInt(LocalDate::getYear).min().getAsInt();
+		final int last = holidays.stream().mapToInt(LocalDate::getYear).max().getAsInt();
+		this.firstYear = first;
+		this.startDay = LocalDate.of(first, 1, 1).toEpochDay();
+		this.endDay = LocalDate.of(last + 1, 1, 1).toEpochDay();
+		this.tradingDays = new long[last - first + 1][WORDS_PER_YEAR];
+		this.countBeforeYear = new int[last - first + 2];
+
+		for (int year = first; year <= last; year++) {
+			final long yearStart = LocalDate.of(year, 1, 1).toEpochDay();
+			final int days = LocalDate.of(year, 1, 1).lengthOfYear();
+			final long[] bits = this.tradingDays[year - first];
+			for (int day = 0; day < days; day++) {
+				if (DateUtils.getWeekdayCount(yearStart + day + 1) != DateUtils.getWeekdayCount(yearStart + day)) {
+					bits[day >>> 6] |= 1L << day;
+				}
+			}
+		}
+		for (final LocalDate holiday : holidays) {
+			this.tradingDays[holiday.getYear() - first][(holiday.getDayOfYear() - 1) >>> 6] &= ~(1L << (holiday
+					.getDayOfYear() - 1));
+		}
+		for (int year = 0; year < this.tradingDays.length; year++) {
+			int count = 0;
+			for (final long word : this.tradingDays[year]) {
+				count += Long.bitCount(word);
+			}
+			this.countBeforeYear[year + 1] = this.countBeforeYear[year] + count;
+		}
+	}
+
+	/**
+	 * @return the calendar for the exchange, loaded once from its holiday file
+	 */
+	public static TradingCalendar of(final Exchange exchange) {
+		if (exchange == null) {
+			return TradingCalendar.WEEKDAYS;
+		}
+		synchronized (TradingCalendar.CALENDARS) {
+			return TradingCalendar.CALENDARS.computeIfAbsent(exchange, TradingCalendar::load);
+		}
+	}
+
+	static String getHolidayFile(final Exchange exchange) {
+		return "resources/data/holidays_" + exchange.name() + ".csv";
+	}
+
+	private static TradingCalendar load(final Exchange exchange) {
+		final String file = TradingCalendar.getHolidayFile(exchange);
+		try (InputStream stream = ResourceTools.getResourceAsInputStream(file)) {
+			if (stream == null) {
+				TradingCalendar.log.info("No " + file + ", treating every weekday as a trading day on " + exchange);
+				return TradingCalendar.WEEKDAYS;
+			}
+		} catch (final IOException e) {
+			TradingCalendar.log.warn("Failed to open " + file + ": " + e.getMessage());
+			return TradingCalendar.WEEKDAYS;
+		}
+		try {
+			final List<LocalDate> holidays = new ArrayList<>();
+			for (final String line : ResourceTools.getResourceAsLines(file)) {
+				final String date = line.split(",", 2)[0].trim();
+				if (!date.isEmpty() && Character.isDigit(date.charAt(0))) {
+					holidays.add(LocalDate.parse(date));
+				}
+			}
+			return new TradingCalendar(holidays);
+		} catch (final IOException | RuntimeException e) {
+			TradingCalendar.log.warn("Failed to read " + file + ": " + e.getMessage());
+			return TradingCalendar.WEEKDAYS;
+		}
+	}
+
+	public boolean isTradingDay(final LocalDate date) {
+		final long epochDay = date.toEpochDay();
+		return this.getTradingDayCount(epochDay + 1) != this.getTradingDayCount(epochDay);
+	}
+
+	/**
+	 * @return the number of trading days before the day, counted from a fixed
+	 *         origin, so that the difference for two days is the trading days
+	 *         between them
+	 */
+	public long getTradingDayCount(final long epochDay) {
+		if (epochDay < this.startDay) {
+			return DateUtils.getWeekdayCount(epochDay) - DateUtils.getWeekdayCount(this.startDay);
+		}
+		if (epochDay >= this.endDay) {
+			return this.countBeforeYear[this.tradingDays.length] + DateUtils.getWeekdayCount(epochDay)
+					- DateUtils.getWeekdayCount(this.endDay);
+		}
+		final LocalDate date = LocalDate.ofEpochDay(epochDay);
+		final int year = date.getYear() - this.firstYear;
+		final int day = date.getDayOfYear() - 1;
+		final long[] bits = this.tradingDays[year];
+		int count = this.countBeforeYear[year];
+		for (int word = 0; word < day >>> 6; word++) {
+			count += Long.bitCount(bits[word]);
+		}
+		return count + Long.bitCount(bits[day >>> 6] & ((1L << day) - 1));
+	}
+
+	/**
+	 * @return the epoch day of the trading day whose
+	 *         {@link #getTradingDayCount(long)} is count
+	 */
+	public long getTradingDayFromCount(final long count) {
+		if (count < 0) {
+			return DateUtils.getWeekdayFromCount(count + DateUtils.getWeekdayCount(this.startDay));
+		}
+		final int total = this.countBeforeYear[this.tradingDays.length];
+		if (count >= total) {
+			return DateUtils.getWeekdayFromCount(count - total + DateUtils.getWeekdayCount(this.endDay));
+		}
+		int year = Arrays.binarySearch(this.countBeforeYear, (int) count);
+		if (year < 0) {
+			year = -year - 2;
+		}
+		// skip years with the same count, which cannot happen with real years
+		while (this.countBeforeYear[year + 1] <= count) {
+			year++;
+		}
+		int remaining = (int) count - this.countBeforeYear[year];
+		final long[] bits = this.tradingDays[year];
+		int word = 0;
+		while (Long.bitCount(bits[word]) <= remaining) {
+			remaining -= Long.bitCount(bits[word]);
+			word++;
+		}
+		long rest = bits[word];
+		for (int i = 0; i < remaining; i++) {
+			rest &= rest - 1;
+		}
+		return LocalDate.of(this.firstYear + year, 1, 1).toEpochDay() + word * 64L + Long.numberOfTrailingZeros(rest);
+	}
+
+	/**
+	 * @return trading days from startDate, inclusive, to endDate, exclusive
+	 */
+	public int getTradingDaysBetween(final LocalDate startDate, final LocalDate endDate) {
+		return (int) (this.getTradingDayCount(endDate.toEpochDay())
+				- this.getTradingDayCount(startDate.toEpochDay()));
+	}
+
+	/**
+	 * @return the last trading day before the date
+	 */
+	public LocalDate getPreviousTradingDay(final LocalDate date) {
+		return LocalDate.ofEpochDay(this.getTradingDayFromCount(this.getTradingDayCount(date.toEpochDay()) - 1));
+	}
+
+	/**
+	 * @return the date if it is a trading day, otherwise the one before
+	 */
+	public LocalDate getLastTradingDay(final LocalDate date) {
+		return this.getPreviousTradingDay(date.plusDays(1));
+	}
+
+	/**
+	 * @return the date if it is a trading day, otherwise the one after
+	 */
+	public LocalDate getNextTradingDay(final LocalDate date) {
+		return LocalDate.ofEpochDay(this.getTradingDayFromCount(this.getTradingDayCount(date.toEpochDay())));
+	}
+
+	@Override
+	public String toString() {
+		return "TradingCalendar [years=" + this.tradingDays.length
+				+ (this.tradingDays.length > 0 ? ", from=" + this.firstYear : "") + "]";
+	}
+}
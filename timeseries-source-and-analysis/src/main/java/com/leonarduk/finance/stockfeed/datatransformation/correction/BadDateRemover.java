@@ -1,23 +1,37 @@
 package com.leonarduk.finance.stockfeed.datatransformation.correction;
 
 import java.time.LocalDate;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import org.ta4j.core.Bar;
 
-import com.leonarduk.finance.utils.TimeseriesUtils;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
 
-public class BadDateRemover implements TimeSeriesCleaner {
+/**
+ * Drops bars dated 1970 or earlier, which are unset dates, or after this year.
+ */
+public class BadDateRemover implements TimeSeriesCleaner, BarCleaner {
+
+	private static final long FIRST_DAY = LocalDate.of(1971, 1, 1).toEpochDay();
+
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
 
 	@Override
 	public List<Bar> clean(final List<Bar> history) {
-		final int thisYear = LocalDate.now().getYear();
-		return TimeseriesUtils.sortQuoteList(
-		        history.stream().filter((q) -> q.getEndTime().getYear() > 1970)
-		                .filter((q) -> q.getEndTime().getYear() <= thisYear)
-		                .collect(Collectors.toCollection(LinkedList::new)));
+		return new CleaningPipeline(this).clean(history);
+	}
+
+	@Override
+	public boolean clean(final CleaningBar bar, final PrimitiveTimeSeries cleaned) {
+		final int epochDay = bar.getEpochDay();
+		if (epochDay < BadDateRemover.FIRST_DAY) {
+			return false;
+		}
+		// Only bars near or past today need the calendar year
+		if (epochDay <= (System.currentTimeMillis() / BadDateRemover.MILLIS_PER_DAY) + 1) {
+			return true;
+		}
+		return bar.getDate().getYear() <= LocalDate.now().getYear();
 	}
 
 }
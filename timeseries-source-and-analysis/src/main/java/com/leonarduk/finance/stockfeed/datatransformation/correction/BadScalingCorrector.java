@@ -1,66 +1,42 @@
 package com.leonarduk.finance.stockfeed.datatransformation.correction;
 
-import java.io.IOException;
-import java.util.Iterator;
 import java.util.List;
 
 import org.ta4j.core.Bar;
-import org.ta4j.core.num.DoubleNum;
-import org.ta4j.core.num.Num;
 
-import com.google.common.collect.Lists;
-import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
 
-public class BadScalingCorrector implements TimeSeriesCleaner {
+/**
+ * Undoes prices quoted in pounds instead of pence or the other way round: a
+ * close more than {@link #SCALE} times above or below the last kept close is
+ * scaled by 100 towards it.
+ */
+public class BadScalingCorrector implements TimeSeriesCleaner, BarCleaner {
 
-	@Override
-	public List<Bar> clean(List<Bar> history) {
-		if (history.isEmpty())
-			return history;
-
-		List<Bar> cleanedSeries = Lists.newArrayList();
+	static final int SCALE = 80;
 
-		Iterator<Bar> iter = history.iterator();
-		Bar previous = iter.next();
-		cleanedSeries.add(previous);
-		while (iter.hasNext()) {
-			Bar current = iter.next();
-			int SCALE = 80;
-			if (current.getClosePrice().dividedBy(DoubleNum.valueOf(SCALE)).isGreaterThan(previous.getClosePrice())) {
-				try {
-					cleanedSeries.add(new ExtendedHistoricalQuote("", current.getEndTime().toLocalDate(),
-							scaleDown(current.getOpenPrice()), scaleDown(current.getMinPrice()),
-							scaleDown(current.getMaxPrice()), scaleDown(current.getClosePrice()), current.getVolume(),
-							"Scaled from " + current.getClosePrice() + " to " + scaleDown(current.getClosePrice())));
-				} catch (IOException e) {
-					cleanedSeries.add(current);
-					e.printStackTrace();
-				}
-			} else if (current.getClosePrice().multipliedBy(DoubleNum.valueOf(SCALE))
-					.isLessThan(previous.getClosePrice())) {
-				try {
-					cleanedSeries.add(new ExtendedHistoricalQuote("", current.getEndTime().toLocalDate(),
-							scaleUp(current.getOpenPrice()), scaleUp(current.getMinPrice()),
-							scaleUp(current.getMaxPrice()), scaleUp(current.getClosePrice()), current.getVolume(),
-							"Scaled from " + current.getClosePrice() + " to " + scaleUp(current.getClosePrice())));
-				} catch (IOException e) {
-					cleanedSeries.add(current);
-					e.printStackTrace();
-				}
-			} else {
-				cleanedSeries.add(current);
-			}
-		}
-
-		return cleanedSeries;
-	}
+	private static final double FACTOR = 100;
 
-	private Num scaleUp(Num orignal) {
-		return orignal.multipliedBy(DoubleNum.valueOf(100));
+	@Override
+	public List<Bar> clean(final List<Bar> history) {
+		return new CleaningPipeline(this).clean(history);
 	}
 
-	public Num scaleDown(Num orignal) {
-		return orignal.dividedBy(DoubleNum.valueOf(100));
+	@Override
+	public boolean clean(final CleaningBar bar, final PrimitiveTimeSeries cleaned) {
+		if (cleaned.getBarCount() == 0) {
+			return true;
+		}
+		final double previous = cleaned.getClose(cleaned.getEndIndex());
+		final double close = bar.getClose();
+		if (close / BadScalingCorrector.SCALE > previous) {
+			bar.scale(1 / BadScalingCorrector.FACTOR,
+					"Scaled from " + close + " to " + (close / BadScalingCorrector.FACTOR));
+		} else if (close * BadScalingCorrector.SCALE < previous) {
+			bar.scale(BadScalingCorrector.FACTOR,
+					"Scaled from " + close + " to " + (close * BadScalingCorrector.FACTOR));
+		}
+		return true;
 	}
 
 }
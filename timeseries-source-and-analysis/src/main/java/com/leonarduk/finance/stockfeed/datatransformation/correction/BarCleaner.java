@@ -0,0 +1,19 @@
+package com.leonarduk.finance.stockfeed.datatransformation.correction;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+/**
+ * One step of a {@link CleaningPipeline}. Each bar is seen once, oldest
+ * first, after the steps before it, so a cleaner can look back at what has
+ * been kept but never ahead. That lets new bars be cleaned as they arrive.
+ */
+public interface BarCleaner {
+
+	/**
+	 * @param bar     the next bar, which may be corrected in place
+	 * @param cleaned the bars kept so far, oldest first
+	 * @return false to drop the bar
+	 */
+	boolean clean(CleaningBar bar, PrimitiveTimeSeries cleaned);
+
+}
@@ -0,0 +1,128 @@
+package com.leonarduk.finance.stockfeed.datatransformation.correction;
+
+import java.time.LocalDate;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+/**
+ * The bar a {@link CleaningPipeline} is working on, read from one row of the
+ * raw series. Cleaners change it in place; a bar nobody changes is copied to
+ * the cleaned series as it is.
+ */
+public final class CleaningBar {
+
+	private PrimitiveTimeSeries source;
+
+	private int index;
+
+	private double open;
+
+	private double high;
+
+	private double low;
+
+	private double close;
+
+	private double adjClose;
+
+	private String comment;
+
+	private boolean corrected;
+
+	void reset(final PrimitiveTimeSeries series, final int i) {
+		this.source = series;
+		this.index = i;
+		this.open = series.getOpen(i);
+		this.high = series.getHigh(i);
+		this.low = series.getLow(i);
+		this.close = series.getClose(i);
+		this.adjClose = series.getAdjClose(i);
+		this.comment = null;
+		this.corrected = false;
+	}
+
+	/**
+	 * Copy the bar, as corrected, onto the end of the series
+	 */
+	void appendTo(final PrimitiveTimeSeries cleaned) {
+		if (!this.corrected) {
+			cleaned.add(this.source, this.index);
+			return;
+		}
+		cleaned.add(this.getEpochDay(), this.open, this.low, this.high, this.close, this.adjClose,
+				this.getVolume(), this.getComment(),
+				(byte) (this.source.getFlags(this.index) | PrimitiveTimeSeries.FLAG_CORRECTED));
+	}
+
+	public int getEpochDay() {
+		return this.source.getEpochDay(this.index);
+	}
+
+	public LocalDate getDate() {
+		return this.source.getDate(this.index);
+	}
+
+	public double getOpen() {
+		return this.open;
+	}
+
+	public double getHigh() {
+		return this.high;
+	}
+
+	public double getLow() {
+		return this.low;
+	}
+
+	public double getClose() {
+		return this.close;
+	}
+
+	public double getAdjClose() {
+		return this.adjClose;
+	}
+
+	public long getVolume() {
+		return this.source.getVolumeAt(this.index);
+	}
+
+	public String getComment() {
+		return this.comment == null ? this.source.getComment(this.index) : this.comment;
+	}
+
+	public boolean isCorrected() {
+		return this.corrected;
+	}
+
+	public boolean isInterpolated() {
+		return this.source.isInterpolated(this.index);
+	}
+
+	/**
+	 * Replace the prices, flagging the bar as corrected
+	 */
+	public void correct(final double openPrice, final double lowPrice, final double highPrice,
+			final double closePrice, final double adjustedClose, final String reason) {
+		this.open = openPrice;
+		this.low = lowPrice;
+		this.high = highPrice;
+		this.close = closePrice;
+		this.adjClose = adjustedClose;
+		this.comment = reason;
+		this.corrected = true;
+	}
+
+	/**
+	 * Multiply every price by the factor, flagging the bar as corrected
+	 */
+	public void scale(final double factor, final String reason) {
+		this.correct(this.open * factor, this.low * factor, this.high * factor, this.close * factor,
+				this.adjClose * factor, reason);
+	}
+
+	@Override
+	public String toString() {
+		return "CleaningBar [date=" + this.getDate() + ", close=" + this.close
+				+ (this.corrected ? ", corrected" : "") + "]";
+	}
+}
@@ -0,0 +1,216 @@
+package com.leonarduk.finance.stockfeed.datatransformation.correction;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.ta4j.core.Bar;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+/**
+ * Runs a chain of {@link BarCleaner}s over a series in one pass. Each raw bar
+ * goes through every cleaner in turn and is then either dropped or appended
+ * to the cleaned series, flagged {@link PrimitiveTimeSeries#FLAG_CORRECTED} if
+ * any cleaner changed it.
+ * <p>
+ * As cleaners only look back, the cleaned series can be extended as new raw
+ * bars arrive. {@link #cleanIncrementally(String, PrimitiveTimeSeries)} keeps
+ * the last result for each key, such as exchange and code, and first date, as
+ * cleaning from a later date can keep different bars. With it goes a
+ * fingerprint of the last {@link #VERIFIED_BARS} raw bars cleaned and, if
+ * those are unchanged in a longer raw series, just the new bars are cleaned.
+ * Bars revised further back are only picked up once the key is
+ * {@link #invalidate(String) invalidated}.
+ */
+public class CleaningPipeline implements TimeSeriesCleaner {
+
+	public static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
+
+	/**
+	 * Raw bars at the end of a cleaned series that must be unchanged to extend
+	 * it, as feeds revise their latest bars
+	 */
+	public static final int VERIFIED_BARS = 5;
+
+	private static final int BYTES_PER_ENTRY = 256;
+
+	private static final char FIRST_DATE_SEPARATOR = '@';
+
+	private final List<BarCleaner> cleaners;
+
+	private final Cache<String, CleanedSeries> cleanedSeries;
+
+	private final LongAdder cleanedBars = new LongAdder();
+
+	public CleaningPipeline(final BarCleaner... cleaners) {
+		this(CleaningPipeline.DEFAULT_MAXIMUM_BYTES, cleaners);
+	}
+
+	public CleaningPipeline(final long maximumBytes, final BarCleaner... cleaners) {
+		this.cleaners = Arrays.asList(cleaners);
+		this.cleanedSeries = CacheBuilder.newBuilder().maximumWeight(maximumBytes)
+				.weigher((String key, CleanedSeries series) -> series.weight()).build();
+	}
+
+	/**
+	 * @return bad dates removed, then bad scaling corrected
+	 */
+	public static CleaningPipeline standard() {
+		return new CleaningPipeline(new BadDateRemover(), new BadScalingCorrector());
+	}
+
+	@Override
+	public List<Bar> clean(final List<Bar> history) {
+		return this.clean(PrimitiveTimeSeries.from("", history)).toBarList();
+	}
+
+	public PrimitiveTimeSeries clean(final PrimitiveTimeSeries raw) {
+		final PrimitiveTimeSeries cleaned = new PrimitiveTimeSeries(raw.getName(), raw.getBarCount());
+		this.clean(raw, 0, cleaned);
+		return cleaned;
+	}
+
+	/**
+	 * Clean the raw bars from index from onwards, appending those kept to
+	 * cleaned.
+	 *
+	 * @return the number of bars dropped
+	 */
+	public int clean(final PrimitiveTimeSeries raw, final int from, final PrimitiveTimeSeries cleaned) {
+		final CleaningBar bar = new CleaningBar();
+		int dropped = 0;
+		for (int i = from; i < raw.getBarCount(); i++) {
+			bar.reset(raw, i);
+			if (this.accept(bar, cleaned)) {
+				bar.appendTo(cleaned);
+			} else {
+				dropped++;
+			}
+		}
+		this.cleanedBars.add(Math.max(raw.getBarCount() - from, 0));
+		return dropped;
+	}
+
+	private boolean accept(final CleaningBar bar, final PrimitiveTimeSeries cleaned) {
+		for (final BarCleaner cleaner : this.cleaners) {
+			if (!cleaner.clean(bar, cleaned)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Clean the series, starting from the last result for the key and first
+	 * date if the last raw bars cleaned then are unchanged in this series.
+	 *
+	 * @param key identifies the instrument, for instance by exchange and code
+	 * @return a copy the caller is free to keep
+	 */
+	public PrimitiveTimeSeries cleanIncrementally(final String key, final PrimitiveTimeSeries raw) {
+		final String windowKey = key + CleaningPipeline.FIRST_DATE_SEPARATOR
+				+ (raw.getBarCount() == 0 ? "" : String.valueOf(raw.getEpochDay(0)));
+		final CleanedSeries previous = this.cleanedSeries.getIfPresent(windowKey);
+		if (previous != null) {
+			final PrimitiveTimeSeries extended = previous.extend(this, raw);
+			if (extended != null) {
+				// Put again so the new size is weighed
+				this.cleanedSeries.put(windowKey, previous);
+				return extended;
+			}
+		}
+		final CleanedSeries series = new CleanedSeries(raw.getName());
+		final PrimitiveTimeSeries result = series.extend(this, raw);
+		this.cleanedSeries.put(windowKey, series);
+		return result;
+	}
+
+	/**
+	 * @return a hash of the dates, prices and volumes of the bars from index
+	 *         from up to, but not including, to
+	 */
+	static long fingerprint(final PrimitiveTimeSeries raw, final int from, final int to) {
+		long fingerprint = to - from;
+		for (int i = from; i < to; i++) {
+			fingerprint = (31 * fingerprint) + raw.getEpochDay(i);
+			fingerprint = (31 * fingerprint) + Double.doubleToLongBits(raw.getOpen(i));
+			fingerprint = (31 * fingerprint) + Double.doubleToLongBits(raw.getHigh(i));
+			fingerprint = (31 * fingerprint) + Double.doubleToLongBits(raw.getLow(i));
+			fingerprint = (31 * fingerprint) + Double.doubleToLongBits(raw.getClose(i));
+			fingerprint = (31 * fingerprint) + raw.getVolumeAt(i);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * @return raw bars run through the cleaners since this pipeline was created
+	 */
+	public long getCleanedBarCount() {
+		return this.cleanedBars.sum();
+	}
+
+	/**
+	 * Forget the results for the key, whatever date they start from
+	 */
+	public void invalidate(final String key) {
+		final String prefix = key + CleaningPipeline.FIRST_DATE_SEPARATOR;
+		this.cleanedSeries.asMap().keySet().removeIf(windowKey -> windowKey.startsWith(prefix));
+	}
+
+	@Override
+	public String toString() {
+		return "CleaningPipeline [cleaners=" + this.cleaners + ", symbols=" + this.cleanedSeries.size() + "]";
+	}
+
+	private static final class CleanedSeries {
+		private final PrimitiveTimeSeries cleaned;
+
+		private int rawCount;
+
+		private long rawFingerprint;
+
+		private CleanedSeries(final String symbol) {
+			this.cleaned = new PrimitiveTimeSeries(symbol);
+		}
+
+		private int weight() {
+			return CleaningPipeline.BYTES_PER_ENTRY + this.cleaned.getBarCount() * PrimitiveTimeSeries.BYTES_PER_BAR;
+		}
+
+		/**
+		 * Only the last few raw bars are compared, so the check costs the same
+		 * however long the series
+		 */
+		private boolean isExtendedBy(final PrimitiveTimeSeries raw) {
+			if (this.rawCount == 0) {
+				return this.cleaned.getBarCount() == 0;
+			}
+			return (raw.getBarCount() >= this.rawCount)
+					&& (CleanedSeries.fingerprintEnd(raw, this.rawCount) == this.rawFingerprint);
+		}
+
+		private static long fingerprintEnd(final PrimitiveTimeSeries raw, final int count) {
+			return CleaningPipeline.fingerprint(raw, Math.max(0, count - CleaningPipeline.VERIFIED_BARS), count);
+		}
+
+		/**
+		 * @return the cleaned series, or null if the raw series is not an
+		 *         extension of the one cleaned so far
+		 */
+		private synchronized PrimitiveTimeSeries extend(final CleaningPipeline pipeline,
+				final PrimitiveTimeSeries raw) {
+			if (!this.isExtendedBy(raw)) {
+				return null;
+			}
+			if (raw.getBarCount() > this.rawCount) {
+				pipeline.clean(raw, this.rawCount, this.cleaned);
+				this.rawCount = raw.getBarCount();
+				this.rawFingerprint = CleanedSeries.fingerprintEnd(raw, this.rawCount);
+			}
+			return (PrimitiveTimeSeries) this.cleaned.getSubSeries(0, this.cleaned.getBarCount());
+		}
+	}
+}
@@ -2,23 +2,61 @@ package com.leonarduk.finance.stockfeed.datatransformation.interpolation;
 
 import java.io.IOException;
 import java.time.LocalDate;
-import java.util.Iterator;
 import java.util.List;
 
 import org.ta4j.core.Bar;
 import org.ta4j.core.TimeSeries;
 
-import com.google.inject.internal.util.Lists;
-import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuoteTimeSeries;
-import com.leonarduk.finance.utils.DateUtils;
+import com.leonarduk.finance.stockfeed.TradingCalendar;
+import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
 import com.leonarduk.finance.utils.TimeseriesUtils;
 
+/**
+ * Fills the trading days missing between bars in one pass over a
+ * {@link PrimitiveTimeSeries}. The trading days in each gap are counted
+ * arithmetically with the {@link TradingCalendar}, weekdays unless one is
+ * given, the output is sized up front and each synthetic bar is written
+ * straight into its arrays, marked with
+ * {@link PrimitiveTimeSeries#FLAG_INTERPOLATED} and a fixed comment.
+ * Subclasses decide the prices through {@link #fill(double, double, double)}.
+ */
 public abstract class AbstractLineInterpolator implements TimeSeriesInterpolator {
 
+	private final TradingCalendar calendar;
+
+	protected AbstractLineInterpolator() {
+		this(TradingCalendar.WEEKDAYS);
+	}
+
+	protected AbstractLineInterpolator(final TradingCalendar calendar) {
+		this.calendar = calendar;
+	}
+
+	public TradingCalendar getCalendar() {
+		return this.calendar;
+	}
+
 	protected abstract Bar calculateFutureValue(Bar lastQuote, LocalDate toLocalDate);
 
 	protected abstract Bar calculatePastValue(final Bar firstQuote, final LocalDate fromDate) throws IOException;
 
+	/**
+	 * @param fraction how far the synthetic bar is from the bar before the gap
+	 *                 to the one after, in trading days, strictly between 0 and 1
+	 * @return the price for a synthetic bar
+	 */
+	protected abstract double fill(double before, double after, double fraction);
+
+	/**
+	 * @return the comment given to every synthetic bar
+	 */
+	protected abstract String getSyntheticComment();
+
+	/**
+	 * Add a bar for fromDate before the first one, if the series starts later.
+	 * The weekdays in between are left for {@link #interpolate(List)}.
+	 */
 	public List<Bar> extendToFromDate(final List<Bar> series, final LocalDate fromDate) throws IOException {
 		if (series.isEmpty()) {
 			return series;
@@ -27,12 +65,15 @@ public abstract class AbstractLineInterpolator implements TimeSeriesInterpolator
 		final LocalDate firstDateInSeries = firstQuote.getEndTime().toLocalDate();
 		if (firstDateInSeries.isAfter(fromDate)) {
 			series.add(this.calculatePastValue(firstQuote, fromDate));
-			interpolateRange(series, fromDate, firstDateInSeries);
 		}
 
 		return series;
 	}
 
+	/**
+	 * Add a bar for toLocalDate after the last one, if the series ends earlier.
+	 * The weekdays in between are left for {@link #interpolate(List)}.
+	 */
 	public List<Bar> extendToToDate(final List<Bar> series, final LocalDate toLocalDate) throws IOException {
 		if (series.isEmpty()) {
 			return series;
@@ -41,8 +82,6 @@ public abstract class AbstractLineInterpolator implements TimeSeriesInterpolator
 		final LocalDate lastDateInSeries = lastQuote.getEndTime().toLocalDate();
 		if (lastDateInSeries.isBefore(toLocalDate)) {
 			series.add(this.calculateFutureValue(lastQuote, toLocalDate));
-			interpolateRange(series, lastDateInSeries, toLocalDate);
-
 		}
 
 		return series;
@@ -50,9 +89,11 @@ public abstract class AbstractLineInterpolator implements TimeSeriesInterpolator
 
 	@Override
 	public List<Bar> interpolate(final List<Bar> series) throws IOException {
-		ExtendedHistoricalQuoteTimeSeries timeseries = new ExtendedHistoricalQuoteTimeSeries(series);
-		return ((ExtendedHistoricalQuoteTimeSeries) interpolate(timeseries)).getSeries();
-
+		if (series.isEmpty()) {
+			return series;
+		}
+		return this.interpolate(PrimitiveTimeSeries.from(AbstractLineInterpolator.getSymbol(series.get(0)), series))
+				.toBarList();
 	}
 
 	@Override
@@ -60,46 +101,65 @@ public abstract class AbstractLineInterpolator implements TimeSeriesInterpolator
 		if (timeseries.getEndIndex() < 0) {
 			return timeseries;
 		}
-
-		List<Bar> series = timeseries.getBarData();
-		TimeseriesUtils.sortQuoteList(series);
-
-		final LocalDate oldestDate = TimeseriesUtils.getOldestQuote(series).getEndTime().toLocalDate();
-		final LocalDate mostRecentDate = TimeseriesUtils.getMostRecentQuote(series).getEndTime().toLocalDate();
-
-		return new ExtendedHistoricalQuoteTimeSeries(interpolateRange(series, oldestDate, mostRecentDate));
+		if (timeseries instanceof PrimitiveTimeSeries) {
+			return this.interpolate((PrimitiveTimeSeries) timeseries);
+		}
+		return this.interpolate(PrimitiveTimeSeries.from(timeseries.getName(), timeseries.getBarData()));
 	}
 
-	public List<Bar> interpolateRange(List<Bar> series, final LocalDate oldestDate, final LocalDate mostRecentDate) {
-		LocalDate currentDate = oldestDate;
-
-		final Iterator<LocalDate> dateIter = DateUtils.getLocalDateIterator(oldestDate, mostRecentDate);
-		final Iterator<Bar> seriesIter = series.iterator();
-		Bar currentQuote = seriesIter.next();
-
-		List<Bar> newseries = Lists.newArrayList();
-		// until the end
-		while (currentDate.isBefore(mostRecentDate) && seriesIter.hasNext()) {
-			final Bar nextQuote = seriesIter.next();
-			currentDate = dateIter.next();
-
-			// Mon , Tue, Fri, Tues
-			// until we match this date
-			while (nextQuote.getEndTime().toLocalDate().isAfter(currentDate)) {
-				if (nextQuote.getEndTime().isAfter(currentQuote.getEndTime())) {
-					newseries.add(this.createSyntheticBar(currentQuote, currentDate, nextQuote));
-				}
-				currentDate = dateIter.next();
+	/**
+	 * @return a new series with a bar for every trading day from the first bar
+	 *         to the last
+	 */
+	public PrimitiveTimeSeries interpolate(final PrimitiveTimeSeries series) {
+		final int bars = series.getBarCount();
+		if (bars == 0) {
+			return series;
+		}
+		final long firstCount = this.calendar.getTradingDayCount(series.getEpochDay(0));
+		final long lastCount = this.calendar.getTradingDayCount(series.getEpochDay(bars - 1));
+		final PrimitiveTimeSeries filled = new PrimitiveTimeSeries(series.getName(),
+				(int) (lastCount - firstCount) + bars);
+		final String comment = this.getSyntheticComment();
+
+		filled.add(series, 0);
+		for (int i = 1; i < bars; i++) {
+			// trading days strictly between the two bars
+			final long gapStart = this.calendar.getTradingDayCount(series.getEpochDay(i - 1) + 1L);
+			final int gap = (int) (this.calendar.getTradingDayCount(series.getEpochDay(i)) - gapStart);
+			for (int k = 0; k < gap; k++) {
+				final double fraction = (k + 1) / (double) (gap + 1);
+				final double open = this.fill(series.getOpen(i - 1), series.getOpen(i), fraction);
+				final double close = this.fill(series.getClose(i - 1), series.getClose(i), fraction);
+				final double adjClose = this.fill(series.getAdjClose(i - 1), series.getAdjClose(i), fraction);
+				filled.add((int) this.calendar.getTradingDayFromCount(gapStart + k), open, Math.min(open, close),
+						Math.max(open, close), close, adjClose, 0, comment, PrimitiveTimeSeries.FLAG_INTERPOLATED);
 			}
-
-			// matched next one
-			currentQuote = nextQuote;
-			newseries.add(currentQuote);
+			filled.add(series, i);
 		}
-		return newseries;
+		return filled;
 	}
 
-	public abstract Bar createSyntheticQuote(Bar currentQuote, LocalDate currentDate, Bar nextQuote) throws IOException;
+	/**
+	 * As {@link #interpolate(PrimitiveTimeSeries)}, extended flat to fromDate and
+	 * toDate and cut to them, but computing each synthetic bar only when it is
+	 * read
+	 *
+	 * @param fromDate first date, or null for the first bar
+	 * @param toDate   last date, or null for the last bar
+	 */
+	public InterpolatedTimeSeries interpolateLazily(final PrimitiveTimeSeries series, final LocalDate fromDate,
+			final LocalDate toDate) {
+		return new InterpolatedTimeSeries(series, this, fromDate, toDate);
+	}
 
-	public abstract Bar createSyntheticBar(Bar currentQuote, LocalDate currentDate, Bar nextQuote);
+	private static String getSymbol(final Bar bar) {
+		if (bar instanceof PrimitiveTimeSeries.PrimitiveBar) {
+			return ((PrimitiveTimeSeries.PrimitiveBar) bar).getSymbol();
+		}
+		if (bar instanceof ExtendedHistoricalQuote) {
+			return ((ExtendedHistoricalQuote) bar).getSymbol();
+		}
+		return "";
+	}
 }
@@ -6,11 +6,25 @@ import java.time.LocalDate;
 
 import org.ta4j.core.Bar;
 
+import com.leonarduk.finance.stockfeed.TradingCalendar;
 import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
 import com.leonarduk.finance.utils.TimeseriesUtils;
 
 public class FlatLineInterpolator extends AbstractLineInterpolator {
 
+	/**
+	 * Comment on every synthetic bar
+	 */
+	public static final String COMMENT = "Copied";
+
+	public FlatLineInterpolator() {
+		super();
+	}
+
+	public FlatLineInterpolator(final TradingCalendar calendar) {
+		super(calendar);
+	}
+
 	@Override
 	protected Bar calculateFutureValue(final Bar lastQuote, final LocalDate today) {
 		return new ExtendedHistoricalQuote(lastQuote, today, "Copied from " + lastQuote.getEndTime().toLocalDate());
@@ -25,19 +39,13 @@ public class FlatLineInterpolator extends AbstractLineInterpolator {
 	}
 
 	@Override
-	public Bar createSyntheticQuote(final Bar currentQuote, final LocalDate currentDate, final Bar nextQuote)
-			throws IOException {
-		return TimeseriesUtils.createSyntheticQuote(currentQuote, currentDate,
-				BigDecimal.valueOf(currentQuote.getClosePrice().doubleValue()),
-				BigDecimal.valueOf(currentQuote.getOpenPrice().doubleValue()),
-				"Copied from " + currentQuote.getEndTime().toLocalDate());
+	protected double fill(final double before, final double after, final double fraction) {
+		return before;
 	}
 
 	@Override
-	public Bar createSyntheticBar(final Bar currentQuote, final LocalDate currentDate, final Bar nextQuote) {
-		return TimeseriesUtils.createSyntheticBar(currentDate, currentQuote.getClosePrice().doubleValue(),
-				currentQuote.getOpenPrice().doubleValue(), "Copied from " + currentQuote.getEndTime().toLocalDate());
-
+	protected String getSyntheticComment() {
+		return FlatLineInterpolator.COMMENT;
 	}
 
 }
@@ -0,0 +1,552 @@
+package com.leonarduk.finance.stockfeed.datatransformation.interpolation;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
+
+import org.ta4j.core.Bar;
+import org.ta4j.core.TimeSeries;
+import org.ta4j.core.num.DoubleNum;
+import org.ta4j.core.num.Num;
+
+import com.leonarduk.finance.stockfeed.TradingCalendar;
+import com.leonarduk.finance.stockfeed.feed.Commentable;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+/**
+ * A read-only view of a sparse {@link PrimitiveTimeSeries} with a bar for
+ * every trading day, by the interpolator's calendar, from fromDate to toDate.
+ * Only the raw bars are held, with their positions in the view; a synthetic
+ * bar is worked out from its neighbours, through the interpolator's fill, when
+ * it is read. Days before the first raw bar or after the last copy it, as
+ * {@link FlatLineInterpolator} would.
+ * <p>
+ * Raw bars just outside the range are still used as neighbours, so the bars
+ * are the same as interpolating the whole series and cutting it to the range.
+ * Building the view costs a binary search and a pass over the raw bars in the
+ * range; reading bar i costs a binary search over them. Callers reading every
+ * bar repeatedly should use {@link #toPrimitiveTimeSeries()}.
+ */
+public class InterpolatedTimeSeries implements TimeSeries {
+
+	private static final long serialVersionUID = -6043530918627180913L;
+
+	private final PrimitiveTimeSeries raw;
+
+	private final AbstractLineInterpolator interpolator;
+
+	private final TradingCalendar calendar;
+
+	/**
+	 * Raw index of the first raw bar in the range
+	 */
+	private final int firstRaw;
+
+	/**
+	 * Position in the view of each raw bar in the range
+	 */
+	private final int[] positions;
+
+	/**
+	 * Trading days before the start of the view, as the calendar numbers them
+	 */
+	private final long startCount;
+
+	private final int size;
+
+	private final IntToDoubleFunction opens;
+
+	private final IntToDoubleFunction closes;
+
+	private final IntToDoubleFunction adjCloses;
+
+	/**
+	 * @param fromDate first date of the view, or null for the first raw bar
+	 * @param toDate   last date of the view, or null for the last raw bar
+	 */
+	public InterpolatedTimeSeries(final PrimitiveTimeSeries raw, final AbstractLineInterpolator interpolator,
+			final LocalDate fromDate, final LocalDate toDate) {
+		this.raw = raw;
+		this.interpolator = interpolator;
+		this.calendar = interpolator.getCalendar();
+		this.opens = raw::getOpen;
+		this.closes = raw::getClose;
+		this.adjCloses = raw::getAdjClose;
+		if (raw.getBarCount() == 0) {
+			this.firstRaw = 0;
+			this.positions = new int[0];
+			this.startCount = 0;
+			this.size = 0;
+			return;
+		}
+		final long startDay = fromDate == null ? raw.getEpochDay(0) : fromDate.toEpochDay();
+		final long endDay = toDate == null ? raw.getEpochDay(raw.getEndIndex()) : toDate.toEpochDay();
+		final int from = fromDate == null ? 0 : raw.indexOf(fromDate);
+		final int to = toDate == null ? raw.getEndIndex() : raw.indexOf(toDate);
+		this.firstRaw = from >= 0 ? from : -from - 1;
+		final int lastRaw = to >= 0 ? to : -to - 2;
+		this.startCount = this.calendar.getTradingDayCount(startDay);
+
+		this.positions = new int[Math.max(lastRaw - this.firstRaw + 1, 0)];
+		int closedDayBars = 0;
+		for (int j = 0; j < this.positions.length; j++) {
+			final int epochDay = raw.getEpochDay(this.firstRaw + j);
+			final long count = this.calendar.getTradingDayCount(epochDay);
+			this.positions[j] = (int) (count - this.startCount) + closedDayBars;
+			if (this.calendar.getTradingDayCount(epochDay + 1L) == count) {
+				closedDayBars++;
+			}
+		}
+		this.size = endDay < startDay ? 0
+				: (int) (this.calendar.getTradingDayCount(endDay + 1) - this.startCount) + closedDayBars;
+	}
+
+	/**
+	 * @return position in {@link #positions} of the raw bar at i, or
+	 *         -(insertion point) - 1 if i is synthetic
+	 */
+	private int find(final int i) {
+		this.checkIndex(i);
+		return Arrays.binarySearch(this.positions, i);
+	}
+
+	private double price(final int i, final IntToDoubleFunction column) {
+		final int found = this.find(i);
+		if (found >= 0) {
+			return column.applyAsDouble(this.firstRaw + found);
+		}
+		final int before = this.firstRaw - found - 2;
+		final int after = before + 1;
+		if (before < 0) {
+			return column.applyAsDouble(after);
+		}
+		if (after >= this.raw.getBarCount()) {
+			return column.applyAsDouble(before);
+		}
+		final long gapStart = this.calendar.getTradingDayCount(this.raw.getEpochDay(before) + 1L);
+		final long gap = this.calendar.getTradingDayCount(this.raw.getEpochDay(after)) - gapStart;
+		final long step = this.calendar.getTradingDayCount(this.getEpochDay(i)) - gapStart;
+		return this.interpolator.fill(column.applyAsDouble(before), column.applyAsDouble(after),
+				(step + 1) / (double) (gap + 1));
+	}
+
+	public int getEpochDay(final int i) {
+		final int found = this.find(i);
+		if (found >= 0) {
+			return this.raw.getEpochDay(this.firstRaw + found);
+		}
+		final int insertion = -found - 1;
+		if (insertion == 0) {
+			return (int) this.calendar.getTradingDayFromCount(this.startCount + i);
+		}
+		final int previous = this.positions[insertion - 1];
+		final long previousDay = this.raw.getEpochDay(this.firstRaw + insertion - 1);
+		return (int) this.calendar
+				.getTradingDayFromCount(this.calendar.getTradingDayCount(previousDay + 1) + (i - previous - 1));
+	}
+
+	public LocalDate getDate(final int i) {
+		return LocalDate.ofEpochDay(this.getEpochDay(i));
+	}
+
+	/**
+	 * @return index of the bar for the date, or -(insertion point) - 1 if there
+	 *         is none
+	 */
+	public int indexOf(final LocalDate date) {
+		int low = 0;
+		int high = this.size - 1;
+		final long epochDay = date.toEpochDay();
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int midDay = this.getEpochDay(mid);
+			if (midDay < epochDay) {
+				low = mid + 1;
+			} else if (midDay > epochDay) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	public double getOpen(final int i) {
+		return this.price(i, this.opens);
+	}
+
+	public double getClose(final int i) {
+		return this.price(i, this.closes);
+	}
+
+	public double getAdjClose(final int i) {
+		return this.price(i, this.adjCloses);
+	}
+
+	public double getHigh(final int i) {
+		final int found = this.find(i);
+		if (found >= 0) {
+			return this.raw.getHigh(this.firstRaw + found);
+		}
+		return Math.max(this.getOpen(i), this.getClose(i));
+	}
+
+	public double getLow(final int i) {
+		final int found = this.find(i);
+		if (found >= 0) {
+			return this.raw.getLow(this.firstRaw + found);
+		}
+		return Math.min(this.getOpen(i), this.getClose(i));
+	}
+
+	public long getVolumeAt(final int i) {
+		final int found = this.find(i);
+		return found >= 0 ? this.raw.getVolumeAt(this.firstRaw + found) : 0;
+	}
+
+	public String getComment(final int i) {
+		final int found = this.find(i);
+		if (found >= 0) {
+			return this.raw.getComment(this.firstRaw + found);
+		}
+		final int before = this.firstRaw - found - 2;
+		if (before < 0 || before + 1 >= this.raw.getBarCount()) {
+			return FlatLineInterpolator.COMMENT;
+		}
+		return this.interpolator.getSyntheticComment();
+	}
+
+	public boolean isInterpolated(final int i) {
+		final int found = this.find(i);
+		return found < 0 || this.raw.isInterpolated(this.firstRaw + found);
+	}
+
+	private void checkIndex(final int i) {
+		if (i < 0 || i >= this.size) {
+			throw new IndexOutOfBoundsException("Index " + i + ", size " + this.size);
+		}
+	}
+
+	/**
+	 * @return every bar of the view, computed once into arrays
+	 */
+	public PrimitiveTimeSeries toPrimitiveTimeSeries() {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries(this.raw.getName(), this.size);
+		for (int i = 0; i < this.size; i++) {
+			final int found = this.find(i);
+			if (found >= 0) {
+				series.add(this.raw, this.firstRaw + found);
+			} else {
+				series.add(this.getEpochDay(i), this.getOpen(i), this.getLow(i), this.getHigh(i), this.getClose(i),
+						this.getAdjClose(i), 0, this.getComment(i), PrimitiveTimeSeries.FLAG_INTERPOLATED);
+			}
+		}
+		return series;
+	}
+
+	@Override
+	public String getName() {
+		return this.raw.getName();
+	}
+
+	@Override
+	public Bar getBar(final int i) {
+		this.checkIndex(i);
+		return new InterpolatedBar(this, i);
+	}
+
+	@Override
+	public int getBarCount() {
+		return this.size;
+	}
+
+	/**
+	 * @return a random access list of the bars. Bars are only made as they are
+	 *         read; changing the list, including sorting it, first copies it so
+	 *         the view is unaffected.
+	 */
+	@Override
+	public List<Bar> getBarData() {
+		return new BarList();
+	}
+
+	@Override
+	public int getBeginIndex() {
+		return this.size == 0 ? -1 : 0;
+	}
+
+	@Override
+	public int getEndIndex() {
+		return this.size - 1;
+	}
+
+	@Override
+	public void setMaximumBarCount(final int maximumBarCount) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getMaximumBarCount() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public int getRemovedBarsCount() {
+		return 0;
+	}
+
+	@Override
+	public void addBar(final Bar bar, final boolean replace) {
+		throw new UnsupportedOperationException("Interpolated series are read-only");
+	}
+
+	@Override
+	public void addBar(final Duration timePeriod, final ZonedDateTime endTime) {
+		throw new UnsupportedOperationException("Interpolated series are read-only");
+	}
+
+	@Override
+	public void addBar(final ZonedDateTime endTime, final Num openPrice, final Num highPrice, final Num lowPrice,
+			final Num closePrice, final Num volume, final Num amount) {
+		throw new UnsupportedOperationException("Interpolated series are read-only");
+	}
+
+	@Override
+	public void addBar(final Duration timePeriod, final ZonedDateTime endTime, final Num openPrice,
+			final Num highPrice, final Num lowPrice, final Num closePrice, final Num volume) {
+		throw new UnsupportedOperationException("Interpolated series are read-only");
+	}
+
+	@Override
+	public void addBar(final Duration timePeriod, final ZonedDateTime endTime, final Num openPrice,
+			final Num highPrice, final Num lowPrice, final Num closePrice, final Num volume, final Num amount) {
+		throw new UnsupportedOperationException("Interpolated series are read-only");
+	}
+
+	@Override
+	public void addTrade(final Num tradeVolume, final Num tradePrice) {
+		throw new UnsupportedOperationException("Interpolated series are read-only");
+	}
+
+	@Override
+	public void addPrice(final Num price) {
+		throw new UnsupportedOperationException("Interpolated series are read-only");
+	}
+
+	/**
+	 * @return a copy of the bars from startIndex, inclusive, to endIndex,
+	 *         exclusive
+	 */
+	@Override
+	public TimeSeries getSubSeries(final int startIndex, final int endIndex) {
+		final int from = Math.max(startIndex, 0);
+		final int to = Math.min(endIndex, this.size);
+		final PrimitiveTimeSeries sub = new PrimitiveTimeSeries(this.raw.getName(), Math.max(to - from, 1));
+		for (int i = from; i < to; i++) {
+			sub.add(this.getEpochDay(i), this.getOpen(i), this.getLow(i), this.getHigh(i), this.getClose(i),
+					this.getAdjClose(i), this.getVolumeAt(i), this.getComment(i),
+					this.isInterpolated(i) ? PrimitiveTimeSeries.FLAG_INTERPOLATED : 0);
+		}
+		return sub;
+	}
+
+	@Override
+	public Num numOf(final Number number) {
+		return DoubleNum.valueOf(number);
+	}
+
+	@Override
+	public Function<Number, Num> function() {
+		return DoubleNum::valueOf;
+	}
+
+	@Override
+	public String toString() {
+		return "InterpolatedTimeSeries [name=" + this.raw.getName() + ", bars=" + this.size + ", raw="
+				+ this.positions.length
+				+ (this.size > 0 ? ", from=" + this.getDate(0) + ", to=" + this.getDate(this.size - 1) : "") + "]";
+	}
+
+	/**
+	 * Reads through to the view until it is changed, then works on a copy
+	 */
+	private final class BarList extends AbstractList<Bar> implements RandomAccess {
+
+		private List<Bar> copy;
+
+		private List<Bar> copy() {
+			if (this.copy == null) {
+				this.copy = new ArrayList<>(this);
+			}
+			return this.copy;
+		}
+
+		@Override
+		public Bar get(final int index) {
+			return this.copy == null ? InterpolatedTimeSeries.this.getBar(index) : this.copy.get(index);
+		}
+
+		@Override
+		public int size() {
+			return this.copy == null ? InterpolatedTimeSeries.this.size : this.copy.size();
+		}
+
+		@Override
+		public Bar set(final int index, final Bar element) {
+			return this.copy().set(index, element);
+		}
+
+		@Override
+		public void add(final int index, final Bar element) {
+			this.modCount++;
+			this.copy().add(index, element);
+		}
+
+		@Override
+		public Bar remove(final int index) {
+			this.modCount++;
+			return this.copy().remove(index);
+		}
+
+		@Override
+		public void sort(final Comparator<? super Bar> comparator) {
+			this.modCount++;
+			this.copy().sort(comparator);
+		}
+	}
+
+	/**
+	 * A view onto one bar of the series, computed as it is read
+	 */
+	public static final class InterpolatedBar implements Bar, Commentable {
+
+		private static final long serialVersionUID = 2877035766102960046L;
+
+		private final InterpolatedTimeSeries series;
+
+		private final int index;
+
+		private InterpolatedBar(final InterpolatedTimeSeries series, final int index) {
+			this.series = series;
+			this.index = index;
+		}
+
+		public String getSymbol() {
+			return this.series.getName();
+		}
+
+		public LocalDate getDate() {
+			return this.series.getDate(this.index);
+		}
+
+		public double getAdjClose() {
+			return this.series.getAdjClose(this.index);
+		}
+
+		public boolean isInterpolated() {
+			return this.series.isInterpolated(this.index);
+		}
+
+		@Override
+		public String getComment() {
+			return this.series.getComment(this.index);
+		}
+
+		@Override
+		public Num getOpenPrice() {
+			return DoubleNum.valueOf(this.series.getOpen(this.index));
+		}
+
+		@Override
+		public Num getMinPrice() {
+			return DoubleNum.valueOf(this.series.getLow(this.index));
+		}
+
+		@Override
+		public Num getMaxPrice() {
+			return DoubleNum.valueOf(this.series.getHigh(this.index));
+		}
+
+		@Override
+		public Num getClosePrice() {
+			return DoubleNum.valueOf(this.series.getClose(this.index));
+		}
+
+		@Override
+		public Num getVolume() {
+			return DoubleNum.valueOf(this.series.getVolumeAt(this.index));
+		}
+
+		/**
+		 * Not recorded, so zero as for a ta4j BaseBar built without it
+		 */
+		@Override
+		public Num getAmount() {
+			return DoubleNum.valueOf(0);
+		}
+
+		/**
+		 * Not recorded, so zero as for a ta4j BaseBar built without it
+		 */
+		@Override
+		public int getTrades() {
+			return 0;
+		}
+
+		@Override
+		public Duration getTimePeriod() {
+			return Duration.ofDays(1);
+		}
+
+		@Override
+		public ZonedDateTime getBeginTime() {
+			return this.getEndTime().minusDays(1);
+		}
+
+		@Override
+		public ZonedDateTime getEndTime() {
+			return this.getDate().atStartOfDay(ZoneId.systemDefault());
+		}
+
+		@Override
+		public void addTrade(final Num tradeVolume, final Num tradePrice) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void addPrice(final Num price) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (!(other instanceof InterpolatedBar)) {
+				return false;
+			}
+			final InterpolatedBar that = (InterpolatedBar) other;
+			return this.series == that.series && this.index == that.index;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this.series) * 31 + this.index;
+		}
+
+		@Override
+		public String toString() {
+			return "InterpolatedBar [symbol=" + this.getSymbol() + ", date=" + this.getDate() + ", open="
+					+ this.series.getOpen(this.index) + ", low=" + this.series.getLow(this.index) + ", high="
+					+ this.series.getHigh(this.index) + ", close=" + this.series.getClose(this.index) + ", comment="
+					+ this.getComment() + "]";
+		}
+	}
+}
@@ -2,6 +2,8 @@ package com.leonarduk.finance.stockfeed.feed;
 
 import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -13,6 +15,19 @@ import org.ta4j.core.num.Num;
 
 import com.google.inject.internal.util.Lists;
 
+/**
+ * Adapts a list of bars to a ta4j {@link TimeSeries}.
+ * <p>
+ * Indicators call {@link #getBar(int)} for every index, so the bars are copied
+ * into a random access list of the series' own; later changes to the list
+ * passed in do not affect the series. The copy is checked once to be in date
+ * order, and sorted if it is not; {@link #addBar(Bar, boolean)} only accepts
+ * later bars.
+ * <p>
+ * Series read through the stock feeds are {@link PrimitiveTimeSeries}, which
+ * should be preferred; this adapter is kept for callers outside this module
+ * that wrap a list of bars of their own.
+ */
 public class ExtendedHistoricalQuoteTimeSeries implements TimeSeries {
 
 	/**
@@ -30,7 +45,19 @@ public class ExtendedHistoricalQuoteTimeSeries implements TimeSeries {
 	}
 
 	public ExtendedHistoricalQuoteTimeSeries(List<Bar> series2) {
-		this.series = series2;
+		this.series = new ArrayList<>(series2);
+		if (!isSorted(this.series)) {
+			this.series.sort(Comparator.comparing(Bar::getEndTime));
+		}
+	}
+
+	private static boolean isSorted(List<Bar> bars) {
+		for (int i = 1; i < bars.size(); i++) {
+			if (bars.get(i).getEndTime().isBefore(bars.get(i - 1).getEndTime())) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	public List<Bar> getSeries() {
@@ -41,7 +68,14 @@ public class ExtendedHistoricalQuoteTimeSeries implements TimeSeries {
 	public String getName() {
 		if (this.series.isEmpty())
 			return "Empty";
-		return ((ExtendedHistoricalQuote) this.series.get(0)).getSymbol();
+		Bar first = this.series.get(0);
+		if (first instanceof ExtendedHistoricalQuote) {
+			return ((ExtendedHistoricalQuote) first).getSymbol();
+		}
+		if (first instanceof PrimitiveTimeSeries.PrimitiveBar) {
+			return ((PrimitiveTimeSeries.PrimitiveBar) first).getSymbol();
+		}
+		return "";
 	}
 
 	@Override
@@ -88,6 +122,9 @@ public class ExtendedHistoricalQuoteTimeSeries implements TimeSeries {
 	public void addBar(Bar bar, boolean replace) {
 		if (replace)
 			throw new UnsupportedOperationException();
+		if (!this.series.isEmpty() && bar.getEndTime().isBefore(this.getLastBar().getEndTime())) {
+			throw new IllegalArgumentException("Bar for " + bar.getEndTime() + " is before the end of the series");
+		}
 		this.series.add(bar);
 	}
 
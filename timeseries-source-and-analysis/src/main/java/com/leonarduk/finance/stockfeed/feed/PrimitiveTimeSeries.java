@@ -0,0 +1,642 @@
+package com.leonarduk.finance.stockfeed.feed;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Function;
+
+import org.ta4j.core.Bar;
+import org.ta4j.core.TimeSeries;
+import org.ta4j.core.num.DoubleNum;
+import org.ta4j.core.num.Num;
+
+/**
+ * A daily series held as parallel primitive arrays rather than one object per
+ * bar: epoch days, open, high, low, close and adjusted close as doubles, volume
+ * as a long, the comment as an id into the series' own dictionary of comments
+ * and a byte of flags, such as {@link #FLAG_INTERPOLATED}, recording where a bar
+ * came from. The symbol is held once, as the name.
+ * <p>
+ * That is around {@link #BYTES_PER_BAR} bytes a bar against several hundred for
+ * an {@link ExtendedHistoricalQuote} with its BigDecimals, and indicator scans
+ * walk contiguous memory. {@link #getBar(int)} hands out a small {@link Bar}
+ * view onto a row, so the series can be used anywhere a List of Bars or a ta4j
+ * TimeSeries is expected.
+ * <p>
+ * Bars are kept in date order. Appending a bar for the last date replaces it;
+ * appending an earlier date is an error, so build from unsorted bars with
+ * {@link #from(String, Collection)}. {@link #addPrice(Num)} and
+ * {@link #addTrade(Num, Num)} update the last bar; the bar views themselves are
+ * read-only. Every bar is kept, so a maximum bar count cannot be set. Not
+ * thread-safe while being built.
+ */
+public class PrimitiveTimeSeries implements TimeSeries {
+
+	private static final long serialVersionUID = 3412870135064791882L;
+
+	/**
+	 * Heap per bar: epoch day, five prices, volume, comment id and flags
+	 */
+	public static final int BYTES_PER_BAR = 4 + 5 * 8 + 8 + 4 + 1;
+
+	/**
+	 * The bar was made up to fill a gap rather than read from a source
+	 */
+	public static final byte FLAG_INTERPOLATED = 1;
+
+	/**
+	 * A cleaner changed the bar's prices, for instance to undo bad scaling
+	 */
+	public static final byte FLAG_CORRECTED = 2;
+
+	private static final int DEFAULT_CAPACITY = 256;
+
+	private final String name;
+
+	/**
+	 * Comments seen in this series, few per series, indexed by id
+	 */
+	private final List<String> comments = new ArrayList<>(4);
+
+	private final Map<String, Integer> commentIds = new HashMap<>(4);
+
+	private int size;
+
+	private int[] epochDays;
+
+	private double[] open;
+
+	private double[] high;
+
+	private double[] low;
+
+	private double[] close;
+
+	private double[] adjClose;
+
+	private long[] volume;
+
+	private int[] commentIndex;
+
+	private byte[] flags;
+
+	public PrimitiveTimeSeries(final String name) {
+		this(name, DEFAULT_CAPACITY);
+	}
+
+	public PrimitiveTimeSeries(final String name, final int capacity) {
+		this.name = name == null ? "" : name;
+		final int initial = Math.max(capacity, 1);
+		this.epochDays = new int[initial];
+		this.open = new double[initial];
+		this.high = new double[initial];
+		this.low = new double[initial];
+		this.close = new double[initial];
+		this.adjClose = new double[initial];
+		this.volume = new long[initial];
+		this.commentIndex = new int[initial];
+		this.flags = new byte[initial];
+	}
+
+	/**
+	 * Copy bars, in any order, into a new series. Where two bars share a date
+	 * the later one in the collection wins.
+	 */
+	public static PrimitiveTimeSeries from(final String name, final Collection<? extends Bar> bars) {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries(name, bars.size());
+		if (PrimitiveTimeSeries.isOldestFirst(bars)) {
+			bars.forEach(series::add);
+			return series;
+		}
+		final List<Bar> sorted = new ArrayList<>(bars);
+		sorted.sort(Comparator.comparing(bar -> bar.getEndTime().toLocalDate()));
+		sorted.forEach(series::add);
+		return series;
+	}
+
+	private static boolean isOldestFirst(final Collection<? extends Bar> bars) {
+		LocalDate previous = null;
+		for (final Bar bar : bars) {
+			final LocalDate date = bar.getEndTime().toLocalDate();
+			if (previous != null && date.isBefore(previous)) {
+				return false;
+			}
+			previous = date;
+		}
+		return true;
+	}
+
+	private int commentId(final String comment) {
+		return this.commentIds.computeIfAbsent(comment == null ? "" : comment, key -> {
+			this.comments.add(key);
+			return this.comments.size() - 1;
+		});
+	}
+
+	public void add(final Bar bar) {
+		if (bar instanceof PrimitiveBar) {
+			final PrimitiveBar view = (PrimitiveBar) bar;
+			this.add(view.series, view.index);
+			return;
+		}
+		final double adjustedClose = bar instanceof ExtendedHistoricalQuote
+				&& ((ExtendedHistoricalQuote) bar).getAdjClose() != null
+						? ((ExtendedHistoricalQuote) bar).getAdjClose().doubleValue()
+						: bar.getClosePrice().doubleValue();
+		final Num barVolume = bar.getVolume();
+		this.add(bar.getEndTime().toLocalDate(), bar.getOpenPrice().doubleValue(), bar.getMinPrice().doubleValue(),
+				bar.getMaxPrice().doubleValue(), bar.getClosePrice().doubleValue(), adjustedClose,
+				barVolume == null ? 0 : barVolume.longValue(),
+				bar instanceof Commentable ? ((Commentable) bar).getComment() : "");
+	}
+
+	/**
+	 * Copy bar i of another series, without creating a view
+	 */
+	public void add(final PrimitiveTimeSeries source, final int i) {
+		source.checkIndex(i);
+		this.add(source.epochDays[i], source.open[i], source.high[i], source.low[i], source.close[i],
+				source.adjClose[i], source.volume[i], this.commentId(source.comments.get(source.commentIndex[i])),
+				source.flags[i]);
+	}
+
+	/**
+	 * Same argument order as the {@link ExtendedHistoricalQuote} constructors
+	 */
+	public void add(final LocalDate date, final double openPrice, final double lowPrice, final double highPrice,
+			final double closePrice, final double adjustedClose, final long barVolume, final String comment) {
+		this.add((int) date.toEpochDay(), openPrice, lowPrice, highPrice, closePrice, adjustedClose, barVolume,
+				comment);
+	}
+
+	/**
+	 * As {@link #add(LocalDate, double, double, double, double, double, long, String)}
+	 * for callers that already have the epoch day
+	 */
+	public void add(final int epochDay, final double openPrice, final double lowPrice, final double highPrice,
+			final double closePrice, final double adjustedClose, final long barVolume, final String comment) {
+		this.add(epochDay, openPrice, lowPrice, highPrice, closePrice, adjustedClose, barVolume, comment, (byte) 0);
+	}
+
+	/**
+	 * As {@link #add(int, double, double, double, double, double, long, String)}
+	 * with flags such as {@link #FLAG_INTERPOLATED}
+	 */
+	public void add(final int epochDay, final double openPrice, final double lowPrice, final double highPrice,
+			final double closePrice, final double adjustedClose, final long barVolume, final String comment,
+			final byte barFlags) {
+		this.add(epochDay, openPrice, highPrice, lowPrice, closePrice, adjustedClose, barVolume,
+				this.commentId(comment), barFlags);
+	}
+
+	private void add(final int epochDay, final double openPrice, final double highPrice, final double lowPrice,
+			final double closePrice, final double adjustedClose, final long barVolume, final int commentId,
+			final byte barFlags) {
+		final int i;
+		if (this.size > 0 && this.epochDays[this.size - 1] == epochDay) {
+			i = this.size - 1;
+		} else {
+			if (this.size > 0 && this.epochDays[this.size - 1] > epochDay) {
+				throw new IllegalArgumentException(this.name + ": " + LocalDate.ofEpochDay(epochDay)
+						+ " is before the last bar, " + LocalDate.ofEpochDay(this.epochDays[this.size - 1]));
+			}
+			this.ensureCapacity(this.size + 1);
+			i = this.size++;
+		}
+		this.epochDays[i] = epochDay;
+		this.open[i] = openPrice;
+		this.high[i] = highPrice;
+		this.low[i] = lowPrice;
+		this.close[i] = closePrice;
+		this.adjClose[i] = adjustedClose;
+		this.volume[i] = barVolume;
+		this.commentIndex[i] = commentId;
+		this.flags[i] = barFlags;
+	}
+
+	private void ensureCapacity(final int required) {
+		if (required <= this.epochDays.length) {
+			return;
+		}
+		final int capacity = Math.max(required, this.epochDays.length + (this.epochDays.length >> 1));
+		this.epochDays = Arrays.copyOf(this.epochDays, capacity);
+		this.open = Arrays.copyOf(this.open, capacity);
+		this.high = Arrays.copyOf(this.high, capacity);
+		this.low = Arrays.copyOf(this.low, capacity);
+		this.close = Arrays.copyOf(this.close, capacity);
+		this.adjClose = Arrays.copyOf(this.adjClose, capacity);
+		this.volume = Arrays.copyOf(this.volume, capacity);
+		this.commentIndex = Arrays.copyOf(this.commentIndex, capacity);
+		this.flags = Arrays.copyOf(this.flags, capacity);
+	}
+
+	/**
+	 * @return index of the bar for the date, or -(insertion point) - 1 if there
+	 *         is none, as {@link Arrays#binarySearch(int[], int)}
+	 */
+	public int indexOf(final LocalDate date) {
+		return Arrays.binarySearch(this.epochDays, 0, this.size, (int) date.toEpochDay());
+	}
+
+	public LocalDate getDate(final int i) {
+		return LocalDate.ofEpochDay(this.getEpochDay(i));
+	}
+
+	public int getEpochDay(final int i) {
+		this.checkIndex(i);
+		return this.epochDays[i];
+	}
+
+	public double getOpen(final int i) {
+		this.checkIndex(i);
+		return this.open[i];
+	}
+
+	public double getHigh(final int i) {
+		this.checkIndex(i);
+		return this.high[i];
+	}
+
+	public double getLow(final int i) {
+		this.checkIndex(i);
+		return this.low[i];
+	}
+
+	public double getClose(final int i) {
+		this.checkIndex(i);
+		return this.close[i];
+	}
+
+	public double getAdjClose(final int i) {
+		this.checkIndex(i);
+		return this.adjClose[i];
+	}
+
+	public long getVolumeAt(final int i) {
+		this.checkIndex(i);
+		return this.volume[i];
+	}
+
+	public String getComment(final int i) {
+		this.checkIndex(i);
+		return this.comments.get(this.commentIndex[i]);
+	}
+
+	public byte getFlags(final int i) {
+		this.checkIndex(i);
+		return this.flags[i];
+	}
+
+	public boolean isInterpolated(final int i) {
+		return (this.getFlags(i) & FLAG_INTERPOLATED) != 0;
+	}
+
+	public boolean isCorrected(final int i) {
+		return (this.getFlags(i) & FLAG_CORRECTED) != 0;
+	}
+
+	/**
+	 * @return a copy of the close prices, oldest first
+	 */
+	public double[] getClosePrices() {
+		return Arrays.copyOf(this.close, this.size);
+	}
+
+	/**
+	 * @return a copy of the high prices, oldest first
+	 */
+	public double[] getHighPrices() {
+		return Arrays.copyOf(this.high, this.size);
+	}
+
+	/**
+	 * @return a copy of the low prices, oldest first
+	 */
+	public double[] getLowPrices() {
+		return Arrays.copyOf(this.low, this.size);
+	}
+
+	private void checkIndex(final int i) {
+		if (i < 0 || i >= this.size) {
+			throw new IndexOutOfBoundsException("Index " + i + ", size " + this.size);
+		}
+	}
+
+	/**
+	 * @return a list of views the caller may sort, add to or remove from
+	 *         without affecting the series
+	 */
+	public List<Bar> toBarList() {
+		return new ArrayList<>(this.getBarData());
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public Bar getBar(final int i) {
+		this.checkIndex(i);
+		return new PrimitiveBar(this, i);
+	}
+
+	@Override
+	public int getBarCount() {
+		return this.size;
+	}
+
+	/**
+	 * @return a read-only, random access view of the bars
+	 */
+	@Override
+	public List<Bar> getBarData() {
+		return new BarList();
+	}
+
+	@Override
+	public int getBeginIndex() {
+		return this.size == 0 ? -1 : 0;
+	}
+
+	@Override
+	public int getEndIndex() {
+		return this.size - 1;
+	}
+
+	/**
+	 * Not supported: every bar is kept
+	 */
+	@Override
+	public void setMaximumBarCount(final int maximumBarCount) {
+		throw new UnsupportedOperationException("PrimitiveTimeSeries keeps every bar");
+	}
+
+	@Override
+	public int getMaximumBarCount() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public int getRemovedBarsCount() {
+		return 0;
+	}
+
+	@Override
+	public void addBar(final Bar bar, final boolean replace) {
+		if (replace && this.size > 0) {
+			this.size--;
+		}
+		this.add(bar);
+	}
+
+	/**
+	 * Start a bar with no prices yet, to be filled in by {@link #addPrice(Num)}
+	 * or {@link #addTrade(Num, Num)}
+	 */
+	@Override
+	public void addBar(final Duration timePeriod, final ZonedDateTime endTime) {
+		this.add(endTime.toLocalDate(), Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, 0, "");
+	}
+
+	@Override
+	public void addBar(final ZonedDateTime endTime, final Num openPrice, final Num highPrice, final Num lowPrice,
+			final Num closePrice, final Num volume, final Num amount) {
+		this.add(endTime.toLocalDate(), openPrice.doubleValue(), lowPrice.doubleValue(), highPrice.doubleValue(),
+				closePrice.doubleValue(), closePrice.doubleValue(), volume.longValue(), "");
+	}
+
+	@Override
+	public void addBar(final Duration timePeriod, final ZonedDateTime endTime, final Num openPrice,
+			final Num highPrice, final Num lowPrice, final Num closePrice, final Num volume) {
+		this.addBar(endTime, openPrice, highPrice, lowPrice, closePrice, volume, closePrice);
+	}
+
+	@Override
+	public void addBar(final Duration timePeriod, final ZonedDateTime endTime, final Num openPrice,
+			final Num highPrice, final Num lowPrice, final Num closePrice, final Num volume, final Num amount) {
+		this.addBar(endTime, openPrice, highPrice, lowPrice, closePrice, volume, amount);
+	}
+
+	/**
+	 * Add a trade to the last bar: its price as for {@link #addPrice(Num)} and
+	 * its volume to the bar's volume
+	 */
+	@Override
+	public void addTrade(final Num tradeVolume, final Num tradePrice) {
+		this.addPrice(tradePrice);
+		this.volume[this.size - 1] += tradeVolume.longValue();
+	}
+
+	/**
+	 * Move the last bar's close, and adjusted close, to the price, widening its
+	 * high and low to include it
+	 */
+	@Override
+	public void addPrice(final Num price) {
+		final int i = this.size - 1;
+		this.checkIndex(i);
+		final double value = price.doubleValue();
+		if (Double.isNaN(this.open[i])) {
+			this.open[i] = value;
+			this.high[i] = value;
+			this.low[i] = value;
+		}
+		this.high[i] = Math.max(this.high[i], value);
+		this.low[i] = Math.min(this.low[i], value);
+		this.close[i] = value;
+		this.adjClose[i] = value;
+	}
+
+	/**
+	 * @return a copy of the bars from startIndex, inclusive, to endIndex,
+	 *         exclusive
+	 */
+	@Override
+	public TimeSeries getSubSeries(final int startIndex, final int endIndex) {
+		final int from = Math.max(startIndex, 0);
+		final int to = Math.min(endIndex, this.size);
+		final PrimitiveTimeSeries sub = new PrimitiveTimeSeries(this.name, Math.max(to - from, 1));
+		for (int i = from; i < to; i++) {
+			sub.add(this, i);
+		}
+		return sub;
+	}
+
+	@Override
+	public Num numOf(final Number number) {
+		return DoubleNum.valueOf(number);
+	}
+
+	@Override
+	public Function<Number, Num> function() {
+		return DoubleNum::valueOf;
+	}
+
+	@Override
+	public String toString() {
+		return "PrimitiveTimeSeries [name=" + this.name + ", bars=" + this.size
+				+ (this.size > 0 ? ", from=" + this.getDate(0) + ", to=" + this.getDate(this.size - 1) : "") + "]";
+	}
+
+	private final class BarList extends AbstractList<Bar> implements RandomAccess {
+		@Override
+		public Bar get(final int index) {
+			return PrimitiveTimeSeries.this.getBar(index);
+		}
+
+		@Override
+		public int size() {
+			return PrimitiveTimeSeries.this.size;
+		}
+	}
+
+	/**
+	 * A view onto one row of the series. Views of the same row are equal.
+	 */
+	public static final class PrimitiveBar implements Bar, Commentable {
+
+		private static final long serialVersionUID = -2054370458862466402L;
+
+		private final PrimitiveTimeSeries series;
+
+		private final int index;
+
+		private PrimitiveBar(final PrimitiveTimeSeries series, final int index) {
+			this.series = series;
+			this.index = index;
+		}
+
+		public String getSymbol() {
+			return this.series.name;
+		}
+
+		public LocalDate getDate() {
+			return LocalDate.ofEpochDay(this.series.epochDays[this.index]);
+		}
+
+		public double getAdjClose() {
+			return this.series.adjClose[this.index];
+		}
+
+		@Override
+		public String getComment() {
+			return this.series.comments.get(this.series.commentIndex[this.index]);
+		}
+
+		public boolean isInterpolated() {
+			return this.series.isInterpolated(this.index);
+		}
+
+		public boolean isCorrected() {
+			return this.series.isCorrected(this.index);
+		}
+
+		@Override
+		public Num getOpenPrice() {
+			return DoubleNum.valueOf(this.series.open[this.index]);
+		}
+
+		@Override
+		public Num getMinPrice() {
+			return DoubleNum.valueOf(this.series.low[this.index]);
+		}
+
+		@Override
+		public Num getMaxPrice() {
+			return DoubleNum.valueOf(this.series.high[this.index]);
+		}
+
+		@Override
+		public Num getClosePrice() {
+			return DoubleNum.valueOf(this.series.close[this.index]);
+		}
+
+		@Override
+		public Num getVolume() {
+			return DoubleNum.valueOf(this.series.volume[this.index]);
+		}
+
+		/**
+		 * Not recorded, so zero as for a ta4j BaseBar built without it
+		 */
+		@Override
+		public Num getAmount() {
+			return DoubleNum.valueOf(0);
+		}
+
+		/**
+		 * Not recorded, so zero as for a ta4j BaseBar built without it
+		 */
+		@Override
+		public int getTrades() {
+			return 0;
+		}
+
+		@Override
+		public Duration getTimePeriod() {
+			return Duration.ofDays(1);
+		}
+
+		@Override
+		public ZonedDateTime getBeginTime() {
+			return this.getEndTime().minusDays(1);
+		}
+
+		@Override
+		public ZonedDateTime getEndTime() {
+			return this.getDate().atStartOfDay(ZoneId.systemDefault());
+		}
+
+		/**
+		 * Not supported: views are read-only, use
+		 * {@link PrimitiveTimeSeries#addTrade(Num, Num)}
+		 */
+		@Override
+		public void addTrade(final Num tradeVolume, final Num tradePrice) {
+			throw new UnsupportedOperationException("Bar views are read-only");
+		}
+
+		/**
+		 * Not supported: views are read-only, use
+		 * {@link PrimitiveTimeSeries#addPrice(Num)}
+		 */
+		@Override
+		public void addPrice(final Num price) {
+			throw new UnsupportedOperationException("Bar views are read-only");
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (!(other instanceof PrimitiveBar)) {
+				return false;
+			}
+			final PrimitiveBar that = (PrimitiveBar) other;
+			return this.series == that.series && this.index == that.index;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this.series) * 31 + this.index;
+		}
+
+		@Override
+		public String toString() {
+			return "PrimitiveBar [symbol=" + this.getSymbol() + ", date=" + this.getDate() + ", open="
+					+ this.series.open[this.index] + ", low=" + this.series.low[this.index] + ", high="
+					+ this.series.high[this.index] + ", close=" + this.series.close[this.index] + ", adjClose="
+					+ this.getAdjClose() + ", volume=" + this.series.volume[this.index] + ", comment="
+					+ this.getComment() + "]";
+		}
+	}
+}
@@ -1,12 +1,15 @@
 package com.leonarduk.finance.stockfeed.feed.alphavantage;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 import org.patriques.AlphaVantageConnector;
+import org.patriques.ApiConnector;
 import org.patriques.ForeignExchange;
 import org.patriques.TimeSeries;
 import org.patriques.input.timeseries.OutputSize;
@@ -25,10 +28,10 @@ import com.leonarduk.finance.stockfeed.FxInstrument;
 import com.leonarduk.finance.stockfeed.Instrument;
 import com.leonarduk.finance.stockfeed.QuoteFeed;
 import com.leonarduk.finance.stockfeed.Source;
-import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.ExtendedStockQuote;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
-import com.leonarduk.finance.utils.ContinualListIterator;
+import com.leonarduk.finance.utils.SingleFlight;
 
 public class AlphavantageFeed extends AbstractStockFeed implements QuoteFeed, FxFeed {
 
@@ -36,11 +39,66 @@ public class AlphavantageFeed extends AbstractStockFeed implements QuoteFeed, Fx
 	public static final String QUOTES_CSV_DELIMITER = ",";
 	public static final String TIMEZONE = "America/New_York";
 
-	private ContinualListIterator<String> apiKeyIterator;
+	public static final List<String> DEFAULT_API_KEYS = ImmutableList.of("KKYL9UZSTHIFAMS8", "TL8UNL556990PG7T",
+			"PXEB3TPEWCB6AFJD", "V5NOKB67PQJL5XP4", "MVI3UZIM61YWSTGD", "QG7MP9WY7647G4MI", "PM3635D4OO11MC4M");
+
+	public static final int TIMEOUT_MILLIS = 3000;
+
+	/**
+	 * Quotas are per key, not per feed, so every feed using the default keys
+	 * shares one scheduler. The rate can be raised with
+	 * {@code -Dalphavantage.callsPerMinute} for premium keys.
+	 */
+	private static final ApiKeyScheduler DEFAULT_SCHEDULER = new ApiKeyScheduler(DEFAULT_API_KEYS,
+			Integer.getInteger("alphavantage.callsPerMinute", ApiKeyScheduler.DEFAULT_CALLS_PER_MINUTE));
+
+	/**
+	 * COMPACT returns the latest 100 points. 19 weeks is 95 weekdays, which
+	 * leaves room for holidays.
+	 */
+	static final int COMPACT_WEEKS = 19;
+
+	private static final SingleFlight<String, List<StockData>> DEFAULT_REQUESTS = new SingleFlight<>();
+
+	private static final SingleFlight<String, List<ForexData>> DEFAULT_FX_REQUESTS = new SingleFlight<>();
+
+	private final ApiKeyScheduler scheduler;
+
+	private final Function<String, ApiConnector> connectorFactory;
+
+	/**
+	 * Callers wanting a symbol that is already being fetched wait for that
+	 * request rather than spending another token. The raw response is shared,
+	 * so each caller converts only its own range.
+	 */
+	private final SingleFlight<String, List<StockData>> requests;
+
+	private final SingleFlight<String, List<ForexData>> fxRequests;
 
 	public AlphavantageFeed() {
-		this.apiKeyIterator = new ContinualListIterator<>(ImmutableList.of("KKYL9UZSTHIFAMS8", "TL8UNL556990PG7T",
-				"PXEB3TPEWCB6AFJD", "V5NOKB67PQJL5XP4", "MVI3UZIM61YWSTGD", "QG7MP9WY7647G4MI", "PM3635D4OO11MC4M"));
+		this(DEFAULT_SCHEDULER, apiKey -> new AlphaVantageConnector(apiKey, TIMEOUT_MILLIS), DEFAULT_REQUESTS,
+				DEFAULT_FX_REQUESTS);
+	}
+
+	public AlphavantageFeed(final ApiKeyScheduler scheduler) {
+		this(scheduler, apiKey -> new AlphaVantageConnector(apiKey, TIMEOUT_MILLIS));
+	}
+
+	/**
+	 * @param connectorFactory creates the connector for a key, so a stub can
+	 *                         stand in for the web service
+	 */
+	public AlphavantageFeed(final ApiKeyScheduler scheduler, final Function<String, ApiConnector> connectorFactory) {
+		this(scheduler, connectorFactory, new SingleFlight<>(), new SingleFlight<>());
+	}
+
+	private AlphavantageFeed(final ApiKeyScheduler scheduler, final Function<String, ApiConnector> connectorFactory,
+			final SingleFlight<String, List<StockData>> requests,
+			final SingleFlight<String, List<ForexData>> fxRequests) {
+		this.scheduler = scheduler;
+		this.connectorFactory = connectorFactory;
+		this.requests = requests;
+		this.fxRequests = fxRequests;
 	}
 
 	@Override
@@ -57,32 +115,72 @@ public class AlphavantageFeed extends AbstractStockFeed implements QuoteFeed, Fx
 				return Optional.of(new StockV1(instrument, this.getFxSeries(fXInstrument.getCurrencyOne(),
 						fXInstrument.getCurrencyTwo(), fromDate, toDate)));
 			}
-			AlphaVantageConnector apiConnector = getConnection();
-			TimeSeries stockTimeSeries = new TimeSeries(apiConnector);
-
 			String code = instrument.code() + instrument.getExchange().getYahooSuffix();
-			DailyAdjusted response = stockTimeSeries.dailyAdjusted(code, OutputSize.FULL);
-
-			List<Bar> series = convertSeries(instrument, response.getStockData());
-			return Optional.of(new StockV1(instrument, series));
+			OutputSize outputSize = getOutputSize(fromDate);
+			List<StockData> stockData = this.requests.execute(code + ":" + outputSize, () -> {
+				TimeSeries stockTimeSeries = new TimeSeries(getConnection());
+				DailyAdjusted response = stockTimeSeries.dailyAdjusted(code, outputSize);
+				return response.getStockData();
+			});
+			return Optional.of(new StockV1(instrument, convertSeries(instrument, stockData, fromDate, toDate)));
 		} catch (final Exception e) {
 			logger.warn("Error when fetching from Alphavantage: " + e.getMessage());
 			return Optional.empty();
 		}
 	}
 
-	private AlphaVantageConnector getConnection() {
-		int timeout = 3000;
-		AlphaVantageConnector apiConnector = new AlphaVantageConnector(apiKeyIterator.next(), timeout);
-		return apiConnector;
+	/**
+	 * @return COMPACT if the latest 100 points reach back to the date
+	 */
+	static OutputSize getOutputSize(final LocalDate fromDate) {
+		return fromDate != null && fromDate.isAfter(LocalDate.now().minusWeeks(COMPACT_WEEKS)) ? OutputSize.COMPACT
+				: OutputSize.FULL;
 	}
 
-	private List<Bar> convertSeries(Instrument instrument, List<StockData> stockData) {
-		return stockData.stream()
-				.map(quote -> new ExtendedHistoricalQuote(instrument, quote.getDateTime().toLocalDate(),
-						quote.getOpen(), quote.getLow(), quote.getHigh(), quote.getClose(), quote.getAdjustedClose(),
-						quote.getVolume(), "Alphavantage"))
-				.collect(Collectors.toList());
+	static boolean inRange(final LocalDate date, final LocalDate fromDate, final LocalDate toDate) {
+		return (fromDate == null || !date.isBefore(fromDate)) && (toDate == null || !date.isAfter(toDate));
+	}
+
+	/**
+	 * Waits, if need be, until a key has quota left.
+	 */
+	private ApiConnector getConnection() throws IOException {
+		try {
+			return this.connectorFactory.apply(this.scheduler.acquire());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for an Alphavantage API key", e);
+		}
+	}
+
+	public static ApiKeyScheduler getDefaultScheduler() {
+		return DEFAULT_SCHEDULER;
+	}
+
+	public ApiKeyScheduler getScheduler() {
+		return this.scheduler;
+	}
+
+	/**
+	 * @return number of calls that joined a request already in flight
+	 */
+	public long getDedupedCount() {
+		return this.requests.getSharedCount() + this.fxRequests.getSharedCount();
+	}
+
+	/**
+	 * @return the bars in range, oldest first, backed by a
+	 *         {@link PrimitiveTimeSeries}
+	 */
+	private List<Bar> convertSeries(Instrument instrument, List<StockData> stockData, LocalDate fromDate,
+			LocalDate toDate) {
+		PrimitiveTimeSeries series = new PrimitiveTimeSeries(instrument.getCode(), stockData.size());
+		stockData.stream().filter(quote -> inRange(quote.getDateTime().toLocalDate(), fromDate, toDate))
+				.sorted(Comparator.comparing(StockData::getDateTime))
+				.forEach(quote -> series.add(quote.getDateTime().toLocalDate(), quote.getOpen(), quote.getLow(),
+						quote.getHigh(), quote.getClose(), quote.getAdjustedClose(), quote.getVolume(),
+						"Alphavantage"));
+		return series.toBarList();
 	}
 
 	@Override
@@ -103,21 +201,32 @@ public class AlphavantageFeed extends AbstractStockFeed implements QuoteFeed, Fx
 
 	@Override
 	public List<Bar> getFxSeries(String currencyOne, String currencyTwo, LocalDate fromDate, LocalDate toDate) {
-		AlphaVantageConnector apiConnector = getConnection();
-		ForeignExchange foreignExchange = new ForeignExchange(apiConnector);
-
-		Daily fxResults = foreignExchange.daily(currencyOne.toUpperCase(), currencyTwo.toUpperCase(), OutputSize.FULL);
-		List<ForexData> fxData = fxResults.getForexData();
-
-		return convertFxSeries(new FxInstrument(Source.ALPHAVANTAGE, currencyOne, currencyTwo), fxData);
+		OutputSize outputSize = getOutputSize(fromDate);
+		String pair = currencyOne.toUpperCase() + "/" + currencyTwo.toUpperCase() + ":" + outputSize;
+		List<ForexData> fxData;
+		try {
+			fxData = this.fxRequests.execute(pair, () -> {
+				ForeignExchange foreignExchange = new ForeignExchange(getConnection());
+
+				Daily fxResults = foreignExchange.daily(currencyOne.toUpperCase(), currencyTwo.toUpperCase(),
+						outputSize);
+				return fxResults.getForexData();
+			});
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
 
+		return convertFxSeries(new FxInstrument(Source.ALPHAVANTAGE, currencyOne, currencyTwo), fxData, fromDate,
+				toDate);
 	}
 
-	private List<Bar> convertFxSeries(Instrument instrument, List<ForexData> fxData) {
-		return fxData.stream()
-				.map(quote -> new ExtendedHistoricalQuote(instrument, quote.getDateTime().toLocalDate(),
-						quote.getOpen(), quote.getLow(), quote.getHigh(), quote.getClose(), quote.getClose(), 0,
-						"Alphavantage"))
-				.collect(Collectors.toList());
+	private List<Bar> convertFxSeries(Instrument instrument, List<ForexData> fxData, LocalDate fromDate,
+			LocalDate toDate) {
+		PrimitiveTimeSeries series = new PrimitiveTimeSeries(instrument.getCode(), fxData.size());
+		fxData.stream().filter(quote -> inRange(quote.getDateTime().toLocalDate(), fromDate, toDate))
+				.sorted(Comparator.comparing(ForexData::getDateTime))
+				.forEach(quote -> series.add(quote.getDateTime().toLocalDate(), quote.getOpen(), quote.getLow(),
+						quote.getHigh(), quote.getClose(), quote.getClose(), 0, "Alphavantage"));
+		return series.toBarList();
 	}
 }
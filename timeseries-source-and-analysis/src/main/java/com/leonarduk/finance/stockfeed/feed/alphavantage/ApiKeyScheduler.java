@@ -0,0 +1,193 @@
+package com.leonarduk.finance.stockfeed.feed.alphavantage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Hands out Alphavantage API keys without exceeding the per-key quota.
+ * <p>
+ * Each key has a token bucket holding up to {@code callsPerMinute} tokens,
+ * refilled evenly over the minute. A caller takes a token from the key with
+ * the most available and, if every bucket is empty, reserves the next one to
+ * refill and waits for it. Reservations are made under a fair lock, so callers
+ * are served in the order they arrived.
+ */
+public class ApiKeyScheduler {
+
+	/**
+	 * Alphavantage free tier allowance
+	 */
+	public static final int DEFAULT_CALLS_PER_MINUTE = 5;
+
+	@FunctionalInterface
+	public interface Sleeper {
+		void sleep(long nanos) throws InterruptedException;
+	}
+
+	private final List<KeyBucket> buckets;
+
+	private final Ticker ticker;
+
+	private final Sleeper sleeper;
+
+	private final ReentrantLock lock = new ReentrantLock(true);
+
+	/**
+	 * Where to start looking, so ties are spread across the keys
+	 */
+	private int nextIndex;
+
+	private final LongAdder throttledCalls = new LongAdder();
+
+	private final LongAdder throttleWaitNanos = new LongAdder();
+
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	public ApiKeyScheduler(final List<String> apiKeys, final int callsPerMinute) {
+		this(apiKeys, callsPerMinute, Ticker.systemTicker(), TimeUnit.NANOSECONDS::sleep);
+	}
+
+	public ApiKeyScheduler(final List<String> apiKeys, final int callsPerMinute, final Ticker ticker,
+			final Sleeper sleeper) {
+		if (apiKeys.isEmpty()) {
+			throw new IllegalArgumentException("At least one API key is required");
+		}
+		if (callsPerMinute <= 0) {
+			throw new IllegalArgumentException("callsPerMinute must be positive: " + callsPerMinute);
+		}
+		this.ticker = ticker;
+		this.sleeper = sleeper;
+		final long now = ticker.read();
+		final List<KeyBucket> keyBuckets = new ArrayList<>();
+		for (final String apiKey : apiKeys) {
+			keyBuckets.add(new KeyBucket(apiKey, callsPerMinute, now));
+		}
+		this.buckets = Collections.unmodifiableList(keyBuckets);
+	}
+
+	/**
+	 * Block until a key may be used for one call.
+	 *
+	 * @return the key to use
+	 */
+	public String acquire() throws InterruptedException {
+		final KeyBucket chosen;
+		final long waitNanos;
+		this.lock.lockInterruptibly();
+		try {
+			final long now = this.ticker.read();
+			KeyBucket best = null;
+			for (int i = 0; i < this.buckets.size(); i++) {
+				final KeyBucket bucket = this.buckets.get((this.nextIndex + i) % this.buckets.size());
+				bucket.refill(now);
+				if (best == null || bucket.tokens > best.tokens) {
+					best = bucket;
+				}
+			}
+			chosen = best;
+			waitNanos = chosen.reserve();
+			this.nextIndex = (this.buckets.indexOf(chosen) + 1) % this.buckets.size();
+		} finally {
+			this.lock.unlock();
+		}
+
+		if (waitNanos > 0) {
+			this.throttledCalls.increment();
+			this.throttleWaitNanos.add(waitNanos);
+			this.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+			this.sleeper.sleep(waitNanos);
+		}
+		chosen.calls.increment();
+		return chosen.apiKey;
+	}
+
+	/**
+	 * @return calls made per key, with the keys masked
+	 */
+	public Map<String, Long> getUsage() {
+		final Map<String, Long> usage = new LinkedHashMap<>();
+		for (final KeyBucket bucket : this.buckets) {
+			usage.put(ApiKeyScheduler.mask(bucket.apiKey), bucket.calls.sum());
+		}
+		return usage;
+	}
+
+	public long getCallCount() {
+		return this.buckets.stream().mapToLong(bucket -> bucket.calls.sum()).sum();
+	}
+
+	/**
+	 * @return number of calls that had to wait for a token
+	 */
+	public long getThrottledCount() {
+		return this.throttledCalls.sum();
+	}
+
+	public long getThrottleWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.throttleWaitNanos.sum());
+	}
+
+	public long getMaxWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.maxWaitNanos.get());
+	}
+
+	public int getKeyCount() {
+		return this.buckets.size();
+	}
+
+	static String mask(final String apiKey) {
+		return apiKey.length() <= 4 ? apiKey : apiKey.substring(0, 4) + "****";
+	}
+
+	@Override
+	public String toString() {
+		return "ApiKeyScheduler [keys=" + this.getKeyCount() + ", calls=" + this.getCallCount() + ", throttled="
+				+ this.getThrottledCount() + ", waitMillis=" + this.getThrottleWaitMillis() + "]";
+	}
+
+	private static final class KeyBucket {
+		private final String apiKey;
+		private final double capacity;
+		private final double nanosPerToken;
+		/**
+		 * Goes negative while callers are waiting on reserved tokens
+		 */
+		private double tokens;
+		private long lastRefill;
+		private final LongAdder calls = new LongAdder();
+
+		private KeyBucket(final String apiKey, final int callsPerMinute, final long now) {
+			this.apiKey = apiKey;
+			this.capacity = callsPerMinute;
+			this.nanosPerToken = (double) TimeUnit.MINUTES.toNanos(1) / callsPerMinute;
+			this.tokens = callsPerMinute;
+			this.lastRefill = now;
+		}
+
+		private void refill(final long now) {
+			if (now > this.lastRefill) {
+				this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) / this.nanosPerToken);
+				this.lastRefill = now;
+			}
+		}
+
+		/**
+		 * Take a token, whether or not it has refilled yet.
+		 *
+		 * @return nanos until the token is available
+		 */
+		private long reserve() {
+			this.tokens -= 1;
+			return this.tokens >= 0 ? 0 : (long) Math.ceil(-this.tokens * this.nanosPerToken);
+		}
+	}
+}
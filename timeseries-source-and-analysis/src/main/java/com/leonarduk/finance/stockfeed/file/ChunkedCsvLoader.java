@@ -0,0 +1,294 @@
+package com.leonarduk.finance.stockfeed.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+/**
+ * Loads a large csv by splitting it into byte ranges that end on a newline and
+ * parsing them in parallel with a {@link CsvBarParser} each.
+ * <p>
+ * A newline byte never occurs inside a multi-byte UTF-8 character, so each
+ * range decodes on its own. The date filter is applied as rows are parsed.
+ * Each chunk comes back in date order and, as store files are written in date
+ * order, the chunks usually cover disjoint date ranges and are concatenated;
+ * otherwise they are merged, never fully sorted.
+ * <p>
+ * Chunks are parsed on the pool only when the read is at least
+ * {@code parallelBytes}; smaller reads stay on the calling thread.
+ */
+public class ChunkedCsvLoader {
+
+	public static final int DEFAULT_CHUNK_BYTES = 4 << 20;
+
+	private static final ThreadLocal<CsvBarParser> PARSERS = ThreadLocal.withInitial(CsvBarParser::new);
+
+	/**
+	 * Bytes [start, end) of a file, starting at the start of a line
+	 */
+	public static final class ByteRange {
+		private final long start;
+		private final long end;
+
+		public ByteRange(final long start, final long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		public long getStart() {
+			return this.start;
+		}
+
+		public long getEnd() {
+			return this.end;
+		}
+
+		public long length() {
+			return this.end - this.start;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + this.start + ", " + this.end + ")";
+		}
+	}
+
+	private final ForkJoinPool pool;
+
+	private final int chunkBytes;
+
+	private final long parallelBytes;
+
+	private final LongAdder bytesRead = new LongAdder();
+
+	public ChunkedCsvLoader() {
+		this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_BYTES);
+	}
+
+	public ChunkedCsvLoader(final ForkJoinPool pool, final int chunkBytes) {
+		this(pool, chunkBytes, 0);
+	}
+
+	/**
+	 * @param parallelBytes reads smaller than this are parsed on the calling
+	 *                      thread
+	 */
+	public ChunkedCsvLoader(final ForkJoinPool pool, final int chunkBytes, final long parallelBytes) {
+		if (chunkBytes <= 0) {
+			throw new IllegalArgumentException("chunkBytes must be positive: " + chunkBytes);
+		}
+		this.pool = pool;
+		this.chunkBytes = chunkBytes;
+		this.parallelBytes = parallelBytes;
+	}
+
+	/**
+	 * Parse the file as {@link CsvBarParser#parse(char[], int, int, String,
+	 * String, CsvBarParser.DateParser, LocalDate, LocalDate)} would, using the
+	 * pool when there is more than one chunk.
+	 *
+	 * @param skipHeader true if the first line holds column names
+	 */
+	public PrimitiveTimeSeries load(final Path file, final boolean skipHeader, final String name,
+			final String defaultComment, final CsvBarParser.DateParser dateParser, final LocalDate fromDate,
+			final LocalDate toDate) throws IOException {
+		final long start;
+		final long size;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			size = channel.size();
+			start = skipHeader ? ChunkedCsvLoader.nextLine(channel, 0, size) : 0;
+		}
+		return this.load(file, Collections.singletonList(new ByteRange(start, size)), name, defaultComment,
+				dateParser, fromDate, toDate);
+	}
+
+	/**
+	 * Parse only the given ranges of the file, such as those a
+	 * {@link CsvDateIndex} picks out.
+	 */
+	public PrimitiveTimeSeries load(final Path file, final List<ByteRange> ranges, final String name,
+			final String defaultComment, final CsvBarParser.DateParser dateParser, final LocalDate fromDate,
+			final LocalDate toDate) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			final List<Callable<PrimitiveTimeSeries>> chunks = new ArrayList<>();
+			long total = 0;
+			for (final ByteRange range : ranges) {
+				final long end = Math.min(range.getEnd(), size);
+				for (long from = range.getStart(); from < end;) {
+					final long to = from + this.chunkBytes >= end ? end
+							: ChunkedCsvLoader.nextLine(channel, from + this.chunkBytes - 1, end);
+					final long chunkStart = from;
+					chunks.add(() -> this.parseChunk(channel, chunkStart, to, name, defaultComment, dateParser,
+							fromDate, toDate));
+					total += to - from;
+					from = to;
+				}
+			}
+			if (chunks.isEmpty()) {
+				return new PrimitiveTimeSeries(name, 1);
+			}
+			if (chunks.size() == 1) {
+				return ChunkedCsvLoader.call(chunks.get(0));
+			}
+			final List<PrimitiveTimeSeries> parsed = new ArrayList<>(chunks.size());
+			if (total < this.parallelBytes) {
+				for (final Callable<PrimitiveTimeSeries> chunk : chunks) {
+					parsed.add(ChunkedCsvLoader.call(chunk));
+				}
+			} else {
+				for (final Future<PrimitiveTimeSeries> future : this.pool.invokeAll(chunks)) {
+					parsed.add(ChunkedCsvLoader.get(future));
+				}
+			}
+			return ChunkedCsvLoader.merge(name, parsed);
+		}
+	}
+
+	/**
+	 * @return the offset just past the first newline at or after position, or
+	 *         size if there is none
+	 */
+	private static long nextLine(final FileChannel channel, final long position, final long size)
+			throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(512);
+		long offset = position;
+		while (offset < size) {
+			buffer.clear();
+			final int read = channel.read(buffer, offset);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return offset + i + 1;
+				}
+			}
+			offset += read;
+		}
+		return size;
+	}
+
+	private PrimitiveTimeSeries parseChunk(final FileChannel channel, final long from, final long to,
+			final String name, final String defaultComment, final CsvBarParser.DateParser dateParser,
+			final LocalDate fromDate, final LocalDate toDate) throws IOException {
+		final ByteBuffer bytes = ByteBuffer.allocate((int) (to - from));
+		while (bytes.hasRemaining()) {
+			if (channel.read(bytes, from + bytes.position()) < 0) {
+				break;
+			}
+		}
+		bytes.flip();
+		this.bytesRead.add(bytes.remaining());
+		final CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+		return PARSERS.get().parse(chars.array(), chars.arrayOffset() + chars.position(),
+				chars.arrayOffset() + chars.limit(), name, defaultComment, dateParser, fromDate, toDate);
+	}
+
+	/**
+	 * Merge series that are each in date order into one. Where a date appears in
+	 * more than one, the one later in the list wins, as it would reading the
+	 * rows in that order.
+	 */
+	public static PrimitiveTimeSeries merge(final String name, final List<PrimitiveTimeSeries> parts) {
+		final List<Integer> order = new ArrayList<>();
+		int total = 0;
+		for (int i = 0; i < parts.size(); i++) {
+			if (parts.get(i).getBarCount() > 0) {
+				order.add(i);
+				total += parts.get(i).getBarCount();
+			}
+		}
+		final PrimitiveTimeSeries merged = new PrimitiveTimeSeries(name, total);
+		order.sort(Comparator.comparingInt(i -> parts.get(i).getEpochDay(0)));
+
+		boolean disjoint = true;
+		for (int i = 1; i < order.size() && disjoint; i++) {
+			final PrimitiveTimeSeries previous = parts.get(order.get(i - 1));
+			disjoint = previous.getEpochDay(previous.getEndIndex()) < parts.get(order.get(i)).getEpochDay(0);
+		}
+		if (disjoint) {
+			for (final int part : order) {
+				final PrimitiveTimeSeries series = parts.get(part);
+				for (int i = 0; i < series.getBarCount(); i++) {
+					merged.add(series, i);
+				}
+			}
+			return merged;
+		}
+
+		// k-way merge; on equal dates the earlier part goes first so the later
+		// one replaces it
+		final int[] next = new int[parts.size()];
+		for (int added = 0; added < total; added++) {
+			int best = -1;
+			int bestDay = Integer.MAX_VALUE;
+			for (int part = 0; part < parts.size(); part++) {
+				final PrimitiveTimeSeries series = parts.get(part);
+				if (next[part] < series.getBarCount() && series.getEpochDay(next[part]) < bestDay) {
+					best = part;
+					bestDay = series.getEpochDay(next[part]);
+				}
+			}
+			merged.add(parts.get(best), next[best]++);
+		}
+		return merged;
+	}
+
+	private static PrimitiveTimeSeries call(final Callable<PrimitiveTimeSeries> chunk) throws IOException {
+		try {
+			return chunk.call();
+		} catch (final IOException | RuntimeException e) {
+			throw e;
+		} catch (final Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static PrimitiveTimeSeries get(final Future<PrimitiveTimeSeries> future) throws IOException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted loading csv", e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * @return bytes of csv read so far
+	 */
+	public long getBytesRead() {
+		return this.bytesRead.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "ChunkedCsvLoader [chunkBytes=" + this.chunkBytes + ", parallelBytes=" + this.parallelBytes
+				+ ", parallelism=" + this.pool.getParallelism() + ", bytesRead=" + this.getBytesRead() + "]";
+	}
+}
@@ -0,0 +1,325 @@
+package com.leonarduk.finance.stockfeed.file;
+
+import com.leonarduk.finance.stockfeed.AbstractStockFeed;
+import com.leonarduk.finance.stockfeed.DataStore;
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.feed.Commentable;
+import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.ta4j.core.Bar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Stores each instrument as a directory of fixed-width column files, one value
+ * per bar:
+ * <ul>
+ * <li>date.col - epoch day (int)</li>
+ * <li>open.col, high.col, low.col, close.col, adjclose.col - prices
+ * (double)</li>
+ * <li>volume.col - volume (long)</li>
+ * <li>comment.col - id into comments.dict (int)</li>
+ * </ul>
+ * Reads memory-map the columns, so a date range query is a binary search on the
+ * date column plus a slice of the others, with no text parsing.
+ * <p>
+ * comments.dict holds one comment per line, with backslashes and line breaks
+ * escaped. Each write goes to .tmp files that are moved into place only once
+ * every column is complete; a read that finds columns of different lengths
+ * reports the instrument as missing rather than misreading it.
+ */
+public class ColumnarDataStore implements DataStore {
+
+    public static final Logger log = LoggerFactory.getLogger(ColumnarDataStore.class.getName());
+
+    static final String DATE = "date.col";
+    static final String OPEN = "open.col";
+    static final String HIGH = "high.col";
+    static final String LOW = "low.col";
+    static final String CLOSE = "close.col";
+    static final String ADJ_CLOSE = "adjclose.col";
+    static final String VOLUME = "volume.col";
+    static final String COMMENT = "comment.col";
+    static final String DICTIONARY = "comments.dict";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private final String storeLocation;
+
+    public ColumnarDataStore(final String storeLocation) {
+        this.storeLocation = storeLocation;
+    }
+
+    @Override
+    public void storeSeries(final StockV1 stock) throws IOException {
+        final File folder = new File(this.storeLocation);
+        if (!folder.exists() && !folder.mkdir()) {
+            throw new IOException("Failed to create " + this.storeLocation);
+        }
+        this.writeColumns(this.getKey(stock.getInstrument()), stock.getHistory());
+    }
+
+    /**
+     * Write the bars, de-duplicated by date and sorted oldest first, replacing
+     * any columns already stored under this key.
+     */
+    void writeColumns(final String key, final List<Bar> history) throws IOException {
+        final TreeMap<Long, Bar> byDate = new TreeMap<>();
+        for (final Bar bar : history) {
+            byDate.put(bar.getEndTime().toLocalDate().toEpochDay(), bar);
+        }
+        final int size = byDate.size();
+
+        final ByteBuffer dates = ByteBuffer.allocate(size * Integer.BYTES);
+        final ByteBuffer opens = ByteBuffer.allocate(size * Double.BYTES);
+        final ByteBuffer highs = ByteBuffer.allocate(size * Double.BYTES);
+        final ByteBuffer lows = ByteBuffer.allocate(size * Double.BYTES);
+        final ByteBuffer closes = ByteBuffer.allocate(size * Double.BYTES);
+        final ByteBuffer adjCloses = ByteBuffer.allocate(size * Double.BYTES);
+        final ByteBuffer volumes = ByteBuffer.allocate(size * Long.BYTES);
+        final ByteBuffer comments = ByteBuffer.allocate(size * Integer.BYTES);
+
+        final Map<String, Integer> dictionary = new HashMap<>();
+        final List<String> dictionaryEntries = new ArrayList<>();
+        for (final Map.Entry<Long, Bar> entry : byDate.entrySet()) {
+            final Bar bar = entry.getValue();
+            dates.putInt(entry.getKey().intValue());
+            opens.putDouble(bar.getOpenPrice().doubleValue());
+            highs.putDouble(bar.getMaxPrice().doubleValue());
+            lows.putDouble(bar.getMinPrice().doubleValue());
+            closes.putDouble(bar.getClosePrice().doubleValue());
+            adjCloses.putDouble(adjustedClose(bar));
+            volumes.putLong(bar.getVolume().longValue());
+
+            final String comment = (bar instanceof Commentable) ? ((Commentable) bar).getComment() : "";
+            comments.putInt(dictionary.computeIfAbsent(comment == null ? "" : comment, c -> {
+                dictionaryEntries.add(c);
+                return dictionaryEntries.size() - 1;
+            }));
+        }
+
+        final Path folder = this.getFolder(key);
+        Files.createDirectories(folder);
+        writeColumn(folder.resolve(DATE + TEMP_SUFFIX), dates);
+        writeColumn(folder.resolve(OPEN + TEMP_SUFFIX), opens);
+        writeColumn(folder.resolve(HIGH + TEMP_SUFFIX), highs);
+        writeColumn(folder.resolve(LOW + TEMP_SUFFIX), lows);
+        writeColumn(folder.resolve(CLOSE + TEMP_SUFFIX), closes);
+        writeColumn(folder.resolve(ADJ_CLOSE + TEMP_SUFFIX), adjCloses);
+        writeColumn(folder.resolve(VOLUME + TEMP_SUFFIX), volumes);
+        writeColumn(folder.resolve(COMMENT + TEMP_SUFFIX), comments);
+        final List<String> escaped = new ArrayList<>(dictionaryEntries.size());
+        dictionaryEntries.forEach(entry -> escaped.add(escape(entry)));
+        Files.write(folder.resolve(DICTIONARY + TEMP_SUFFIX), escaped, StandardCharsets.UTF_8);
+
+        // Every column is on disk, so swap them in; the dates go last as readers start there
+        for (final String name : new String[] { DICTIONARY, COMMENT, VOLUME, ADJ_CLOSE, CLOSE, LOW, HIGH, OPEN,
+                DATE }) {
+            Files.move(folder.resolve(name + TEMP_SUFFIX), folder.resolve(name), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        ColumnarDataStore.log.info("Saved " + size + " bars to " + folder);
+    }
+
+    private static double adjustedClose(final Bar bar) {
+        if (bar instanceof PrimitiveTimeSeries.PrimitiveBar) {
+            return ((PrimitiveTimeSeries.PrimitiveBar) bar).getAdjClose();
+        }
+        if (bar instanceof ExtendedHistoricalQuote && ((ExtendedHistoricalQuote) bar).getAdjClose() != null) {
+            return ((ExtendedHistoricalQuote) bar).getAdjClose().doubleValue();
+        }
+        return bar.getClosePrice().doubleValue();
+    }
+
+    private static void writeColumn(final Path path, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Escape backslashes and line breaks so each comment stays on one line
+     */
+    static String escape(final String comment) {
+        final StringBuilder sb = new StringBuilder(comment.length());
+        for (int i = 0; i < comment.length(); i++) {
+            final char c = comment.charAt(i);
+            switch (c) {
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    static String unescape(final String line) {
+        if (line.indexOf('\\') < 0) {
+            return line;
+        }
+        final StringBuilder sb = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                final char next = line.charAt(++i);
+                sb.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static MappedByteBuffer map(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @Override
+    public boolean isAvailable() {
+        final File store = new File(this.storeLocation);
+        return (store.exists() && store.isDirectory()) && store.canWrite() && store.canRead();
+    }
+
+    @Override
+    public Optional<StockV1> get(final Instrument instrument, final int years) throws IOException {
+        return this.get(instrument, LocalDate.now().minusYears(years), LocalDate.now());
+    }
+
+    @Override
+    public Optional<StockV1> get(final Instrument instrument, final LocalDate fromDate, final LocalDate toDate)
+            throws IOException {
+        final Path folder = this.getFolder(this.getKey(instrument));
+        if (!Files.exists(folder.resolve(DATE))) {
+            ColumnarDataStore.log.warn(folder + " not found");
+            return Optional.empty();
+        }
+
+        final IntBuffer dates = map(folder.resolve(DATE)).asIntBuffer();
+        if (!this.hasLength(folder, dates.limit())) {
+            ColumnarDataStore.log.warn(folder + " has columns of different lengths, ignoring it");
+            return Optional.empty();
+        }
+        final int start = lowerBound(dates, (int) fromDate.toEpochDay());
+        final int end = upperBound(dates, (int) toDate.toEpochDay());
+
+        final List<Bar> quotes = new ArrayList<>(Math.max(0, end - start));
+        if (start < end) {
+            final DoubleBuffer opens = map(folder.resolve(OPEN)).asDoubleBuffer();
+            final DoubleBuffer highs = map(folder.resolve(HIGH)).asDoubleBuffer();
+            final DoubleBuffer lows = map(folder.resolve(LOW)).asDoubleBuffer();
+            final DoubleBuffer closes = map(folder.resolve(CLOSE)).asDoubleBuffer();
+            // Stores written before the adjusted close was kept fall back to the close
+            final DoubleBuffer adjCloses = Files.exists(folder.resolve(ADJ_CLOSE))
+                    ? map(folder.resolve(ADJ_CLOSE)).asDoubleBuffer()
+                    : closes;
+            final LongBuffer volumes = map(folder.resolve(VOLUME)).asLongBuffer();
+            final IntBuffer comments = map(folder.resolve(COMMENT)).asIntBuffer();
+            final List<String> dictionary = new ArrayList<>();
+            Files.readAllLines(folder.resolve(DICTIONARY), StandardCharsets.UTF_8)
+                    .forEach(line -> dictionary.add(unescape(line)));
+
+            for (int i = start; i < end; i++) {
+                quotes.add(new ExtendedHistoricalQuote(instrument, LocalDate.ofEpochDay(dates.get(i)), opens.get(i),
+                        lows.get(i), highs.get(i), closes.get(i), adjCloses.get(i), volumes.get(i),
+                        dictionary.get(comments.get(i))));
+            }
+        }
+        return Optional.of(AbstractStockFeed.createStock(instrument, quotes));
+    }
+
+    /**
+     * @return true if every column holds the given number of bars
+     */
+    private boolean hasLength(final Path folder, final int bars) throws IOException {
+        final long prices = (long) bars * Double.BYTES;
+        final Path adjCloses = folder.resolve(ADJ_CLOSE);
+        return Files.size(folder.resolve(OPEN)) == prices && Files.size(folder.resolve(HIGH)) == prices
+                && Files.size(folder.resolve(LOW)) == prices && Files.size(folder.resolve(CLOSE)) == prices
+                && (!Files.exists(adjCloses) || Files.size(adjCloses) == prices)
+                && Files.size(folder.resolve(VOLUME)) == (long) bars * Long.BYTES
+                && Files.size(folder.resolve(COMMENT)) == (long) bars * Integer.BYTES;
+    }
+
+    /**
+     * @return the index of the first date on or after the given epoch day
+     */
+    static int lowerBound(final IntBuffer dates, final int epochDay) {
+        int low = 0;
+        int high = dates.limit();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (dates.get(mid) < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first date after the given epoch day
+     */
+    static int upperBound(final IntBuffer dates, final int epochDay) {
+        int low = 0;
+        int high = dates.limit();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (dates.get(mid) <= epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public boolean contains(final StockV1 stock) throws IOException {
+        return Files.exists(this.getFolder(this.getKey(stock.getInstrument())).resolve(DATE));
+    }
+
+    String getKey(final Instrument instrument) {
+        return instrument.getExchange().name() + "_" + instrument.code();
+    }
+
+    Path getFolder(final String key) {
+        return new File(this.storeLocation, key).toPath();
+    }
+}
@@ -0,0 +1,81 @@
+package com.leonarduk.finance.stockfeed.file;
+
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Optional;
+
+/**
+ * One-shot import of the csv files written by {@link FileBasedDataStore} into a
+ * {@link ColumnarDataStore}.
+ * <p>
+ * Usage: ColumnarStoreMigrator [csvFolder] [columnarFolder]
+ */
+public class ColumnarStoreMigrator {
+
+    public static final Logger log = LoggerFactory.getLogger(ColumnarStoreMigrator.class.getName());
+
+    private static final String CSV_SUFFIX = ".csv";
+
+    private final FileBasedDataStore source;
+    private final ColumnarDataStore target;
+    private final String sourceLocation;
+    private final String targetLocation;
+
+    public ColumnarStoreMigrator(final String sourceLocation, final String targetLocation) {
+        this.sourceLocation = sourceLocation;
+        this.targetLocation = targetLocation;
+        this.source = new FileBasedDataStore(sourceLocation);
+        this.target = new ColumnarDataStore(targetLocation);
+    }
+
+    /**
+     * @return the number of instruments migrated
+     */
+    public int migrate() throws IOException {
+        final File[] files = new File(this.sourceLocation).listFiles((dir, name) -> name.endsWith(CSV_SUFFIX));
+        if (files == null) {
+            throw new IOException(this.sourceLocation + " is not a folder");
+        }
+        final File targetFolder = new File(this.targetLocation);
+        if (!targetFolder.exists() && !targetFolder.mkdirs()) {
+            throw new IOException("Failed to create " + this.targetLocation);
+        }
+
+        int migrated = 0;
+        for (final File file : files) {
+            final String key = file.getName().substring(0, file.getName().length() - CSV_SUFFIX.length());
+            final int separator = key.indexOf('_');
+            if (separator < 0) {
+                ColumnarStoreMigrator.log.warn("Skipping " + file + " - expected Exchange_CODE.csv");
+                continue;
+            }
+
+            final Instrument instrument = Instrument.fromString(key.substring(separator + 1));
+            if (!this.source.getStock(instrument).getName().equals(file.getName())) {
+                ColumnarStoreMigrator.log.warn("Skipping " + file + " - maps to " + this.source.getStock(instrument));
+                continue;
+            }
+
+            final Optional<StockV1> stock = this.source.get(instrument, LocalDate.ofEpochDay(0), LocalDate.now());
+            if (stock.isPresent()) {
+                this.target.writeColumns(key, stock.get().getHistory());
+                migrated++;
+            }
+            this.source.release();
+        }
+        ColumnarStoreMigrator.log.info("Migrated " + migrated + " of " + files.length + " files");
+        return migrated;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final String from = args.length > 0 ? args[0] : "db";
+        final String to = args.length > 1 ? args[1] : "db-columnar";
+        new ColumnarStoreMigrator(from, to).migrate();
+    }
+}
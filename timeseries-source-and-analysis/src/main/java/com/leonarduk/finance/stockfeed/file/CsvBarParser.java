@@ -0,0 +1,434 @@
+package com.leonarduk.finance.stockfeed.file;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.utils.NumberUtils;
+
+/**
+ * Parses date,open,high,low,close,volume[,comment] rows straight from a char
+ * buffer into primitive columns.
+ * <p>
+ * ISO dates and plain decimals, which is what every store file holds, are
+ * decoded in place without creating Strings, BigDecimals or Dates. Anything
+ * else (other date formats, B/M/K suffixes, thousands separators, N/A) falls
+ * back to the {@link DateParser} and {@link NumberUtils}, one field at a time.
+ * Tabs are treated as separators. A comment equal to the previous row's reuses
+ * the same String.
+ * <p>
+ * Two things differ from the row-at-a-time reader this replaced: a blank line
+ * is skipped, where it used to end the file, so rows after it are read; and a
+ * missing or unparseable price is NaN, where it used to be null.
+ * <p>
+ * The buffers are kept between calls, so reuse a parser rather than creating
+ * one per file. Not thread-safe.
+ */
+public class CsvBarParser {
+
+	/**
+	 * Used for dates that are not yyyy-MM-dd
+	 */
+	@FunctionalInterface
+	public interface DateParser {
+		LocalDate parse(String field) throws IOException;
+	}
+
+	private static final int DAYS_0000_TO_1970 = 719528;
+
+	/**
+	 * Up to 18 digits fit in a long; longer numbers take the fallback path
+	 */
+	private static final int MAX_DIGITS = 18;
+
+	private static final double[] POWERS_OF_TEN = new double[MAX_DIGITS + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private final boolean skipWeekends;
+
+	private char[] buffer = new char[64 * 1024];
+
+	private int rows;
+
+	private int[] epochDays = new int[1024];
+
+	private double[] open = new double[1024];
+
+	private double[] high = new double[1024];
+
+	private double[] low = new double[1024];
+
+	private double[] close = new double[1024];
+
+	private long[] volume = new long[1024];
+
+	private String[] comments = new String[1024];
+
+	private long[] order = new long[0];
+
+	private String lastComment = "";
+
+	private int fromDay;
+
+	private int toDay;
+
+	private long fallbackCount;
+
+	public CsvBarParser() {
+		this(true);
+	}
+
+	/**
+	 * @param skipWeekends drop rows dated Saturday or Sunday
+	 */
+	public CsvBarParser(final boolean skipWeekends) {
+		this.skipWeekends = skipWeekends;
+	}
+
+	/**
+	 * Read every remaining row and return them as a series in date order. Where
+	 * a date appears twice the later row wins. Adjusted close is the close. A
+	 * missing price is NaN; a missing volume is 1, as the row-at-a-time parser
+	 * in {@link CsvStockFeed} had it.
+	 *
+	 * @param reader         positioned after any header; not closed
+	 * @param name           series name
+	 * @param defaultComment used for rows without a comment
+	 * @param dateParser     fallback for dates that are not ISO
+	 * @throws IOException if a date cannot be parsed
+	 */
+	public PrimitiveTimeSeries parse(final Reader reader, final String name, final String defaultComment,
+			final DateParser dateParser) throws IOException {
+		return this.parse(reader, name, defaultComment, dateParser, null, null);
+	}
+
+	/**
+	 * As {@link #parse(Reader, String, String, DateParser)}, keeping only rows
+	 * dated from fromDate to toDate inclusive. Other rows are dropped as soon as
+	 * their date is read.
+	 *
+	 * @param fromDate null for no lower bound
+	 * @param toDate   null for no upper bound
+	 */
+	public PrimitiveTimeSeries parse(final Reader reader, final String name, final String defaultComment,
+			final DateParser dateParser, final LocalDate fromDate, final LocalDate toDate) throws IOException {
+		final int length = this.readFully(reader);
+		return this.parse(this.buffer, 0, length, name, defaultComment, dateParser, fromDate, toDate);
+	}
+
+	/**
+	 * Parse the rows in chars[start, end), which should begin at the start of a
+	 * line.
+	 */
+	public PrimitiveTimeSeries parse(final char[] chars, final int start, final int end, final String name,
+			final String defaultComment, final DateParser dateParser, final LocalDate fromDate,
+			final LocalDate toDate) throws IOException {
+		this.rows = 0;
+		this.lastComment = defaultComment;
+		this.fromDay = fromDate == null ? Integer.MIN_VALUE : (int) fromDate.toEpochDay();
+		this.toDay = toDate == null ? Integer.MAX_VALUE : (int) toDate.toEpochDay();
+		int pos = start;
+		while (pos < end) {
+			int lineEnd = pos;
+			while (lineEnd < end && chars[lineEnd] != '\n') {
+				lineEnd++;
+			}
+			final int next = lineEnd + 1;
+			if (lineEnd > pos && chars[lineEnd - 1] == '\r') {
+				lineEnd--;
+			}
+			if (lineEnd > pos) {
+				this.parseLine(chars, pos, lineEnd, defaultComment, dateParser);
+			}
+			pos = next;
+		}
+		return this.toSeries(name);
+	}
+
+	private int readFully(final Reader reader) throws IOException {
+		int length = 0;
+		int read;
+		while ((read = reader.read(this.buffer, length, this.buffer.length - length)) != -1) {
+			length += read;
+			if (length == this.buffer.length) {
+				this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+			}
+		}
+		return length;
+	}
+
+	private void parseLine(final char[] chars, final int start, final int end, final String defaultComment,
+			final DateParser dateParser) throws IOException {
+		double openPrice = Double.NaN;
+		double highPrice = Double.NaN;
+		double lowPrice = Double.NaN;
+		double closePrice = Double.NaN;
+		long barVolume = 1;
+		String comment = defaultComment;
+		int epochDay = 0;
+
+		int fieldStart = start;
+		int column = 0;
+		while (fieldStart <= end && column < 7) {
+			int fieldEnd = fieldStart;
+			while (fieldEnd < end && chars[fieldEnd] != ',' && chars[fieldEnd] != '\t') {
+				fieldEnd++;
+			}
+			switch (column) {
+			case 0:
+				epochDay = this.parseEpochDay(chars, fieldStart, fieldEnd, dateParser);
+				if (epochDay < this.fromDay || epochDay > this.toDay
+						|| (this.skipWeekends && CsvBarParser.isWeekend(epochDay))) {
+					return;
+				}
+				break;
+			case 1:
+				openPrice = this.parseDouble(chars, fieldStart, fieldEnd);
+				break;
+			case 2:
+				highPrice = this.parseDouble(chars, fieldStart, fieldEnd);
+				break;
+			case 3:
+				lowPrice = this.parseDouble(chars, fieldStart, fieldEnd);
+				break;
+			case 4:
+				closePrice = this.parseDouble(chars, fieldStart, fieldEnd);
+				break;
+			case 5:
+				final double parsedVolume = this.parseDouble(chars, fieldStart, fieldEnd);
+				if (!Double.isNaN(parsedVolume)) {
+					barVolume = (long) parsedVolume;
+				}
+				break;
+			default:
+				if (fieldEnd > fieldStart) {
+					comment = this.comment(chars, fieldStart, fieldEnd);
+				}
+			}
+			column++;
+			fieldStart = fieldEnd + 1;
+		}
+
+		this.ensureCapacity(this.rows + 1);
+		final int i = this.rows++;
+		this.epochDays[i] = epochDay;
+		this.open[i] = openPrice;
+		this.high[i] = highPrice;
+		this.low[i] = lowPrice;
+		this.close[i] = closePrice;
+		this.volume[i] = barVolume;
+		this.comments[i] = comment;
+	}
+
+	private int parseEpochDay(final char[] chars, final int start, final int end, final DateParser dateParser)
+			throws IOException {
+		if (end - start == 10 && chars[start + 4] == '-' && chars[start + 7] == '-') {
+			final int year = CsvBarParser.digits(chars, start, 4);
+			final int month = CsvBarParser.digits(chars, start + 5, 2);
+			final int day = CsvBarParser.digits(chars, start + 8, 2);
+			if (year >= 0 && month >= 1 && month <= 12 && day >= 1
+					&& day <= CsvBarParser.lengthOfMonth(year, month)) {
+				return CsvBarParser.toEpochDay(year, month, day);
+			}
+		}
+		this.fallbackCount++;
+		final String field = new String(chars, start, end - start);
+		final LocalDate date;
+		try {
+			date = dateParser.parse(field);
+		} catch (final RuntimeException e) {
+			throw new IOException("Failed to parse date " + field, e);
+		}
+		if (date == null) {
+			throw new IOException("Failed to parse date " + field);
+		}
+		return (int) date.toEpochDay();
+	}
+
+	/**
+	 * @return the value, or -1 if any char is not a digit
+	 */
+	private static int digits(final char[] chars, final int start, final int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			final int digit = chars[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static boolean isLeapYear(final int year) {
+		return (year % 4 == 0) && ((year % 100 != 0) || (year % 400 == 0));
+	}
+
+	private static int lengthOfMonth(final int year, final int month) {
+		switch (month) {
+		case 2:
+			return CsvBarParser.isLeapYear(year) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * Same arithmetic as {@link LocalDate#toEpochDay()}, for years from 0
+	 */
+	static int toEpochDay(final int year, final int month, final int day) {
+		long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+		total += (367 * month - 362) / 12;
+		total += day - 1;
+		if (month > 2) {
+			total--;
+			if (!CsvBarParser.isLeapYear(year)) {
+				total--;
+			}
+		}
+		return (int) (total - DAYS_0000_TO_1970);
+	}
+
+	static boolean isWeekend(final int epochDay) {
+		// 1970-01-01 was a Thursday; 5 and 6 are Saturday and Sunday
+		final int dayOfWeek = Math.floorMod(epochDay + 3, 7);
+		return dayOfWeek >= 5;
+	}
+
+	/**
+	 * @return the value, or NaN if the field is empty, "-" or unparseable
+	 */
+	private double parseDouble(final char[] chars, final int start, final int end) {
+		int i = start;
+		final boolean negative = i < end && chars[i] == '-';
+		if (negative || (i < end && chars[i] == '+')) {
+			i++;
+		}
+		long mantissa = 0;
+		int digitCount = 0;
+		int scale = -1;
+		for (; i < end; i++) {
+			final char c = chars[i];
+			if (c >= '0' && c <= '9') {
+				if (++digitCount > MAX_DIGITS) {
+					return this.parseFallback(chars, start, end);
+				}
+				mantissa = mantissa * 10 + (c - '0');
+				if (scale >= 0) {
+					scale++;
+				}
+			} else if (c == '.' && scale < 0) {
+				scale = 0;
+			} else {
+				return this.parseFallback(chars, start, end);
+			}
+		}
+		if (digitCount == 0) {
+			return end == start || (end - start == 1 && chars[start] == '-') ? Double.NaN
+					: this.parseFallback(chars, start, end);
+		}
+		// Both operands are exact doubles, so the quotient is correctly rounded
+		final double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+		return negative ? -value : value;
+	}
+
+	private double parseFallback(final char[] chars, final int start, final int end) {
+		this.fallbackCount++;
+		final BigDecimal value = NumberUtils.getBigDecimal(new String(chars, start, end - start));
+		return value == null ? Double.NaN : value.doubleValue();
+	}
+
+	private String comment(final char[] chars, final int start, final int end) {
+		final String previous = this.lastComment;
+		final int length = end - start;
+		if (previous.length() == length) {
+			int i = 0;
+			while (i < length && previous.charAt(i) == chars[start + i]) {
+				i++;
+			}
+			if (i == length) {
+				return previous;
+			}
+		}
+		this.lastComment = new String(chars, start, length);
+		return this.lastComment;
+	}
+
+	private void ensureCapacity(final int required) {
+		if (required <= this.epochDays.length) {
+			return;
+		}
+		final int capacity = Math.max(required, this.epochDays.length * 2);
+		this.epochDays = Arrays.copyOf(this.epochDays, capacity);
+		this.open = Arrays.copyOf(this.open, capacity);
+		this.high = Arrays.copyOf(this.high, capacity);
+		this.low = Arrays.copyOf(this.low, capacity);
+		this.close = Arrays.copyOf(this.close, capacity);
+		this.volume = Arrays.copyOf(this.volume, capacity);
+		this.comments = Arrays.copyOf(this.comments, capacity);
+	}
+
+	/**
+	 * Rows are usually newest first, sometimes oldest first, and out of order
+	 * only where a delta log was appended. Only the last case needs a sort.
+	 */
+	private PrimitiveTimeSeries toSeries(final String name) {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries(name, this.rows);
+		boolean ascending = true;
+		boolean descending = true;
+		for (int i = 1; i < this.rows && (ascending || descending); i++) {
+			ascending &= this.epochDays[i - 1] <= this.epochDays[i];
+			descending &= this.epochDays[i - 1] > this.epochDays[i];
+		}
+		if (ascending) {
+			for (int i = 0; i < this.rows; i++) {
+				this.addRow(series, i);
+			}
+		} else if (descending) {
+			for (int i = this.rows - 1; i >= 0; i--) {
+				this.addRow(series, i);
+			}
+		} else {
+			// Sort on date then row number, so later rows still win
+			if (this.order.length < this.rows) {
+				this.order = new long[this.epochDays.length];
+			}
+			for (int i = 0; i < this.rows; i++) {
+				this.order[i] = ((long) this.epochDays[i] << 32) | i;
+			}
+			Arrays.sort(this.order, 0, this.rows);
+			for (int i = 0; i < this.rows; i++) {
+				this.addRow(series, (int) this.order[i]);
+			}
+		}
+		Arrays.fill(this.comments, 0, this.rows, null);
+		return series;
+	}
+
+	private void addRow(final PrimitiveTimeSeries series, final int i) {
+		series.add(this.epochDays[i], this.open[i], this.low[i], this.high[i], this.close[i], this.close[i],
+				this.volume[i], this.comments[i]);
+	}
+
+	/**
+	 * @return fields so far that were not ISO dates or plain decimals
+	 */
+	public long getFallbackCount() {
+		return this.fallbackCount;
+	}
+
+}
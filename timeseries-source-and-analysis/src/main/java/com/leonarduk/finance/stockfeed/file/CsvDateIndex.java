@@ -0,0 +1,363 @@
+package com.leonarduk.finance.stockfeed.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.leonarduk.finance.stockfeed.file.ChunkedCsvLoader.ByteRange;
+
+/**
+ * Sparse index from dates to byte offsets in a store csv.
+ * <p>
+ * The rows after the header are grouped into blocks of about
+ * {@link #BLOCK_BYTES}; for each block the index holds its offset and the
+ * earliest and latest dates in it. A range read then only touches the blocks
+ * that can hold the dates asked for. Min and max rather than first and last
+ * dates, because older files are newest first, newer ones oldest first and
+ * appends can follow either.
+ * <p>
+ * The index is saved to a sidecar Exchange_CODE.csv.idx along with the size
+ * and modification time the csv had when it was indexed, and a checksum of the
+ * first and last blocks of the indexed part. If the csv still has that size and
+ * time the index is used as it is. Otherwise, as store files only grow by
+ * appending, an index whose checksum still matches is extended from where it
+ * stopped; one that does not is rebuilt. Not thread-safe; callers hold the
+ * file's lock.
+ */
+class CsvDateIndex {
+
+    static final String SUFFIX = ".idx";
+
+    static final int BLOCK_BYTES = 4096;
+
+    private static final int MAGIC = 0x43534958;
+
+    private static final int VERSION = 2;
+
+    /**
+     * Dates in the block that are not ISO are indexed as covering everything
+     */
+    private static final int UNKNOWN_MIN = Integer.MIN_VALUE;
+
+    private static final int UNKNOWN_MAX = Integer.MAX_VALUE;
+
+    private long indexedLength;
+
+    /**
+     * Checksum of the first and last blocks before {@link #indexedLength}
+     */
+    private long prefixChecksum;
+
+    private long csvLength;
+
+    private long csvModified;
+
+    private int blocks;
+
+    private long[] offsets = new long[16];
+
+    private int[] minDays = new int[16];
+
+    private int[] maxDays = new int[16];
+
+    static File getIndexFile(final File csv) {
+        return new File(csv.getAbsolutePath() + SUFFIX);
+    }
+
+    /**
+     * Read the sidecar, if it is usable, and bring it up to date with the csv,
+     * saving it again if it changed.
+     */
+    static CsvDateIndex load(final File csv) throws IOException {
+        final File sidecar = getIndexFile(csv);
+        CsvDateIndex index = null;
+        if (sidecar.exists()) {
+            index = read(sidecar);
+        }
+        if (index != null && index.isCurrent(csv)) {
+            return index;
+        }
+        try (FileChannel channel = FileChannel.open(csv.toPath(), StandardOpenOption.READ)) {
+            if (index != null && !index.isPrefixOf(channel)) {
+                index = null;
+            }
+            if (index == null) {
+                index = new CsvDateIndex();
+            }
+            index.extend(channel);
+            index.prefixChecksum = index.checksum(channel);
+            index.csvLength = csv.length();
+            index.csvModified = csv.lastModified();
+            index.write(sidecar);
+        }
+        return index;
+    }
+
+    /**
+     * @return true if the csv has not changed since it was indexed
+     */
+    boolean isCurrent(final File csv) {
+        return csv.length() == this.csvLength && csv.lastModified() == this.csvModified;
+    }
+
+    static void delete(final File csv) throws IOException {
+        Files.deleteIfExists(getIndexFile(csv).toPath());
+    }
+
+    /**
+     * The file must still be at least as long and, as a cheap check that it was
+     * not rewritten, have the same first and last blocks where the index
+     * stopped.
+     */
+    private boolean isPrefixOf(final FileChannel channel) throws IOException {
+        if (this.indexedLength == 0) {
+            return true;
+        }
+        if (channel.size() < this.indexedLength) {
+            return false;
+        }
+        return this.checksum(channel) == this.prefixChecksum;
+    }
+
+    private long checksum(final FileChannel channel) throws IOException {
+        final CRC32 crc = new CRC32();
+        final long head = Math.min(BLOCK_BYTES, this.indexedLength);
+        final long tail = Math.max(head, this.indexedLength - BLOCK_BYTES);
+        update(crc, channel, 0, head);
+        update(crc, channel, tail, this.indexedLength);
+        return crc.getValue();
+    }
+
+    private static void update(final CRC32 crc, final FileChannel channel, final long from, final long to)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        long position = from;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read <= 0) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+            position += read;
+        }
+        buffer.flip();
+        crc.update(buffer);
+    }
+
+    /**
+     * Index the complete lines after {@link #indexedLength}.
+     *
+     * @return true if anything was added
+     */
+    boolean extend(final FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size <= this.indexedLength) {
+            return false;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        final byte[] head = new byte[11];
+        int headLength = 0;
+        boolean header = this.indexedLength == 0;
+        long lineStart = this.indexedLength;
+        long position = this.indexedLength;
+        boolean added = false;
+        while (position < size) {
+            buffer.clear();
+            final int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                final byte b = buffer.get(i);
+                if (b != '\n') {
+                    if (headLength < head.length) {
+                        head[headLength++] = b;
+                    }
+                    continue;
+                }
+                final long next = position + i + 1;
+                if (header) {
+                    header = false;
+                } else if (next - lineStart > 1) {
+                    this.addRow(lineStart, CsvDateIndex.epochDay(head, headLength));
+                    added = true;
+                }
+                this.indexedLength = next;
+                lineStart = next;
+                headLength = 0;
+            }
+            position += read;
+        }
+        return added;
+    }
+
+    private void addRow(final long offset, final int epochDay) {
+        final int last = this.blocks - 1;
+        if (last < 0 || offset - this.offsets[last] >= BLOCK_BYTES) {
+            if (this.blocks == this.offsets.length) {
+                this.offsets = Arrays.copyOf(this.offsets, this.blocks * 2);
+                this.minDays = Arrays.copyOf(this.minDays, this.blocks * 2);
+                this.maxDays = Arrays.copyOf(this.maxDays, this.blocks * 2);
+            }
+            this.offsets[this.blocks] = offset;
+            this.minDays[this.blocks] = epochDay == UNKNOWN_MIN ? UNKNOWN_MIN : epochDay;
+            this.maxDays[this.blocks] = epochDay == UNKNOWN_MIN ? UNKNOWN_MAX : epochDay;
+            this.blocks++;
+            return;
+        }
+        if (epochDay == UNKNOWN_MIN) {
+            this.minDays[last] = UNKNOWN_MIN;
+            this.maxDays[last] = UNKNOWN_MAX;
+        } else {
+            this.minDays[last] = Math.min(this.minDays[last], epochDay);
+            this.maxDays[last] = Math.max(this.maxDays[last], epochDay);
+        }
+    }
+
+    /**
+     * @return the epoch day of a yyyy-MM-dd date, or {@link #UNKNOWN_MIN}
+     */
+    private static int epochDay(final byte[] head, final int length) {
+        if (length < 10 || head[4] != '-' || head[7] != '-'
+                || (length > 10 && head[10] != ',' && head[10] != '\t' && head[10] != '\r')) {
+            return UNKNOWN_MIN;
+        }
+        final int year = digits(head, 0, 4);
+        final int month = digits(head, 5, 2);
+        final int day = digits(head, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return UNKNOWN_MIN;
+        }
+        return CsvBarParser.toEpochDay(year, month, day);
+    }
+
+    private static int digits(final byte[] bytes, final int start, final int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            final int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @param fileLength current length of the csv; anything past the indexed
+     *                   part is always included
+     * @return the byte ranges to read for rows dated from fromDate to toDate,
+     *         adjacent blocks joined
+     */
+    List<ByteRange> getRanges(final LocalDate fromDate, final LocalDate toDate, final long fileLength) {
+        final long fromDay = fromDate == null ? Long.MIN_VALUE : fromDate.toEpochDay();
+        final long toDay = toDate == null ? Long.MAX_VALUE : toDate.toEpochDay();
+        final List<ByteRange> ranges = new ArrayList<>();
+        long start = -1;
+        long end = -1;
+        for (int i = 0; i < this.blocks; i++) {
+            final long blockEnd = i + 1 < this.blocks ? this.offsets[i + 1] : this.indexedLength;
+            if (this.maxDays[i] < fromDay || this.minDays[i] > toDay) {
+                continue;
+            }
+            if (start >= 0 && end == this.offsets[i]) {
+                end = blockEnd;
+            } else {
+                if (start >= 0) {
+                    ranges.add(new ByteRange(start, end));
+                }
+                start = this.offsets[i];
+                end = blockEnd;
+            }
+        }
+        if (fileLength > this.indexedLength && this.indexedLength > 0) {
+            if (start >= 0 && end == this.indexedLength) {
+                end = fileLength;
+            } else {
+                if (start >= 0) {
+                    ranges.add(new ByteRange(start, end));
+                }
+                start = this.indexedLength;
+                end = fileLength;
+            }
+        }
+        if (start >= 0) {
+            ranges.add(new ByteRange(start, end));
+        }
+        return ranges;
+    }
+
+    long getIndexedLength() {
+        return this.indexedLength;
+    }
+
+    int getBlockCount() {
+        return this.blocks;
+    }
+
+    private static CsvDateIndex read(final File sidecar) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            final CsvDateIndex index = new CsvDateIndex();
+            index.indexedLength = in.readLong();
+            index.prefixChecksum = in.readLong();
+            index.csvLength = in.readLong();
+            index.csvModified = in.readLong();
+            final int blocks = in.readInt();
+            index.offsets = new long[Math.max(blocks, 16)];
+            index.minDays = new int[index.offsets.length];
+            index.maxDays = new int[index.offsets.length];
+            for (int i = 0; i < blocks; i++) {
+                index.offsets[i] = in.readLong();
+                index.minDays[i] = in.readInt();
+                index.maxDays[i] = in.readInt();
+            }
+            index.blocks = blocks;
+            return index;
+        } catch (final IOException e) {
+            FileBasedDataStore.log.warn("Ignoring unreadable index " + sidecar + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(final File sidecar) throws IOException {
+        final File temp = new File(sidecar.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(this.indexedLength);
+            out.writeLong(this.prefixChecksum);
+            out.writeLong(this.csvLength);
+            out.writeLong(this.csvModified);
+            out.writeInt(this.blocks);
+            for (int i = 0; i < this.blocks; i++) {
+                out.writeLong(this.offsets[i]);
+                out.writeInt(this.minDays[i]);
+                out.writeInt(this.maxDays[i]);
+            }
+        }
+        Files.move(temp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String toString() {
+        return "CsvDateIndex [blocks=" + this.blocks + ", indexedLength=" + this.indexedLength + "]";
+    }
+}
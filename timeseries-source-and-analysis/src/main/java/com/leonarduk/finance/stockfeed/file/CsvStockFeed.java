@@ -5,12 +5,11 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.text.ParseException;
-import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,6 +21,7 @@ import org.ta4j.core.Bar;
 import com.leonarduk.finance.stockfeed.AbstractStockFeed;
 import com.leonarduk.finance.stockfeed.Instrument;
 import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
 import com.leonarduk.finance.utils.DateUtils;
 import com.leonarduk.finance.utils.NumberUtils;
@@ -52,6 +52,11 @@ public abstract class CsvStockFeed extends AbstractStockFeed {
 
 	public static final Logger log = LoggerFactory.getLogger(CsvStockFeed.class.getName());
 
+	/**
+	 * Parsers keep their buffers, so share one per thread
+	 */
+	private static final ThreadLocal<CsvBarParser> PARSERS = ThreadLocal.withInitial(CsvBarParser::new);
+
 	protected static String formatDate(final DateFormat formatter, final Date date) {
 		synchronized (formatter) {
 			return formatter.format(date);
@@ -81,26 +86,27 @@ public abstract class CsvStockFeed extends AbstractStockFeed {
 		this.setStartDate(DateUtils.convertToDateViaInstant(fromDate));
 		this.setEndDate(DateUtils.convertToDateViaInstant(toDate));
 
-		final List<Bar> quotes = new LinkedList<>();
+		final PrimitiveTimeSeries series;
 		try {
-			while (this.next()) {
-				ExtendedHistoricalQuote asHistoricalQuote = this.asHistoricalQuote();
-				if (asHistoricalQuote.getDate().getDayOfWeek() != DayOfWeek.SATURDAY
-						&& asHistoricalQuote.getDate().getDayOfWeek() != DayOfWeek.SUNDAY) {
-					quotes.add(asHistoricalQuote);
-				}
+			if (this.reader == null) {
+				this.reader = this.openReader();
 			}
-
-			Collections.sort(quotes, (o1, o2) -> {
-				return o2.getEndTime().compareTo(o1.getEndTime());
-			});
-
+			series = CsvStockFeed.PARSERS.get().parse(this.reader, instrument.code(), this.getComment(),
+					this::parseLocalDate, fromDate, toDate);
 		} catch (final IOException e) {
 			CsvStockFeed.log.warn("Failed:" + this.toString() + " : " + e.getMessage());
 			return Optional.empty();
+		} finally {
+			this.release();
 		}
 
-		return Optional.of(AbstractStockFeed.createStock(instrument, quotes));
+		return Optional.of(AbstractStockFeed.createStock(instrument, CsvStockFeed.newestFirst(series)));
+	}
+
+	protected static List<Bar> newestFirst(final PrimitiveTimeSeries series) {
+		final List<Bar> quotes = series.toBarList();
+		Collections.reverse(quotes);
+		return quotes;
 	}
 
 	@Override
@@ -239,6 +245,14 @@ public abstract class CsvStockFeed extends AbstractStockFeed {
 		return DateUtils.parseDate(fieldValue);
 	}
 
+	protected LocalDate parseLocalDate(final String fieldValue) throws IOException {
+		try {
+			return this.parseDate(fieldValue).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+		} catch (final ParseException | RuntimeException e) {
+			throw new IOException("Failed to parse date " + fieldValue, e);
+		}
+	}
+
 	protected boolean parseReader(final BufferedReader reader2) throws IOException {
 		try {
 			String line = reader2.readLine();
@@ -3,8 +3,10 @@ package com.leonarduk.finance.stockfeed.file;
 import com.leonarduk.finance.stockfeed.DataStore;
 import com.leonarduk.finance.stockfeed.Instrument;
 import com.leonarduk.finance.stockfeed.Source;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
 import com.leonarduk.finance.utils.FileUtils;
+import com.leonarduk.finance.utils.StringUtils;
 import com.leonarduk.finance.utils.TimeseriesUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,40 +14,423 @@ import org.ta4j.core.Bar;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * Stores each instrument as Exchange_CODE.csv.
+ * <p>
+ * Writes are append-only: bars newer than the last persisted date are appended
+ * to the csv, which is kept oldest first. Earlier dates that are missing
+ * (back-fills) and stored dates whose prices or volume have changed
+ * (corrections) go to a sidecar Exchange_CODE.csv.delta log. A delta row
+ * supersedes any earlier row for its date, both on read and when the log grows
+ * past {@link #COMPACTION_THRESHOLD} rows and is merged back into the csv on a
+ * background thread.
+ * <p>
+ * Reads go through a {@link CsvDateIndex} kept in Exchange_CODE.csv.idx, so a
+ * short date range reads a few blocks of the csv rather than all of it.
+ */
 public class FileBasedDataStore extends CsvStockFeed implements DataStore {
 
     public static final Logger log	= LoggerFactory
             .getLogger(FileBasedDataStore.class.getName());
 
+    public static final String DELTA_SUFFIX = ".delta";
+
+    static final String HEADER = "date,open,high,low,close,volume\n";
+
+    static final int COMPACTION_THRESHOLD = 250;
+
+    /**
+     * What is persisted for each csv, keyed by path and shared by all stores
+     * pointing at the same file. Each entry is only trusted while the csv and
+     * delta log are the size and age it last saw.
+     */
+    private static final Map<String, Persisted> PERSISTED = new ConcurrentHashMap<>();
+
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "FileBasedDataStore-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Reads of at least this many bytes are split and parsed on the common pool
+     */
+    public static final long DEFAULT_CHUNKED_LOAD_BYTES = 16L << 20;
+
+    private static final Map<String, CsvDateIndex> INDEXES = new ConcurrentHashMap<>();
+
     private final String storeLocation;
 
+    private final ChunkedCsvLoader loader;
+
     public FileBasedDataStore(String storeLocation) {
+        this(storeLocation, DEFAULT_CHUNKED_LOAD_BYTES);
+    }
+
+    public FileBasedDataStore(String storeLocation, long chunkedLoadBytes) {
         this.storeLocation = storeLocation;
+        this.loader = new ChunkedCsvLoader(ForkJoinPool.commonPool(), ChunkedCsvLoader.DEFAULT_CHUNK_BYTES,
+                chunkedLoadBytes);
     }
 
     @Override
     public void storeSeries(final StockV1 stock) throws IOException {
+        this.writeSeries(stock);
+    }
+
+    /**
+     * @return the number of bars written: new, back-filled or corrected
+     */
+    @Override
+    public int writeSeries(final StockV1 stock) throws IOException {
 
         final File file = this.getStock(stock);
-        FileBasedDataStore.log.info("Save stock to " + file.getAbsolutePath());
+        final String key = file.getAbsolutePath();
         final List<Bar> series = stock.getHistory();
 
-        /**
-         * Building header
-         */
-        final StringBuilder sb = TimeseriesUtils.seriesToCsv(series);
-        FileUtils.writeFile(file.getAbsolutePath(), sb);
+        synchronized (lockFor(key)) {
+            if (!file.exists()) {
+                FileBasedDataStore.log.info("Save stock to " + file.getAbsolutePath());
+                /**
+                 * Building header
+                 */
+                final List<Bar> sorted = TimeseriesUtils.sortQuoteList(new ArrayList<>(series));
+                final StringBuilder sb = TimeseriesUtils.seriesToCsv(sorted);
+                FileUtils.writeFile(file.getAbsolutePath(), sb);
+                removeIndex(file);
+                final Persisted persisted = new Persisted(true);
+                sorted.forEach(bar -> persisted.days.set(toEpochDay(bar)));
+                persisted.recordSizes(file);
+                PERSISTED.put(key, persisted);
+                return persisted.days.cardinality();
+            }
+
+            final Persisted persisted = this.getPersisted(file);
+            final BitSet days = persisted.days;
+            final int lastPersisted = days.length() - 1;
+
+            final TreeMap<Integer, Bar> newBars = new TreeMap<>();
+            final TreeMap<Integer, Bar> backFills = new TreeMap<>();
+            final TreeMap<Integer, Bar> stored = new TreeMap<>();
+            for (final Bar bar : series) {
+                final int day = toEpochDay(bar);
+                if (days.get(day)) {
+                    stored.put(day, bar);
+                } else {
+                    (day > lastPersisted ? newBars : backFills).putIfAbsent(day, bar);
+                }
+            }
+            final int corrections = this.addCorrections(stock, file, stored, backFills);
+
+            if (!newBars.isEmpty()) {
+                if (!persisted.oldestFirst) {
+                    sortOldestFirst(file);
+                    persisted.oldestFirst = true;
+                }
+                appendRows(file.toPath(), newBars.values());
+                newBars.keySet().forEach(days::set);
+                FileBasedDataStore.log.info("Appended " + newBars.size() + " bars to " + file.getAbsolutePath());
+            }
+            if (!backFills.isEmpty()) {
+                appendRows(getDeltaFile(file).toPath(), backFills.values());
+                backFills.keySet().forEach(days::set);
+                persisted.deltaRows += backFills.size();
+                FileBasedDataStore.log.info("Logged " + (backFills.size() - corrections) + " back-filled and "
+                        + corrections + " corrected bars for " + file.getAbsolutePath());
+            }
+            persisted.recordSizes(file);
+            if (persisted.deltaRows > COMPACTION_THRESHOLD) {
+                COMPACTOR.submit(() -> {
+                    try {
+                        compact(file);
+                    } catch (final IOException e) {
+                        FileBasedDataStore.log.warn("Failed to compact " + file + ": " + e.getMessage());
+                    }
+                });
+            }
+            return newBars.size() + backFills.size();
+        }
+    }
+
+    /**
+     * Move bars for stored dates whose prices or volume differ from what is
+     * stored into the back-fills, so they are logged as corrections
+     *
+     * @return the number of corrections
+     */
+    private int addCorrections(final StockV1 stock, final File file, final TreeMap<Integer, Bar> stored,
+                               final TreeMap<Integer, Bar> backFills) throws IOException {
+        if (stored.isEmpty()) {
+            return 0;
+        }
+        final PrimitiveTimeSeries current = this.load(stock.getInstrument(), file,
+                LocalDate.ofEpochDay(stored.firstKey()), LocalDate.ofEpochDay(stored.lastKey()));
+        int corrections = 0;
+        for (int i = 0; i < current.getBarCount(); i++) {
+            final Bar bar = stored.get(current.getEpochDay(i));
+            if (bar != null && !values(bar).equals(values(current.getBar(i)))) {
+                backFills.put(current.getEpochDay(i), bar);
+                corrections++;
+            }
+        }
+        return corrections;
+    }
+
+    /**
+     * @return the prices and volume as they are written to the csv
+     */
+    private static String values(final Bar bar) {
+        final StringBuilder sb = new StringBuilder();
+        StringUtils.addValue(sb, bar.getOpenPrice());
+        StringUtils.addValue(sb, bar.getMaxPrice());
+        StringUtils.addValue(sb, bar.getMinPrice());
+        StringUtils.addValue(sb, bar.getClosePrice());
+        StringUtils.addValue(sb, bar.getVolume());
+        return sb.toString();
+    }
+
+    private static void appendRows(final Path path, final Iterable<Bar> bars) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (final Bar bar : bars) {
+            TimeseriesUtils.appendCsvRow(sb, bar);
+        }
+        Files.write(path, sb.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Merge the delta log back into the csv, sorting rows by date. Where a date
+     * appears twice the later row wins, so delta rows replace csv rows.
+     */
+    public static void compact(final File file) throws IOException {
+        final File delta = getDeltaFile(file);
+        synchronized (lockFor(file.getAbsolutePath())) {
+            if (!delta.exists() || !file.exists()) {
+                return;
+            }
+            rewrite(file, Files.readAllLines(delta.toPath(), StandardCharsets.UTF_8));
+            Files.delete(delta.toPath());
+            PERSISTED.remove(file.getAbsolutePath());
+            FileBasedDataStore.log.info("Compacted " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Rewrite a newest first csv oldest first, so rows can be appended to it
+     */
+    private static void sortOldestFirst(final File file) throws IOException {
+        rewrite(file, new ArrayList<>());
+        FileBasedDataStore.log.info("Sorted " + file.getAbsolutePath() + " oldest first");
+    }
+
+    /**
+     * Replace the csv with its rows and then the extra rows, one per date,
+     * oldest first. Where a date appears twice the later row wins.
+     */
+    private static void rewrite(final File file, final List<String> extraRows) throws IOException {
+        final List<String> csvLines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        final TreeMap<String, String> rows = new TreeMap<>();
+        csvLines.stream().skip(1).filter(line -> !line.isEmpty()).forEach(line -> rows.put(dateOf(line), line));
+        extraRows.stream().filter(line -> !line.isEmpty()).forEach(line -> rows.put(dateOf(line), line));
+
+        final StringBuilder sb = new StringBuilder(csvLines.isEmpty() ? HEADER : csvLines.get(0) + "\n");
+        rows.values().forEach(line -> sb.append(line).append('\n'));
+
+        final Path temp = new File(file.getAbsolutePath() + ".tmp").toPath();
+        Files.write(temp, sb.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        removeIndex(file);
+    }
 
+    /**
+     * Compact every delta log in the store
+     */
+    public void compact() throws IOException {
+        final File[] deltas = new File(this.storeLocation).listFiles((dir, name) -> name.endsWith(DELTA_SUFFIX));
+        if (deltas != null) {
+            for (final File delta : deltas) {
+                final String name = delta.getAbsolutePath();
+                compact(new File(name.substring(0, name.length() - DELTA_SUFFIX.length())));
+            }
+        }
+    }
+
+    private Persisted getPersisted(final File file) throws IOException {
+        final String key = file.getAbsolutePath();
+        Persisted persisted = PERSISTED.get(key);
+        if (persisted == null || !persisted.isCurrent(file)) {
+            persisted = new Persisted(true);
+            readDays(file, persisted, true);
+            final File delta = getDeltaFile(file);
+            if (delta.exists()) {
+                persisted.deltaRows = readDays(delta, persisted, false);
+            }
+            persisted.recordSizes(file);
+            PERSISTED.put(key, persisted);
+        }
+        return persisted;
+    }
+
+    /**
+     * Add the dates in a csv or delta log to those persisted, noting whether a
+     * csv is oldest first
+     *
+     * @return the number of rows
+     */
+    private static int readDays(final File file, final Persisted persisted, final boolean isCsv)
+            throws IOException {
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        int rows = 0;
+        int previous = Integer.MIN_VALUE;
+        for (int i = isCsv ? 1 : 0; i < lines.size(); i++) {
+            final String line = lines.get(i);
+            if (!line.isEmpty()) {
+                final int day = (int) LocalDate.parse(dateOf(line)).toEpochDay();
+                persisted.days.set(day);
+                if (isCsv && day <= previous) {
+                    persisted.oldestFirst = false;
+                }
+                previous = day;
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private static String dateOf(final String line) {
+        final int comma = line.indexOf(',');
+        return comma < 0 ? line : line.substring(0, comma);
+    }
+
+    private static int toEpochDay(final Bar bar) {
+        return (int) bar.getEndTime().toLocalDate().toEpochDay();
+    }
+
+    private static Object lockFor(final String key) {
+        return LOCKS.computeIfAbsent(key, k -> new Object());
+    }
+
+    static File getDeltaFile(final File file) {
+        return new File(file.getAbsolutePath() + DELTA_SUFFIX);
     }
 
     public File getStock(final Instrument instrument) {
         return new File(this.storeLocation, this.getQueryName(instrument));
     }
 
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
+    @Override
+    public Optional<StockV1> get(final Instrument instrument, final LocalDate fromDate, final LocalDate toDate)
+            throws IOException {
+        final File file = this.getStock(instrument);
+        synchronized (lockFor(file.getAbsolutePath())) {
+            if (!file.exists()) {
+                FileBasedDataStore.log.warn(file.getAbsolutePath() + " not found");
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(createStock(instrument,
+                        newestFirst(this.load(instrument, file, fromDate, toDate))));
+            } catch (final IOException e) {
+                FileBasedDataStore.log.warn("Failed to load " + file.getAbsolutePath() + " : " + e.getMessage());
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * Read only the blocks of the csv the index says can hold the dates, then
+     * the delta log. Everything it needs is passed in, not kept in the parse
+     * fields of CsvStockFeed, so loads of different files can run at once.
+     */
+    private PrimitiveTimeSeries load(final Instrument instrument, final File file, final LocalDate fromDate,
+                                     final LocalDate toDate) throws IOException {
+        final List<ChunkedCsvLoader.ByteRange> ranges = getIndex(file).getRanges(fromDate, toDate, file.length());
+        final String defaultComment = this.getClass().getName();
+        final List<PrimitiveTimeSeries> parts = new ArrayList<>();
+        parts.add(this.loader.load(file.toPath(), ranges, instrument.code(), defaultComment,
+                this::parseLocalDate, fromDate, toDate));
+        final File delta = getDeltaFile(file);
+        if (delta.exists()) {
+            parts.add(this.loader.load(delta.toPath(), false, instrument.code(), defaultComment,
+                    this::parseLocalDate, fromDate, toDate));
+        }
+        return ChunkedCsvLoader.merge(instrument.code(), parts);
+    }
+
+    private static CsvDateIndex getIndex(final File file) throws IOException {
+        final String key = file.getAbsolutePath();
+        CsvDateIndex index = INDEXES.get(key);
+        if (index == null || !index.isCurrent(file)) {
+            index = CsvDateIndex.load(file);
+            INDEXES.put(key, index);
+        }
+        return index;
+    }
+
+    private static void removeIndex(final File file) throws IOException {
+        INDEXES.remove(file.getAbsolutePath());
+        CsvDateIndex.delete(file);
+    }
+
+    /**
+     * @return bytes of csv this store has parsed
+     */
+    public long getBytesRead() {
+        return this.loader.getBytesRead();
+    }
+
+    /**
+     * Reads the files in parallel; each read only locks its own file.
+     */
+    @Override
+    public Map<Instrument, StockV1> getAll(final Collection<Instrument> instruments, final LocalDate fromDate,
+                                           final LocalDate toDate) throws IOException {
+        final Map<Instrument, StockV1> results = new ConcurrentHashMap<>();
+        try {
+            instruments.parallelStream().distinct().forEach(instrument -> {
+                try {
+                    this.get(instrument, fromDate, toDate).ifPresent(stock -> results.put(instrument, stock));
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return results;
+    }
+
     @Override
     public boolean contains(StockV1 stock) throws IOException {
         return this.getStock(stock).exists();
@@ -70,8 +455,13 @@ public class FileBasedDataStore extends CsvStockFeed implements DataStore {
             throw new IOException(file.getAbsolutePath() + " not found");
         }
 
-        final FileReader in = new FileReader(file);
-        final BufferedReader br = new BufferedReader(in);
+        // Back-filled rows not yet compacted are read after the main file
+        InputStream in = new FileInputStream(file);
+        final File delta = getDeltaFile(file);
+        if (delta.exists()) {
+            in = new SequenceInputStream(in, new FileInputStream(delta));
+        }
+        final BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
 
         // Skip first line that contains column names
         br.readLine();
@@ -96,5 +486,43 @@ public class FileBasedDataStore extends CsvStockFeed implements DataStore {
                 && store.canRead();
     }
 
+    /**
+     * The dates persisted for one csv, and the size and age of the csv and delta
+     * log when they were read, so a file replaced behind the store's back is
+     * read again
+     */
+    private static final class Persisted {
+
+        private final BitSet days = new BitSet();
+
+        private boolean oldestFirst;
+
+        private int deltaRows;
 
+        private long csvLength;
+
+        private long csvModified;
+
+        private long deltaLength;
+
+        private long deltaModified;
+
+        private Persisted(final boolean oldestFirst) {
+            this.oldestFirst = oldestFirst;
+        }
+
+        private void recordSizes(final File file) {
+            final File delta = getDeltaFile(file);
+            this.csvLength = file.length();
+            this.csvModified = file.lastModified();
+            this.deltaLength = delta.length();
+            this.deltaModified = delta.lastModified();
+        }
+
+        private boolean isCurrent(final File file) {
+            final File delta = getDeltaFile(file);
+            return this.csvLength == file.length() && this.csvModified == file.lastModified()
+                    && this.deltaLength == delta.length() && this.deltaModified == delta.lastModified();
+        }
+    }
 }
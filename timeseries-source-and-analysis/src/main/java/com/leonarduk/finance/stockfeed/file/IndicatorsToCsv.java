@@ -23,85 +23,202 @@
  */
 package com.leonarduk.finance.stockfeed.file;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Collection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.ta4j.core.TimeSeries;
-import org.ta4j.core.indicators.EMAIndicator;
-import org.ta4j.core.indicators.PPOIndicator;
-import org.ta4j.core.indicators.ROCIndicator;
-import org.ta4j.core.indicators.RSIIndicator;
-import org.ta4j.core.indicators.SMAIndicator;
-import org.ta4j.core.indicators.WilliamsRIndicator;
-import org.ta4j.core.indicators.helpers.ClosePriceIndicator;
-import org.ta4j.core.indicators.helpers.PriceVariationIndicator;
-import org.ta4j.core.indicators.helpers.TypicalPriceIndicator;
-import org.ta4j.core.indicators.statistics.StandardDeviationIndicator;
-
-import com.leonarduk.finance.utils.FileUtils;
-import com.leonarduk.finance.utils.StringUtils;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.strategies.IndicatorKernels;
 
 /**
  * This class builds a CSV file containing values from indicators.
+ * <p>
+ * Each indicator is computed for the whole series at once by
+ * {@link IndicatorKernels}, then the rows are formatted into a reused buffer
+ * and written to a channel as they are made, rather than built up as one
+ * string. Values are written to two decimal places, rounding half even, as the
+ * DecimalFormat the export used to use does.
  */
 public class IndicatorsToCsv {
 
+	public static final Logger log = LoggerFactory.getLogger(IndicatorsToCsv.class.getName());
+
+	public static final String HEADER = "timestamp,close,typical,variation,sma8,sma20,ema8,ema20,ppo,roc,rsi,williamsr,atr,sd\n";
+
+	public static final String SUFFIX = "_indicators.csv";
+
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	/**
+	 * Values below this are rounded in double arithmetic, with any near a tie
+	 * rounded as BigDecimals like all larger ones
+	 */
+	private static final double FAST_LIMIT = 1e7;
+
 	public static void exportIndicatorsToCsv(final TimeSeries series) {
-		final String fileName = "target/" + series.getName() + "_indicators.csv";
-		/**
-		 * Creating indicators
-		 */
-		// Close price
-		final ClosePriceIndicator closePrice = new ClosePriceIndicator(series);
-		// Typical price
-		final TypicalPriceIndicator typicalPrice = new TypicalPriceIndicator(series);
-		// Price variation
-		final PriceVariationIndicator priceVariation = new PriceVariationIndicator(series);
-		// Simple moving averages
-		final SMAIndicator shortSma = new SMAIndicator(closePrice, 8);
-		final SMAIndicator longSma = new SMAIndicator(closePrice, 20);
-		// Exponential moving averages
-		final EMAIndicator shortEma = new EMAIndicator(closePrice, 8);
-		final EMAIndicator longEma = new EMAIndicator(closePrice, 20);
-		// Percentage price oscillator
-		final PPOIndicator ppo = new PPOIndicator(closePrice, 12, 26);
-		// Rate of change
-		final ROCIndicator roc = new ROCIndicator(closePrice, 100);
-		// Relative strength index
-		final RSIIndicator rsi = new RSIIndicator(closePrice, 14);
-		// Williams %R
-		final WilliamsRIndicator williamsR = new WilliamsRIndicator(series, 20);
-		// Average true range
-//		final AverageTrueRangeIndicator atr = new AverageTrueRangeIndicator(series, 20);
-		// Standard deviation
-		final StandardDeviationIndicator sd = new StandardDeviationIndicator(closePrice, 14);
-
-		/**
-		 * Building header
-		 */
-		final StringBuilder sb = new StringBuilder(
-				"timestamp,close,typical,variation,sma8,sma20,ema8,ema20,ppo,roc,rsi,williamsr,atr,sd,1D,1W,1M,3M,6M1YR,3YR,5YR,10YR\n");
-
-		/**
-		 * Adding indicators values
-		 */
-		final int nbTicks = series.getBarCount();
-		for (int i = 0; i < nbTicks; i++) {
-			sb.append(series.getBar(i).getEndTime().toLocalDate()); //
-			StringUtils.addValue(sb, (closePrice.getValue(i)));
-			StringUtils.addValue(sb, (typicalPrice.getValue(i)));
-			StringUtils.addValue(sb, (priceVariation.getValue(i)));
-			StringUtils.addValue(sb, (shortSma.getValue(i)));
-			StringUtils.addValue(sb, (longSma.getValue(i)));
-			StringUtils.addValue(sb, (shortEma.getValue(i)));
-			StringUtils.addValue(sb, (longEma.getValue(i)));
-			StringUtils.addValue(sb, (ppo.getValue(i)));
-			StringUtils.addValue(sb, (roc.getValue(i)));
-			StringUtils.addValue(sb, (rsi.getValue(i)));
-			StringUtils.addValue(sb, (williamsR.getValue(i)));
-//			StringUtils.addValue(sb, (atr.getValue(i)));
-			StringUtils.addValue(sb, sd.getValue(i)); //
-			sb.append('\n');
+		final Path file = Paths.get("target", series.getName() + IndicatorsToCsv.SUFFIX);
+		try {
+			IndicatorsToCsv.write(IndicatorsToCsv.primitive(series), file);
+			IndicatorsToCsv.log.info("Saved to " + file);
+		} catch (final IOException e) {
+			IndicatorsToCsv.log.error("Unable to write CSV file", e);
 		}
+	}
 
-		FileUtils.writeFile(fileName, sb);
+	/**
+	 * Write NAME_indicators.csv for each series into the directory, several
+	 * series at a time
+	 */
+	public static void exportIndicatorsToCsv(final Collection<? extends TimeSeries> universe, final Path directory)
+			throws IOException {
+		Files.createDirectories(directory);
+		try {
+			universe.parallelStream().forEach(series -> {
+				try {
+					IndicatorsToCsv.write(IndicatorsToCsv.primitive(series),
+							directory.resolve(series.getName() + IndicatorsToCsv.SUFFIX));
+				} catch (final IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+		IndicatorsToCsv.log.info("Saved indicators for " + universe.size() + " series to " + directory);
+	}
+
+	private static PrimitiveTimeSeries primitive(final TimeSeries series) {
+		if (series instanceof PrimitiveTimeSeries) {
+			return (PrimitiveTimeSeries) series;
+		}
+		return PrimitiveTimeSeries.from(series.getName(), series.getBarData());
+	}
+
+	private static void write(final PrimitiveTimeSeries series, final Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			IndicatorsToCsv.writeIndicators(series, channel);
+		}
+	}
+
+	/**
+	 * Write the header and a row per bar to the channel, which is left open
+	 */
+	public static void writeIndicators(final PrimitiveTimeSeries series, final WritableByteChannel channel)
+			throws IOException {
+		final double[] close = series.getClosePrices();
+		final double[] high = series.getHighPrices();
+		final double[] low = series.getLowPrices();
+		final double[][] columns = { close, IndicatorKernels.typicalPrice(high, low, close),
+				IndicatorKernels.priceVariation(close), IndicatorKernels.sma(close, 8),
+				IndicatorKernels.sma(close, 20), IndicatorKernels.ema(close, 8), IndicatorKernels.ema(close, 20),
+				IndicatorKernels.ppo(close, 12, 26), IndicatorKernels.roc(close, 100), IndicatorKernels.rsi(close, 14),
+				IndicatorKernels.williamsR(high, low, close, 20), IndicatorKernels.atr(high, low, close, 20),
+				IndicatorKernels.standardDeviation(close, 14) };
+
+		final ByteBuffer buffer = ByteBuffer.allocate(IndicatorsToCsv.BUFFER_BYTES);
+		final StringBuilder row = new StringBuilder(IndicatorsToCsv.HEADER);
+		IndicatorsToCsv.put(row, buffer, channel);
+		for (int i = 0; i < close.length; i++) {
+			row.setLength(0);
+			IndicatorsToCsv.appendDate(row, series.getDate(i));
+			for (final double[] column : columns) {
+				row.append(',');
+				IndicatorsToCsv.appendValue(row, column[i]);
+			}
+			row.append('\n');
+			IndicatorsToCsv.put(row, buffer, channel);
+		}
+		IndicatorsToCsv.flush(buffer, channel);
+	}
+
+	private static void put(final CharSequence row, final ByteBuffer buffer, final WritableByteChannel channel)
+			throws IOException {
+		for (int i = 0; i < row.length(); i++) {
+			if (!buffer.hasRemaining()) {
+				IndicatorsToCsv.flush(buffer, channel);
+			}
+			buffer.put((byte) row.charAt(i));
+		}
+	}
+
+	private static void flush(final ByteBuffer buffer, final WritableByteChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static void appendDate(final StringBuilder row, final LocalDate date) {
+		if ((date.getYear() < 1000) || (date.getYear() > 9999)) {
+			row.append(date);
+			return;
+		}
+		row.append(date.getYear()).append('-');
+		IndicatorsToCsv.appendTwoDigits(row, date.getMonthValue());
+		row.append('-');
+		IndicatorsToCsv.appendTwoDigits(row, date.getDayOfMonth());
+	}
+
+	private static void appendTwoDigits(final StringBuilder row, final int value) {
+		row.append((char) ('0' + (value / 10))).append((char) ('0' + (value % 10)));
+	}
+
+	/**
+	 * Append the value to two decimal places, as {@code new
+	 * DecimalFormat("#0.00")} would in an English locale, keeping the sign of
+	 * negative values that round to zero
+	 */
+	static void appendValue(final StringBuilder row, final double value) {
+		if (Double.isNaN(value)) {
+			row.append("NaN");
+			return;
+		}
+		if (Double.isInfinite(value)) {
+			row.append(value > 0 ? "Infinity" : "-Infinity");
+			return;
+		}
+		if ((value < 0) || ((value == 0) && ((1 / value) < 0))) {
+			row.append('-');
+		}
+		final double magnitude = Math.abs(value);
+		long cents = -1;
+		if (magnitude < IndicatorsToCsv.FAST_LIMIT) {
+			final double scaled = magnitude * 100;
+			final double whole = Math.floor(scaled);
+			final double fraction = scaled - whole;
+			// The scaling is out by far less than this
+			if (Math.abs(fraction - 0.5) > 1e-6) {
+				cents = (long) (fraction > 0.5 ? whole + 1 : whole);
+			}
+		}
+		if (cents < 0) {
+			// Like DecimalFormat, round the shortest decimal that reads back as
+			// the value, breaking a tie by which side of it the value lies
+			final BigDecimal shortest = BigDecimal.valueOf(magnitude);
+			final int side = new BigDecimal(magnitude).compareTo(shortest);
+			final RoundingMode mode = side > 0 ? RoundingMode.HALF_UP
+					: side < 0 ? RoundingMode.HALF_DOWN : RoundingMode.HALF_EVEN;
+			row.append(shortest.setScale(2, mode).toPlainString());
+			return;
+		}
+		row.append(cents / 100).append('.');
+		IndicatorsToCsv.appendTwoDigits(row, (int) (cents % 100));
 	}
 
 }
@@ -45,6 +45,8 @@ public class GlobalExtremaStrategy extends AbstractStrategy {
 	// whole week
 	private static final int NB_TICKS_PER_WEEK = 12 * 24 * 7;
 
+	private static final String NAME = "Global Extrema";
+
 	/**
 	 * @param series
 	 *            a time series
@@ -79,8 +81,46 @@ public class GlobalExtremaStrategy extends AbstractStrategy {
 		return new GlobalExtremaStrategy(new BaseStrategy(buyingRule, sellingRule));
 	}
 
+	/**
+	 * @return the rules of {@link #buildStrategy(TimeSeries)}, read from
+	 *         shared {@link Indicators}
+	 */
+	public static GraphStrategy buildGraphStrategy() {
+		return new GraphStrategy() {
+
+			@Override
+			public String getName() {
+				return GlobalExtremaStrategy.NAME;
+			}
+
+			@Override
+			public boolean shouldEnter(final Indicators indicators,
+			        final int index) {
+				return indicators.close(index) < indicators.lowestLow(
+				        GlobalExtremaStrategy.NB_TICKS_PER_WEEK, index) * 1.004;
+			}
+
+			@Override
+			public boolean shouldExit(final Indicators indicators,
+			        final int index) {
+				return indicators.close(index) > indicators.highestHigh(
+				        GlobalExtremaStrategy.NB_TICKS_PER_WEEK, index) * 0.996;
+			}
+
+			@Override
+			public void track(final IndicatorState state) {
+				state.trackExtrema(GlobalExtremaStrategy.NB_TICKS_PER_WEEK);
+			}
+
+			@Override
+			public String toString() {
+				return GlobalExtremaStrategy.NAME;
+			}
+		};
+	}
+
 	public GlobalExtremaStrategy(final Strategy strategy) {
-		super("Global Extrema", strategy);
+		super(GlobalExtremaStrategy.NAME, strategy);
 	}
 
 	@Override
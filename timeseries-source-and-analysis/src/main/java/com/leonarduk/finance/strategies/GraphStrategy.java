@@ -0,0 +1,21 @@
+package com.leonarduk.finance.strategies;
+
+/**
+ * The entry and exit rules of a strategy, read from {@link Indicators} shared
+ * with the other strategies run over the same series rather than from
+ * indicators of its own.
+ */
+public interface GraphStrategy {
+
+	String getName();
+
+	boolean shouldEnter(Indicators indicators, int index);
+
+	boolean shouldExit(Indicators indicators, int index);
+
+	/**
+	 * Ask the state to keep up to date the indicators this strategy reads
+	 */
+	void track(IndicatorState state);
+
+}
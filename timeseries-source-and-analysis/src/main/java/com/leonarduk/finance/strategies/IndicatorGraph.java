@@ -0,0 +1,255 @@
+package com.leonarduk.finance.strategies;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntToDoubleFunction;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+/**
+ * The indicators the standard strategies need, worked out once per series and
+ * shared between them.
+ * <p>
+ * Prices are read straight from the columns of a {@link PrimitiveTimeSeries}.
+ * Windowed values such as an SMA or the highest high are computed for the
+ * index asked for and remembered; recursive ones such as an EMA are computed
+ * once for the whole series in a single loop. Each matches the ta4j indicator
+ * of the same name, with DoubleNum arithmetic, to the last bit.
+ */
+public class IndicatorGraph implements Indicators {
+
+	private static final int SMA = 0;
+
+	private static final int HIGHEST_HIGH = 1;
+
+	private static final int LOWEST_LOW = 2;
+
+	private static final int STOCHASTIC_K = 3;
+
+	private final PrimitiveTimeSeries series;
+
+	private final double[] close;
+
+	private final Map<Long, Double> values = new HashMap<>();
+
+	private final Map<String, double[]> tables = new HashMap<>();
+
+	public IndicatorGraph(final PrimitiveTimeSeries series) {
+		this.series = series;
+		this.close = series.getClosePrices();
+	}
+
+	private static long key(final int kind, final int period, final int index) {
+		return ((long) kind << 56) | ((long) period << 32) | index;
+	}
+
+	public PrimitiveTimeSeries getSeries() {
+		return this.series;
+	}
+
+	@Override
+	public int getEndIndex() {
+		return this.series.getEndIndex();
+	}
+
+	/**
+	 * @return indicators computed so far, counting each table once
+	 */
+	public int getComputedCount() {
+		return this.values.size() + this.tables.size();
+	}
+
+	@Override
+	public double close(final int index) {
+		return this.close[index];
+	}
+
+	/**
+	 * @return the mean close of the period ending at the index, or of fewer
+	 *         bars near the start
+	 */
+	@Override
+	public double sma(final int period, final int index) {
+		final long key = IndicatorGraph.key(IndicatorGraph.SMA, period, index);
+		final Double cached = this.values.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		double sum = 0;
+		for (int i = Math.max(0, index - period + 1); i <= index; i++) {
+			sum += this.close[i];
+		}
+		return this.remember(key, sum / Math.min(period, index + 1));
+	}
+
+	/**
+	 * @return the EMA of the close at every index, starting from the first
+	 *         close
+	 */
+	public double[] ema(final int period) {
+		final String key = "ema" + period;
+		final double[] cached = this.tables.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		return this.remember(key, IndicatorGraph.ema(this.close, period));
+	}
+
+	/**
+	 * @return the short EMA less the long EMA at every index
+	 */
+	public double[] macd(final int shortPeriod, final int longPeriod) {
+		final String key = "macd" + shortPeriod + "/" + longPeriod;
+		final double[] cached = this.tables.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		final double[] shortEma = this.ema(shortPeriod);
+		final double[] longEma = this.ema(longPeriod);
+		final double[] macd = new double[this.close.length];
+		for (int i = 0; i < macd.length; i++) {
+			macd[i] = shortEma[i] - longEma[i];
+		}
+		return this.remember(key, macd);
+	}
+
+	/**
+	 * @return the EMA of the MACD, its signal line, at every index
+	 */
+	public double[] macdSignal(final int shortPeriod, final int longPeriod, final int signalPeriod) {
+		final String key = "signal" + shortPeriod + "/" + longPeriod + "/" + signalPeriod;
+		final double[] cached = this.tables.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		return this.remember(key, IndicatorGraph.ema(this.macd(shortPeriod, longPeriod), signalPeriod));
+	}
+
+	@Override
+	public double ema(final int period, final int index) {
+		return this.ema(period)[index];
+	}
+
+	@Override
+	public double macd(final int shortPeriod, final int longPeriod, final int index) {
+		return this.macd(shortPeriod, longPeriod)[index];
+	}
+
+	@Override
+	public double macdSignal(final int shortPeriod, final int longPeriod, final int signalPeriod, final int index) {
+		return this.macdSignal(shortPeriod, longPeriod, signalPeriod)[index];
+	}
+
+	static double[] ema(final double[] input, final int period) {
+		return IndicatorKernels.ema(input, period);
+	}
+
+	@Override
+	public double highestHigh(final int period, final int index) {
+		final long key = IndicatorGraph.key(IndicatorGraph.HIGHEST_HIGH, period, index);
+		final Double cached = this.values.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		double highest = this.series.getHigh(index);
+		for (int i = index - 1; i >= Math.max(0, index - period + 1); i--) {
+			final double high = this.series.getHigh(i);
+			if (highest < high) {
+				highest = high;
+			}
+		}
+		return this.remember(key, highest);
+	}
+
+	@Override
+	public double lowestLow(final int period, final int index) {
+		final long key = IndicatorGraph.key(IndicatorGraph.LOWEST_LOW, period, index);
+		final Double cached = this.values.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		double lowest = this.series.getLow(index);
+		for (int i = index - 1; i >= Math.max(0, index - period + 1); i--) {
+			final double low = this.series.getLow(i);
+			if (lowest > low) {
+				lowest = low;
+			}
+		}
+		return this.remember(key, lowest);
+	}
+
+	/**
+	 * @return where the close sits in the high to low range of the period, 0 to
+	 *         100, or NaN if the range is empty
+	 */
+	@Override
+	public double stochasticK(final int period, final int index) {
+		final long key = IndicatorGraph.key(IndicatorGraph.STOCHASTIC_K, period, index);
+		final Double cached = this.values.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		final double highest = this.highestHigh(period, index);
+		final double lowest = this.lowestLow(period, index);
+		final double range = highest - lowest;
+		return this.remember(key, range == 0 ? Double.NaN : ((this.close[index] - lowest) / range) * 100);
+	}
+
+	@Override
+	public boolean stochasticCrossedDown(final int period, final double threshold, final int index) {
+		return this.crossedDown(i -> this.stochasticK(period, i), threshold, index);
+	}
+
+	@Override
+	public boolean stochasticCrossedUp(final int period, final double threshold, final int index) {
+		return this.crossedUp(i -> this.stochasticK(period, i), threshold, index);
+	}
+
+	/**
+	 * As ta4j's CrossedDownIndicatorRule against a constant
+	 */
+	public boolean crossedDown(final IntToDoubleFunction indicator, final double threshold, final int index) {
+		return IndicatorGraph.crossed(indicator, i -> threshold, index);
+	}
+
+	/**
+	 * As ta4j's CrossedUpIndicatorRule against a constant
+	 */
+	public boolean crossedUp(final IntToDoubleFunction indicator, final double threshold, final int index) {
+		return IndicatorGraph.crossed(i -> threshold, indicator, index);
+	}
+
+	/**
+	 * As ta4j's CrossIndicator: up is below low at the index and was above it
+	 * at the last earlier index where they differed, other than the first
+	 */
+	static boolean crossed(final IntToDoubleFunction up, final IntToDoubleFunction low, final int index) {
+		int i = index;
+		if ((i == 0) || (up.applyAsDouble(i) >= low.applyAsDouble(i))) {
+			return false;
+		}
+		i--;
+		if (up.applyAsDouble(i) > low.applyAsDouble(i)) {
+			return true;
+		}
+		while ((i > 0) && (up.applyAsDouble(i) == low.applyAsDouble(i))) {
+			i--;
+		}
+		return (i != 0) && (up.applyAsDouble(i) > low.applyAsDouble(i));
+	}
+
+	private double remember(final long key, final double value) {
+		this.values.put(key, value);
+		return value;
+	}
+
+	private double[] remember(final String key, final double[] table) {
+		this.tables.put(key, table);
+		return table;
+	}
+
+	@Override
+	public String toString() {
+		return "IndicatorGraph [series=" + this.series.getName() + ", computed=" + this.getComputedCount() + "]";
+	}
+}
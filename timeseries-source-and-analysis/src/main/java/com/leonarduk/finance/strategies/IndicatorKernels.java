@@ -0,0 +1,280 @@
+package com.leonarduk.finance.strategies;
+
+/**
+ * Indicators computed for a whole series at once, each as a loop over double
+ * arrays giving a value per bar.
+ * <p>
+ * Each follows the arithmetic of the ta4j indicator of the same name with
+ * DoubleNum values, including how it starts before a full period of bars: an
+ * SMA averages the bars there are, an EMA starts from the first value and a
+ * ROC compares with the first bar. Where ta4j would divide by zero the result
+ * is NaN.
+ * <p>
+ * Each is a single pass. Windowed sums are kept running and summed again, in
+ * ta4j's order, each time a whole period has passed, which keeps the rounding
+ * ta4j's and costs one more pass in total; windowed extremes use monotonic
+ * queues.
+ */
+public final class IndicatorKernels {
+
+	private IndicatorKernels() {
+	}
+
+	/**
+	 * @return the mean of the high, low and close
+	 */
+	public static double[] typicalPrice(final double[] high, final double[] low, final double[] close) {
+		final double[] typical = new double[close.length];
+		for (int i = 0; i < typical.length; i++) {
+			typical[i] = (high[i] + low[i] + close[i]) / 3;
+		}
+		return typical;
+	}
+
+	/**
+	 * @return each close over the one before, 1 for the first
+	 */
+	public static double[] priceVariation(final double[] close) {
+		final double[] variation = new double[close.length];
+		for (int i = 0; i < variation.length; i++) {
+			variation[i] = close[i] / close[Math.max(0, i - 1)];
+		}
+		return variation;
+	}
+
+	/**
+	 * @return the mean of the period ending at each index, or of fewer values
+	 *         near the start
+	 */
+	public static double[] sma(final double[] values, final int period) {
+		final double[] sma = new double[values.length];
+		double sum = 0;
+		for (int i = 0; i < sma.length; i++) {
+			sum += values[i];
+			if (i >= period) {
+				sum -= values[i - period];
+			}
+			if (IndicatorKernels.isWindowEnd(i, period)) {
+				sum = IndicatorKernels.sum(values, (i - period) + 1, i);
+			}
+			sma[i] = sum / Math.min(period, i + 1);
+		}
+		return sma;
+	}
+
+	/**
+	 * @return true every period bars, when the running sums are summed afresh
+	 */
+	private static boolean isWindowEnd(final int index, final int period) {
+		return ((index + 1) % period) == 0;
+	}
+
+	private static double sum(final double[] values, final int from, final int to) {
+		double sum = 0;
+		for (int j = from; j <= to; j++) {
+			sum += values[j];
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the exponential moving average, weighting each value by 2 /
+	 *         (period + 1)
+	 */
+	public static double[] ema(final double[] values, final int period) {
+		return IndicatorKernels.smooth(values, 2.0 / (period + 1));
+	}
+
+	/**
+	 * @return the modified moving average, weighting each value by 1 / period,
+	 *         as RSI and ATR smooth with
+	 */
+	public static double[] mma(final double[] values, final int period) {
+		return IndicatorKernels.smooth(values, 1.0 / period);
+	}
+
+	private static double[] smooth(final double[] values, final double multiplier) {
+		final double[] smoothed = new double[values.length];
+		if (values.length == 0) {
+			return smoothed;
+		}
+		smoothed[0] = values[0];
+		for (int i = 1; i < values.length; i++) {
+			smoothed[i] = ((values[i] - smoothed[i - 1]) * multiplier) + smoothed[i - 1];
+		}
+		return smoothed;
+	}
+
+	/**
+	 * @return the percentage the short EMA is above the long
+	 */
+	public static double[] ppo(final double[] values, final int shortPeriod, final int longPeriod) {
+		final double shortMultiplier = 2.0 / (shortPeriod + 1);
+		final double longMultiplier = 2.0 / (longPeriod + 1);
+		final double[] ppo = new double[values.length];
+		double shortEma = 0;
+		double longEma = 0;
+		for (int i = 0; i < ppo.length; i++) {
+			if (i == 0) {
+				shortEma = values[0];
+				longEma = values[0];
+			}
+			else {
+				shortEma = ((values[i] - shortEma) * shortMultiplier) + shortEma;
+				longEma = ((values[i] - longEma) * longMultiplier) + longEma;
+			}
+			ppo[i] = IndicatorKernels.divide(shortEma - longEma, longEma) * 100;
+		}
+		return ppo;
+	}
+
+	/**
+	 * @return the percentage change since the period before each index, or
+	 *         since the first value near the start
+	 */
+	public static double[] roc(final double[] values, final int period) {
+		final double[] roc = new double[values.length];
+		for (int i = 0; i < roc.length; i++) {
+			final double before = values[Math.max(i - period, 0)];
+			roc[i] = IndicatorKernels.divide(values[i] - before, before) * 100;
+		}
+		return roc;
+	}
+
+	/**
+	 * @return the relative strength index, from the modified moving averages of
+	 *         the gains and losses between closes
+	 */
+	public static double[] rsi(final double[] close, final int period) {
+		final double multiplier = 1.0 / period;
+		final double[] rsi = new double[close.length];
+		double averageGain = 0;
+		double averageLoss = 0;
+		for (int i = 1; i < rsi.length; i++) {
+			final double change = close[i] - close[i - 1];
+			final double gain = change > 0 ? change : 0;
+			final double loss = change < 0 ? close[i - 1] - close[i] : 0;
+			averageGain = ((gain - averageGain) * multiplier) + averageGain;
+			averageLoss = ((loss - averageLoss) * multiplier) + averageLoss;
+			if (averageLoss == 0) {
+				rsi[i] = averageGain == 0 ? 0 : 100;
+			}
+			else {
+				rsi[i] = 100 - (100 / (1 + (averageGain / averageLoss)));
+			}
+		}
+		return rsi;
+	}
+
+	/**
+	 * @return how far the close is below the highest high of the period, as a
+	 *         percentage of its range, from 0 to -100
+	 */
+	public static double[] williamsR(final double[] high, final double[] low, final double[] close,
+			final int period) {
+		final double[] williamsR = new double[close.length];
+		// Indices of the bars no later bar in the period has beaten, oldest
+		// first, so the first is the extreme
+		final int[] highest = new int[close.length];
+		final int[] lowest = new int[close.length];
+		int highestFirst = 0;
+		int highestEnd = 0;
+		int lowestFirst = 0;
+		int lowestEnd = 0;
+		for (int i = 0; i < williamsR.length; i++) {
+			while ((highestEnd > highestFirst) && (high[highest[highestEnd - 1]] <= high[i])) {
+				highestEnd--;
+			}
+			highest[highestEnd++] = i;
+			if (highest[highestFirst] <= (i - period)) {
+				highestFirst++;
+			}
+			while ((lowestEnd > lowestFirst) && (low[lowest[lowestEnd - 1]] >= low[i])) {
+				lowestEnd--;
+			}
+			lowest[lowestEnd++] = i;
+			if (lowest[lowestFirst] <= (i - period)) {
+				lowestFirst++;
+			}
+			final double highestHigh = high[highest[highestFirst]];
+			final double lowestLow = low[lowest[lowestFirst]];
+			williamsR[i] = IndicatorKernels.divide(highestHigh - close[i], highestHigh - lowestLow) * -100;
+		}
+		return williamsR;
+	}
+
+	/**
+	 * @return the greatest of the bar's range and the distances from the close
+	 *         before to its high and low
+	 */
+	public static double[] trueRange(final double[] high, final double[] low, final double[] close) {
+		final double[] trueRange = new double[close.length];
+		for (int i = 0; i < trueRange.length; i++) {
+			trueRange[i] = IndicatorKernels.trueRange(high, low, close, i);
+		}
+		return trueRange;
+	}
+
+	private static double trueRange(final double[] high, final double[] low, final double[] close, final int i) {
+		final double range = Math.abs(high[i] - low[i]);
+		if (i == 0) {
+			return range;
+		}
+		return Math.max(Math.max(range, Math.abs(high[i] - close[i - 1])), Math.abs(close[i - 1] - low[i]));
+	}
+
+	/**
+	 * @return the modified moving average of the true range
+	 */
+	public static double[] atr(final double[] high, final double[] low, final double[] close, final int period) {
+		final double multiplier = 1.0 / period;
+		final double[] atr = new double[close.length];
+		for (int i = 0; i < atr.length; i++) {
+			final double trueRange = IndicatorKernels.trueRange(high, low, close, i);
+			atr[i] = i == 0 ? trueRange : ((trueRange - atr[i - 1]) * multiplier) + atr[i - 1];
+		}
+		return atr;
+	}
+
+	/**
+	 * @return the population standard deviation of the period ending at each
+	 *         index, or of fewer values near the start
+	 */
+	public static double[] standardDeviation(final double[] values, final int period) {
+		final double[] deviation = new double[values.length];
+		// Welford's mean and sum of squared differences, sliding the oldest
+		// value out once the window is full
+		double mean = 0;
+		double squares = 0;
+		for (int i = 0; i < deviation.length; i++) {
+			final double value = values[i];
+			final int count = Math.min(period, i + 1);
+			if (i < period) {
+				final double difference = value - mean;
+				mean += difference / count;
+				squares += difference * (value - mean);
+			}
+			else {
+				final double oldest = values[i - period];
+				final double previousMean = mean;
+				mean += (value - oldest) / period;
+				squares += (value - oldest) * ((value - mean) + (oldest - previousMean));
+			}
+			if (IndicatorKernels.isWindowEnd(i, period)) {
+				final int from = (i - period) + 1;
+				mean = IndicatorKernels.sum(values, from, i) / period;
+				squares = 0;
+				for (int j = from; j <= i; j++) {
+					final double difference = values[j] - mean;
+					squares += difference * difference;
+				}
+			}
+			deviation[i] = Math.sqrt(Math.max(squares, 0) / count);
+		}
+		return deviation;
+	}
+
+	private static double divide(final double dividend, final double divisor) {
+		return divisor == 0 ? Double.NaN : dividend / divisor;
+	}
+}
@@ -0,0 +1,621 @@
+package com.leonarduk.finance.strategies;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+/**
+ * The indicators the strategies read at the last bar of a series, kept up to
+ * date one bar at a time. Each is held as the little it needs to take the
+ * next bar: a running sum over a ring of closes for an SMA, the last value
+ * for an EMA, a monotonic deque of the highs or lows still in the window for
+ * the highest high and lowest low. Adding a bar is O(1), so a state can follow
+ * a series as bars arrive rather than the indicators being rebuilt from the
+ * first bar.
+ * <p>
+ * The last {@link #VERIFIED_BARS} bars added are kept too, so a series can
+ * be checked cheaply to end the same way before the state follows it.
+ * <p>
+ * Values are for the last bar added; {@link #next(double, double, double)}
+ * gives them for one more bar without adding it. SMA sums are redone in full
+ * each time their window wraps, so stay within rounding of
+ * {@link IndicatorGraph}'s; every other value matches it exactly.
+ */
+public class IndicatorState implements Indicators, Serializable {
+
+	private static final long serialVersionUID = 2L;
+
+	/**
+	 * Bars kept to check a series against, enough to cover the bars a feed
+	 * revises
+	 */
+	public static final int VERIFIED_BARS = 5;
+
+	private final String name;
+
+	private final Map<Integer, RunningMean> smas = new HashMap<>();
+
+	private final Map<Integer, RunningEma> emas = new HashMap<>();
+
+	private final Map<String, MacdSignal> macdSignals = new HashMap<>();
+
+	private final Map<Integer, Extrema> extrema = new HashMap<>();
+
+	private final Map<String, StochasticCross> crosses = new HashMap<>();
+
+	private int barCount;
+
+	private int firstEpochDay;
+
+	private int lastEpochDay;
+
+	private double close = Double.NaN;
+
+	private final int[] recentEpochDays = new int[IndicatorState.VERIFIED_BARS];
+
+	private final double[] recentHighs = new double[IndicatorState.VERIFIED_BARS];
+
+	private final double[] recentLows = new double[IndicatorState.VERIFIED_BARS];
+
+	private final double[] recentCloses = new double[IndicatorState.VERIFIED_BARS];
+
+	public IndicatorState(final String name) {
+		this.name = name;
+	}
+
+	private static String key(final int... periods) {
+		final StringBuilder key = new StringBuilder();
+		for (final int period : periods) {
+			key.append(key.length() == 0 ? "" : "/").append(period);
+		}
+		return key.toString();
+	}
+
+	private static String key(final int period, final double threshold) {
+		return period + "/" + threshold;
+	}
+
+	private static <K, V> V tracked(final Map<K, V> indicators, final K key, final String kind) {
+		final V indicator = indicators.get(key);
+		if (indicator == null) {
+			throw new IllegalArgumentException(kind + " " + key + " is not tracked");
+		}
+		return indicator;
+	}
+
+	private void checkEmpty() {
+		if (this.barCount > 0) {
+			throw new IllegalStateException("Indicators must be tracked before the first bar is added");
+		}
+	}
+
+	public void trackSma(final int period) {
+		this.checkEmpty();
+		this.smas.putIfAbsent(period, new RunningMean(period));
+	}
+
+	public void trackEma(final int period) {
+		this.checkEmpty();
+		this.emas.putIfAbsent(period, new RunningEma(period));
+	}
+
+	/**
+	 * Track the signal line and the two EMAs the MACD is made of
+	 */
+	public void trackMacdSignal(final int shortPeriod, final int longPeriod, final int signalPeriod) {
+		this.trackEma(shortPeriod);
+		this.trackEma(longPeriod);
+		this.macdSignals.putIfAbsent(IndicatorState.key(shortPeriod, longPeriod, signalPeriod),
+				new MacdSignal(shortPeriod, longPeriod, signalPeriod));
+	}
+
+	/**
+	 * Track the highest high and lowest low, which also gives the stochastic K
+	 */
+	public void trackExtrema(final int period) {
+		this.checkEmpty();
+		this.extrema.putIfAbsent(period, new Extrema(period));
+	}
+
+	public void trackStochasticCross(final int period, final double threshold) {
+		this.trackExtrema(period);
+		this.crosses.putIfAbsent(IndicatorState.key(period, threshold), new StochasticCross(period, threshold));
+	}
+
+	/**
+	 * @return true if both states track the same indicators
+	 */
+	public boolean tracksSameAs(final IndicatorState other) {
+		return this.smas.keySet().equals(other.smas.keySet()) && this.emas.keySet().equals(other.emas.keySet())
+				&& this.macdSignals.keySet().equals(other.macdSignals.keySet())
+				&& this.extrema.keySet().equals(other.extrema.keySet())
+				&& this.crosses.keySet().equals(other.crosses.keySet());
+	}
+
+	/**
+	 * Move every indicator on to the bar, which must be later than the last
+	 */
+	public void add(final int epochDay, final double high, final double low, final double closePrice) {
+		if ((this.barCount > 0) && (epochDay <= this.lastEpochDay)) {
+			throw new IllegalArgumentException(
+					"Bars must be added oldest first: " + epochDay + " is not after " + this.lastEpochDay);
+		}
+		final int index = this.barCount;
+		this.smas.values().forEach(sma -> sma.add(closePrice));
+		this.emas.values().forEach(ema -> ema.add(closePrice));
+		for (final MacdSignal signal : this.macdSignals.values()) {
+			signal.ema.add(this.emas.get(signal.shortPeriod).value - this.emas.get(signal.longPeriod).value);
+		}
+		this.extrema.values().forEach(window -> window.add(index, high, low));
+		for (final StochasticCross cross : this.crosses.values()) {
+			cross.add(index, this.extrema.get(cross.period).stochasticK(closePrice));
+		}
+		if (this.barCount == 0) {
+			this.firstEpochDay = epochDay;
+		}
+		this.lastEpochDay = epochDay;
+		this.close = closePrice;
+		final int slot = index % IndicatorState.VERIFIED_BARS;
+		this.recentEpochDays[slot] = epochDay;
+		this.recentHighs[slot] = high;
+		this.recentLows[slot] = low;
+		this.recentCloses[slot] = closePrice;
+		this.barCount++;
+	}
+
+	/**
+	 * @param last the index of the series' bar on {@link #getLastEpochDay()}
+	 * @return true if the bars of the series up to last match the last bars
+	 *         added, as far back as both go and up to {@link #VERIFIED_BARS}
+	 */
+	public boolean endsLike(final PrimitiveTimeSeries series, final int last) {
+		final int bars = Math.min(Math.min(this.barCount, last + 1), IndicatorState.VERIFIED_BARS);
+		for (int i = 0; i < bars; i++) {
+			final int slot = (this.getEndIndex() - i) % IndicatorState.VERIFIED_BARS;
+			if ((series.getEpochDay(last - i) != this.recentEpochDays[slot])
+					|| (Double.compare(series.getHigh(last - i), this.recentHighs[slot]) != 0)
+					|| (Double.compare(series.getLow(last - i), this.recentLows[slot]) != 0)
+					|| (Double.compare(series.getClose(last - i), this.recentCloses[slot]) != 0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the indicators as they would be with one more bar, at index
+	 *         {@link #getBarCount()}, leaving this state as it is
+	 */
+	public Indicators next(final double high, final double low, final double closePrice) {
+		return new Next(high, low, closePrice);
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public int getBarCount() {
+		return this.barCount;
+	}
+
+	public int getFirstEpochDay() {
+		return this.firstEpochDay;
+	}
+
+	public int getLastEpochDay() {
+		return this.lastEpochDay;
+	}
+
+	private void checkIndex(final int index) {
+		if ((index != this.getEndIndex()) || (this.barCount == 0)) {
+			throw new IllegalArgumentException(
+					"Only the last bar, " + this.getEndIndex() + ", is tracked, not " + index);
+		}
+	}
+
+	@Override
+	public int getEndIndex() {
+		return this.barCount - 1;
+	}
+
+	@Override
+	public double close(final int index) {
+		this.checkIndex(index);
+		return this.close;
+	}
+
+	@Override
+	public double sma(final int period, final int index) {
+		this.checkIndex(index);
+		return IndicatorState.tracked(this.smas, period, "SMA").mean();
+	}
+
+	@Override
+	public double ema(final int period, final int index) {
+		this.checkIndex(index);
+		return IndicatorState.tracked(this.emas, period, "EMA").value;
+	}
+
+	@Override
+	public double macd(final int shortPeriod, final int longPeriod, final int index) {
+		return this.ema(shortPeriod, index) - this.ema(longPeriod, index);
+	}
+
+	@Override
+	public double macdSignal(final int shortPeriod, final int longPeriod, final int signalPeriod, final int index) {
+		this.checkIndex(index);
+		return IndicatorState.tracked(this.macdSignals, IndicatorState.key(shortPeriod, longPeriod, signalPeriod),
+				"MACD signal").ema.value;
+	}
+
+	@Override
+	public double highestHigh(final int period, final int index) {
+		this.checkIndex(index);
+		return IndicatorState.tracked(this.extrema, period, "Extrema").highest.value();
+	}
+
+	@Override
+	public double lowestLow(final int period, final int index) {
+		this.checkIndex(index);
+		return IndicatorState.tracked(this.extrema, period, "Extrema").lowest.value();
+	}
+
+	@Override
+	public double stochasticK(final int period, final int index) {
+		this.checkIndex(index);
+		return IndicatorState.tracked(this.extrema, period, "Extrema").stochasticK(this.close);
+	}
+
+	@Override
+	public boolean stochasticCrossedDown(final int period, final double threshold, final int index) {
+		this.checkIndex(index);
+		return IndicatorState.tracked(this.crosses, IndicatorState.key(period, threshold), "Stochastic cross").down;
+	}
+
+	@Override
+	public boolean stochasticCrossedUp(final int period, final double threshold, final int index) {
+		this.checkIndex(index);
+		return IndicatorState.tracked(this.crosses, IndicatorState.key(period, threshold), "Stochastic cross").up;
+	}
+
+	@Override
+	public String toString() {
+		return "IndicatorState [name=" + this.name + ", bars=" + this.barCount + "]";
+	}
+
+	/**
+	 * The indicators with one more bar, worked out from the state without
+	 * changing it
+	 */
+	private final class Next implements Indicators {
+
+		private final double high;
+
+		private final double low;
+
+		private final double close;
+
+		private Next(final double high, final double low, final double close) {
+			this.high = high;
+			this.low = low;
+			this.close = close;
+		}
+
+		private void checkIndex(final int index) {
+			if (index != this.getEndIndex()) {
+				throw new IllegalArgumentException(
+						"Only the next bar, " + this.getEndIndex() + ", is tracked, not " + index);
+			}
+		}
+
+		@Override
+		public int getEndIndex() {
+			return IndicatorState.this.barCount;
+		}
+
+		@Override
+		public double close(final int index) {
+			this.checkIndex(index);
+			return this.close;
+		}
+
+		@Override
+		public double sma(final int period, final int index) {
+			this.checkIndex(index);
+			return IndicatorState.tracked(IndicatorState.this.smas, period, "SMA").meanWith(this.close);
+		}
+
+		@Override
+		public double ema(final int period, final int index) {
+			this.checkIndex(index);
+			return IndicatorState.tracked(IndicatorState.this.emas, period, "EMA").valueWith(this.close);
+		}
+
+		@Override
+		public double macd(final int shortPeriod, final int longPeriod, final int index) {
+			return this.ema(shortPeriod, index) - this.ema(longPeriod, index);
+		}
+
+		@Override
+		public double macdSignal(final int shortPeriod, final int longPeriod, final int signalPeriod,
+				final int index) {
+			final double macd = this.macd(shortPeriod, longPeriod, index);
+			return IndicatorState.tracked(IndicatorState.this.macdSignals,
+					IndicatorState.key(shortPeriod, longPeriod, signalPeriod), "MACD signal").ema.valueWith(macd);
+		}
+
+		@Override
+		public double highestHigh(final int period, final int index) {
+			this.checkIndex(index);
+			return IndicatorState.tracked(IndicatorState.this.extrema, period, "Extrema").highest.valueWith(index,
+					this.high);
+		}
+
+		@Override
+		public double lowestLow(final int period, final int index) {
+			this.checkIndex(index);
+			return IndicatorState.tracked(IndicatorState.this.extrema, period, "Extrema").lowest.valueWith(index,
+					this.low);
+		}
+
+		@Override
+		public double stochasticK(final int period, final int index) {
+			return Extrema.stochasticK(this.highestHigh(period, index), this.lowestLow(period, index), this.close);
+		}
+
+		@Override
+		public boolean stochasticCrossedDown(final int period, final double threshold, final int index) {
+			return IndicatorState.tracked(IndicatorState.this.crosses, IndicatorState.key(period, threshold),
+					"Stochastic cross").crossedDownWith(index, this.stochasticK(period, index));
+		}
+
+		@Override
+		public boolean stochasticCrossedUp(final int period, final double threshold, final int index) {
+			return IndicatorState.tracked(IndicatorState.this.crosses, IndicatorState.key(period, threshold),
+					"Stochastic cross").crossedUpWith(index, this.stochasticK(period, index));
+		}
+	}
+
+	/**
+	 * Sum of the closes in a ring holding the last period of them
+	 */
+	private static final class RunningMean implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] window;
+
+		private int next;
+
+		private int count;
+
+		private double sum;
+
+		private RunningMean(final int period) {
+			this.window = new double[period];
+		}
+
+		private double mean() {
+			return this.sum / Math.min(this.count, this.window.length);
+		}
+
+		private double meanWith(final double value) {
+			if (this.count < this.window.length) {
+				return (this.sum + value) / (this.count + 1);
+			}
+			return ((this.sum - this.window[this.next]) + value) / this.window.length;
+		}
+
+		private void add(final double value) {
+			if (this.count >= this.window.length) {
+				this.sum -= this.window[this.next];
+			}
+			this.window[this.next] = value;
+			this.sum += value;
+			this.next = (this.next + 1) % this.window.length;
+			this.count++;
+			if (this.next == 0) {
+				// The ring is oldest first again, so sum it as ta4j would to
+				// drop the rounding the running sum has picked up
+				double exact = 0;
+				for (final double close : this.window) {
+					exact += close;
+				}
+				this.sum = exact;
+			}
+		}
+	}
+
+	private static final class RunningEma implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double multiplier;
+
+		private double value;
+
+		private boolean started;
+
+		private RunningEma(final int period) {
+			this.multiplier = 2.0 / (period + 1);
+		}
+
+		private double valueWith(final double input) {
+			return this.started ? ((input - this.value) * this.multiplier) + this.value : input;
+		}
+
+		private void add(final double input) {
+			this.value = this.valueWith(input);
+			this.started = true;
+		}
+	}
+
+	private static final class MacdSignal implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int shortPeriod;
+
+		private final int longPeriod;
+
+		private final RunningEma ema;
+
+		private MacdSignal(final int shortPeriod, final int longPeriod, final int signalPeriod) {
+			this.shortPeriod = shortPeriod;
+			this.longPeriod = longPeriod;
+			this.ema = new RunningEma(signalPeriod);
+		}
+	}
+
+	private static final class Extrema implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final MonotonicWindow highest;
+
+		private final MonotonicWindow lowest;
+
+		private Extrema(final int period) {
+			this.highest = new MonotonicWindow(period, true);
+			this.lowest = new MonotonicWindow(period, false);
+		}
+
+		private static double stochasticK(final double highestHigh, final double lowestLow, final double close) {
+			final double range = highestHigh - lowestLow;
+			return range == 0 ? Double.NaN : ((close - lowestLow) / range) * 100;
+		}
+
+		private double stochasticK(final double close) {
+			return Extrema.stochasticK(this.highest.value(), this.lowest.value(), close);
+		}
+
+		private void add(final int index, final double high, final double low) {
+			this.highest.add(index, high);
+			this.lowest.add(index, low);
+		}
+	}
+
+	/**
+	 * The bars still in the window that a later bar has not beaten, oldest
+	 * first, in a ring. The first is the extreme of the window.
+	 */
+	private static final class MonotonicWindow implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final boolean highest;
+
+		private final int[] indices;
+
+		private final double[] values;
+
+		private int head;
+
+		private int size;
+
+		private MonotonicWindow(final int period, final boolean highest) {
+			this.highest = highest;
+			this.indices = new int[period];
+			this.values = new double[period];
+		}
+
+		private boolean beats(final double value, final double other) {
+			return this.highest ? value > other : value < other;
+		}
+
+		private int slot(final int offset) {
+			return (this.head + offset) % this.indices.length;
+		}
+
+		/**
+		 * @return true if the first bar is out of the window ending at the
+		 *         index. Only one bar leaves the window per bar added.
+		 */
+		private boolean firstLeaves(final int index) {
+			return (this.size > 0) && (this.indices[this.head] <= (index - this.indices.length));
+		}
+
+		private double value() {
+			return this.values[this.head];
+		}
+
+		private double valueWith(final int index, final double value) {
+			final int offset = this.firstLeaves(index) ? 1 : 0;
+			if (offset == this.size) {
+				return value;
+			}
+			final double first = this.values[this.slot(offset)];
+			return this.beats(first, value) ? first : value;
+		}
+
+		private void add(final int index, final double value) {
+			if (this.firstLeaves(index)) {
+				this.head = this.slot(1);
+				this.size--;
+			}
+			while ((this.size > 0) && !this.beats(this.values[this.slot(this.size - 1)], value)) {
+				this.size--;
+			}
+			final int tail = this.slot(this.size);
+			this.indices[tail] = index;
+			this.values[tail] = value;
+			this.size++;
+		}
+	}
+
+	/**
+	 * Follows the stochastic K against a threshold as ta4j's CrossIndicator
+	 * does: a cross at a bar needs the K on the other side at the last earlier
+	 * bar where it was not on the threshold, the first bar counting only if it
+	 * is the one just before.
+	 */
+	private static final class StochasticCross implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int period;
+
+		private final double threshold;
+
+		private double previous;
+
+		private boolean hasPrevious;
+
+		private boolean previousIsFirst;
+
+		private boolean down;
+
+		private boolean up;
+
+		private StochasticCross(final int period, final double threshold) {
+			this.period = period;
+			this.threshold = threshold;
+		}
+
+		private boolean crossedDownWith(final int index, final double k) {
+			return (index > 0) && !(k >= this.threshold) && this.hasPrevious && (this.previous > this.threshold);
+		}
+
+		private boolean crossedUpWith(final int index, final double k) {
+			return (index > 0) && !(this.threshold >= k) && this.hasPrevious && (this.previous < this.threshold);
+		}
+
+		private void add(final int index, final double k) {
+			this.down = this.crossedDownWith(index, k);
+			this.up = this.crossedUpWith(index, k);
+			if (index == 0) {
+				this.previous = k;
+				this.hasPrevious = true;
+				this.previousIsFirst = true;
+			} else if (k != this.threshold) {
+				this.previous = k;
+				this.hasPrevious = true;
+				this.previousIsFirst = false;
+			} else if (this.previousIsFirst) {
+				this.hasPrevious = false;
+			}
+		}
+	}
+}
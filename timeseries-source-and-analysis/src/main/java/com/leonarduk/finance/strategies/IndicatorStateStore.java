@@ -0,0 +1,257 @@
+package com.leonarduk.finance.strategies;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.ta4j.core.Bar;
+
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.StoredSeriesListener;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.strategies.StrategyEngine.Signal;
+
+/**
+ * Keeps an {@link IndicatorState} per instrument, so a {@link StrategyEngine}
+ * can be evaluated at the latest bar without its indicators being rebuilt from
+ * the first.
+ * <p>
+ * A state follows the instrument's whole history, from the earliest bar it
+ * has been given, two ways: bars written to the cache are added as they are
+ * stored, and {@link #evaluate(Instrument, PrimitiveTimeSeries)} adds any bars
+ * of the series read that the state has not seen. The series read may start
+ * later, as a window of the history, and the signals are then those of the
+ * whole history. The last bar read is not added, as it may be a live quote
+ * that will change, but looked at through
+ * {@link IndicatorState#next(double, double, double)}.
+ * <p>
+ * Before a state follows a series, the series' bars up to the state's last
+ * are checked against the last {@link IndicatorState#VERIFIED_BARS} the state
+ * added, which costs the same however long the history. If they differ,
+ * because the feed revised a bar or the stored bars were cleaned differently,
+ * or the series has history the state lacks, the state is rebuilt from the
+ * series. Bars revised further back need an
+ * {@link #invalidate(Instrument) invalidate}.
+ * <p>
+ * Given a directory, each state is written to Exchange_CODE.state there when
+ * it changes and read back on first use, so states survive restarts.
+ */
+public class IndicatorStateStore implements StoredSeriesListener {
+
+	public static final Logger log = LoggerFactory.getLogger(IndicatorStateStore.class.getName());
+
+	public static final String SUFFIX = ".state";
+
+	private static final int AHEAD = Integer.MIN_VALUE;
+
+	private final StrategyEngine engine;
+
+	private final IndicatorState template;
+
+	private final File directory;
+
+	private final Map<String, IndicatorState> states = new ConcurrentHashMap<>();
+
+	private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+	private final LongAdder addedBars = new LongAdder();
+
+	private final LongAdder rebuilds = new LongAdder();
+
+	/**
+	 * States are kept in memory only
+	 */
+	public IndicatorStateStore(final StrategyEngine engine) {
+		this(engine, null);
+	}
+
+	public IndicatorStateStore(final StrategyEngine engine, final String directory) {
+		this.engine = engine;
+		this.template = engine.newState("");
+		this.directory = directory == null ? null : new File(directory);
+	}
+
+	private static String key(final Instrument instrument) {
+		return instrument.getExchange().name() + "_" + instrument.code();
+	}
+
+	private Object lockFor(final String key) {
+		return this.locks.computeIfAbsent(key, k -> new Object());
+	}
+
+	public StrategyEngine getEngine() {
+		return this.engine;
+	}
+
+	/**
+	 * @return each strategy's signal at the last bar of the series, or empty if
+	 *         the state has bars after the series ends
+	 */
+	public Optional<Map<String, Signal>> evaluate(final Instrument instrument, final PrimitiveTimeSeries series) {
+		if (series.getBarCount() == 0) {
+			return Optional.empty();
+		}
+		final String key = IndicatorStateStore.key(instrument);
+		synchronized (this.lockFor(key)) {
+			IndicatorState state = this.load(key);
+			int from = state == null ? -1 : IndicatorStateStore.resumeFrom(state, series);
+			if (from == IndicatorStateStore.AHEAD) {
+				return Optional.empty();
+			}
+			final boolean rebuild = from < 0;
+			if (rebuild) {
+				state = this.engine.newState(key);
+				from = 0;
+				this.rebuilds.increment();
+			}
+			final int end = series.getEndIndex();
+			for (int i = from; i < end; i++) {
+				state.add(series.getEpochDay(i), series.getHigh(i), series.getLow(i), series.getClose(i));
+			}
+			if (rebuild || (from < end)) {
+				this.addedBars.add(Math.max(end - from, 0));
+				this.save(key, state);
+			}
+			final Indicators indicators = from > end ? state
+					: state.next(series.getHigh(end), series.getLow(end), series.getClose(end));
+			return Optional.of(this.engine.evaluate(indicators, indicators.getEndIndex()));
+		}
+	}
+
+	/**
+	 * @return the index of the first bar of the series the state has not
+	 *         seen, -1 if it must be rebuilt or {@link #AHEAD}
+	 */
+	private static int resumeFrom(final IndicatorState state, final PrimitiveTimeSeries series) {
+		if ((state.getBarCount() == 0) || (state.getFirstEpochDay() > series.getEpochDay(0))) {
+			return -1;
+		}
+		if (state.getLastEpochDay() > series.getEpochDay(series.getEndIndex())) {
+			return IndicatorStateStore.AHEAD;
+		}
+		final int last = series.indexOf(LocalDate.ofEpochDay(state.getLastEpochDay()));
+		if ((last < 0) || !state.endsLike(series, last)) {
+			return -1;
+		}
+		return last + 1;
+	}
+
+	/**
+	 * Add the stored bars after the last the state has seen. A state is only
+	 * built when a series is first evaluated, which also checks the bars added
+	 * here against the series it reads.
+	 */
+	@Override
+	public void seriesStored(final Instrument instrument, final List<Bar> history) {
+		final String key = IndicatorStateStore.key(instrument);
+		synchronized (this.lockFor(key)) {
+			final IndicatorState state = this.load(key);
+			if ((state == null) || (state.getBarCount() == 0)) {
+				return;
+			}
+			int added = 0;
+			for (final Bar bar : history) {
+				final int day = (int) bar.getEndTime().toLocalDate().toEpochDay();
+				if ((day > state.getLastEpochDay()) && (bar.getClosePrice() != null)) {
+					state.add(day, bar.getMaxPrice().doubleValue(), bar.getMinPrice().doubleValue(),
+							bar.getClosePrice().doubleValue());
+					added++;
+				}
+			}
+			if (added > 0) {
+				this.addedBars.add(added);
+				this.save(key, state);
+			}
+		}
+	}
+
+	public void invalidate(final Instrument instrument) {
+		final String key = IndicatorStateStore.key(instrument);
+		synchronized (this.lockFor(key)) {
+			this.states.remove(key);
+			if (this.directory != null) {
+				this.getFile(key).delete();
+			}
+		}
+	}
+
+	private File getFile(final String key) {
+		return new File(this.directory, key + IndicatorStateStore.SUFFIX);
+	}
+
+	private IndicatorState load(final String key) {
+		final IndicatorState cached = this.states.get(key);
+		if ((cached != null) || (this.directory == null)) {
+			return cached;
+		}
+		final File file = this.getFile(key);
+		if (!file.exists()) {
+			return null;
+		}
+		try (ObjectInputStream in = new ObjectInputStream(
+				new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+			final IndicatorState state = (IndicatorState) in.readObject();
+			if (!state.tracksSameAs(this.template)) {
+				IndicatorStateStore.log.info("Strategies have changed, rebuilding " + file.getAbsolutePath());
+				return null;
+			}
+			this.states.put(key, state);
+			return state;
+		} catch (final IOException | ClassNotFoundException | ClassCastException e) {
+			IndicatorStateStore.log.warn("Failed to read " + file.getAbsolutePath() + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	private void save(final String key, final IndicatorState state) {
+		this.states.put(key, state);
+		if (this.directory == null) {
+			return;
+		}
+		final File file = this.getFile(key);
+		try {
+			Files.createDirectories(this.directory.toPath());
+			final File temp = new File(file.getAbsolutePath() + ".tmp");
+			try (ObjectOutputStream out = new ObjectOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+				out.writeObject(state);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException e) {
+			IndicatorStateStore.log.warn("Failed to write " + file.getAbsolutePath() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return bars added to states since this store was created
+	 */
+	public long getAddedBarCount() {
+		return this.addedBars.sum();
+	}
+
+	/**
+	 * @return states built from the first bar since this store was created
+	 */
+	public long getRebuildCount() {
+		return this.rebuilds.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "IndicatorStateStore [directory=" + this.directory + ", states=" + this.states.size() + "]";
+	}
+}
@@ -0,0 +1,40 @@
+package com.leonarduk.finance.strategies;
+
+/**
+ * The indicator values a {@link GraphStrategy} reads. An
+ * {@link IndicatorGraph} can answer for any bar of its series; an
+ * {@link IndicatorState} only for its last bar and the bar after it.
+ */
+public interface Indicators {
+
+	int getEndIndex();
+
+	double close(int index);
+
+	double sma(int period, int index);
+
+	double ema(int period, int index);
+
+	double macd(int shortPeriod, int longPeriod, int index);
+
+	double macdSignal(int shortPeriod, int longPeriod, int signalPeriod, int index);
+
+	double highestHigh(int period, int index);
+
+	double lowestLow(int period, int index);
+
+	double stochasticK(int period, int index);
+
+	/**
+	 * @return true if the stochastic K has just fallen below the threshold, as
+	 *         ta4j's CrossedDownIndicatorRule
+	 */
+	boolean stochasticCrossedDown(int period, double threshold, int index);
+
+	/**
+	 * @return true if the stochastic K has just risen above the threshold, as
+	 *         ta4j's CrossedUpIndicatorRule
+	 */
+	boolean stochasticCrossedUp(int period, double threshold, int index);
+
+}
@@ -43,6 +43,10 @@ import org.ta4j.core.trading.rules.UnderIndicatorRule;
  */
 public class MovingMomentumStrategy extends AbstractStrategy {
 
+	private static final String NAME = "Moving Momentum";
+
+	private static final int STOCHASTIC_PERIOD = 14;
+
 	public static AbstractStrategy buildStrategy(final TimeSeries series,
 	        final int shortEmaPeriod, final int longEmaPeriod,
 	        final int emaMacdPeriod) {
@@ -62,7 +66,7 @@ public class MovingMomentumStrategy extends AbstractStrategy {
 		        longEmaPeriod);
 
 		final StochasticOscillatorKIndicator stochasticOscillK = new StochasticOscillatorKIndicator(
-		        series, 14);
+		        series, MovingMomentumStrategy.STOCHASTIC_PERIOD);
 
 		final MACDIndicator macd = new MACDIndicator(closePrice, shortEmaPeriod,
 		        longEmaPeriod);
@@ -82,10 +86,73 @@ public class MovingMomentumStrategy extends AbstractStrategy {
 		                                      // 1
 		        .and(new UnderIndicatorRule(macd, emaMacd)); // Signal 2
 
-		return new MovingMomentumStrategy("Moving Momentum",
+		return new MovingMomentumStrategy(MovingMomentumStrategy.NAME,
 		        new BaseStrategy(entryRule, exitRule));
 	}
 
+	/**
+	 * @return the rules of {@link #buildStrategy(TimeSeries, int, int, int)},
+	 *         read from shared {@link Indicators}
+	 */
+	public static GraphStrategy buildGraphStrategy(final int shortEmaPeriod,
+	        final int longEmaPeriod, final int emaMacdPeriod) {
+		return new GraphStrategy() {
+
+			@Override
+			public String getName() {
+				return MovingMomentumStrategy.NAME;
+			}
+
+			@Override
+			public boolean shouldEnter(final Indicators indicators,
+			        final int index) {
+				final double shortEma = indicators.ema(shortEmaPeriod, index);
+				final double longEma = indicators.ema(longEmaPeriod, index);
+				final double macd = indicators.macd(shortEmaPeriod,
+				        longEmaPeriod, index);
+				final double emaMacd = indicators.macdSignal(shortEmaPeriod,
+				        longEmaPeriod, emaMacdPeriod, index);
+				// Trend, signal 1 and signal 2
+				return (shortEma > longEma)
+				        && indicators.stochasticCrossedDown(
+				                MovingMomentumStrategy.STOCHASTIC_PERIOD, 20,
+				                index)
+				        && (macd > emaMacd);
+			}
+
+			@Override
+			public boolean shouldExit(final Indicators indicators,
+			        final int index) {
+				final double shortEma = indicators.ema(shortEmaPeriod, index);
+				final double longEma = indicators.ema(longEmaPeriod, index);
+				final double macd = indicators.macd(shortEmaPeriod,
+				        longEmaPeriod, index);
+				final double emaMacd = indicators.macdSignal(shortEmaPeriod,
+				        longEmaPeriod, emaMacdPeriod, index);
+				return (shortEma < longEma)
+				        && indicators.stochasticCrossedUp(
+				                MovingMomentumStrategy.STOCHASTIC_PERIOD, 80,
+				                index)
+				        && (macd < emaMacd);
+			}
+
+			@Override
+			public void track(final IndicatorState state) {
+				state.trackMacdSignal(shortEmaPeriod, longEmaPeriod,
+				        emaMacdPeriod);
+				state.trackStochasticCross(
+				        MovingMomentumStrategy.STOCHASTIC_PERIOD, 20);
+				state.trackStochasticCross(
+				        MovingMomentumStrategy.STOCHASTIC_PERIOD, 80);
+			}
+
+			@Override
+			public String toString() {
+				return MovingMomentumStrategy.NAME;
+			}
+		};
+	}
+
 	private MovingMomentumStrategy(final String name, final Strategy strategy) {
 		super(name, strategy);
 	}
@@ -0,0 +1,130 @@
+package com.leonarduk.finance.strategies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The integer parameters a strategy can be tuned over, each a range from a
+ * minimum to a maximum, inclusive, in steps, and how to build the strategy
+ * from a set of them.
+ */
+public class ParameterSpace {
+
+	private final String name;
+
+	private final Function<int[], GraphStrategy> builder;
+
+	private final Predicate<int[]> valid;
+
+	private final int[][] ranges;
+
+	/**
+	 * @param name    of the tuned strategy, whatever its parameters
+	 * @param builder builds the strategy from a set of parameters
+	 * @param valid   which sets of parameters make sense together
+	 * @param ranges  the minimum, maximum and step of each parameter
+	 */
+	public ParameterSpace(final String name, final Function<int[], GraphStrategy> builder,
+			final Predicate<int[]> valid, final int[]... ranges) {
+		for (final int[] range : ranges) {
+			if ((range.length != 3) || (range[0] > range[1]) || (range[2] < 1)) {
+				throw new IllegalArgumentException("Range should be minimum, maximum and step, not "
+						+ Arrays.toString(range));
+			}
+		}
+		this.name = name;
+		this.builder = builder;
+		this.valid = valid;
+		this.ranges = ranges;
+	}
+
+	/**
+	 * Days of {@link SimpleMovingAverageStrategy}
+	 */
+	public static ParameterSpace simpleMovingAverage(final String name, final int minDays, final int maxDays,
+			final int step) {
+		return new ParameterSpace(name, days -> SimpleMovingAverageStrategy.buildGraphStrategy(days[0]),
+				days -> true, new int[] { minDays, maxDays, step });
+	}
+
+	/**
+	 * Short EMA, long EMA and MACD signal periods of
+	 * {@link MovingMomentumStrategy}, the short shorter than the long
+	 */
+	public static ParameterSpace movingMomentum(final String name, final int[] shortEma, final int[] longEma,
+			final int[] signal) {
+		return new ParameterSpace(name,
+				periods -> MovingMomentumStrategy.buildGraphStrategy(periods[0], periods[1], periods[2]),
+				periods -> periods[0] < periods[1], shortEma, longEma, signal);
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return every valid set of parameters, the first varying slowest
+	 */
+	public List<int[]> grid() {
+		final List<int[]> grid = new ArrayList<>();
+		this.fill(grid, new int[this.ranges.length], 0);
+		return grid;
+	}
+
+	private void fill(final List<int[]> grid, final int[] parameters, final int dimension) {
+		if (dimension == this.ranges.length) {
+			if (this.valid.test(parameters)) {
+				grid.add(parameters.clone());
+			}
+			return;
+		}
+		final int[] range = this.ranges[dimension];
+		for (int value = range[0]; value <= range[1]; value += range[2]) {
+			parameters[dimension] = value;
+			this.fill(grid, parameters, dimension + 1);
+		}
+	}
+
+	/**
+	 * @return the strategy with these parameters, under the name of the space
+	 */
+	public GraphStrategy build(final int[] parameters) {
+		final GraphStrategy strategy = this.builder.apply(parameters);
+		final String tunedName = this.name;
+		return new GraphStrategy() {
+
+			@Override
+			public String getName() {
+				return tunedName;
+			}
+
+			@Override
+			public boolean shouldEnter(final Indicators indicators, final int index) {
+				return strategy.shouldEnter(indicators, index);
+			}
+
+			@Override
+			public boolean shouldExit(final Indicators indicators, final int index) {
+				return strategy.shouldExit(indicators, index);
+			}
+
+			@Override
+			public void track(final IndicatorState state) {
+				strategy.track(state);
+			}
+
+			@Override
+			public String toString() {
+				return tunedName + " " + Arrays.toString(parameters);
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return "ParameterSpace [name=" + this.name + ", ranges=" + Arrays.deepToString(this.ranges) + "]";
+	}
+}
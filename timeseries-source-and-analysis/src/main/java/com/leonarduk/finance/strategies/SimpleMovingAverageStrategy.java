@@ -26,11 +26,51 @@ public class SimpleMovingAverageStrategy extends AbstractStrategy {
 		final Strategy buySellSignals = new BaseStrategy(
 		        new OverIndicatorRule(sma, closePrice),
 		        new UnderIndicatorRule(sma, closePrice));
-		return new SimpleMovingAverageStrategy("SMA (" + days + "days)",
-		        buySellSignals);
+		return new SimpleMovingAverageStrategy(getName(days), buySellSignals);
 
 	}
 
+	/**
+	 * @return the rules of {@link #buildStrategy(TimeSeries, int)}, read from
+	 *         shared {@link Indicators}
+	 */
+	public static GraphStrategy buildGraphStrategy(final int days) {
+		final String name = getName(days);
+		return new GraphStrategy() {
+
+			@Override
+			public String getName() {
+				return name;
+			}
+
+			@Override
+			public boolean shouldEnter(final Indicators indicators,
+			        final int index) {
+				return indicators.sma(days, index) > indicators.close(index);
+			}
+
+			@Override
+			public boolean shouldExit(final Indicators indicators,
+			        final int index) {
+				return indicators.sma(days, index) < indicators.close(index);
+			}
+
+			@Override
+			public void track(final IndicatorState state) {
+				state.trackSma(days);
+			}
+
+			@Override
+			public String toString() {
+				return name;
+			}
+		};
+	}
+
+	private static String getName(final int days) {
+		return "SMA (" + days + "days)";
+	}
+
 	private SimpleMovingAverageStrategy(final String name,
 	        final Strategy strategy) {
 		super(name, strategy);
@@ -0,0 +1,80 @@
+package com.leonarduk.finance.strategies;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+/**
+ * Evaluates a set of strategies at one bar of a series in a single pass. The
+ * strategies read from one {@link IndicatorGraph}, or {@link IndicatorState},
+ * so an indicator two of them need is only computed once, and none of them
+ * builds ta4j indicators or Num values.
+ */
+public class StrategyEngine {
+
+	public enum Signal {
+		ENTER, EXIT, HOLD
+	}
+
+	private final List<GraphStrategy> strategies;
+
+	public StrategyEngine(final List<GraphStrategy> strategies) {
+		this.strategies = Collections.unmodifiableList(strategies);
+	}
+
+	/**
+	 * @return the strategies the portfolio report shows
+	 */
+	public static StrategyEngine standard() {
+		return new StrategyEngine(Arrays.asList(GlobalExtremaStrategy.buildGraphStrategy(),
+				MovingMomentumStrategy.buildGraphStrategy(12, 26, 9), SimpleMovingAverageStrategy.buildGraphStrategy(12),
+				SimpleMovingAverageStrategy.buildGraphStrategy(20), SimpleMovingAverageStrategy.buildGraphStrategy(50)));
+	}
+
+	public List<GraphStrategy> getStrategies() {
+		return this.strategies;
+	}
+
+	/**
+	 * @return a state tracking every indicator the strategies read, with no
+	 *         bars yet
+	 */
+	public IndicatorState newState(final String name) {
+		final IndicatorState state = new IndicatorState(name);
+		this.strategies.forEach(strategy -> strategy.track(state));
+		return state;
+	}
+
+	/**
+	 * @return each strategy's signal at the index, by name, in the order the
+	 *         strategies were given. Entering wins if a strategy would do both.
+	 */
+	public Map<String, Signal> evaluate(final PrimitiveTimeSeries series, final int index) {
+		return this.evaluate(new IndicatorGraph(series), index);
+	}
+
+	public Map<String, Signal> evaluate(final Indicators indicators, final int index) {
+		final Map<String, Signal> signals = new LinkedHashMap<>();
+		for (final GraphStrategy strategy : this.strategies) {
+			final Signal signal;
+			if (strategy.shouldEnter(indicators, index)) {
+				signal = Signal.ENTER;
+			} else if (strategy.shouldExit(indicators, index)) {
+				signal = Signal.EXIT;
+			} else {
+				signal = Signal.HOLD;
+			}
+			signals.put(strategy.getName(), signal);
+		}
+		return signals;
+	}
+
+	@Override
+	public String toString() {
+		return "StrategyEngine [strategies=" + this.strategies + "]";
+	}
+}
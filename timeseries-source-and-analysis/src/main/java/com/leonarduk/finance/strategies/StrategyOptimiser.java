@@ -0,0 +1,354 @@
+package com.leonarduk.finance.strategies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.strategies.StrategyEngine.Signal;
+
+/**
+ * Tunes the periods of strategies to each instrument, by trying sets of
+ * parameters from a {@link ParameterSpace} over its history and keeping the
+ * set with the best total profit, as ta4j's TotalProfitCriterion measures it.
+ * <p>
+ * Every set of parameters for a series reads from one {@link SweepIndicators},
+ * so an SMA of any period costs a subtraction and an EMA table is built once
+ * whichever sets use it. Sets are tried in parallel as fork/join tasks.
+ * <p>
+ * The last bar of a series is left out, as it may be a live quote, and the
+ * best parameters are kept per instrument until the rest of its series
+ * changes.
+ */
+public class StrategyOptimiser {
+
+	public static final Logger log = LoggerFactory.getLogger(StrategyOptimiser.class.getName());
+
+	public static final String TUNED_SMA = "Tuned SMA";
+
+	public static final String TUNED_MOVING_MOMENTUM = "Tuned Moving Momentum";
+
+	public enum Search {
+		/**
+		 * Try every set of parameters
+		 */
+		GRID,
+		/**
+		 * Try a random sample of them
+		 */
+		RANDOM
+	}
+
+	private static final int CANDIDATES_PER_TASK = 8;
+
+	private final ForkJoinPool pool;
+
+	private final Search search;
+
+	private final int samples;
+
+	private final long seed;
+
+	private final List<ParameterSpace> spaces;
+
+	private final Map<String, Tuning> tunings = new ConcurrentHashMap<>();
+
+	private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+	private final LongAdder sweeps = new LongAdder();
+
+	private final LongAdder candidates = new LongAdder();
+
+	public StrategyOptimiser() {
+		this(ForkJoinPool.commonPool(), Search.GRID, 0, 0, StrategyOptimiser.standardSpaces());
+	}
+
+	/**
+	 * @param samples sets of parameters to try per space for a
+	 *                {@link Search#RANDOM} search
+	 * @param seed    for a {@link Search#RANDOM} search, so the same sets are
+	 *                tried each time
+	 */
+	public StrategyOptimiser(final ForkJoinPool pool, final Search search, final int samples, final long seed,
+			final List<ParameterSpace> spaces) {
+		if ((search == Search.RANDOM) && (samples < 1)) {
+			throw new IllegalArgumentException("A random search needs at least one sample, not " + samples);
+		}
+		this.pool = pool;
+		this.search = search;
+		this.samples = samples;
+		this.seed = seed;
+		this.spaces = Collections.unmodifiableList(new ArrayList<>(spaces));
+	}
+
+	/**
+	 * @return the SMA days and Moving Momentum periods the portfolio report
+	 *         tunes, around the fixed ones it also shows
+	 */
+	public static List<ParameterSpace> standardSpaces() {
+		return Arrays.asList(ParameterSpace.simpleMovingAverage(StrategyOptimiser.TUNED_SMA, 5, 200, 5),
+				ParameterSpace.movingMomentum(StrategyOptimiser.TUNED_MOVING_MOMENTUM, new int[] { 6, 18, 2 },
+						new int[] { 20, 50, 3 }, new int[] { 5, 13, 2 }));
+	}
+
+	private static String key(final Instrument instrument) {
+		return instrument.getExchange().name() + "_" + instrument.code();
+	}
+
+	private Object lockFor(final String key) {
+		return this.locks.computeIfAbsent(key, k -> new Object());
+	}
+
+	/**
+	 * @return the best parameters in each space for the instrument, tuned to
+	 *         the series unless they already were
+	 */
+	public Tuning optimise(final Instrument instrument, final PrimitiveTimeSeries series) {
+		final String key = StrategyOptimiser.key(instrument);
+		final long version = StrategyOptimiser.version(series);
+		synchronized (this.lockFor(key)) {
+			final Tuning cached = this.tunings.get(key);
+			if ((cached != null) && (cached.version == version)) {
+				return cached;
+			}
+			final Tuning tuning = this.sweep(series, version);
+			StrategyOptimiser.log.info("Tuned " + key + ": " + tuning);
+			this.tunings.put(key, tuning);
+			return tuning;
+		}
+	}
+
+	/**
+	 * @return each tuned strategy's signal at the last bar of the series, by
+	 *         the name of its space
+	 */
+	public Map<String, Signal> evaluate(final Instrument instrument, final PrimitiveTimeSeries series) {
+		if (series.getBarCount() == 0) {
+			return Collections.emptyMap();
+		}
+		return new StrategyEngine(this.optimise(instrument, series).getStrategies()).evaluate(series,
+				series.getEndIndex());
+	}
+
+	/**
+	 * @return a fingerprint of the bars a tuning is made from, all but the last
+	 */
+	static long version(final PrimitiveTimeSeries series) {
+		final int bars = Math.max(series.getBarCount() - 1, 0);
+		long version = bars;
+		for (int i = 0; i < bars; i++) {
+			version = (31 * version) + series.getEpochDay(i);
+			version = (31 * version) + Double.doubleToLongBits(series.getHigh(i));
+			version = (31 * version) + Double.doubleToLongBits(series.getLow(i));
+			version = (31 * version) + Double.doubleToLongBits(series.getClose(i));
+		}
+		return version;
+	}
+
+	private List<int[]> candidates(final ParameterSpace space) {
+		final List<int[]> grid = space.grid();
+		if ((this.search == Search.GRID) || (grid.size() <= this.samples)) {
+			return grid;
+		}
+		Collections.shuffle(grid, new Random(this.seed));
+		return grid.subList(0, this.samples);
+	}
+
+	private Tuning sweep(final PrimitiveTimeSeries series, final long version) {
+		final SweepIndicators indicators = new SweepIndicators(series);
+		final int lastBar = series.getEndIndex() - 1;
+		final Map<String, int[]> parameters = new LinkedHashMap<>();
+		final Map<String, Double> profits = new LinkedHashMap<>();
+		final List<GraphStrategy> strategies = new ArrayList<>();
+		for (final ParameterSpace space : this.spaces) {
+			final List<int[]> tried = this.candidates(space);
+			final double[] profit = new double[tried.size()];
+			if (!tried.isEmpty()) {
+				this.pool.invoke(new Sweep(space, tried, indicators, lastBar, profit, 0, tried.size()));
+			}
+			int best = -1;
+			for (int c = 0; c < profit.length; c++) {
+				if ((best < 0) || (profit[c] > profit[best])) {
+					best = c;
+				}
+			}
+			if (best >= 0) {
+				parameters.put(space.getName(), tried.get(best));
+				profits.put(space.getName(), profit[best]);
+				strategies.add(space.build(tried.get(best)));
+			}
+			this.candidates.add(tried.size());
+		}
+		this.sweeps.increment();
+		return new Tuning(version, parameters, profits, strategies);
+	}
+
+	/**
+	 * Trade the strategy over the bars to the last, entering on the close where
+	 * it should enter and leaving where it should exit, as ta4j's
+	 * TimeSeriesManager does
+	 *
+	 * @return the product of the closed trades' exit over entry closes
+	 */
+	static double totalProfit(final GraphStrategy strategy, final Indicators indicators, final int lastBar) {
+		double profit = 1;
+		int entry = -1;
+		for (int i = 0; i <= lastBar; i++) {
+			if (entry < 0) {
+				if (strategy.shouldEnter(indicators, i)) {
+					entry = i;
+				}
+			}
+			else if (strategy.shouldExit(indicators, i)) {
+				profit *= indicators.close(i) / indicators.close(entry);
+				entry = -1;
+			}
+		}
+		return profit;
+	}
+
+	/**
+	 * Tries a run of candidates, splitting it between threads while it is long
+	 */
+	private static final class Sweep extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ParameterSpace space;
+
+		private final List<int[]> candidates;
+
+		private final SweepIndicators indicators;
+
+		private final int lastBar;
+
+		private final double[] profits;
+
+		private final int from;
+
+		private final int to;
+
+		Sweep(final ParameterSpace space, final List<int[]> candidates, final SweepIndicators indicators,
+				final int lastBar, final double[] profits, final int from, final int to) {
+			this.space = space;
+			this.candidates = candidates;
+			this.indicators = indicators;
+			this.lastBar = lastBar;
+			this.profits = profits;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if ((this.to - this.from) > StrategyOptimiser.CANDIDATES_PER_TASK) {
+				final int middle = (this.from + this.to) >>> 1;
+				ForkJoinTask.invokeAll(
+						new Sweep(this.space, this.candidates, this.indicators, this.lastBar, this.profits,
+								this.from, middle),
+						new Sweep(this.space, this.candidates, this.indicators, this.lastBar, this.profits, middle,
+								this.to));
+				return;
+			}
+			for (int c = this.from; c < this.to; c++) {
+				this.profits[c] = StrategyOptimiser.totalProfit(this.space.build(this.candidates.get(c)),
+						this.indicators.forCandidate(), this.lastBar);
+			}
+		}
+	}
+
+	/**
+	 * @return series tuned since this optimiser was created
+	 */
+	public long getSweepCount() {
+		return this.sweeps.sum();
+	}
+
+	/**
+	 * @return sets of parameters tried since this optimiser was created
+	 */
+	public long getCandidateCount() {
+		return this.candidates.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "StrategyOptimiser [search=" + this.search + ", samples=" + this.samples + ", spaces=" + this.spaces
+				+ ", tuned=" + this.tunings.size() + "]";
+	}
+
+	/**
+	 * The best parameters found in each space for one series
+	 */
+	public static final class Tuning {
+
+		private final long version;
+
+		private final Map<String, int[]> parameters;
+
+		private final Map<String, Double> profits;
+
+		private final List<GraphStrategy> strategies;
+
+		Tuning(final long version, final Map<String, int[]> parameters, final Map<String, Double> profits,
+				final List<GraphStrategy> strategies) {
+			this.version = version;
+			this.parameters = parameters;
+			this.profits = profits;
+			this.strategies = Collections.unmodifiableList(strategies);
+		}
+
+		/**
+		 * @return the best parameters in the space, in the order of its ranges
+		 */
+		public int[] getParameters(final String space) {
+			final int[] best = this.parameters.get(space);
+			if (best == null) {
+				throw new IllegalArgumentException("No parameters for " + space);
+			}
+			return best.clone();
+		}
+
+		/**
+		 * @return the total profit of the best parameters in the space
+		 */
+		public double getTotalProfit(final String space) {
+			final Double profit = this.profits.get(space);
+			if (profit == null) {
+				throw new IllegalArgumentException("No parameters for " + space);
+			}
+			return profit;
+		}
+
+		/**
+		 * @return a strategy per space, with its best parameters
+		 */
+		public List<GraphStrategy> getStrategies() {
+			return this.strategies;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder buf = new StringBuilder("Tuning [");
+			this.parameters.forEach((space, best) -> buf.append(space).append('=').append(Arrays.toString(best))
+					.append(" profit ").append(this.profits.get(space)).append(", "));
+			if (!this.parameters.isEmpty()) {
+				buf.setLength(buf.length() - 2);
+			}
+			return buf.append(']').toString();
+		}
+	}
+}
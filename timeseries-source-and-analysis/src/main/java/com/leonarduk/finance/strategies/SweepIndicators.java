@@ -0,0 +1,166 @@
+package com.leonarduk.finance.strategies;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+/**
+ * Indicators for trying many sets of parameters over one series, as
+ * {@link StrategyOptimiser} does.
+ * <p>
+ * Any SMA is read in constant time from one table of running sums of the
+ * close, and EMA and stochastic K tables are built once per period and shared
+ * by every set of parameters, from any thread. A MACD signal is only good for
+ * one set, so each {@link #forCandidate()} view keeps its own.
+ * <p>
+ * EMA and stochastic values match {@link IndicatorGraph} to the last bit. An
+ * SMA taken from running sums can differ from a summed window in the last
+ * bits, which is close enough to rank parameters.
+ */
+final class SweepIndicators implements Indicators {
+
+	private final PrimitiveTimeSeries series;
+
+	private final double[] close;
+
+	/**
+	 * The sum of the closes before each index
+	 */
+	private final double[] sums;
+
+	private final Map<Integer, double[]> emas;
+
+	private final Map<Integer, double[]> stochastics;
+
+	private final Map<String, double[]> signals = new HashMap<>();
+
+	SweepIndicators(final PrimitiveTimeSeries series) {
+		this.series = series;
+		this.close = series.getClosePrices();
+		this.sums = new double[this.close.length + 1];
+		for (int i = 0; i < this.close.length; i++) {
+			this.sums[i + 1] = this.sums[i] + this.close[i];
+		}
+		this.emas = new ConcurrentHashMap<>();
+		this.stochastics = new ConcurrentHashMap<>();
+	}
+
+	private SweepIndicators(final SweepIndicators shared) {
+		this.series = shared.series;
+		this.close = shared.close;
+		this.sums = shared.sums;
+		this.emas = shared.emas;
+		this.stochastics = shared.stochastics;
+	}
+
+	/**
+	 * @return a view sharing these tables, for one thread to try one set of
+	 *         parameters with
+	 */
+	SweepIndicators forCandidate() {
+		return new SweepIndicators(this);
+	}
+
+	@Override
+	public int getEndIndex() {
+		return this.series.getEndIndex();
+	}
+
+	@Override
+	public double close(final int index) {
+		return this.close[index];
+	}
+
+	@Override
+	public double sma(final int period, final int index) {
+		final int from = Math.max(0, index - period + 1);
+		return (this.sums[index + 1] - this.sums[from]) / Math.min(period, index + 1);
+	}
+
+	private double[] ema(final int period) {
+		return this.emas.computeIfAbsent(period, p -> IndicatorGraph.ema(this.close, p));
+	}
+
+	@Override
+	public double ema(final int period, final int index) {
+		return this.ema(period)[index];
+	}
+
+	@Override
+	public double macd(final int shortPeriod, final int longPeriod, final int index) {
+		return this.ema(shortPeriod)[index] - this.ema(longPeriod)[index];
+	}
+
+	@Override
+	public double macdSignal(final int shortPeriod, final int longPeriod, final int signalPeriod, final int index) {
+		final String key = shortPeriod + "/" + longPeriod + "/" + signalPeriod;
+		double[] signal = this.signals.get(key);
+		if (signal == null) {
+			final double[] shortEma = this.ema(shortPeriod);
+			final double[] longEma = this.ema(longPeriod);
+			final double[] macd = new double[this.close.length];
+			for (int i = 0; i < macd.length; i++) {
+				macd[i] = shortEma[i] - longEma[i];
+			}
+			signal = IndicatorGraph.ema(macd, signalPeriod);
+			this.signals.put(key, signal);
+		}
+		return signal[index];
+	}
+
+	@Override
+	public double highestHigh(final int period, final int index) {
+		double highest = this.series.getHigh(index);
+		for (int i = index - 1; i >= Math.max(0, index - period + 1); i--) {
+			highest = Math.max(highest, this.series.getHigh(i));
+		}
+		return highest;
+	}
+
+	@Override
+	public double lowestLow(final int period, final int index) {
+		double lowest = this.series.getLow(index);
+		for (int i = index - 1; i >= Math.max(0, index - period + 1); i--) {
+			lowest = Math.min(lowest, this.series.getLow(i));
+		}
+		return lowest;
+	}
+
+	private double[] stochasticK(final int period) {
+		return this.stochastics.computeIfAbsent(period, p -> {
+			final double[] k = new double[this.close.length];
+			for (int i = 0; i < k.length; i++) {
+				final double highest = this.highestHigh(p, i);
+				final double lowest = this.lowestLow(p, i);
+				final double range = highest - lowest;
+				k[i] = range == 0 ? Double.NaN : ((this.close[i] - lowest) / range) * 100;
+			}
+			return k;
+		});
+	}
+
+	@Override
+	public double stochasticK(final int period, final int index) {
+		return this.stochasticK(period)[index];
+	}
+
+	@Override
+	public boolean stochasticCrossedDown(final int period, final double threshold, final int index) {
+		final double[] k = this.stochasticK(period);
+		return IndicatorGraph.crossed(i -> k[i], i -> threshold, index);
+	}
+
+	@Override
+	public boolean stochasticCrossedUp(final int period, final double threshold, final int index) {
+		final double[] k = this.stochasticK(period);
+		return IndicatorGraph.crossed(i -> threshold, i -> k[i], index);
+	}
+
+	@Override
+	public String toString() {
+		return "SweepIndicators [series=" + this.series.getName() + ", emas=" + this.emas.keySet()
+				+ ", stochastics=" + this.stochastics.keySet() + "]";
+	}
+}
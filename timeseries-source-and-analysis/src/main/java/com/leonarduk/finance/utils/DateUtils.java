@@ -26,7 +26,6 @@ import java.text.SimpleDateFormat;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.Period;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -34,7 +33,6 @@ import java.time.temporal.TemporalUnit;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
@@ -43,7 +41,6 @@ import org.jfree.data.time.Day;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.YahooFeed;
 
@@ -69,12 +66,34 @@ public class DateUtils {
 		return DateUtils.dateToCalendar(convertToDateViaInstant(fromDate.toLocalDate()));
 	}
 
+	/**
+	 * @return weekdays from startDate, inclusive, to endDate, exclusive; negative
+	 *         if endDate is earlier. Holidays are not taken into account.
+	 */
 	public static int getDiffInWorkDays(final LocalDate startDate, final LocalDate endDate) {
-		return (int) daysBetween(startDate, endDate, ImmutableList.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY));
+		return (int) (DateUtils.getWeekdayCount(endDate.toEpochDay())
+				- DateUtils.getWeekdayCount(startDate.toEpochDay()));
 	}
 
-	static long daysBetween(LocalDate start, LocalDate end, List<DayOfWeek> ignore) {
-		return  Period.between(start, end).getDays();
+	/**
+	 * Number the weekdays consecutively, without walking the calendar. Epoch day
+	 * 0 was a Thursday.
+	 *
+	 * @return the number of weekdays before the day, counted from the Monday of
+	 *         1970-01-01's week, so that the difference for two days is the
+	 *         weekdays between them
+	 */
+	public static long getWeekdayCount(final long epochDay) {
+		final long mondayBased = epochDay + 3;
+		return Math.floorDiv(mondayBased, 7) * 5 + Math.min(Math.floorMod(mondayBased, 7), 5);
+	}
+
+	/**
+	 * @return the epoch day of the weekday whose {@link #getWeekdayCount(long)}
+	 *         is count
+	 */
+	public static long getWeekdayFromCount(final long count) {
+		return Math.floorDiv(count, 5) * 7 + Math.floorMod(count, 5) - 3;
 	}
 
 	private static String getDividendDateFormat(final String date) {
@@ -0,0 +1,91 @@
+package com.leonarduk.finance.utils;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses concurrent calls for the same key into one: the first caller runs
+ * the loader and everyone who arrives while it is running waits for, and
+ * shares, its result or failure. Nothing is cached once the call completes.
+ *
+ * @param <K> key identifying the work
+ * @param <V> result type
+ */
+public class SingleFlight<K, V> {
+
+	@FunctionalInterface
+	public interface Loader<V> {
+		V load() throws IOException;
+	}
+
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	private final AtomicLong executed = new AtomicLong();
+
+	private final AtomicLong shared = new AtomicLong();
+
+	public V execute(final K key, final Loader<V> loader) throws IOException {
+		final CompletableFuture<V> created = new CompletableFuture<>();
+		final CompletableFuture<V> existing = this.inFlight.putIfAbsent(key, created);
+		if (existing != null) {
+			this.shared.incrementAndGet();
+			return SingleFlight.await(existing);
+		}
+
+		this.executed.incrementAndGet();
+		try {
+			final V value = loader.load();
+			created.complete(value);
+			return value;
+		} catch (final Throwable e) {
+			// Errors too, or callers who joined would wait forever
+			created.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.inFlight.remove(key, created);
+		}
+	}
+
+	private static <V> V await(final CompletableFuture<V> future) throws IOException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for in-flight call", e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * @return number of loader calls actually made
+	 */
+	public long getExecutedCount() {
+		return this.executed.get();
+	}
+
+	/**
+	 * @return number of calls that joined one already in flight
+	 */
+	public long getSharedCount() {
+		return this.shared.get();
+	}
+
+	public int getInFlightCount() {
+		return this.inFlight.size();
+	}
+}
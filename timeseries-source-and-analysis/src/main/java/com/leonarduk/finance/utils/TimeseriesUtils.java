@@ -3,11 +3,11 @@ package com.leonarduk.finance.utils;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -19,21 +19,33 @@ import org.ta4j.core.BaseTimeSeries;
 import org.ta4j.core.TimeSeries;
 import org.ta4j.core.num.DoubleNum;
 
+import com.leonarduk.finance.stockfeed.Instrument;
 import com.leonarduk.finance.stockfeed.IntelligentStockFeed;
-import com.leonarduk.finance.stockfeed.datatransformation.correction.BadDateRemover;
-import com.leonarduk.finance.stockfeed.datatransformation.correction.BadScalingCorrector;
-import com.leonarduk.finance.stockfeed.datatransformation.interpolation.FlatLineInterpolator;
+import com.leonarduk.finance.stockfeed.TradingCalendar;
+import com.leonarduk.finance.stockfeed.datatransformation.correction.CleaningPipeline;
 import com.leonarduk.finance.stockfeed.datatransformation.interpolation.LinearInterpolator;
 import com.leonarduk.finance.stockfeed.feed.Commentable;
 import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
 
 public class TimeseriesUtils {
+	/**
+	 * Cleaned series are kept per exchange, code and first date so a longer
+	 * history of the same instrument only has its new bars cleaned
+	 */
+	private static final CleaningPipeline CLEANER = CleaningPipeline.standard();
+
 	public static int cleanUpSeries(final Optional<StockV1> liveData) throws IOException {
 		if (liveData.isPresent()) {
 			final List<Bar> history = liveData.get().getHistory();
 			final int original = history.size();
-			final List<Bar> clean = new BadScalingCorrector().clean(new BadDateRemover().clean(history));
+			final String symbol = liveData.get().getSymbol();
+			final Instrument instrument = liveData.get().getInstrument();
+			final List<Bar> clean = TimeseriesUtils.CLEANER
+					.cleanIncrementally(instrument.getExchange() + ":" + instrument.getCode(),
+							PrimitiveTimeSeries.from(symbol, history))
+					.toBarList();
 
 			// TODO scale to/from USD to GBP or GBX
 			liveData.get().setHistory(clean);
@@ -88,7 +100,7 @@ public class TimeseriesUtils {
 		TimeseriesUtils.sortQuoteList(history);
 		final Iterator<Bar> series = history.iterator();
 
-		final List<Bar> ticks = new LinkedList<>();
+		final List<Bar> ticks = new ArrayList<>();
 		while (series.hasNext()) {
 			try {
 				ticks.add(series.next());
@@ -110,17 +122,6 @@ public class TimeseriesUtils {
 				DoubleNum.valueOf(0), comment);
 	}
 
-	public static Bar createSyntheticBar(final LocalDate currentDate, final Double newClosePriceRaw,
-			final Double newOpenPriceRaw, String comment) {
-
-		final Double newClosePrice = NumberUtils.roundDecimal(newClosePriceRaw);
-		final Double newOpenPrice = NumberUtils.roundDecimal(newOpenPriceRaw);
-		return new ExtendedHistoricalQuote("", currentDate, BigDecimal.valueOf(newOpenPrice),
-				BigDecimal.valueOf(Double.min(newClosePrice, newOpenPrice)), BigDecimal.valueOf(newClosePrice),
-				BigDecimal.valueOf(Double.max(newClosePrice, newOpenPrice)), BigDecimal.valueOf(newClosePrice),
-				DoubleNum.valueOf(0), comment);
-	}
-
 	public static Iterator<Bar> getTimeSeriesIterator(final TimeSeries series) {
 		final Iterator<Bar> iter = new Iterator<Bar>() {
 			int index = series.getBeginIndex();
@@ -140,13 +141,14 @@ public class TimeseriesUtils {
 
 	public static Optional<StockV1> interpolateAndSortSeries(final LocalDate fromLocalDate, final LocalDate toLocalDate,
 			final boolean interpolate, final Optional<StockV1> liveData) throws IOException {
-		List<Bar> history = liveData.get().getHistory();
+		final List<Bar> history = liveData.get().getHistory();
 		if (interpolate) {
-			final LinearInterpolator linearInterpolator = new LinearInterpolator();
-			final FlatLineInterpolator flatLineInterpolator = new FlatLineInterpolator();
-
-			history = linearInterpolator.interpolate(flatLineInterpolator
-					.extendToToDate(flatLineInterpolator.extendToFromDate(history, fromLocalDate), toLocalDate));
+			// Synthetic bars are only worked out for the dates the caller reads
+			final PrimitiveTimeSeries raw = PrimitiveTimeSeries.from(liveData.get().getSymbol(), history);
+			final TradingCalendar calendar = TradingCalendar.of(liveData.get().getInstrument().getExchange());
+			liveData.get().setHistory(new LinearInterpolator(calendar).interpolateLazily(raw, fromLocalDate, toLocalDate)
+					.getBarData());
+			return liveData;
 		}
 		final List<Bar> subSeries = history.stream()
 				.filter(q -> (q.getEndTime().toLocalDate().isAfter(fromLocalDate)
@@ -163,21 +165,25 @@ public class TimeseriesUtils {
 		final StringBuilder sb = new StringBuilder("date,open,high,low,close,volume\n");
 		// TODO add comment field if necessary- look at how HTML tools does it
 		for (final Bar historicalQuote : series) {
-			sb.append(historicalQuote.getEndTime().toLocalDate().toString());
-			StringUtils.addValue(sb, historicalQuote.getOpenPrice());
-			StringUtils.addValue(sb, historicalQuote.getMaxPrice());
-			StringUtils.addValue(sb, historicalQuote.getMinPrice());
-			StringUtils.addValue(sb, historicalQuote.getClosePrice());
-			StringUtils.addValue(sb, historicalQuote.getVolume());
-			if (historicalQuote instanceof Commentable) {
-				Commentable commentable = (Commentable) historicalQuote;
-				sb.append(",").append(commentable.getComment());
-			}
-			sb.append("\n");
+			TimeseriesUtils.appendCsvRow(sb, historicalQuote);
 		}
 		return sb;
 	}
 
+	public static StringBuilder appendCsvRow(final StringBuilder sb, final Bar historicalQuote) {
+		sb.append(historicalQuote.getEndTime().toLocalDate().toString());
+		StringUtils.addValue(sb, historicalQuote.getOpenPrice());
+		StringUtils.addValue(sb, historicalQuote.getMaxPrice());
+		StringUtils.addValue(sb, historicalQuote.getMinPrice());
+		StringUtils.addValue(sb, historicalQuote.getClosePrice());
+		StringUtils.addValue(sb, historicalQuote.getVolume());
+		if (historicalQuote instanceof Commentable) {
+			Commentable commentable = (Commentable) historicalQuote;
+			sb.append(",").append(commentable.getComment());
+		}
+		return sb.append("\n");
+	}
+
 	public static List<Bar> sortQuoteList(final List<Bar> history) {
 		Collections.sort(history, TimeseriesUtils.getComparator());
 		return history;
@@ -0,0 +1,148 @@
+package com.leonarduk.finance.analysis;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ta4j.core.TimeSeries;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.feed.TestSeries;
+import com.leonarduk.finance.strategies.AbstractStrategy;
+import com.leonarduk.finance.strategies.MovingMomentumStrategy;
+import com.leonarduk.finance.strategies.SimpleMovingAverageStrategy;
+
+public class WalkForwardBacktesterTest {
+
+	private final Map<String, PrimitiveTimeSeries> universe = new LinkedHashMap<>();
+
+	private final List<ForkJoinPool> pools = new ArrayList<>();
+
+	private static List<Function<TimeSeries, AbstractStrategy>> strategies() {
+		return Arrays.asList(series -> MovingMomentumStrategy.buildStrategy(series, 12, 26, 9),
+				series -> SimpleMovingAverageStrategy.buildStrategy(series, 20));
+	}
+
+	@Before
+	public void setUp() {
+		this.universe.put("VOD", TestSeries.randomWalk("VOD", 750, 29));
+		this.universe.put("BARC", TestSeries.randomWalk("BARC", 600, 31));
+		this.universe.put("NEW", TestSeries.randomWalk("NEW", 100, 37));
+	}
+
+	@After
+	public void tearDown() {
+		this.pools.forEach(ForkJoinPool::shutdownNow);
+	}
+
+	private ForkJoinPool pool(final int parallelism) {
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		this.pools.add(pool);
+		return pool;
+	}
+
+	private ScoreMatrix run(final ForkJoinPool pool) {
+		return new WalkForwardBacktester(pool, 250, 100, WalkForwardBacktester.standardCriteria()).run(this.universe,
+				WalkForwardBacktesterTest.strategies());
+	}
+
+	@Test
+	public void testWindowsSlideAlongEachSeries() {
+		final ScoreMatrix matrix = this.run(ForkJoinPool.commonPool());
+		Assert.assertEquals(Arrays.asList("VOD", "BARC", "NEW"), matrix.getInstruments());
+		Assert.assertEquals(6, matrix.getWindowCount("VOD"));
+		Assert.assertEquals(4, matrix.getWindowCount("BARC"));
+		Assert.assertEquals(0, matrix.getWindowCount("NEW"));
+
+		final PrimitiveTimeSeries vod = this.universe.get("VOD");
+		Assert.assertEquals(vod.getDate(249), matrix.getWindowEnd("VOD", 0));
+		Assert.assertEquals(vod.getDate(749), matrix.getWindowEnd("VOD", 5));
+		Assert.assertTrue(Double.isNaN(matrix.getMean("NEW", matrix.getStrategies().get(0),
+				WalkForwardBacktester.TOTAL_PROFIT)));
+	}
+
+	@Test
+	public void testCriteriaOnlySeeTheWindow() {
+		final ScoreMatrix matrix = this.run(ForkJoinPool.commonPool());
+		final PrimitiveTimeSeries vod = this.universe.get("VOD");
+		for (int w = 0; w < matrix.getWindowCount("VOD"); w++) {
+			final int start = w * 100;
+			Assert.assertEquals(vod.getClose(start + 249) / vod.getClose(start),
+					matrix.get("VOD", matrix.getStrategies().get(0), WalkForwardBacktester.BUY_AND_HOLD, w), 1e-12);
+		}
+	}
+
+	@Test
+	public void testSameScoresOnOneThreadAsOnMany() {
+		final ScoreMatrix serial = this.run(this.pool(1));
+		final ScoreMatrix parallel = this.run(this.pool(4));
+		Assert.assertEquals(serial.getStrategies(), parallel.getStrategies());
+		for (final String instrument : serial.getInstruments()) {
+			for (final String strategy : serial.getStrategies()) {
+				for (final String criterion : serial.getCriteria()) {
+					for (int w = 0; w < serial.getWindowCount(instrument); w++) {
+						Assert.assertEquals(instrument + " " + strategy + " " + criterion + " " + w,
+								serial.get(instrument, strategy, criterion, w),
+								parallel.get(instrument, strategy, criterion, w), 0);
+					}
+				}
+			}
+		}
+		Assert.assertEquals(serial.getScores(), parallel.getScores());
+	}
+
+	@Test
+	public void testScoresAreSummedOverInstruments() {
+		final ScoreMatrix matrix = this.run(ForkJoinPool.commonPool());
+		final Map<String, Integer> total = new LinkedHashMap<>();
+		for (final String instrument : matrix.getInstruments()) {
+			matrix.getScores(instrument).forEach((strategy, score) -> total.merge(strategy, score, Integer::sum));
+		}
+		Assert.assertEquals(total, matrix.getScores());
+		Assert.assertEquals(new ArrayList<>(total.keySet()), matrix.getStrategies());
+	}
+
+	@Test
+	public void testEachTaskBuildsOnlyItsStrategy() {
+		final AtomicInteger momentum = new AtomicInteger();
+		final AtomicInteger average = new AtomicInteger();
+		final List<Function<TimeSeries, AbstractStrategy>> strategies = Arrays.asList(series -> {
+			momentum.incrementAndGet();
+			return MovingMomentumStrategy.buildStrategy(series, 12, 26, 9);
+		}, series -> {
+			average.incrementAndGet();
+			return SimpleMovingAverageStrategy.buildStrategy(series, 20);
+		});
+		new WalkForwardBacktester(this.pool(1), 250, 100, WalkForwardBacktester.standardCriteria())
+				.run(this.universe, strategies);
+		// Once for its name, then once for each of VOD and BARC
+		Assert.assertEquals(3, momentum.get());
+		Assert.assertEquals(3, average.get());
+	}
+
+	@Test
+	public void testUnmeasuredWindowsAreNotScored() {
+		final double[][][][] values = { { { { 1.2 }, { Double.NaN }, { 0.9 }, { Double.NaN } } } };
+		final ScoreMatrix matrix = new ScoreMatrix(Arrays.asList("VOD"), Arrays.asList("SMA"),
+				Arrays.asList(WalkForwardBacktester.TOTAL_PROFIT), new LocalDate[1][4], values);
+		Assert.assertEquals(Integer.valueOf(0), matrix.getScores("VOD").get("SMA"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEachSeriesNeedsTheSameStrategies() {
+		final List<Function<TimeSeries, AbstractStrategy>> strategies = Arrays.asList(
+				series -> series.getBarCount() > 700 ? MovingMomentumStrategy.buildStrategy(series, 12, 26, 9)
+						: SimpleMovingAverageStrategy.buildStrategy(series, 50));
+		new WalkForwardBacktester().run(this.universe, strategies);
+	}
+}
@@ -0,0 +1,98 @@
+package com.leonarduk.finance.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.file.ChunkedCsvLoader;
+
+/**
+ * Loads a generated history of several million rows (a few hundred MB) as one
+ * chunk and in 4MB chunks on the common pool, with and without a date range.
+ * <p>
+ * Run from this module with {@code mvn package -DskipTests}, which copies the
+ * dependencies to target/lib, then {@code java -cp
+ * "target/test-classes:target/classes:target/lib/*"
+ * com.leonarduk.finance.benchmark.ChunkedCsvLoadBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ChunkedCsvLoadBenchmark {
+
+	@Param({ "5000000" })
+	public int rows;
+
+	@Param({ "2147483647", "4194304" })
+	public int chunkBytes;
+
+	private Path file;
+
+	private ChunkedCsvLoader loader;
+
+	private LocalDate lastDate;
+
+	@Setup
+	public void setUp() throws IOException {
+		this.file = Files.createTempFile("history", ".csv");
+		this.lastDate = LocalDate.parse("2020-09-18");
+		try (BufferedWriter writer = Files.newBufferedWriter(this.file, StandardCharsets.UTF_8)) {
+			writer.write("date,open,high,low,close,volume,Comment\n");
+			// Newest first, as the store files are; dates repeat as intraday rows do
+			double price = 100;
+			for (int i = 0; i < this.rows; i++) {
+				price *= 1 + Math.sin(i) / 100;
+				writer.write(this.lastDate.minusDays(i / 8).toString());
+				writer.write(String.format(Locale.ROOT, ",%.4f,%.4f,%.4f,%.4f,%d,Benchmark%n", price, price * 1.01,
+						price * 0.99, price, 1000 + i % 100));
+			}
+		}
+		this.loader = new ChunkedCsvLoader(ForkJoinPool.commonPool(), this.chunkBytes);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.file);
+	}
+
+	@Benchmark
+	public PrimitiveTimeSeries all() throws IOException {
+		return this.loader.load(this.file, true, "BENCH", "Benchmark", LocalDate::parse, null, null);
+	}
+
+	@Benchmark
+	public PrimitiveTimeSeries lastYear() throws IOException {
+		return this.loader.load(this.file, true, "BENCH", "Benchmark", LocalDate::parse,
+				this.lastDate.minusYears(1), this.lastDate);
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ChunkedCsvLoadBenchmark.class.getSimpleName()).build()).run();
+	}
+}
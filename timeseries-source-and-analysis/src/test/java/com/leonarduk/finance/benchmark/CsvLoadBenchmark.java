@@ -0,0 +1,125 @@
+package com.leonarduk.finance.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.ta4j.core.Bar;
+
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.Source;
+import com.leonarduk.finance.stockfeed.file.CsvStockFeed;
+
+/**
+ * Loads every csv in the db directory (around 71k rows), once parsing a row at
+ * a time into ExtendedHistoricalQuotes through {@link CsvStockFeed#next()} and
+ * once through {@link CsvStockFeed#get(Instrument, LocalDate, LocalDate)},
+ * which uses the CsvBarParser.
+ * <p>
+ * Run from this module with {@code mvn package -DskipTests}, which copies the
+ * dependencies to target/lib, then {@code java -cp
+ * "target/test-classes:target/classes:target/lib/*"
+ * com.leonarduk.finance.benchmark.CsvLoadBenchmark}; pass
+ * {@code -prof gc} to JMH to see bytes allocated per load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvLoadBenchmark {
+
+	@Param({ "../db" })
+	public String directory;
+
+	private List<File> files;
+
+	@Setup
+	public void setUp() throws IOException {
+		final File[] csvs = new File(this.directory).listFiles((dir, name) -> name.endsWith(".csv"));
+		if (csvs == null || csvs.length == 0) {
+			throw new IOException("No csv files in " + new File(this.directory).getAbsolutePath());
+		}
+		this.files = Arrays.asList(csvs);
+	}
+
+	@Benchmark
+	public void rowByRow(final Blackhole blackhole) throws IOException {
+		for (final File file : this.files) {
+			final SingleFileFeed feed = new SingleFileFeed(file);
+			feed.setInstrument(Instrument.CASH);
+			final List<Bar> quotes = new ArrayList<>();
+			while (feed.next()) {
+				quotes.add(feed.asHistoricalQuote());
+			}
+			quotes.sort((o1, o2) -> o2.getEndTime().compareTo(o1.getEndTime()));
+			blackhole.consume(quotes);
+		}
+	}
+
+	@Benchmark
+	public void parser(final Blackhole blackhole) throws IOException {
+		final LocalDate today = LocalDate.now();
+		for (final File file : this.files) {
+			blackhole.consume(new SingleFileFeed(file).get(Instrument.CASH, today, today));
+		}
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(CsvLoadBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	private static final class SingleFileFeed extends CsvStockFeed {
+
+		private final File file;
+
+		private SingleFileFeed(final File file) {
+			this.file = file;
+		}
+
+		@Override
+		protected BufferedReader openReader() throws IOException {
+			final BufferedReader reader = Files.newBufferedReader(this.file.toPath(), StandardCharsets.UTF_8);
+			reader.readLine();
+			return reader;
+		}
+
+		@Override
+		protected String getQueryName(final Instrument instrument) {
+			return this.file.getName();
+		}
+
+		@Override
+		public Source getSource() {
+			return Source.MANUAL;
+		}
+
+		@Override
+		public boolean isAvailable() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.leonarduk.finance.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.ta4j.core.Bar;
+import org.ta4j.core.Indicator;
+import org.ta4j.core.TimeSeries;
+import org.ta4j.core.indicators.EMAIndicator;
+import org.ta4j.core.indicators.SMAIndicator;
+import org.ta4j.core.indicators.helpers.ClosePriceIndicator;
+import org.ta4j.core.num.Num;
+
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuoteTimeSeries;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+/**
+ * Evaluates SMA and EMA at every index of a 5000 bar series, as a strategy
+ * scan does, over each kind of series.
+ * <p>
+ * {@code linkedList} is how ExtendedHistoricalQuoteTimeSeries behaved when
+ * handed a LinkedList: each getBar(i) walked the list. Run from this module
+ * with {@code mvn package -DskipTests}, which copies the dependencies to
+ * target/lib, then {@code java -cp
+ * "target/test-classes:target/classes:target/lib/*"
+ * com.leonarduk.finance.benchmark.IndicatorBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndicatorBenchmark {
+
+	private static final int BARS = 5000;
+
+	@Param({ "linkedList", "arrayList", "primitive" })
+	public String storage;
+
+	@Param({ "50" })
+	public int barCount;
+
+	private TimeSeries series;
+
+	@Setup
+	public void setUp() {
+		final List<Bar> bars = new ArrayList<>(BARS);
+		LocalDate date = LocalDate.parse("2000-01-03");
+		double price = 100;
+		for (int i = 0; i < BARS; i++) {
+			price *= 1 + Math.sin(i) / 100;
+			bars.add(new ExtendedHistoricalQuote(Instrument.CASH, date, price, price * 0.99, price * 1.01, price,
+					price, 1000L, "Benchmark"));
+			date = date.plusDays(1);
+		}
+		switch (this.storage) {
+		case "linkedList":
+			this.series = new LinkedListTimeSeries(new LinkedList<>(bars));
+			break;
+		case "primitive":
+			this.series = PrimitiveTimeSeries.from("CASH", bars);
+			break;
+		default:
+			this.series = new ExtendedHistoricalQuoteTimeSeries(bars);
+		}
+	}
+
+	@Benchmark
+	public void sma(final Blackhole blackhole) {
+		scan(new SMAIndicator(new ClosePriceIndicator(this.series), this.barCount), blackhole);
+	}
+
+	@Benchmark
+	public void ema(final Blackhole blackhole) {
+		scan(new EMAIndicator(new ClosePriceIndicator(this.series), this.barCount), blackhole);
+	}
+
+	private void scan(final Indicator<Num> indicator, final Blackhole blackhole) {
+		for (int i = this.series.getBeginIndex(); i <= this.series.getEndIndex(); i++) {
+			blackhole.consume(indicator.getValue(i));
+		}
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(IndicatorBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	/**
+	 * Indexes straight into the list it was given, as the series used to
+	 */
+	private static final class LinkedListTimeSeries extends ExtendedHistoricalQuoteTimeSeries {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Bar> bars;
+
+		private LinkedListTimeSeries(final List<Bar> bars) {
+			super(bars);
+			this.bars = bars;
+		}
+
+		@Override
+		public Bar getBar(final int i) {
+			return this.bars.get(i);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.leonarduk.finance.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.file.IndicatorsToCsv;
+
+/**
+ * Computes and formats the CSV export's indicators for 5000 bars, discarding
+ * the bytes so only the export itself is timed. Run from this module with
+ * {@code mvn package -DskipTests}, which copies the dependencies to
+ * target/lib, then {@code java -cp
+ * "target/test-classes:target/classes:target/lib/*"
+ * com.leonarduk.finance.benchmark.IndicatorsToCsvBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndicatorsToCsvBenchmark {
+
+	private static final int BARS = 5000;
+
+	private PrimitiveTimeSeries series;
+
+	private final CountingChannel channel = new CountingChannel();
+
+	@Setup
+	public void setUp() {
+		this.series = new PrimitiveTimeSeries("Benchmark", BARS);
+		LocalDate date = LocalDate.parse("2000-01-03");
+		double price = 100;
+		for (int i = 0; i < BARS; i++) {
+			price *= 1 + Math.sin(i) / 100;
+			this.series.add(date, price, price * 0.99, price * 1.01, price, price, 1000L, "Benchmark");
+			date = date.plusDays(1);
+		}
+	}
+
+	@Benchmark
+	public long writeIndicators() throws IOException {
+		this.channel.bytes = 0;
+		IndicatorsToCsv.writeIndicators(this.series, this.channel);
+		return this.channel.bytes;
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(IndicatorsToCsvBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	private static class CountingChannel implements WritableByteChannel {
+
+		private long bytes;
+
+		@Override
+		public int write(final ByteBuffer source) {
+			final int written = source.remaining();
+			source.position(source.limit());
+			this.bytes += written;
+			return written;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
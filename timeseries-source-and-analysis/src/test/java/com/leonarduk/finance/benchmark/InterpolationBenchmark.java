@@ -0,0 +1,86 @@
+package com.leonarduk.finance.benchmark;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.ta4j.core.Bar;
+
+import com.leonarduk.finance.stockfeed.datatransformation.interpolation.InterpolatedTimeSeries;
+import com.leonarduk.finance.stockfeed.datatransformation.interpolation.LinearInterpolator;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+/**
+ * Linear interpolation of a long, weekly history to daily, straight from a
+ * {@link PrimitiveTimeSeries}, through a List of Bars, and lazily for a caller
+ * that only reads the last bar, as a valuation does.
+ * <p>
+ * Run from this module with {@code mvn package -DskipTests}, which copies the
+ * dependencies to target/lib, then {@code java -cp
+ * "target/test-classes:target/classes:target/lib/*"
+ * com.leonarduk.finance.benchmark.InterpolationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpolationBenchmark {
+
+	@Param({ "50" })
+	public int years;
+
+	private final LinearInterpolator interpolator = new LinearInterpolator();
+
+	private PrimitiveTimeSeries weekly;
+
+	private List<Bar> weeklyBars;
+
+	@Setup
+	public void setUp() {
+		final LocalDate lastDate = LocalDate.parse("2020-09-18");
+		this.weekly = new PrimitiveTimeSeries("BENCH");
+		double price = 100;
+		for (LocalDate date = lastDate.minusYears(this.years); !date.isAfter(lastDate); date = date.plusWeeks(1)) {
+			price *= 1 + Math.sin(date.toEpochDay()) / 100;
+			this.weekly.add(date, price, price * 0.99, price * 1.01, price, price, 1000, "Benchmark");
+		}
+		this.weeklyBars = this.weekly.toBarList();
+	}
+
+	@Benchmark
+	public PrimitiveTimeSeries primitive() {
+		return this.interpolator.interpolate(this.weekly);
+	}
+
+	@Benchmark
+	public List<Bar> barList() throws IOException {
+		return this.interpolator.interpolate(this.weeklyBars);
+	}
+
+	@Benchmark
+	public double lazyLastBar() {
+		final InterpolatedTimeSeries view = this.interpolator.interpolateLazily(this.weekly, null, null);
+		return view.getClose(view.getEndIndex());
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(InterpolationBenchmark.class.getSimpleName()).build()).run();
+	}
+}
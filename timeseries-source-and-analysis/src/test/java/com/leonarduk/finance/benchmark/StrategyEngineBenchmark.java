@@ -0,0 +1,86 @@
+package com.leonarduk.finance.benchmark;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.strategies.AbstractStrategy;
+import com.leonarduk.finance.strategies.GlobalExtremaStrategy;
+import com.leonarduk.finance.strategies.MovingMomentumStrategy;
+import com.leonarduk.finance.strategies.SimpleMovingAverageStrategy;
+import com.leonarduk.finance.strategies.StrategyEngine;
+
+/**
+ * Works out the portfolio report's five signals at the last bar of a 5000 bar
+ * series, as SnapshotAnalyser.analyseStock does for each holding.
+ * <p>
+ * {@code ta4j} builds each strategy's indicators separately, as analyseStock
+ * used to. Run with {@code mvn package -DskipTests}, which copies the
+ * dependencies to target/lib, then {@code java -cp
+ * "target/test-classes:target/classes:target/lib/*"
+ * com.leonarduk.finance.benchmark.StrategyEngineBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrategyEngineBenchmark {
+
+	private static final int BARS = 5000;
+
+	private final StrategyEngine engine = StrategyEngine.standard();
+
+	private PrimitiveTimeSeries series;
+
+	@Setup
+	public void setUp() {
+		this.series = new PrimitiveTimeSeries("CASH", BARS);
+		LocalDate date = LocalDate.parse("2000-01-03");
+		double price = 100;
+		for (int i = 0; i < BARS; i++) {
+			price *= 1 + Math.sin(i) / 100;
+			this.series.add(date, price, price * 0.99, price * 1.01, price, price, 1000L, "Benchmark");
+			date = date.plusDays(1);
+		}
+	}
+
+	@Benchmark
+	public void ta4j(final Blackhole blackhole) {
+		final int index = this.series.getEndIndex();
+		for (final AbstractStrategy strategy : new AbstractStrategy[] {
+				GlobalExtremaStrategy.buildStrategy(this.series),
+				MovingMomentumStrategy.buildStrategy(this.series, 12, 26, 9),
+				SimpleMovingAverageStrategy.buildStrategy(this.series, 12),
+				SimpleMovingAverageStrategy.buildStrategy(this.series, 20),
+				SimpleMovingAverageStrategy.buildStrategy(this.series, 50) }) {
+			blackhole.consume(strategy.getStrategy().shouldEnter(index));
+			blackhole.consume(strategy.getStrategy().shouldExit(index));
+		}
+	}
+
+	@Benchmark
+	public void engine(final Blackhole blackhole) {
+		blackhole.consume(this.engine.evaluate(this.series, this.series.getEndIndex()));
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(StrategyEngineBenchmark.class.getSimpleName()).build()).run();
+	}
+}
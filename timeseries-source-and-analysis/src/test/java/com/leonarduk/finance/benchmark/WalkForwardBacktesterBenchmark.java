@@ -0,0 +1,109 @@
+package com.leonarduk.finance.benchmark;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.ta4j.core.TimeSeries;
+
+import com.leonarduk.finance.analysis.ScoreMatrix;
+import com.leonarduk.finance.analysis.WalkForwardBacktester;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.strategies.AbstractStrategy;
+import com.leonarduk.finance.strategies.GlobalExtremaStrategy;
+import com.leonarduk.finance.strategies.MovingMomentumStrategy;
+import com.leonarduk.finance.strategies.SimpleMovingAverageStrategy;
+
+/**
+ * Walk-forward backtests the portfolio report's five strategies over 40
+ * instruments of 2500 bars, in yearly windows a month apart, on one thread and
+ * on every core. Run with {@code mvn package -DskipTests}, which copies the
+ * dependencies to target/lib, then {@code java -cp
+ * "target/test-classes:target/classes:target/lib/*"
+ * com.leonarduk.finance.benchmark.WalkForwardBacktesterBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WalkForwardBacktesterBenchmark {
+
+	private static final int INSTRUMENTS = 40;
+
+	private static final int BARS = 2500;
+
+	private final Map<String, PrimitiveTimeSeries> universe = new LinkedHashMap<>();
+
+	private ForkJoinPool single;
+
+	private static List<Function<TimeSeries, AbstractStrategy>> strategies() {
+		return Arrays.asList(GlobalExtremaStrategy::buildStrategy,
+				series -> MovingMomentumStrategy.buildStrategy(series, 12, 26, 9),
+				series -> SimpleMovingAverageStrategy.buildStrategy(series, 12),
+				series -> SimpleMovingAverageStrategy.buildStrategy(series, 20),
+				series -> SimpleMovingAverageStrategy.buildStrategy(series, 50));
+	}
+
+	@Setup
+	public void setUp() {
+		for (int s = 0; s < INSTRUMENTS; s++) {
+			final PrimitiveTimeSeries series = new PrimitiveTimeSeries("S" + s, BARS);
+			LocalDate date = LocalDate.parse("2000-01-03");
+			double price = 100;
+			for (int i = 0; i < BARS; i++) {
+				price *= 1 + Math.sin(i + s) / 100;
+				series.add(date, price, price * 0.99, price * 1.01, price, price, 1000L, "Benchmark");
+				date = date.plusDays(1);
+			}
+			this.universe.put(series.getName(), series);
+		}
+		this.single = new ForkJoinPool(1);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.single.shutdown();
+	}
+
+	private ScoreMatrix run(final ForkJoinPool pool) {
+		return new WalkForwardBacktester(pool, WalkForwardBacktester.DEFAULT_WINDOW_BARS,
+				WalkForwardBacktester.DEFAULT_STEP_BARS, WalkForwardBacktester.standardCriteria())
+						.run(this.universe, WalkForwardBacktesterBenchmark.strategies());
+	}
+
+	@Benchmark
+	public ScoreMatrix oneThread() {
+		return this.run(this.single);
+	}
+
+	@Benchmark
+	public ScoreMatrix allCores() {
+		return this.run(ForkJoinPool.commonPool());
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(WalkForwardBacktesterBenchmark.class.getSimpleName()).build())
+				.run();
+	}
+}
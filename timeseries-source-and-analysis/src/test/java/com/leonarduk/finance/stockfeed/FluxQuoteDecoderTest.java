@@ -0,0 +1,90 @@
+package com.leonarduk.finance.stockfeed;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ta4j.core.Bar;
+
+import com.influxdb.query.FluxRecord;
+import com.leonarduk.finance.stockfeed.Instrument.AssetType;
+import com.leonarduk.finance.stockfeed.StockFeed.Exchange;
+import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
+
+public class FluxQuoteDecoderTest {
+
+	private static FluxRecord createRecord(final String date, final double close, final String comment) {
+		return createRecord(Instrument.CASH.getCode(), null, date, close, comment);
+	}
+
+	private static FluxRecord createRecord(final String symbol, final Exchange exchange, final String date,
+			final double close, final String comment) {
+		final FluxRecord record = new FluxRecord(0);
+		record.getValues().put("_time", LocalDate.parse(date).atStartOfDay(ZoneId.systemDefault()).toInstant());
+		record.getValues().put("symbol", symbol);
+		if (exchange != null) {
+			record.getValues().put(InfluxDBWritePipeline.EXCHANGE_TAG, exchange.name());
+		}
+		record.getValues().put("comment", comment);
+		record.getValues().put("open", close - 1);
+		record.getValues().put("low", close - 2);
+		record.getValues().put("high", close + 1);
+		record.getValues().put("close", close);
+		record.getValues().put("volume", "100.0");
+		return record;
+	}
+
+	@Test
+	public void testDecodesRowsInOrder() {
+		final FluxQuoteDecoder decoder = new FluxQuoteDecoder(Collections.singleton(Instrument.CASH));
+		decoder.accept(createRecord("2017-01-05", 10, "Manual"));
+		// Saturday
+		decoder.accept(createRecord("2017-01-07", 11, "Manual"));
+		decoder.accept(createRecord("2017-01-09", 12, "Manual"));
+		decoder.accept(createRecord("2017-01-09", 13, "Alphavantage"));
+
+		final List<Bar> bars = decoder.getBars(Instrument.CASH);
+		Assert.assertEquals(2, bars.size());
+		Assert.assertEquals(LocalDate.parse("2017-01-05"), bars.get(0).getEndTime().toLocalDate());
+		Assert.assertEquals(9.0, bars.get(0).getOpenPrice().doubleValue(), 0.0001);
+		Assert.assertEquals(100L, bars.get(0).getVolume().longValue());
+		Assert.assertEquals(13.0, bars.get(1).getClosePrice().doubleValue(), 0.0001);
+		Assert.assertTrue(decoder.getBars(Instrument.UNKNOWN).isEmpty());
+	}
+
+	@Test
+	public void testSameCodeOnTwoExchangesIsKeptApart() {
+		final Instrument london = new Instrument("ABC London", AssetType.EQUITY, AssetType.EQUITY, Source.MANUAL,
+				"ABC", "ABC", Exchange.London, "Test", "GBP", "ABC");
+		final Instrument nyse = new Instrument("ABC US", AssetType.EQUITY, AssetType.EQUITY, Source.MANUAL,
+				"ABC", "ABC", Exchange.NA, "Test", "USD", "ABC");
+		final FluxQuoteDecoder decoder = new FluxQuoteDecoder(Arrays.asList(london, nyse));
+		// Written before points were tagged with their exchange
+		decoder.accept(createRecord("ABC", null, "2017-01-04", 5, "Manual"));
+		decoder.accept(createRecord("ABC", Exchange.London, "2017-01-05", 10, "Manual"));
+		decoder.accept(createRecord("ABC", Exchange.NA, "2017-01-05", 20, "Manual"));
+
+		Assert.assertEquals(2, decoder.getBars(london).size());
+		Assert.assertEquals(10.0, decoder.getBars(london).get(1).getClosePrice().doubleValue(), 0.0001);
+		Assert.assertEquals(2, decoder.getBars(nyse).size());
+		Assert.assertEquals(20.0, decoder.getBars(nyse).get(1).getClosePrice().doubleValue(), 0.0001);
+	}
+
+	@Test
+	public void testInstrumentsWithNoRowsAreLeftOut() throws Exception {
+		final Instrument other = new Instrument("Other", AssetType.EQUITY, AssetType.EQUITY, Source.MANUAL, "OTH",
+				"OTH", Exchange.London, "Test", "GBP", "OTH");
+		final FluxQuoteDecoder decoder = new FluxQuoteDecoder(Arrays.asList(other, Instrument.CASH));
+		decoder.accept(createRecord("2017-01-05", 10, "Manual"));
+
+		final Map<Instrument, StockV1> stocks = decoder.getStocks();
+		Assert.assertEquals(Collections.singleton(Instrument.CASH), stocks.keySet());
+		Assert.assertEquals(1, stocks.get(Instrument.CASH).getHistory().size());
+	}
+
+}
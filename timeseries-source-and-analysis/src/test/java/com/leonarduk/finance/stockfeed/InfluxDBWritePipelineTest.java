@@ -0,0 +1,176 @@
+package com.leonarduk.finance.stockfeed;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.InfluxDBClientFactory;
+import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the pipeline against a local HTTP server standing in for the InfluxDB
+ * /api/v2/write endpoint.
+ */
+public class InfluxDBWritePipelineTest {
+
+	private HttpServer server;
+
+	private InfluxDBClient client;
+
+	private final List<String> received = new CopyOnWriteArrayList<>();
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final AtomicInteger failuresToReturn = new AtomicInteger();
+
+	@Before
+	public void setUp() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/api/v2/write", exchange -> {
+			this.requests.incrementAndGet();
+			final String body = read(exchange.getRequestBody());
+			if (this.failuresToReturn.getAndDecrement() > 0) {
+				exchange.sendResponseHeaders(503, -1);
+			} else {
+				for (final String line : body.split("\n")) {
+					if (!line.isEmpty()) {
+						this.received.add(line);
+					}
+				}
+				exchange.sendResponseHeaders(204, -1);
+			}
+			exchange.close();
+		});
+		this.server.start();
+		this.client = InfluxDBClientFactory.create("http://localhost:" + this.server.getAddress().getPort(),
+				"token".toCharArray());
+	}
+
+	@After
+	public void tearDown() {
+		this.client.close();
+		this.server.stop(0);
+	}
+
+	private static String read(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			out.write(buffer, 0, read);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private InfluxDBWritePipeline createPipeline(final int batchSize, final int queueCapacity,
+			final long offerTimeoutMillis) {
+		return new InfluxDBWritePipeline(this.client.getWriteApiBlocking(), "bucket", "org", batchSize, 50,
+				queueCapacity, offerTimeoutMillis, 3, 1);
+	}
+
+	@Test
+	public void testWritesFromManyInstrumentsAreBatched() throws Exception {
+		try (InfluxDBWritePipeline pipeline = this.createPipeline(100, 1000, 1000)) {
+			for (int instrument = 0; instrument < 5; instrument++) {
+				for (int day = 1; day <= 40; day++) {
+					pipeline.write("SYM" + instrument + ",measurement value=" + day + " " + day);
+				}
+			}
+			Assert.assertTrue(pipeline.flush(5000));
+			Assert.assertEquals(200, pipeline.getQueued());
+			Assert.assertEquals(200, pipeline.getFlushed());
+			Assert.assertEquals(0, pipeline.getDropped());
+			Assert.assertTrue(pipeline.getBatches() <= 4);
+		}
+		Assert.assertEquals(200, this.received.size());
+	}
+
+	@Test
+	public void testFailedBatchIsRetried() throws Exception {
+		this.failuresToReturn.set(2);
+		try (InfluxDBWritePipeline pipeline = this.createPipeline(10, 100, 1000)) {
+			pipeline.write("HistoricalQuote,symbol=A close=1.0 1");
+			Assert.assertTrue(pipeline.flush(5000));
+			Assert.assertEquals(1, pipeline.getFlushed());
+		}
+		Assert.assertEquals(3, this.requests.get());
+		Assert.assertEquals(1, this.received.size());
+	}
+
+	@Test
+	public void testBatchDroppedAfterRetriesExhausted() throws Exception {
+		this.failuresToReturn.set(100);
+		try (InfluxDBWritePipeline pipeline = this.createPipeline(10, 100, 1000)) {
+			pipeline.write("HistoricalQuote,symbol=A close=1.0 1");
+			Assert.assertTrue(pipeline.flush(5000));
+			Assert.assertEquals(0, pipeline.getFlushed());
+			Assert.assertEquals(1, pipeline.getDropped());
+		}
+		Assert.assertEquals(4, this.requests.get());
+	}
+
+	@Test
+	public void testReceiptWaitsForItsOwnPoints() throws Exception {
+		try (InfluxDBWritePipeline pipeline = this.createPipeline(10, 100, 1000)) {
+			final InfluxDBWritePipeline.Receipt receipt = new InfluxDBWritePipeline.Receipt();
+			for (int day = 1; day <= 25; day++) {
+				pipeline.write("HistoricalQuote,symbol=A close=1.0 " + day, receipt);
+			}
+			Assert.assertTrue(receipt.await(5000));
+			Assert.assertEquals(25, receipt.getPoints());
+			Assert.assertEquals(0, receipt.getRejected());
+		}
+		Assert.assertEquals(25, this.received.size());
+	}
+
+	@Test
+	public void testReceiptCountsRejectedPoints() throws Exception {
+		this.failuresToReturn.set(100);
+		final InfluxDBWritePipeline.Receipt receipt = new InfluxDBWritePipeline.Receipt();
+		try (InfluxDBWritePipeline pipeline = this.createPipeline(10, 100, 1000)) {
+			pipeline.write("HistoricalQuote,symbol=A close=1.0 1", receipt);
+			pipeline.write("HistoricalQuote,symbol=A close=1.0 2", receipt);
+			Assert.assertTrue(receipt.await(5000));
+			Assert.assertEquals(2, receipt.getRejected());
+		}
+		// Closed pipelines reject straight away
+		final InfluxDBWritePipeline closed = this.createPipeline(10, 100, 1000);
+		closed.close();
+		final InfluxDBWritePipeline.Receipt late = new InfluxDBWritePipeline.Receipt();
+		Assert.assertFalse(closed.write("HistoricalQuote,symbol=A close=1.0 3", late));
+		Assert.assertTrue(late.await(0));
+		Assert.assertEquals(1, late.getRejected());
+	}
+
+	@Test
+	public void testLineProtocol() {
+		final LocalDate date = LocalDate.parse("2017-01-03");
+		final ExtendedHistoricalQuote quote = new ExtendedHistoricalQuote(Instrument.CASH, date,
+				BigDecimal.valueOf(10), BigDecimal.valueOf(9), BigDecimal.valueOf(11), BigDecimal.valueOf(10.5),
+				BigDecimal.valueOf(10.5), 100L, "Manual feed");
+		final long nanos = date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() * 1000000L;
+
+		Assert.assertEquals("HistoricalQuote,comment=Manual\\ feed,symbol=" + Instrument.CASH.getCode()
+				+ " adjClose=10.5,close=10.5,high=11,low=9,open=10,volume=\"100.0\" " + nanos,
+				InfluxDBWritePipeline.toLineProtocol(null, "IGNORED", quote));
+		Assert.assertEquals("HistoricalQuote,comment=Manual\\ feed,exchange=London,symbol=" + Instrument.CASH.getCode()
+				+ " adjClose=10.5,close=10.5,high=11,low=9,open=10,volume=\"100.0\" " + nanos,
+				InfluxDBWritePipeline.toLineProtocol("London", "IGNORED", quote));
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.leonarduk.finance.stockfeed;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ta4j.core.Bar;
+
+import com.google.common.collect.Lists;
+import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
+
+public class SeriesCacheTest {
+
+	private Bar createQuote(final String date, final double close) {
+		return new ExtendedHistoricalQuote(Instrument.CASH, LocalDate.parse(date), BigDecimal.valueOf(close),
+				BigDecimal.valueOf(close), BigDecimal.valueOf(close), BigDecimal.valueOf(close),
+				BigDecimal.valueOf(close), 100L, "Manual");
+	}
+
+	@Test
+	public void testServesSubRangeBySlicing() throws IOException {
+		final SeriesCache cache = new SeriesCache();
+		cache.put(Instrument.CASH, LocalDate.parse("2017-01-01"), LocalDate.parse("2017-01-31"),
+				Lists.newArrayList(this.createQuote("2017-01-05", 3), this.createQuote("2017-01-03", 1),
+						this.createQuote("2017-01-04", 2)));
+
+		final Optional<StockV1> slice = cache.get(Instrument.CASH, LocalDate.parse("2017-01-04"),
+				LocalDate.parse("2017-01-05"));
+		Assert.assertTrue(slice.isPresent());
+		final List<Bar> bars = slice.get().getHistory();
+		Assert.assertEquals(2, bars.size());
+		Assert.assertEquals(2.0, bars.get(0).getClosePrice().doubleValue(), 0.0001);
+
+		// Callers may modify what they are given
+		bars.clear();
+		Assert.assertEquals(3, cache.get(Instrument.CASH, LocalDate.parse("2017-01-03"),
+				LocalDate.parse("2017-01-05")).get().getHistory().size());
+
+		Assert.assertFalse(cache.get(Instrument.CASH, LocalDate.parse("2016-12-01"),
+				LocalDate.parse("2017-01-05")).isPresent());
+		Assert.assertEquals(2, cache.getHitCount());
+		Assert.assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testOverlappingLoadsWidenTheEntry() throws IOException {
+		final SeriesCache cache = new SeriesCache();
+		cache.put(Instrument.CASH, LocalDate.parse("2017-01-01"), LocalDate.parse("2017-01-04"),
+				Lists.newArrayList(this.createQuote("2017-01-03", 1), this.createQuote("2017-01-04", 2)));
+		cache.put(Instrument.CASH, LocalDate.parse("2017-01-04"), LocalDate.parse("2017-01-10"),
+				Lists.newArrayList(this.createQuote("2017-01-04", 2), this.createQuote("2017-01-05", 3)));
+
+		final Optional<StockV1> all = cache.get(Instrument.CASH, LocalDate.parse("2017-01-03"),
+				LocalDate.parse("2017-01-05"));
+		Assert.assertTrue(all.isPresent());
+		Assert.assertEquals(3, all.get().getHistory().size());
+
+		cache.invalidate(Instrument.CASH);
+		Assert.assertFalse(cache.get(Instrument.CASH, LocalDate.parse("2017-01-03"),
+				LocalDate.parse("2017-01-04")).isPresent());
+	}
+
+	@Test
+	public void testInvalidatingOtherDatesKeepsTheEntry() {
+		final SeriesCache cache = new SeriesCache();
+		cache.put(Instrument.CASH, LocalDate.parse("2017-01-01"), LocalDate.parse("2017-01-31"),
+				Lists.newArrayList(this.createQuote("2017-01-03", 1), this.createQuote("2017-01-04", 2)));
+
+		cache.invalidate(Instrument.CASH, LocalDate.parse("2017-02-01"), LocalDate.parse("2017-02-03"));
+		Assert.assertEquals(1, cache.size());
+
+		cache.invalidate(Instrument.CASH, LocalDate.parse("2017-01-04"), LocalDate.parse("2017-02-03"));
+		Assert.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testOnlyDatesReturnedAreCovered() {
+		final SeriesCache cache = new SeriesCache();
+		cache.put(Instrument.CASH, LocalDate.parse("2017-01-01"), LocalDate.parse("2017-01-31"),
+				Lists.newArrayList(this.createQuote("2017-01-10", 1), this.createQuote("2017-01-11", 2)));
+
+		Assert.assertTrue(cache.get(Instrument.CASH, LocalDate.parse("2017-01-10"),
+				LocalDate.parse("2017-01-11")).isPresent());
+		Assert.assertFalse(cache.get(Instrument.CASH, LocalDate.parse("2017-01-01"),
+				LocalDate.parse("2017-01-11")).isPresent());
+		Assert.assertFalse(cache.get(Instrument.CASH, LocalDate.parse("2017-01-10"),
+				LocalDate.parse("2017-01-31")).isPresent());
+
+		cache.put(Instrument.UNKNOWN, LocalDate.parse("2017-01-01"), LocalDate.parse("2017-01-31"),
+				Lists.newArrayList());
+		Assert.assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testEvictsBeyondMaximumWeight() {
+		final SeriesCache cache = new SeriesCache(SeriesCache.BYTES_PER_BAR * 3);
+		cache.put(Instrument.CASH, LocalDate.parse("2017-01-01"), LocalDate.parse("2017-01-31"),
+				Lists.newArrayList(this.createQuote("2017-01-03", 1), this.createQuote("2017-01-04", 2),
+						this.createQuote("2017-01-05", 3), this.createQuote("2017-01-06", 4)));
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(1, cache.getEvictionCount());
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.leonarduk.finance.stockfeed;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ta4j.core.Bar;
+
+import com.google.common.collect.Lists;
+import com.leonarduk.finance.stockfeed.SeriesMerger.ConflictPolicy;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+public class SeriesMergerTest {
+
+	private static List<Bar> bars(final String... datesAndCloses) {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries("VOD");
+		for (final String dateAndClose : datesAndCloses) {
+			final String[] parts = dateAndClose.split("=");
+			final double close = Double.parseDouble(parts[1]);
+			final boolean interpolated = parts[0].startsWith("~");
+			final LocalDate date = LocalDate.parse(parts[0].replace("~", ""));
+			series.add((int) date.toEpochDay(), close, close, close, close, close, 100, interpolated ? "Interpolated"
+					: "Real", interpolated ? PrimitiveTimeSeries.FLAG_INTERPOLATED : 0);
+		}
+		return series.getBarData();
+	}
+
+	private static double close(final SeriesMerger.Result result, final int i) {
+		return result.getMerged().get(i).getClosePrice().doubleValue();
+	}
+
+	@Test
+	public void testMergesInDateOrderAndReportsNewDates() {
+		final List<Bar> cached = bars("2020-01-06=1", "2020-01-08=3", "2020-01-10=5");
+		final List<Bar> fresh = Lists.reverse(bars("2020-01-07=2", "2020-01-08=3", "2020-01-13=6"));
+
+		final SeriesMerger.Result result = SeriesMerger.merge(cached, fresh, ConflictPolicy.PREFER_FRESH);
+
+		final double[] expected = { 1, 2, 3, 5, 6 };
+		Assert.assertEquals(expected.length, result.getMerged().size());
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertEquals(expected[i], close(result, i), 0);
+		}
+		Assert.assertEquals(Arrays.asList(LocalDate.parse("2020-01-07"), LocalDate.parse("2020-01-13")),
+				result.getChangedDates());
+	}
+
+	@Test
+	public void testConflictPolicies() {
+		final List<Bar> cached = bars("2020-01-06=1", "~2020-01-07=2", "2020-01-08=3");
+		final List<Bar> fresh = bars("2020-01-06=10", "2020-01-07=20", "~2020-01-08=30");
+
+		final SeriesMerger.Result keepCached = SeriesMerger.merge(cached, fresh, ConflictPolicy.PREFER_CACHED);
+		Assert.assertEquals(1, close(keepCached, 0), 0);
+		Assert.assertEquals(2, close(keepCached, 1), 0);
+		Assert.assertFalse(keepCached.hasChanges());
+
+		final SeriesMerger.Result takeFresh = SeriesMerger.merge(cached, fresh, ConflictPolicy.PREFER_FRESH);
+		Assert.assertEquals(30, close(takeFresh, 2), 0);
+		Assert.assertEquals(3, takeFresh.getChangedDates().size());
+
+		final SeriesMerger.Result preferReal = SeriesMerger.merge(cached, fresh, ConflictPolicy.PREFER_REAL);
+		Assert.assertEquals(10, close(preferReal, 0), 0);
+		Assert.assertEquals(20, close(preferReal, 1), 0);
+		Assert.assertEquals(3, close(preferReal, 2), 0);
+		Assert.assertEquals(LocalDate.parse("2020-01-06"), preferReal.getFirstChangedDate().get());
+		Assert.assertEquals(LocalDate.parse("2020-01-07"), preferReal.getLastChangedDate().get());
+	}
+
+	@Test
+	public void testDuplicateCachedDateDoesNotOverrideFreshBar() {
+		final List<Bar> cached = Lists.newArrayList(bars("2020-01-06=1", "2020-01-07=2"));
+		cached.add(bars("2020-01-07=3").get(0));
+		final List<Bar> fresh = bars("2020-01-07=20");
+
+		final SeriesMerger.Result result = SeriesMerger.merge(cached, fresh, ConflictPolicy.PREFER_FRESH);
+
+		Assert.assertEquals(2, result.getMerged().size());
+		Assert.assertEquals(20, close(result, 1), 0);
+		Assert.assertEquals(Arrays.asList(LocalDate.parse("2020-01-07")), result.getChangedDates());
+
+		final SeriesMerger.Result keepCached = SeriesMerger.merge(fresh, cached, ConflictPolicy.PREFER_CACHED);
+		Assert.assertEquals(20, close(keepCached, 1), 0);
+	}
+
+	@Test
+	public void testSkipsZeroClosesAndUnchangedBars() {
+		final List<Bar> cached = bars("2020-01-06=1", "2020-01-07=2");
+		final List<Bar> fresh = bars("2020-01-07=2", "2020-01-08=0");
+
+		final SeriesMerger.Result result = SeriesMerger.merge(cached, fresh, ConflictPolicy.PREFER_FRESH);
+
+		Assert.assertEquals(2, result.getMerged().size());
+		Assert.assertFalse(result.hasChanges());
+	}
+
+	@Test
+	public void testUnorderedInputIsSorted() {
+		final List<Bar> ordered = bars("2020-01-06=1", "2020-01-07=2", "2020-01-08=3");
+		final List<Bar> cached = Arrays.asList(ordered.get(2), ordered.get(0), ordered.get(1));
+
+		final SeriesMerger.Result result = SeriesMerger.merge(cached, null, ConflictPolicy.PREFER_CACHED);
+
+		Assert.assertEquals(3, result.getMerged().size());
+		Assert.assertEquals(1, close(result, 0), 0);
+		Assert.assertEquals(3, close(result, 2), 0);
+	}
+}
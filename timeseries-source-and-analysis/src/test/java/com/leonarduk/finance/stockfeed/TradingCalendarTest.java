@@ -0,0 +1,76 @@
+package com.leonarduk.finance.stockfeed;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.leonarduk.finance.stockfeed.StockFeed.Exchange;
+import com.leonarduk.finance.stockfeed.datatransformation.interpolation.LinearInterpolator;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.utils.DateUtils;
+
+public class TradingCalendarTest {
+
+	private final TradingCalendar london = TradingCalendar.of(Exchange.London);
+
+	@Test
+	public void testLondonHolidaysAreNotTradingDays() {
+		Assert.assertFalse(this.london.isTradingDay(LocalDate.parse("2020-12-25")));
+		Assert.assertFalse(this.london.isTradingDay(LocalDate.parse("2020-12-28")));
+		Assert.assertFalse(this.london.isTradingDay(LocalDate.parse("2019-04-19")));
+		Assert.assertFalse(this.london.isTradingDay(LocalDate.parse("2020-12-26")));
+		Assert.assertTrue(this.london.isTradingDay(LocalDate.parse("2020-12-24")));
+		Assert.assertTrue(this.london.isTradingDay(LocalDate.parse("2020-12-29")));
+
+		Assert.assertEquals(LocalDate.parse("2020-12-24"), this.london.getLastTradingDay(LocalDate.parse("2020-12-28")));
+		Assert.assertEquals(LocalDate.parse("2020-12-29"), this.london.getNextTradingDay(LocalDate.parse("2020-12-25")));
+		Assert.assertEquals(LocalDate.parse("2020-12-24"),
+				this.london.getPreviousTradingDay(LocalDate.parse("2020-12-29")));
+		Assert.assertEquals(1, this.london.getTradingDaysBetween(LocalDate.parse("2020-12-24"),
+				LocalDate.parse("2020-12-29")));
+	}
+
+	@Test
+	public void testCountsRoundTripAcrossTheCoveredYears() {
+		final TradingCalendar calendar = new TradingCalendar(
+				Arrays.asList(LocalDate.parse("2001-01-01"), LocalDate.parse("2003-12-31")));
+		for (LocalDate date = LocalDate.parse("2000-12-01"); date
+				.isBefore(LocalDate.parse("2004-02-01")); date = date.plusDays(1)) {
+			final long count = calendar.getTradingDayCount(date.toEpochDay());
+			if (calendar.isTradingDay(date)) {
+				Assert.assertEquals(date, LocalDate.ofEpochDay(calendar.getTradingDayFromCount(count)));
+				Assert.assertEquals(count + 1, calendar.getTradingDayCount(date.toEpochDay() + 1));
+			} else {
+				Assert.assertEquals(count, calendar.getTradingDayCount(date.toEpochDay() + 1));
+			}
+		}
+		Assert.assertFalse(calendar.isTradingDay(LocalDate.parse("2003-12-31")));
+		Assert.assertTrue(calendar.isTradingDay(LocalDate.parse("2002-12-31")));
+	}
+
+	@Test
+	public void testExchangeWithoutAFileTradesEveryWeekday() {
+		final TradingCalendar calendar = TradingCalendar.of(Exchange.NA);
+
+		Assert.assertSame(TradingCalendar.WEEKDAYS, calendar);
+		Assert.assertTrue(calendar.isTradingDay(LocalDate.parse("2020-12-25")));
+		Assert.assertEquals(DateUtils.getDiffInWorkDays(LocalDate.parse("2020-12-01"), LocalDate.parse("2021-01-08")),
+				calendar.getTradingDaysBetween(LocalDate.parse("2020-12-01"), LocalDate.parse("2021-01-08")));
+	}
+
+	@Test
+	public void testInterpolationSkipsHolidays() {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries("VOD");
+		series.add(LocalDate.parse("2020-12-22"), 10, 10, 10, 10, 10, 100, "Real");
+		series.add(LocalDate.parse("2020-12-30"), 40, 40, 40, 40, 40, 100, "Real");
+
+		final PrimitiveTimeSeries actual = new LinearInterpolator(this.london).interpolate(series);
+
+		// 23rd, 24th and 29th
+		Assert.assertEquals(5, actual.getBarCount());
+		Assert.assertEquals(LocalDate.parse("2020-12-29"), actual.getDate(3));
+		Assert.assertEquals(32.5, actual.getClose(3), 1e-9);
+	}
+}
@@ -0,0 +1,146 @@
+package com.leonarduk.finance.stockfeed.datatransformation.correction;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+public class CleaningPipelineTest {
+
+	private CleaningPipeline pipeline;
+
+	@Before
+	public void setUp() {
+		this.pipeline = CleaningPipeline.standard();
+	}
+
+	private static PrimitiveTimeSeries series(final String first, final double... closes) {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries("VOD");
+		LocalDate date = LocalDate.parse(first);
+		for (final double close : closes) {
+			series.add(date, close, close, close, close, close, 100, "Real");
+			date = date.plusDays(1);
+		}
+		return series;
+	}
+
+	@Test
+	public void testRemovesBadDatesAndFlagsRescaledBars() {
+		final PrimitiveTimeSeries raw = new PrimitiveTimeSeries("VOD");
+		raw.add(LocalDate.parse("1970-01-01"), 1, 1, 1, 1, 1, 100, "Unset");
+		raw.add(LocalDate.parse("2017-01-03"), 250, 250, 250, 250, 250, 100, "Real");
+		raw.add(LocalDate.parse("2017-01-04"), 2.5, 2.5, 2.5, 2.5, 2.5, 100, "Pounds");
+		raw.add(LocalDate.parse("2017-01-05"), 251, 251, 251, 251, 251, 100, "Real");
+		raw.add(LocalDate.now().plusYears(2), 252, 252, 252, 252, 252, 100, "Future");
+
+		final PrimitiveTimeSeries cleaned = this.pipeline.clean(raw);
+
+		Assert.assertEquals(3, cleaned.getBarCount());
+		Assert.assertEquals(LocalDate.parse("2017-01-03"), cleaned.getDate(0));
+		Assert.assertEquals(250, cleaned.getClose(1), 1e-9);
+		Assert.assertEquals(250, cleaned.getLow(1), 1e-9);
+		Assert.assertTrue(cleaned.isCorrected(1));
+		Assert.assertTrue(cleaned.getComment(1).startsWith("Scaled from 2.5"));
+		Assert.assertFalse(cleaned.isCorrected(2));
+		Assert.assertEquals("Real", cleaned.getComment(2));
+	}
+
+	@Test
+	public void testComparesWithTheLastKeptClose() {
+		// Rising 100 fold over the years is not bad scaling
+		final double[] closes = new double[200];
+		for (int i = 0; i < closes.length; i++) {
+			closes[i] = Math.pow(1.05, i);
+		}
+
+		final PrimitiveTimeSeries cleaned = this.pipeline.clean(series("2017-01-02", closes));
+
+		for (int i = 0; i < closes.length; i++) {
+			Assert.assertFalse(cleaned.isCorrected(i));
+		}
+	}
+
+	@Test
+	public void testOnlyNewBarsAreCleanedAgain() {
+		final PrimitiveTimeSeries first = this.pipeline.cleanIncrementally("VOD",
+				series("2017-01-02", 100, 101, 1.02, 103));
+		Assert.assertEquals(4, this.pipeline.getCleanedBarCount());
+		Assert.assertTrue(first.isCorrected(2));
+
+		final PrimitiveTimeSeries second = this.pipeline.cleanIncrementally("VOD",
+				series("2017-01-02", 100, 101, 1.02, 103, 1.04, 105));
+		Assert.assertEquals(6, this.pipeline.getCleanedBarCount());
+		Assert.assertEquals(6, second.getBarCount());
+		Assert.assertEquals(104, second.getClose(4), 1e-9);
+		Assert.assertEquals(4, first.getBarCount());
+
+		// A different history starts again
+		this.pipeline.cleanIncrementally("VOD", series("2017-01-03", 101, 102));
+		Assert.assertEquals(8, this.pipeline.getCleanedBarCount());
+	}
+
+	@Test
+	public void testRevisedBarIsCleanedAgain() {
+		this.pipeline.cleanIncrementally("London:VOD", series("2017-01-02", 100, 101, 1.02, 103));
+		Assert.assertEquals(4, this.pipeline.getCleanedBarCount());
+
+		// The feed now has the right price for the bar that needed rescaling
+		final PrimitiveTimeSeries revised = this.pipeline.cleanIncrementally("London:VOD",
+				series("2017-01-02", 100, 101, 102, 103, 104));
+		Assert.assertEquals(9, this.pipeline.getCleanedBarCount());
+		Assert.assertEquals(102, revised.getClose(2), 1e-9);
+		Assert.assertFalse(revised.isCorrected(2));
+		Assert.assertEquals("Real", revised.getComment(2));
+	}
+
+	@Test
+	public void testWindowsFromDifferentDatesAreKeptApart() {
+		this.pipeline.cleanIncrementally("London:VOD", series("2017-01-02", 100, 101, 102));
+		final PrimitiveTimeSeries later = this.pipeline.cleanIncrementally("London:VOD",
+				series("2017-01-03", 101, 102, 103));
+		Assert.assertEquals(6, this.pipeline.getCleanedBarCount());
+		Assert.assertEquals(LocalDate.parse("2017-01-03"), later.getDate(0));
+
+		// Each window still only has its new bars cleaned
+		this.pipeline.cleanIncrementally("London:VOD", series("2017-01-02", 100, 101, 102, 103));
+		this.pipeline.cleanIncrementally("London:VOD", series("2017-01-03", 101, 102, 103, 104));
+		Assert.assertEquals(8, this.pipeline.getCleanedBarCount());
+	}
+
+	@Test
+	public void testInvalidateForgetsEveryWindow() {
+		final double[] closes = new double[CleaningPipeline.VERIFIED_BARS + 2];
+		Arrays.fill(closes, 100);
+		this.pipeline.cleanIncrementally("London:VOD", series("2017-01-02", closes));
+		this.pipeline.cleanIncrementally("London:VOD", series("2017-01-03", 100));
+		final int cleaned = closes.length + 1;
+		Assert.assertEquals(cleaned, this.pipeline.getCleanedBarCount());
+
+		// Too far back to be checked, so the revision needs an invalidate
+		closes[0] = 99;
+		Assert.assertEquals(100,
+				this.pipeline.cleanIncrementally("London:VOD", series("2017-01-02", closes)).getClose(0), 1e-9);
+		Assert.assertEquals(cleaned, this.pipeline.getCleanedBarCount());
+
+		this.pipeline.invalidate("London:VOD");
+		Assert.assertEquals(99,
+				this.pipeline.cleanIncrementally("London:VOD", series("2017-01-02", closes)).getClose(0), 1e-9);
+		this.pipeline.cleanIncrementally("London:VOD", series("2017-01-03", 100));
+		Assert.assertEquals((cleaned * 2), this.pipeline.getCleanedBarCount());
+	}
+
+	@Test
+	public void testSameCodeOnAnotherExchangeIsKeptApart() {
+		final PrimitiveTimeSeries london = this.pipeline.cleanIncrementally("London:VOD",
+				series("2017-01-02", 100, 101));
+		final PrimitiveTimeSeries other = this.pipeline.cleanIncrementally("NA:VOD",
+				series("2017-01-02", 100, 101, 102));
+		Assert.assertEquals(5, this.pipeline.getCleanedBarCount());
+		Assert.assertEquals(2, london.getBarCount());
+		Assert.assertEquals(3, other.getBarCount());
+	}
+}
@@ -0,0 +1,51 @@
+package com.leonarduk.finance.stockfeed.feed;
+
+import java.time.LocalDate;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ta4j.core.Bar;
+
+import com.google.common.collect.Lists;
+import com.leonarduk.finance.stockfeed.Instrument;
+
+public class ExtendedHistoricalQuoteTimeSeriesTest {
+
+	private Bar createQuote(final String date, final double close) {
+		return new ExtendedHistoricalQuote(Instrument.CASH, LocalDate.parse(date), close, close, close, close, close,
+				100L, "Manual");
+	}
+
+	@Test
+	public void testLinkedListIsCopiedAndSorted() {
+		final List<Bar> bars = new LinkedList<>(Lists.newArrayList(this.createQuote("2017-01-04", 2),
+				this.createQuote("2017-01-03", 1), this.createQuote("2017-01-05", 3)));
+		final ExtendedHistoricalQuoteTimeSeries series = new ExtendedHistoricalQuoteTimeSeries(bars);
+
+		Assert.assertTrue(series.getBarData() instanceof RandomAccess);
+		Assert.assertEquals(1.0, series.getFirstBar().getClosePrice().doubleValue(), 0.0001);
+		Assert.assertEquals(3.0, series.getLastBar().getClosePrice().doubleValue(), 0.0001);
+		Assert.assertEquals(Instrument.CASH.getCode(), series.getName());
+	}
+
+	@Test
+	public void testChangesToTheListPassedInAreNotSeen() {
+		final List<Bar> bars = Lists.newArrayList(this.createQuote("2017-01-03", 1),
+				this.createQuote("2017-01-04", 2));
+		final ExtendedHistoricalQuoteTimeSeries series = new ExtendedHistoricalQuoteTimeSeries(bars);
+
+		bars.clear();
+		Assert.assertEquals(2, series.getBarCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddingAnEarlierBarFails() {
+		final ExtendedHistoricalQuoteTimeSeries series = new ExtendedHistoricalQuoteTimeSeries(
+				Lists.newArrayList(this.createQuote("2017-01-04", 2)));
+		series.addBar(this.createQuote("2017-01-03", 1), false);
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.leonarduk.finance.stockfeed.feed;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ta4j.core.Bar;
+import org.ta4j.core.TimeSeries;
+import org.ta4j.core.num.DoubleNum;
+
+import com.google.common.collect.Lists;
+import com.leonarduk.finance.stockfeed.Instrument;
+
+public class PrimitiveTimeSeriesTest {
+
+	private Bar createQuote(final String date, final double close, final String comment) {
+		return new ExtendedHistoricalQuote(Instrument.CASH, LocalDate.parse(date), close, close - 1, close + 1, close,
+				close * 2, 100L, comment);
+	}
+
+	@Test
+	public void testFromSortsAndKeepsLastBarPerDate() {
+		final PrimitiveTimeSeries series = PrimitiveTimeSeries.from("CASH",
+				Lists.newArrayList(this.createQuote("2017-01-05", 3, "Manual"),
+						this.createQuote("2017-01-03", 1, "Manual"), this.createQuote("2017-01-04", 2, "Manual"),
+						this.createQuote("2017-01-04", 5, "Interpolated")));
+
+		Assert.assertEquals("CASH", series.getName());
+		Assert.assertEquals(3, series.getBarCount());
+		Assert.assertEquals(LocalDate.parse("2017-01-03"), series.getDate(0));
+		Assert.assertEquals(5.0, series.getClose(1), 0.0001);
+		Assert.assertEquals(10.0, series.getAdjClose(1), 0.0001);
+		Assert.assertEquals(4.0, series.getLow(1), 0.0001);
+		Assert.assertEquals(6.0, series.getHigh(1), 0.0001);
+		Assert.assertEquals(100L, series.getVolumeAt(1));
+		Assert.assertEquals("Interpolated", series.getComment(1));
+		Assert.assertEquals(2, series.indexOf(LocalDate.parse("2017-01-05")));
+		Assert.assertTrue(series.indexOf(LocalDate.parse("2017-01-06")) < 0);
+	}
+
+	@Test
+	public void testBarViews() {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries("CASH", 1);
+		series.add(LocalDate.parse("2017-01-03"), 1, 0.5, 1.5, 1.2, 1.1, 10, "Manual");
+		series.add(LocalDate.parse("2017-01-04"), 2, 1.5, 2.5, 2.2, 2.1, 20, "Manual");
+
+		final Bar bar = series.getBar(1);
+		Assert.assertEquals(2.2, bar.getClosePrice().doubleValue(), 0.0001);
+		Assert.assertEquals(1.5, bar.getMinPrice().doubleValue(), 0.0001);
+		Assert.assertEquals(LocalDate.parse("2017-01-04"), bar.getEndTime().toLocalDate());
+		Assert.assertEquals("Manual", ((Commentable) bar).getComment());
+		Assert.assertEquals(bar, series.getBar(1));
+
+		// The list handed out can be changed without touching the series
+		final List<Bar> bars = series.toBarList();
+		bars.remove(0);
+		Assert.assertEquals(1, bars.size());
+		Assert.assertEquals(2, series.getBarCount());
+
+		final TimeSeries sub = series.getSubSeries(1, 2);
+		Assert.assertEquals(1, sub.getBarCount());
+		Assert.assertEquals(2.2, sub.getFirstBar().getClosePrice().doubleValue(), 0.0001);
+	}
+
+	@Test
+	public void testTradesAndAmountAreNotRecorded() {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries("CASH");
+		series.add(LocalDate.parse("2017-01-03"), 1, 0.5, 1.5, 1.2, 1.1, 10, "Manual");
+
+		Assert.assertEquals(0, series.getBar(0).getTrades());
+		Assert.assertEquals(0.0, series.getBar(0).getAmount().doubleValue(), 0);
+	}
+
+	@Test
+	public void testPricesAndTradesUpdateTheLastBar() {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries("CASH");
+		series.addBar(Duration.ofDays(1), LocalDate.parse("2017-01-03").atStartOfDay(ZoneId.systemDefault()));
+		series.addPrice(DoubleNum.valueOf(2));
+		series.addTrade(DoubleNum.valueOf(50), DoubleNum.valueOf(3));
+		series.addPrice(DoubleNum.valueOf(1));
+
+		Assert.assertEquals(1, series.getBarCount());
+		Assert.assertEquals(2.0, series.getOpen(0), 0);
+		Assert.assertEquals(3.0, series.getHigh(0), 0);
+		Assert.assertEquals(1.0, series.getLow(0), 0);
+		Assert.assertEquals(1.0, series.getClose(0), 0);
+		Assert.assertEquals(50L, series.getVolumeAt(0));
+	}
+
+	@Test
+	public void testCommentsAreKeptPerSeries() {
+		final PrimitiveTimeSeries first = new PrimitiveTimeSeries("A");
+		first.add(LocalDate.parse("2017-01-03"), 1, 1, 1, 1, 1, 1, "Manual");
+		final PrimitiveTimeSeries second = new PrimitiveTimeSeries("B");
+		second.add(LocalDate.parse("2017-01-03"), 1, 1, 1, 1, 1, 1, "Yahoo");
+		second.add(first, 0);
+
+		Assert.assertEquals("Manual", first.getComment(0));
+		Assert.assertEquals("Manual", second.getComment(0));
+		Assert.assertEquals("Manual", ((Commentable) second.getSubSeries(0, 1).getBar(0)).getComment());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testMaximumBarCountIsNotSupported() {
+		new PrimitiveTimeSeries("CASH").setMaximumBarCount(10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAppendingAnEarlierDateFails() {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries("CASH");
+		series.add(LocalDate.parse("2017-01-04"), 1, 1, 1, 1, 1, 1, "");
+		series.add(LocalDate.parse("2017-01-03"), 1, 1, 1, 1, 1, 1, "");
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.leonarduk.finance.stockfeed.feed;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Made-up series for tests that need realistic bars without a feed.
+ */
+public final class TestSeries {
+
+	private TestSeries() {
+	}
+
+	/**
+	 * @return VOD bars from {@link #randomWalk(String, int, long)} with a fixed seed
+	 */
+	public static PrimitiveTimeSeries randomWalk(final int bars) {
+		return TestSeries.randomWalk("VOD", bars, 29);
+	}
+
+	/**
+	 * @return daily bars from 2015-01-05 with a cycle for the strategies to trade
+	 */
+	public static PrimitiveTimeSeries randomWalk(final String name, final int bars, final long seed) {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries(name);
+		final Random random = new Random(seed);
+		LocalDate date = LocalDate.parse("2015-01-05");
+		double price = 100;
+		for (int i = 0; i < bars; i++) {
+			final double open = price;
+			price = (price * (1 + (random.nextGaussian() / 40))) + (Math.sin(i / 10.0) * 2);
+			series.add(date, open, Math.min(open, price) * 0.999, Math.max(open, price) * 1.001, price, price,
+					1000, "Test");
+			date = date.plusDays(1);
+		}
+		return series;
+	}
+}
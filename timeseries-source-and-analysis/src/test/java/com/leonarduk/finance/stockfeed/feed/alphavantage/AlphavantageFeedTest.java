@@ -0,0 +1,101 @@
+package com.leonarduk.finance.stockfeed.feed.alphavantage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.patriques.input.timeseries.OutputSize;
+import org.ta4j.core.Bar;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
+
+public class AlphavantageFeedTest {
+
+	private static final LocalDate LAST_DATE = LocalDate.parse("2021-03-05");
+
+	@Test
+	public void testConcurrentRequestsForSameSymbolAreDeduplicated() throws Exception {
+		final StubAlphaVantageConnector connector = new StubAlphaVantageConnector(LAST_DATE, 20, 200);
+		final AlphavantageFeed feed = new AlphavantageFeed(
+				new ApiKeyScheduler(ImmutableList.of("KEY1AAAA"), 5), apiKey -> connector);
+
+		final int callers = 6;
+		final ExecutorService executor = Executors.newFixedThreadPool(callers);
+		try {
+			final List<Future<Optional<StockV1>>> results = new ArrayList<>();
+			for (int i = 0; i < callers; i++) {
+				results.add(executor.submit(
+						() -> feed.get(Instrument.CASH, LAST_DATE.minusYears(1), LAST_DATE)));
+			}
+			for (final Future<Optional<StockV1>> result : results) {
+				Assert.assertEquals(20, result.get(5, TimeUnit.SECONDS).get().getHistory().size());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		Assert.assertTrue(feed.getDedupedCount() > 0);
+		Assert.assertEquals(callers, connector.getRequestCount() + feed.getDedupedCount());
+		Assert.assertEquals(connector.getRequestCount(), feed.getScheduler().getCallCount());
+	}
+
+	@Test
+	public void testTrimsToRequestedRange() {
+		final StubAlphaVantageConnector connector = new StubAlphaVantageConnector(LAST_DATE, 20, 0);
+		final AlphavantageFeed feed = new AlphavantageFeed(
+				new ApiKeyScheduler(ImmutableList.of("KEY1AAAA"), 5), apiKey -> connector);
+
+		final List<Bar> history = feed.get(Instrument.CASH, LocalDate.parse("2021-02-22"),
+				LocalDate.parse("2021-03-03")).get().getHistory();
+		Assert.assertEquals(8, history.size());
+		Assert.assertEquals("full", connector.getLastOutputSize());
+	}
+
+	@Test
+	public void testRecentRangeUsesCompact() {
+		final LocalDate today = LocalDate.now();
+		final StubAlphaVantageConnector connector = new StubAlphaVantageConnector(today, 20, 0);
+		final AlphavantageFeed feed = new AlphavantageFeed(
+				new ApiKeyScheduler(ImmutableList.of("KEY1AAAA"), 5), apiKey -> connector);
+
+		Assert.assertTrue(feed.get(Instrument.CASH, today.minusDays(10), today).isPresent());
+		Assert.assertEquals("compact", connector.getLastOutputSize());
+
+		Assert.assertEquals(OutputSize.FULL, AlphavantageFeed.getOutputSize(today.minusYears(1)));
+		Assert.assertEquals(OutputSize.FULL, AlphavantageFeed.getOutputSize(null));
+	}
+
+	@Test
+	public void testThroughputAgainstStub() {
+		final AtomicLong now = new AtomicLong();
+		final Ticker ticker = new Ticker() {
+			@Override
+			public long read() {
+				return now.get();
+			}
+		};
+		final StubAlphaVantageConnector connector = new StubAlphaVantageConnector(LAST_DATE, 5, 0);
+		final ApiKeyScheduler scheduler = new ApiKeyScheduler(ImmutableList.of("KEY1AAAA", "KEY2BBBB", "KEY3CCCC"),
+				5, ticker, now::addAndGet);
+		final AlphavantageFeed feed = new AlphavantageFeed(scheduler, apiKey -> connector);
+
+		final int requests = 45;
+		for (int i = 0; i < requests; i++) {
+			Assert.assertTrue(feed.get(Instrument.CASH, LAST_DATE.minusYears(1), LAST_DATE).isPresent());
+		}
+		Assert.assertEquals(requests, connector.getRequestCount());
+		// 15 straight away, then 15 a minute across the three keys
+		Assert.assertEquals(TimeUnit.MINUTES.toNanos(2), now.get());
+	}
+
+}
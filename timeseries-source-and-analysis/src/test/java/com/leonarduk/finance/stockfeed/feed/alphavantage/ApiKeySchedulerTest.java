@@ -0,0 +1,77 @@
+package com.leonarduk.finance.stockfeed.feed.alphavantage;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+
+public class ApiKeySchedulerTest {
+
+	private AtomicLong now;
+
+	private ApiKeyScheduler scheduler;
+
+	@Before
+	public void setUp() {
+		this.now = new AtomicLong();
+		final Ticker ticker = new Ticker() {
+			@Override
+			public long read() {
+				return ApiKeySchedulerTest.this.now.get();
+			}
+		};
+		// Sleeping just moves the clock on
+		this.scheduler = new ApiKeyScheduler(ImmutableList.of("KEY1AAAA", "KEY2BBBB"), 5, ticker,
+				nanos -> this.now.addAndGet(nanos));
+	}
+
+	@Test
+	public void testBurstIsSpreadAcrossKeys() throws InterruptedException {
+		for (int i = 0; i < 10; i++) {
+			this.scheduler.acquire();
+		}
+		Assert.assertEquals(0, this.now.get());
+		Assert.assertEquals(0, this.scheduler.getThrottledCount());
+
+		final Map<String, Long> usage = this.scheduler.getUsage();
+		Assert.assertEquals(Long.valueOf(5), usage.get("KEY1****"));
+		Assert.assertEquals(Long.valueOf(5), usage.get("KEY2****"));
+	}
+
+	@Test
+	public void testThroughputIsLimitedToQuota() throws InterruptedException {
+		for (int i = 0; i < 30; i++) {
+			this.scheduler.acquire();
+		}
+		// 10 from the full buckets, then 20 more at 10 a minute. A lone caller
+		// waits for every other call, as the second key refills meanwhile
+		Assert.assertEquals(TimeUnit.MINUTES.toNanos(2), this.now.get());
+		Assert.assertEquals(10, this.scheduler.getThrottledCount());
+		Assert.assertEquals(30, this.scheduler.getCallCount());
+		Assert.assertEquals(TimeUnit.SECONDS.toMillis(12), this.scheduler.getMaxWaitMillis());
+	}
+
+	@Test
+	public void testBucketsRefillWhileIdle() throws InterruptedException {
+		for (int i = 0; i < 10; i++) {
+			this.scheduler.acquire();
+		}
+		this.now.addAndGet(TimeUnit.MINUTES.toNanos(5));
+		for (int i = 0; i < 10; i++) {
+			this.scheduler.acquire();
+		}
+		Assert.assertEquals(0, this.scheduler.getThrottledCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testKeysAreRequired() {
+		new ApiKeyScheduler(ImmutableList.of(), 5);
+	}
+
+}
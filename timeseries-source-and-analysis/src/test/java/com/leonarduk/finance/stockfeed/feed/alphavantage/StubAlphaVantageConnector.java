@@ -0,0 +1,84 @@
+package com.leonarduk.finance.stockfeed.feed.alphavantage;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.patriques.ApiConnector;
+import org.patriques.input.ApiParameter;
+
+/**
+ * Answers daily adjusted requests locally with a generated series, so the feed
+ * can be exercised without a network or spending quota.
+ */
+public class StubAlphaVantageConnector implements ApiConnector {
+
+	private final LocalDate lastDate;
+
+	private final int days;
+
+	private final long latencyMillis;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private volatile String lastOutputSize;
+
+	public StubAlphaVantageConnector(final LocalDate lastDate, final int days, final long latencyMillis) {
+		this.lastDate = lastDate;
+		this.days = days;
+		this.latencyMillis = latencyMillis;
+	}
+
+	@Override
+	public String getRequest(final ApiParameter... apiParameters) {
+		this.requests.incrementAndGet();
+		if (this.latencyMillis > 0) {
+			try {
+				Thread.sleep(this.latencyMillis);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		String symbol = "";
+		for (final ApiParameter parameter : apiParameters) {
+			if ("symbol".equals(parameter.getKey())) {
+				symbol = parameter.getValue();
+			}
+			if ("outputsize".equals(parameter.getKey())) {
+				this.lastOutputSize = parameter.getValue();
+			}
+		}
+
+		final StringBuilder json = new StringBuilder();
+		json.append("{\"Meta Data\":{\"1. Information\":\"Daily Time Series with Splits and Dividend Events\",")
+				.append("\"2. Symbol\":\"").append(symbol).append("\",\"3. Last Refreshed\":\"")
+				.append(this.lastDate).append("\",\"4. Output Size\":\"Full size\",")
+				.append("\"5. Time Zone\":\"US/Eastern\"},\"Time Series (Daily)\":{");
+		LocalDate date = this.lastDate;
+		for (int i = 0; i < this.days; i++) {
+			while (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+				date = date.minusDays(1);
+			}
+			final double price = 100 + i;
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append('"').append(date).append("\":{\"1. open\":\"").append(price).append("\",\"2. high\":\"")
+					.append(price + 1).append("\",\"3. low\":\"").append(price - 1).append("\",\"4. close\":\"")
+					.append(price).append("\",\"5. adjusted close\":\"").append(price)
+					.append("\",\"6. volume\":\"1000\",\"7. dividend amount\":\"0.0000\",")
+					.append("\"8. split coefficient\":\"1.0000\"}");
+			date = date.minusDays(1);
+		}
+		return json.append("}}").toString();
+	}
+
+	public int getRequestCount() {
+		return this.requests.get();
+	}
+
+	public String getLastOutputSize() {
+		return this.lastOutputSize;
+	}
+}
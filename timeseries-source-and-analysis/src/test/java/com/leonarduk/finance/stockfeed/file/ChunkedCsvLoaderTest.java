@@ -0,0 +1,106 @@
+package com.leonarduk.finance.stockfeed.file;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+public class ChunkedCsvLoaderTest {
+
+	private ForkJoinPool pool;
+
+	private Path file;
+
+	private String csv;
+
+	@Before
+	public void setUp() throws IOException {
+		this.pool = new ForkJoinPool(4);
+		final StringBuilder sb = new StringBuilder("date,open,high,low,close,volume,Comment\n");
+		LocalDate date = LocalDate.parse("2020-09-18");
+		for (int i = 0; i < 500; i++) {
+			if (date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY) {
+				sb.append(date).append(',').append(i).append(',').append(i + 1).append(',').append(i - 1)
+						.append(',').append(i + 0.5).append(",100,Manual\n");
+			}
+			date = date.minusDays(1);
+		}
+		this.csv = sb.toString();
+		this.file = Files.createTempFile("chunked", ".csv");
+		Files.write(this.file, this.csv.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		this.pool.shutdownNow();
+		Files.deleteIfExists(this.file);
+	}
+
+	private PrimitiveTimeSeries parseWhole(final LocalDate fromDate, final LocalDate toDate) throws IOException {
+		final String rows = this.csv.substring(this.csv.indexOf('\n') + 1);
+		return new CsvBarParser().parse(new StringReader(rows), "VOD", "Default", LocalDate::parse, fromDate,
+				toDate);
+	}
+
+	private static void assertSameBars(final PrimitiveTimeSeries expected, final PrimitiveTimeSeries actual) {
+		Assert.assertEquals(expected.getBarCount(), actual.getBarCount());
+		for (int i = 0; i < expected.getBarCount(); i++) {
+			Assert.assertEquals(expected.getDate(i), actual.getDate(i));
+			Assert.assertEquals(expected.getClose(i), actual.getClose(i), 0);
+			Assert.assertEquals(expected.getComment(i), actual.getComment(i));
+		}
+	}
+
+	@Test
+	public void testChunksMatchASequentialParse() throws IOException {
+		final PrimitiveTimeSeries series = new ChunkedCsvLoader(this.pool, 100).load(this.file, true, "VOD",
+				"Default", LocalDate::parse, null, null);
+
+		Assert.assertTrue(this.csv.length() > 100 * 10);
+		assertSameBars(this.parseWhole(null, null), series);
+		Assert.assertEquals(LocalDate.parse("2020-09-18"), series.getDate(series.getEndIndex()));
+	}
+
+	@Test
+	public void testDateRangeIsAppliedWhileParsing() throws IOException {
+		final LocalDate fromDate = LocalDate.parse("2020-03-02");
+		final LocalDate toDate = LocalDate.parse("2020-03-31");
+		final PrimitiveTimeSeries series = new ChunkedCsvLoader(this.pool, 256).load(this.file, true, "VOD",
+				"Default", LocalDate::parse, fromDate, toDate);
+
+		Assert.assertEquals(22, series.getBarCount());
+		Assert.assertEquals(fromDate, series.getDate(0));
+		Assert.assertEquals(toDate, series.getDate(series.getEndIndex()));
+		assertSameBars(this.parseWhole(fromDate, toDate), series);
+	}
+
+	@Test
+	public void testOverlappingPartsAreMergedWithTheLaterWinning() throws IOException {
+		final PrimitiveTimeSeries first = new CsvBarParser().parse(
+				new StringReader("2020-01-01,1,1,1,1,0\n2020-01-03,3,3,3,3,0\n2020-01-06,6,6,6,6,0\n"), "VOD",
+				"Default", LocalDate::parse);
+		final PrimitiveTimeSeries second = new CsvBarParser().parse(
+				new StringReader("2020-01-02,2,2,2,2,0\n2020-01-03,30,30,30,30,0\n"), "VOD", "Default",
+				LocalDate::parse);
+
+		final PrimitiveTimeSeries merged = ChunkedCsvLoader.merge("VOD", Arrays.asList(first, second));
+
+		Assert.assertEquals(4, merged.getBarCount());
+		Assert.assertEquals(2, merged.getClose(1), 0);
+		Assert.assertEquals(30, merged.getClose(2), 0);
+		Assert.assertEquals(6, merged.getClose(3), 0);
+	}
+
+}
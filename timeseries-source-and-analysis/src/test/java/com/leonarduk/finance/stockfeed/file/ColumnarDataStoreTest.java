@@ -0,0 +1,116 @@
+package com.leonarduk.finance.stockfeed.file;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ta4j.core.Bar;
+
+import com.google.common.collect.Lists;
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.feed.Commentable;
+import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
+
+public class ColumnarDataStoreTest {
+
+	private ColumnarDataStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		this.store = new ColumnarDataStore(Files.createTempDirectory("columnar").toString());
+	}
+
+	private Bar createQuote(final String date, final double close, final String comment) {
+		return new ExtendedHistoricalQuote(Instrument.CASH, LocalDate.parse(date), BigDecimal.valueOf(close - 1),
+				BigDecimal.valueOf(close - 2), BigDecimal.valueOf(close + 1), BigDecimal.valueOf(close),
+				BigDecimal.valueOf(close), 100L, comment);
+	}
+
+	@Test
+	public void testStoreAndGetRange() throws IOException {
+		final List<Bar> history = Lists.newArrayList(this.createQuote("2017-01-04", 12, "Alphavantage"),
+				this.createQuote("2017-01-02", 10, "Manual"), this.createQuote("2017-01-03", 11, "Alphavantage"),
+				this.createQuote("2017-01-05", 13, "Manual"));
+		final StockV1 stock = new StockV1(Instrument.CASH);
+		stock.setHistory(history);
+
+		Assert.assertFalse(this.store.contains(stock));
+		this.store.storeSeries(stock);
+		Assert.assertTrue(this.store.contains(stock));
+
+		final Optional<StockV1> fetched = this.store.get(Instrument.CASH, LocalDate.parse("2017-01-03"),
+				LocalDate.parse("2017-01-04"));
+		Assert.assertTrue(fetched.isPresent());
+		final List<Bar> bars = fetched.get().getHistory();
+		Assert.assertEquals(2, bars.size());
+		Assert.assertEquals(LocalDate.parse("2017-01-03"), bars.get(0).getEndTime().toLocalDate());
+		Assert.assertEquals(11.0, bars.get(0).getClosePrice().doubleValue(), 0.0001);
+		Assert.assertEquals(13.0, bars.get(1).getMaxPrice().doubleValue(), 0.0001);
+		Assert.assertEquals(100L, bars.get(1).getVolume().longValue());
+		Assert.assertEquals("Alphavantage", ((Commentable) bars.get(1)).getComment());
+	}
+
+	@Test
+	public void testGetOutsideStoredRange() throws IOException {
+		final StockV1 stock = new StockV1(Instrument.CASH);
+		stock.setHistory(Lists.newArrayList(this.createQuote("2017-01-02", 10, "Manual")));
+		this.store.storeSeries(stock);
+
+		final Optional<StockV1> fetched = this.store.get(Instrument.CASH, LocalDate.parse("2018-01-01"),
+				LocalDate.parse("2018-02-01"));
+		Assert.assertTrue(fetched.isPresent());
+		Assert.assertTrue(fetched.get().getHistory().isEmpty());
+	}
+
+	@Test
+	public void testCommentsWithLineBreaksKeepTheirIds() throws IOException {
+		final StockV1 stock = new StockV1(Instrument.CASH);
+		stock.setHistory(Lists.newArrayList(this.createQuote("2017-01-02", 10, "Split\nfrom 2:1 \\ checked"),
+				this.createQuote("2017-01-03", 11, "Manual")));
+		this.store.storeSeries(stock);
+
+		final List<Bar> bars = this.store.get(Instrument.CASH, LocalDate.parse("2017-01-01"),
+				LocalDate.parse("2017-01-31")).get().getHistory();
+		Assert.assertEquals("Split\nfrom 2:1 \\ checked", ((Commentable) bars.get(0)).getComment());
+		Assert.assertEquals("Manual", ((Commentable) bars.get(1)).getComment());
+	}
+
+	@Test
+	public void testAdjustedCloseIsKept() throws IOException {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries("CASH");
+		series.add(LocalDate.parse("2017-01-02"), 9, 8, 11, 10, 5, 100, "Manual");
+		final StockV1 stock = new StockV1(Instrument.CASH);
+		stock.setHistory(Lists.newArrayList(series.getBar(0)));
+		this.store.storeSeries(stock);
+
+		final ExtendedHistoricalQuote bar = (ExtendedHistoricalQuote) this.store.get(Instrument.CASH,
+				LocalDate.parse("2017-01-01"), LocalDate.parse("2017-01-31")).get().getHistory().get(0);
+		Assert.assertEquals(10.0, bar.getClose().doubleValue(), 0.0001);
+		Assert.assertEquals(5.0, bar.getAdjClose().doubleValue(), 0.0001);
+	}
+
+	@Test
+	public void testColumnsOfDifferentLengthsAreNotRead() throws IOException {
+		final StockV1 stock = new StockV1(Instrument.CASH);
+		stock.setHistory(Lists.newArrayList(this.createQuote("2017-01-02", 10, "Manual"),
+				this.createQuote("2017-01-03", 11, "Manual")));
+		this.store.storeSeries(stock);
+		final Path folder = this.store.getFolder(this.store.getKey(Instrument.CASH));
+		Assert.assertFalse(Files.exists(folder.resolve(ColumnarDataStore.DATE + ColumnarDataStore.TEMP_SUFFIX)));
+
+		// As if the write had stopped part way through the close column
+		Files.write(folder.resolve(ColumnarDataStore.CLOSE), new byte[Double.BYTES]);
+		Assert.assertFalse(this.store.get(Instrument.CASH, LocalDate.parse("2017-01-01"),
+				LocalDate.parse("2017-01-31")).isPresent());
+	}
+
+}
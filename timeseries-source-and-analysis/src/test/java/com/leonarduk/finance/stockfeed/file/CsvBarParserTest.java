@@ -0,0 +1,105 @@
+package com.leonarduk.finance.stockfeed.file;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+public class CsvBarParserTest {
+
+	private CsvBarParser parser;
+
+	@Before
+	public void setUp() {
+		this.parser = new CsvBarParser();
+	}
+
+	private PrimitiveTimeSeries parse(final String csv) throws IOException {
+		return this.parser.parse(new StringReader(csv), "VOD", "Default", LocalDate::parse);
+	}
+
+	@Test
+	public void testNewestFirstRowsAreReturnedInDateOrder() throws IOException {
+		final PrimitiveTimeSeries series = this.parse("2020-09-18,220.7072,221.5,219.25,220.7,1500,Vanguard\n"
+				+ "2020-09-17,221.4663,222,220,-1.25,0,Vanguard\r\n" + "\n" + "2020-09-16,1,2,0.5,1.5,7\n");
+
+		Assert.assertEquals(3, series.getBarCount());
+		Assert.assertEquals(LocalDate.parse("2020-09-16"), series.getDate(0));
+		Assert.assertEquals(LocalDate.parse("2020-09-18"), series.getDate(2));
+		Assert.assertEquals(220.7072, series.getOpen(2), 0);
+		Assert.assertEquals(221.5, series.getHigh(2), 0);
+		Assert.assertEquals(219.25, series.getLow(2), 0);
+		Assert.assertEquals(220.7, series.getClose(2), 0);
+		Assert.assertEquals(220.7, series.getAdjClose(2), 0);
+		Assert.assertEquals(1500, series.getVolumeAt(2));
+		Assert.assertEquals(-1.25, series.getClose(1), 0);
+		Assert.assertEquals("Vanguard", series.getComment(1));
+		Assert.assertEquals("Default", series.getComment(0));
+		Assert.assertEquals(0, this.parser.getFallbackCount());
+	}
+
+	@Test
+	public void testOddFieldsUseTheFallback() throws IOException {
+		final PrimitiveTimeSeries series = this.parser.parse(new StringReader("18/09/2020\t1.5K\t-\t1\t2\t-\n"),
+				"VOD", "Default", field -> LocalDate.of(2020, 9, 18));
+
+		Assert.assertEquals(LocalDate.parse("2020-09-18"), series.getDate(0));
+		Assert.assertEquals(1500, series.getOpen(0), 0);
+		Assert.assertTrue(Double.isNaN(series.getHigh(0)));
+		Assert.assertEquals(1, series.getVolumeAt(0));
+		Assert.assertEquals(2, this.parser.getFallbackCount());
+	}
+
+	@Test
+	public void testRowsAfterABlankLineAreRead() throws IOException {
+		final PrimitiveTimeSeries series = this.parse("2020-09-18,1,1,1,1,0\n" + "\n" + "\r\n"
+				+ "2020-09-17,2,2,2,2,0\n");
+
+		Assert.assertEquals(2, series.getBarCount());
+		Assert.assertEquals(LocalDate.parse("2020-09-17"), series.getDate(0));
+	}
+
+	@Test
+	public void testMissingPricesAreNaN() throws IOException {
+		final PrimitiveTimeSeries series = this.parse("2020-09-18,,1.5,,2,100\n");
+
+		Assert.assertEquals(1, series.getBarCount());
+		Assert.assertTrue(Double.isNaN(series.getOpen(0)));
+		Assert.assertEquals(1.5, series.getHigh(0), 0);
+		Assert.assertTrue(Double.isNaN(series.getLow(0)));
+		Assert.assertEquals(2, series.getClose(0), 0);
+	}
+
+	@Test
+	public void testWeekendsAreSkippedAndUnsortedRowsSorted() throws IOException {
+		final PrimitiveTimeSeries series = this.parse("2020-09-18,1,1,1,1,0\n" + "2020-09-19,2,2,2,2,0\n"
+				+ "2020-09-14,3,3,3,3,0\n" + "2020-09-16,4,4,4,4,0\n" + "2020-09-14,5,5,5,5,0\n");
+
+		Assert.assertEquals(3, series.getBarCount());
+		Assert.assertEquals(LocalDate.parse("2020-09-14"), series.getDate(0));
+		Assert.assertEquals(5, series.getClose(0), 0);
+		Assert.assertEquals(4, series.getClose(1), 0);
+		Assert.assertEquals(1, series.getClose(2), 0);
+	}
+
+	@Test
+	public void testEpochDayMatchesLocalDate() {
+		for (LocalDate date = LocalDate.of(1899, 12, 25); date.getYear() < 2101; date = date.plusDays(1)) {
+			Assert.assertEquals(date.toString(), date.toEpochDay(),
+					CsvBarParser.toEpochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+			Assert.assertEquals(date.toString(), date.getDayOfWeek().getValue() >= 6,
+					CsvBarParser.isWeekend((int) date.toEpochDay()));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnparseableDateFails() throws IOException {
+		this.parse("not a date,1,1,1,1,0\n");
+	}
+
+}
@@ -0,0 +1,137 @@
+package com.leonarduk.finance.stockfeed.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.file.ChunkedCsvLoader.ByteRange;
+
+public class CsvDateIndexTest {
+
+	private static final LocalDate LAST_DATE = LocalDate.parse("2020-09-18");
+
+	private File csv;
+
+	@Before
+	public void setUp() throws IOException {
+		this.csv = Files.createTempFile("index", ".csv").toFile();
+		// 20 years, newest first
+		final StringBuilder sb = new StringBuilder("date,open,high,low,close,volume,Comment\n");
+		for (LocalDate date = LAST_DATE; date.isAfter(LAST_DATE.minusYears(20)); date = date.minusDays(1)) {
+			if (date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY) {
+				sb.append(date).append(",1.5,2.5,0.5,").append(date.getDayOfMonth()).append(",100,Manual\n");
+			}
+		}
+		Files.write(this.csv.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		CsvDateIndex.delete(this.csv);
+		Files.deleteIfExists(this.csv.toPath());
+	}
+
+	private static long length(final List<ByteRange> ranges) {
+		return ranges.stream().mapToLong(ByteRange::length).sum();
+	}
+
+	private PrimitiveTimeSeries load(final List<ByteRange> ranges, final LocalDate fromDate, final LocalDate toDate)
+			throws IOException {
+		return new ChunkedCsvLoader().load(this.csv.toPath(), ranges, "VOD", "Default", LocalDate::parse, fromDate,
+				toDate);
+	}
+
+	@Test
+	public void testOneMonthReadsAFewBlocks() throws IOException {
+		final CsvDateIndex index = CsvDateIndex.load(this.csv);
+		final LocalDate fromDate = LocalDate.parse("2010-06-01");
+		final LocalDate toDate = LocalDate.parse("2010-06-30");
+
+		final List<ByteRange> ranges = index.getRanges(fromDate, toDate, this.csv.length());
+
+		Assert.assertEquals(1, ranges.size());
+		Assert.assertTrue(length(ranges) <= 2 * CsvDateIndex.BLOCK_BYTES + 100);
+		Assert.assertTrue(length(ranges) * 20 < this.csv.length());
+		final PrimitiveTimeSeries series = this.load(ranges, fromDate, toDate);
+		Assert.assertEquals(22, series.getBarCount());
+		Assert.assertEquals(LocalDate.parse("2010-06-01"), series.getDate(0));
+		Assert.assertEquals(LocalDate.parse("2010-06-30"), series.getDate(series.getEndIndex()));
+	}
+
+	@Test
+	public void testIndexIsSavedAndExtendedAfterAppends() throws IOException {
+		final CsvDateIndex first = CsvDateIndex.load(this.csv);
+		Assert.assertTrue(CsvDateIndex.getIndexFile(this.csv).exists());
+		Assert.assertEquals(this.csv.length(), first.getIndexedLength());
+
+		Files.write(this.csv.toPath(), "2020-09-21,1,1,1,99,0,Manual\n".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		final CsvDateIndex second = CsvDateIndex.load(this.csv);
+		Assert.assertEquals(this.csv.length(), second.getIndexedLength());
+
+		final LocalDate day = LocalDate.parse("2020-09-21");
+		final List<ByteRange> ranges = second.getRanges(day, day, this.csv.length());
+		Assert.assertTrue(length(ranges) < CsvDateIndex.BLOCK_BYTES * 2);
+		final PrimitiveTimeSeries series = this.load(ranges, day, day);
+		Assert.assertEquals(1, series.getBarCount());
+		Assert.assertEquals(99, series.getClose(0), 0);
+	}
+
+	@Test
+	public void testUnindexedTailIsAlwaysRead() throws IOException {
+		final CsvDateIndex index = CsvDateIndex.load(this.csv);
+		final long indexed = this.csv.length();
+		Files.write(this.csv.toPath(), "2020-09-22,1,1,1,7,0".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+
+		final List<ByteRange> ranges = index.getRanges(LocalDate.parse("2020-09-22"), null, this.csv.length());
+
+		Assert.assertEquals(indexed, ranges.get(ranges.size() - 1).getStart());
+		Assert.assertEquals(this.csv.length(), ranges.get(ranges.size() - 1).getEnd());
+	}
+
+	@Test
+	public void testRewrittenFileIsReindexed() throws IOException {
+		CsvDateIndex.load(this.csv);
+		Files.write(this.csv.toPath(),
+				"date,open,high,low,close,volume\n2017-01-03,1,1,1,3,0\n".getBytes(StandardCharsets.UTF_8));
+
+		final CsvDateIndex index = CsvDateIndex.load(this.csv);
+
+		Assert.assertEquals(1, index.getBlockCount());
+		Assert.assertEquals(this.csv.length(), index.getIndexedLength());
+	}
+
+	@Test
+	public void testRewrittenFileThatGrewIsReindexed() throws IOException {
+		CsvDateIndex.load(this.csv);
+		// Same rows oldest first plus one more, so the old index is not a prefix
+		final List<String> lines = Files.readAllLines(this.csv.toPath());
+		final StringBuilder sb = new StringBuilder(lines.get(0)).append('\n');
+		for (int i = lines.size() - 1; i > 0; i--) {
+			sb.append(lines.get(i)).append('\n');
+		}
+		sb.append("2020-09-21,1,1,1,99,0,Manual\n");
+		Files.write(this.csv.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+
+		final CsvDateIndex index = CsvDateIndex.load(this.csv);
+		Assert.assertEquals(this.csv.length(), index.getIndexedLength());
+		final LocalDate fromDate = LocalDate.parse("2010-06-01");
+		final LocalDate toDate = LocalDate.parse("2010-06-30");
+		final PrimitiveTimeSeries series = this.load(index.getRanges(fromDate, toDate, this.csv.length()), fromDate,
+				toDate);
+		Assert.assertEquals(22, series.getBarCount());
+	}
+
+}
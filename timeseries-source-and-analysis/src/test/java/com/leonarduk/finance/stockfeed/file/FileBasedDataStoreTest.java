@@ -0,0 +1,193 @@
+package com.leonarduk.finance.stockfeed.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ta4j.core.Bar;
+
+import com.google.common.collect.Lists;
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
+
+public class FileBasedDataStoreTest {
+
+	private FileBasedDataStore store;
+
+	private String location;
+
+	@Before
+	public void setUp() throws Exception {
+		this.location = Files.createTempDirectory("filestore").toString();
+		this.store = new FileBasedDataStore(this.location);
+	}
+
+	private Bar createQuote(final String date, final double close) {
+		return new ExtendedHistoricalQuote(Instrument.CASH, LocalDate.parse(date), BigDecimal.valueOf(close),
+				BigDecimal.valueOf(close), BigDecimal.valueOf(close), BigDecimal.valueOf(close),
+				BigDecimal.valueOf(close), 100L, "Manual");
+	}
+
+	private void store(final Bar... bars) throws IOException {
+		final StockV1 stock = new StockV1(Instrument.CASH);
+		stock.setHistory(Lists.newArrayList(bars));
+		this.store.storeSeries(stock);
+	}
+
+	private List<Bar> getAll() throws IOException {
+		return this.store.get(Instrument.CASH, LocalDate.parse("2017-01-01"), LocalDate.parse("2017-12-31")).get()
+				.getHistory();
+	}
+
+	@Test
+	public void testAppendKeepsExistingRows() throws IOException {
+		this.store(this.createQuote("2017-01-03", 10), this.createQuote("2017-01-04", 11));
+		this.store(this.createQuote("2017-01-04", 11), this.createQuote("2017-01-05", 12));
+
+		final List<Bar> bars = this.getAll();
+		Assert.assertEquals(3, bars.size());
+		Assert.assertEquals(12.0, bars.get(0).getClosePrice().doubleValue(), 0.0001);
+		Assert.assertEquals(11.0, bars.get(1).getClosePrice().doubleValue(), 0.0001);
+		Assert.assertFalse(FileBasedDataStore.getDeltaFile(this.store.getStock(Instrument.CASH)).exists());
+	}
+
+	@Test
+	public void testCorrectionsSupersedeStoredRows() throws IOException {
+		this.store(this.createQuote("2017-01-03", 10), this.createQuote("2017-01-04", 11));
+		this.store(this.createQuote("2017-01-04", 99), this.createQuote("2017-01-05", 12));
+
+		final File file = this.store.getStock(Instrument.CASH);
+		Assert.assertTrue(FileBasedDataStore.getDeltaFile(file).exists());
+		List<Bar> bars = this.getAll();
+		Assert.assertEquals(3, bars.size());
+		Assert.assertEquals(99.0, bars.get(1).getClosePrice().doubleValue(), 0.0001);
+
+		// The same values again are not written twice
+		final StockV1 stock = new StockV1(Instrument.CASH);
+		stock.setHistory(Lists.newArrayList(this.createQuote("2017-01-04", 99)));
+		Assert.assertEquals(0, this.store.writeSeries(stock));
+
+		this.store.compact();
+		Assert.assertFalse(FileBasedDataStore.getDeltaFile(file).exists());
+		bars = this.getAll();
+		Assert.assertEquals(3, bars.size());
+		Assert.assertEquals(99.0, bars.get(1).getClosePrice().doubleValue(), 0.0001);
+	}
+
+	@Test
+	public void testNewestFirstFileIsSortedBeforeAppending() throws IOException {
+		final File file = this.store.getStock(Instrument.CASH);
+		Files.write(file.toPath(), Lists.newArrayList("date,open,high,low,close,volume,Comment",
+				"2017-01-04,11,11,11,11,100,Manual", "2017-01-03,10,10,10,10,100,Manual"));
+		this.store(this.createQuote("2017-01-05", 12));
+
+		final List<String> lines = Files.readAllLines(file.toPath());
+		Assert.assertEquals(4, lines.size());
+		Assert.assertTrue(lines.get(1).startsWith("2017-01-03"));
+		Assert.assertTrue(lines.get(3).startsWith("2017-01-05"));
+		Assert.assertEquals(3, this.getAll().size());
+	}
+
+	@Test
+	public void testFileReplacedOutsideTheStoreIsReadAgain() throws IOException {
+		this.store(this.createQuote("2017-01-03", 10), this.createQuote("2017-01-04", 11));
+		final File file = this.store.getStock(Instrument.CASH);
+		Files.write(file.toPath(),
+				Lists.newArrayList("date,open,high,low,close,volume,Comment", "2017-01-03,10,10,10,10,100,Manual"));
+
+		this.store(this.createQuote("2017-01-04", 11));
+		Assert.assertEquals(2, this.getAll().size());
+	}
+
+	@Test
+	public void testBackFillGoesToDeltaUntilCompacted() throws IOException {
+		this.store(this.createQuote("2017-01-04", 11), this.createQuote("2017-01-05", 12));
+		this.store(this.createQuote("2017-01-03", 10));
+
+		final File file = this.store.getStock(Instrument.CASH);
+		Assert.assertTrue(FileBasedDataStore.getDeltaFile(file).exists());
+		Assert.assertEquals(3, this.getAll().size());
+
+		this.store.compact();
+		Assert.assertFalse(FileBasedDataStore.getDeltaFile(file).exists());
+		final List<String> lines = Files.readAllLines(file.toPath());
+		Assert.assertEquals(4, lines.size());
+		Assert.assertTrue(lines.get(1).startsWith("2017-01-03"));
+		Assert.assertEquals(3, this.getAll().size());
+	}
+
+	@Test
+	public void testGetAll() throws IOException {
+		this.store(this.createQuote("2017-01-03", 10), this.createQuote("2017-01-04", 11));
+
+		final Map<Instrument, StockV1> results = this.store.getAll(
+				Lists.newArrayList(Instrument.CASH, Instrument.UNKNOWN), LocalDate.parse("2017-01-01"),
+				LocalDate.parse("2017-12-31"));
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(2, results.get(Instrument.CASH).getHistory().size());
+	}
+
+	@Test
+	public void testConcurrentReadsOfDifferentFilesKeepTheirInstrument() throws Exception {
+		this.store(this.createQuote("2017-01-03", 10), this.createQuote("2017-01-04", 11));
+		final Instrument other = Instrument.fromString("FBDSTEST");
+		final StockV1 otherStock = new StockV1(other);
+		otherStock.setHistory(Lists.newArrayList(this.createQuote("2017-01-03", 50)));
+		this.store.storeSeries(otherStock);
+
+		final List<Instrument> instruments = Lists.newArrayList();
+		for (int i = 0; i < 200; i++) {
+			instruments.add(i % 2 == 0 ? Instrument.CASH : other);
+		}
+		instruments.parallelStream().forEach(instrument -> {
+			try {
+				final StockV1 stock = this.store
+						.get(instrument, LocalDate.parse("2017-01-01"), LocalDate.parse("2017-12-31")).get();
+				Assert.assertEquals(instrument, stock.getInstrument());
+				Assert.assertEquals(instrument == other ? 1 : 2, stock.getHistory().size());
+				Assert.assertEquals(instrument == other ? 50 : 11,
+						stock.getHistory().get(0).getClosePrice().doubleValue(), 0);
+			} catch (final IOException e) {
+				throw new AssertionError(e);
+			}
+		});
+	}
+
+	@Test
+	public void testChunkedLoadIncludesDeltaAndDateRange() throws IOException {
+		this.store(this.createQuote("2017-01-04", 11), this.createQuote("2017-01-05", 12),
+				this.createQuote("2017-02-01", 13));
+		this.store(this.createQuote("2017-01-03", 10));
+
+		final List<Bar> bars = new FileBasedDataStore(this.location, 0)
+				.get(Instrument.CASH, LocalDate.parse("2017-01-01"), LocalDate.parse("2017-01-31")).get()
+				.getHistory();
+		Assert.assertEquals(3, bars.size());
+		Assert.assertEquals(12.0, bars.get(0).getClosePrice().doubleValue(), 0.0001);
+		Assert.assertEquals(10.0, bars.get(2).getClosePrice().doubleValue(), 0.0001);
+	}
+
+	@Test
+	public void testShortRangeReadsPartOfTheFile() throws IOException {
+		final List<Bar> bars = Lists.newArrayList();
+		for (LocalDate date = LocalDate.parse("2015-01-05"); date.getYear() < 2018; date = date.plusDays(1)) {
+			bars.add(this.createQuote(date.toString(), date.getDayOfMonth()));
+		}
+		this.store(bars.toArray(new Bar[0]));
+
+		final List<Bar> week = this.store.get(Instrument.CASH, LocalDate.parse("2017-01-02"),
+				LocalDate.parse("2017-01-06")).get().getHistory();
+		Assert.assertEquals(5, week.size());
+		Assert.assertEquals(6.0, week.get(0).getClosePrice().doubleValue(), 0.0001);
+		Assert.assertTrue(this.store.getBytesRead() * 4 < this.store.getStock(Instrument.CASH).length());
+	}
+
+}
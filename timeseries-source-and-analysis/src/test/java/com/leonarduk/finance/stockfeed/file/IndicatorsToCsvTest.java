@@ -0,0 +1,85 @@
+package com.leonarduk.finance.stockfeed.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.feed.TestSeries;
+
+public class IndicatorsToCsvTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static PrimitiveTimeSeries series(final String name, final int bars) {
+		return TestSeries.randomWalk(name, bars, 17);
+	}
+
+	private static String format(final double value) {
+		final StringBuilder row = new StringBuilder();
+		IndicatorsToCsv.appendValue(row, value);
+		return row.toString();
+	}
+
+	@Test
+	public void testValuesAreFormattedAsDecimalFormat() {
+		final DecimalFormat formatter = new DecimalFormat("#0.00", DecimalFormatSymbols.getInstance(Locale.UK));
+		final Random random = new Random(3);
+		for (int i = 0; i < 100000; i++) {
+			final double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(24) - 4);
+			Assert.assertEquals(formatter.format(value), IndicatorsToCsvTest.format(value));
+		}
+		for (final double value : new double[] { 0, -0.0, -0.001, 0.125, 0.375, 2.675, 1.005, 99.995, 1e7,
+				10000000.005, 1e15, 123456789.125, Long.MAX_VALUE }) {
+			Assert.assertEquals(String.valueOf(value), formatter.format(value), IndicatorsToCsvTest.format(value));
+		}
+		Assert.assertEquals("NaN", IndicatorsToCsvTest.format(Double.NaN));
+	}
+
+	@Test
+	public void testWritesARowPerBar() throws IOException {
+		final PrimitiveTimeSeries series = IndicatorsToCsvTest.series("VOD", 3000);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		IndicatorsToCsv.writeIndicators(series, Channels.newChannel(bytes));
+
+		final String[] lines = new String(bytes.toByteArray(), StandardCharsets.US_ASCII).split("\n");
+		Assert.assertEquals(3001, lines.length);
+		Assert.assertEquals(IndicatorsToCsv.HEADER.trim(), lines[0]);
+		final int columns = IndicatorsToCsv.HEADER.split(",").length;
+		for (int i = 1; i < lines.length; i++) {
+			Assert.assertEquals(lines[i], columns, lines[i].split(",").length);
+		}
+		final String[] last = lines[3000].split(",");
+		Assert.assertEquals(series.getDate(2999).toString(), last[0]);
+		Assert.assertEquals(IndicatorsToCsvTest.format(series.getClose(2999)), last[1]);
+	}
+
+	@Test
+	public void testExportsTheUniverse() throws IOException {
+		final Path directory = this.folder.getRoot().toPath();
+		final List<PrimitiveTimeSeries> universe = Arrays.asList(IndicatorsToCsvTest.series("VOD", 500),
+				IndicatorsToCsvTest.series("BARC", 250), IndicatorsToCsvTest.series("EMPTY", 0));
+		IndicatorsToCsv.exportIndicatorsToCsv(universe, directory);
+
+		for (final PrimitiveTimeSeries series : universe) {
+			final List<String> lines = Files
+					.readAllLines(directory.resolve(series.getName() + IndicatorsToCsv.SUFFIX));
+			Assert.assertEquals(series.getBarCount() + 1, lines.size());
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.leonarduk.finance.stockfeed.interpolation;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ta4j.core.Bar;
+
+import com.leonarduk.finance.stockfeed.datatransformation.interpolation.FlatLineInterpolator;
+import com.leonarduk.finance.stockfeed.datatransformation.interpolation.InterpolatedTimeSeries;
+import com.leonarduk.finance.stockfeed.datatransformation.interpolation.LinearInterpolator;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+
+public class InterpolatedTimeSeriesTest {
+
+	private final LinearInterpolator interpolator = new LinearInterpolator();
+
+	private PrimitiveTimeSeries raw;
+
+	@Before
+	public void setUp() {
+		this.raw = new PrimitiveTimeSeries("VOD");
+		// Uneven gaps, with a Saturday bar among them
+		LocalDate date = LocalDate.parse("2017-01-02");
+		for (int i = 0; i < 60; i++) {
+			this.raw.add(date, i, i - 1, i + 2, i + 0.5, i + 0.25, 100 + i, "Real");
+			date = date.plusDays(1 + (i * 7) % 5);
+			if (i == 30) {
+				date = LocalDate.parse("2017-06-03");
+			}
+		}
+	}
+
+	@Test
+	public void testMatchesInterpolatingEverythingThenCutting() {
+		final LocalDate fromDate = LocalDate.parse("2017-02-01");
+		final LocalDate toDate = LocalDate.parse("2017-07-14");
+		final PrimitiveTimeSeries eager = this.interpolator.interpolate(this.raw);
+		final InterpolatedTimeSeries view = this.interpolator.interpolateLazily(this.raw, fromDate, toDate);
+
+		final int offset = eager.indexOf(fromDate);
+		Assert.assertEquals(eager.indexOf(toDate) - offset + 1, view.getBarCount());
+		for (int i = 0; i < view.getBarCount(); i++) {
+			final int j = offset + i;
+			Assert.assertEquals(eager.getDate(j), view.getDate(i));
+			Assert.assertEquals(eager.getOpen(j), view.getOpen(i), 1e-9);
+			Assert.assertEquals(eager.getHigh(j), view.getHigh(i), 1e-9);
+			Assert.assertEquals(eager.getLow(j), view.getLow(i), 1e-9);
+			Assert.assertEquals(eager.getClose(j), view.getClose(i), 1e-9);
+			Assert.assertEquals(eager.getAdjClose(j), view.getAdjClose(i), 1e-9);
+			Assert.assertEquals(eager.getVolumeAt(j), view.getVolumeAt(i));
+			Assert.assertEquals(eager.getComment(j), view.getComment(i));
+			Assert.assertEquals(eager.isInterpolated(j), view.isInterpolated(i));
+			Assert.assertEquals(i, view.indexOf(view.getDate(i)));
+		}
+		Assert.assertTrue(view.indexOf(LocalDate.parse("2017-06-03")) >= 0);
+	}
+
+	@Test
+	public void testExtendsFlatBeyondTheRawBars() {
+		final LocalDate lastDate = this.raw.getDate(this.raw.getEndIndex());
+		final InterpolatedTimeSeries view = this.interpolator.interpolateLazily(this.raw,
+				LocalDate.parse("2016-12-26"), lastDate.plusDays(7));
+
+		Assert.assertEquals(LocalDate.parse("2016-12-26"), view.getDate(0));
+		Assert.assertEquals(this.raw.getClose(0), view.getClose(0), 0);
+		Assert.assertEquals(FlatLineInterpolator.COMMENT, view.getComment(0));
+		Assert.assertEquals(LocalDate.parse("2017-01-02"), view.getDate(5));
+		Assert.assertFalse(view.isInterpolated(5));
+
+		final int last = view.getEndIndex();
+		Assert.assertEquals(this.raw.getClose(this.raw.getEndIndex()), view.getClose(last), 0);
+		Assert.assertEquals(0, view.getVolumeAt(last));
+		Assert.assertTrue(view.isInterpolated(last));
+		Assert.assertTrue(view.getDate(last).isAfter(lastDate));
+	}
+
+	@Test
+	public void testBarListCopiesOnChange() {
+		final InterpolatedTimeSeries view = this.interpolator.interpolateLazily(this.raw, null, null);
+		final List<Bar> bars = view.getBarData();
+		Assert.assertEquals(view.getBarCount(), bars.size());
+		Assert.assertEquals(view.getClose(3), bars.get(3).getClosePrice().doubleValue(), 0);
+
+		bars.sort(Comparator.comparing(Bar::getEndTime).reversed());
+		bars.remove(0);
+
+		Assert.assertEquals(view.getBarCount() - 1, bars.size());
+		Assert.assertEquals(view.getDate(view.getEndIndex() - 1), bars.get(0).getEndTime().toLocalDate());
+		Assert.assertEquals(LocalDate.parse("2017-01-02"), view.getDate(0));
+	}
+
+	@Test
+	public void testEmptySeries() {
+		final InterpolatedTimeSeries view = this.interpolator.interpolateLazily(new PrimitiveTimeSeries("VOD"),
+				LocalDate.parse("2017-01-02"), LocalDate.parse("2017-01-31"));
+
+		Assert.assertEquals(0, view.getBarCount());
+		Assert.assertTrue(view.getBarData().isEmpty());
+	}
+}
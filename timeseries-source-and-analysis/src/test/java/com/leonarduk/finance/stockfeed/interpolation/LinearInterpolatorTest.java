@@ -7,7 +7,6 @@ import java.util.stream.Collectors;
 
 import org.junit.Assert;
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
 import org.ta4j.core.Bar;
 import org.ta4j.core.BaseTimeSeries;
@@ -18,6 +17,7 @@ import com.leonarduk.finance.stockfeed.Instrument;
 import com.leonarduk.finance.stockfeed.datatransformation.interpolation.LinearInterpolator;
 import com.leonarduk.finance.stockfeed.datatransformation.interpolation.TimeSeriesInterpolator;
 import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuote;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
 
 public class LinearInterpolatorTest {
 	private TimeSeriesInterpolator interpolator;
@@ -40,7 +40,6 @@ public class LinearInterpolatorTest {
 	}
 
 	@Test
-	@Ignore
 	public void testInterpolateTimeseries() {
 		final TimeSeries actual = this.interpolator.interpolate(this.series);
 		Assert.assertEquals(10, actual.getBarCount());
@@ -54,9 +53,34 @@ public class LinearInterpolatorTest {
 		Assert.assertEquals(DoubleNum.valueOf(103.5), actual.getBar(2).getClosePrice());
 		Assert.assertEquals(DoubleNum.valueOf(102.75), actual.getBar(3).getClosePrice());
 		Assert.assertEquals(DoubleNum.valueOf(102), actual.getBar(4).getClosePrice());
-		Assert.assertEquals(DoubleNum.valueOf(106.8).doubleValue(), actual.getBar(5).getClosePrice().doubleValue(),
+		Assert.assertEquals(DoubleNum.valueOf(103.6).doubleValue(), actual.getBar(5).getClosePrice().doubleValue(),
 				0.001);
 
 	}
 
+	@Test
+	public void testSyntheticBarsAreFlagged() {
+		final PrimitiveTimeSeries series = new PrimitiveTimeSeries("VOD");
+		// Friday to the Wednesday after, a weekend date, then the Monday after
+		series.add(LocalDate.parse("2017-04-07"), 10, 10, 10, 10, 10, 100, "Real");
+		series.add(LocalDate.parse("2017-04-12"), 20, 20, 20, 20, 20, 100, "Real");
+		series.add(LocalDate.parse("2017-04-15"), 30, 30, 30, 30, 30, 100, "Real");
+		series.add(LocalDate.parse("2017-04-17"), 40, 40, 40, 40, 40, 100, "Real");
+
+		final PrimitiveTimeSeries actual = ((LinearInterpolator) this.interpolator).interpolate(series);
+
+		Assert.assertEquals(8, actual.getBarCount());
+		Assert.assertEquals(LocalDate.parse("2017-04-10"), actual.getDate(1));
+		Assert.assertEquals(LocalDate.parse("2017-04-11"), actual.getDate(2));
+		Assert.assertEquals(10 + 10 / 3.0, actual.getClose(1), 0.0001);
+		Assert.assertEquals(LocalDate.parse("2017-04-14"), actual.getDate(5));
+		Assert.assertEquals(LocalDate.parse("2017-04-15"), actual.getDate(6));
+		Assert.assertEquals(LocalDate.parse("2017-04-17"), actual.getDate(7));
+		for (int i = 0; i < actual.getBarCount(); i++) {
+			Assert.assertEquals(actual.getDate(i).toString(), !"Real".equals(actual.getComment(i)),
+					actual.isInterpolated(i));
+		}
+		Assert.assertEquals(0, actual.getVolumeAt(1));
+	}
+
 }
@@ -0,0 +1,94 @@
+package com.leonarduk.finance.strategies;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ta4j.core.Indicator;
+import org.ta4j.core.indicators.ATRIndicator;
+import org.ta4j.core.indicators.EMAIndicator;
+import org.ta4j.core.indicators.PPOIndicator;
+import org.ta4j.core.indicators.ROCIndicator;
+import org.ta4j.core.indicators.RSIIndicator;
+import org.ta4j.core.indicators.SMAIndicator;
+import org.ta4j.core.indicators.WilliamsRIndicator;
+import org.ta4j.core.indicators.helpers.ClosePriceIndicator;
+import org.ta4j.core.indicators.helpers.PriceVariationIndicator;
+import org.ta4j.core.indicators.helpers.TypicalPriceIndicator;
+import org.ta4j.core.indicators.statistics.StandardDeviationIndicator;
+import org.ta4j.core.num.Num;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.feed.TestSeries;
+
+public class IndicatorKernelsTest {
+
+	private PrimitiveTimeSeries series;
+
+	private double[] close;
+
+	private double[] high;
+
+	private double[] low;
+
+	@Before
+	public void setUp() {
+		this.series = TestSeries.randomWalk(750);
+		this.close = this.series.getClosePrices();
+		this.high = this.series.getHighPrices();
+		this.low = this.series.getLowPrices();
+	}
+
+	private static void assertMatches(final String name, final Indicator<Num> expected, final double[] actual) {
+		for (int i = 0; i < actual.length; i++) {
+			final double value = expected.getValue(i).doubleValue();
+			Assert.assertEquals(name + " " + i, value, actual[i], Math.abs(value) * 1e-12);
+		}
+	}
+
+	@Test
+	public void testPricesMatchTa4j() {
+		IndicatorKernelsTest.assertMatches("typical", new TypicalPriceIndicator(this.series),
+				IndicatorKernels.typicalPrice(this.high, this.low, this.close));
+		IndicatorKernelsTest.assertMatches("variation", new PriceVariationIndicator(this.series),
+				IndicatorKernels.priceVariation(this.close));
+	}
+
+	@Test
+	public void testAveragesMatchTa4j() {
+		final ClosePriceIndicator closePrice = new ClosePriceIndicator(this.series);
+		IndicatorKernelsTest.assertMatches("sma", new SMAIndicator(closePrice, 20),
+				IndicatorKernels.sma(this.close, 20));
+		IndicatorKernelsTest.assertMatches("ema", new EMAIndicator(closePrice, 8), IndicatorKernels.ema(this.close, 8));
+		IndicatorKernelsTest.assertMatches("ppo", new PPOIndicator(closePrice, 12, 26),
+				IndicatorKernels.ppo(this.close, 12, 26));
+		IndicatorKernelsTest.assertMatches("sd", new StandardDeviationIndicator(closePrice, 14),
+				IndicatorKernels.standardDeviation(this.close, 14));
+	}
+
+	@Test
+	public void testOscillatorsMatchTa4j() {
+		final ClosePriceIndicator closePrice = new ClosePriceIndicator(this.series);
+		IndicatorKernelsTest.assertMatches("roc", new ROCIndicator(closePrice, 100),
+				IndicatorKernels.roc(this.close, 100));
+		IndicatorKernelsTest.assertMatches("rsi", new RSIIndicator(closePrice, 14),
+				IndicatorKernels.rsi(this.close, 14));
+		IndicatorKernelsTest.assertMatches("williamsr", new WilliamsRIndicator(this.series, 20),
+				IndicatorKernels.williamsR(this.high, this.low, this.close, 20));
+		IndicatorKernelsTest.assertMatches("atr", new ATRIndicator(this.series, 20),
+				IndicatorKernels.atr(this.high, this.low, this.close, 20));
+	}
+
+	@Test
+	public void testEmptySeries() {
+		Assert.assertEquals(0, IndicatorKernels.ema(new double[0], 8).length);
+		Assert.assertEquals(0, IndicatorKernels.rsi(new double[0], 14).length);
+		Assert.assertEquals(0, IndicatorKernels.atr(new double[0], new double[0], new double[0], 20).length);
+	}
+
+	@Test
+	public void testFlatPricesHaveNoWilliamsR() {
+		final double[] flat = { 10, 10, 10 };
+		Assert.assertTrue(Double.isNaN(IndicatorKernels.williamsR(flat, flat, flat, 20)[2]));
+		Assert.assertEquals(0, IndicatorKernels.rsi(flat, 14)[2], 0);
+	}
+}
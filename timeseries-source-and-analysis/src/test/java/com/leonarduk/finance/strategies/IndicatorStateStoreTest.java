@@ -0,0 +1,163 @@
+package com.leonarduk.finance.strategies;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.feed.TestSeries;
+import com.leonarduk.finance.strategies.StrategyEngine.Signal;
+
+public class IndicatorStateStoreTest {
+
+	private final StrategyEngine engine = StrategyEngine.standard();
+
+	private PrimitiveTimeSeries series;
+
+	private String location;
+
+	@Before
+	public void setUp() throws IOException {
+		this.series = TestSeries.randomWalk(750);
+		this.location = Files.createTempDirectory("indicators").toString();
+	}
+
+	private PrimitiveTimeSeries firstBars(final int bars) {
+		return (PrimitiveTimeSeries) this.series.getSubSeries(0, bars);
+	}
+
+	/**
+	 * @return the first bars with the high and close of one scaled up
+	 */
+	private PrimitiveTimeSeries revised(final int bars, final int index) {
+		final PrimitiveTimeSeries revised = new PrimitiveTimeSeries("VOD");
+		for (int i = 0; i < bars; i++) {
+			final double scale = i == index ? 1.01 : 1;
+			revised.add(this.series.getEpochDay(i), this.series.getOpen(i), this.series.getLow(i),
+					this.series.getHigh(i) * scale, this.series.getClose(i) * scale, this.series.getAdjClose(i),
+					this.series.getVolumeAt(i), "Test");
+		}
+		return revised;
+	}
+
+	private Map<String, Signal> evaluate(final IndicatorStateStore store, final PrimitiveTimeSeries bars) {
+		final Map<String, Signal> signals = store.evaluate(Instrument.CASH, bars).get();
+		Assert.assertEquals(this.engine.evaluate(bars, bars.getEndIndex()), signals);
+		return signals;
+	}
+
+	@Test
+	public void testOnlyNewBarsAreAddedAndStateSurvivesRestart() {
+		final IndicatorStateStore store = new IndicatorStateStore(this.engine, this.location);
+		this.evaluate(store, this.firstBars(500));
+		Assert.assertEquals(1, store.getRebuildCount());
+		// The last bar read is looked at, not added
+		Assert.assertEquals(499, store.getAddedBarCount());
+
+		this.evaluate(store, this.firstBars(510));
+		Assert.assertEquals(1, store.getRebuildCount());
+		Assert.assertEquals(509, store.getAddedBarCount());
+		Assert.assertTrue(new File(this.location,
+				Instrument.CASH.getExchange().name() + "_" + Instrument.CASH.code() + IndicatorStateStore.SUFFIX)
+						.exists());
+
+		final IndicatorStateStore restarted = new IndicatorStateStore(this.engine, this.location);
+		this.evaluate(restarted, this.firstBars(520));
+		Assert.assertEquals(0, restarted.getRebuildCount());
+		Assert.assertEquals(10, restarted.getAddedBarCount());
+	}
+
+	@Test
+	public void testResumedSignalsMatchAFreshEvaluation() {
+		final IndicatorStateStore store = new IndicatorStateStore(this.engine);
+		for (int bars = 400; bars <= 750; bars++) {
+			// evaluate compares with StrategyEngine.evaluate over the same bars
+			this.evaluate(store, this.firstBars(bars));
+		}
+		Assert.assertEquals(1, store.getRebuildCount());
+		Assert.assertEquals(749, store.getAddedBarCount());
+	}
+
+	@Test
+	public void testStoredBarsAreAdded() {
+		final IndicatorStateStore store = new IndicatorStateStore(this.engine);
+		this.evaluate(store, this.firstBars(500));
+
+		store.seriesStored(Instrument.CASH, this.series.toBarList().subList(490, 600));
+		Assert.assertEquals(499 + 101, store.getAddedBarCount());
+
+		this.evaluate(store, this.firstBars(600));
+		Assert.assertEquals(1, store.getRebuildCount());
+		Assert.assertEquals(600, store.getAddedBarCount());
+	}
+
+	@Test
+	public void testStoredBarsThatDifferFromTheSeriesRebuildTheState() {
+		final IndicatorStateStore store = new IndicatorStateStore(this.engine);
+		this.evaluate(store, this.firstBars(500));
+
+		// Stored raw, then cleaned to something else when read
+		store.seriesStored(Instrument.CASH, this.revised(600, 597).toBarList().subList(490, 600));
+		this.evaluate(store, this.firstBars(600));
+		Assert.assertEquals(2, store.getRebuildCount());
+	}
+
+	@Test
+	public void testWindowStartingLaterFollowsTheWholeHistory() {
+		final IndicatorStateStore store = new IndicatorStateStore(this.engine);
+		this.evaluate(store, this.firstBars(500));
+
+		final PrimitiveTimeSeries window = (PrimitiveTimeSeries) this.series.getSubSeries(100, 510);
+		Assert.assertEquals(this.engine.evaluate(this.firstBars(510), 509),
+				store.evaluate(Instrument.CASH, window).get());
+		Assert.assertEquals(1, store.getRebuildCount());
+		Assert.assertEquals(509, store.getAddedBarCount());
+	}
+
+	@Test
+	public void testSeriesWithEarlierHistoryRebuildsTheState() {
+		final IndicatorStateStore store = new IndicatorStateStore(this.engine);
+		final PrimitiveTimeSeries window = (PrimitiveTimeSeries) this.series.getSubSeries(100, 500);
+		Assert.assertTrue(store.evaluate(Instrument.CASH, window).isPresent());
+
+		this.evaluate(store, this.firstBars(510));
+		Assert.assertEquals(2, store.getRebuildCount());
+	}
+
+	@Test
+	public void testBarsRevisedFurtherBackNeedAnInvalidate() {
+		final IndicatorStateStore store = new IndicatorStateStore(this.engine);
+		this.evaluate(store, this.firstBars(500));
+
+		final PrimitiveTimeSeries revised = this.revised(510, 100);
+		store.evaluate(Instrument.CASH, revised);
+		Assert.assertEquals(1, store.getRebuildCount());
+
+		store.invalidate(Instrument.CASH);
+		this.evaluate(store, revised);
+		Assert.assertEquals(2, store.getRebuildCount());
+	}
+
+	@Test
+	public void testRevisedBarsRebuildTheState() {
+		final IndicatorStateStore store = new IndicatorStateStore(this.engine);
+		this.evaluate(store, this.firstBars(500));
+
+		this.evaluate(store, this.revised(510, 498));
+		Assert.assertEquals(2, store.getRebuildCount());
+	}
+
+	@Test
+	public void testSeriesEndingBeforeTheStateIsLeftToTheCaller() {
+		final IndicatorStateStore store = new IndicatorStateStore(this.engine);
+		this.evaluate(store, this.firstBars(500));
+
+		Assert.assertFalse(store.evaluate(Instrument.CASH, this.firstBars(400)).isPresent());
+	}
+}
@@ -0,0 +1,103 @@
+package com.leonarduk.finance.strategies;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.feed.TestSeries;
+
+public class IndicatorStateTest {
+
+	private final StrategyEngine engine = StrategyEngine.standard();
+
+	private PrimitiveTimeSeries series;
+
+	@Before
+	public void setUp() {
+		this.series = TestSeries.randomWalk(750);
+	}
+
+	private void add(final IndicatorState state, final int i) {
+		state.add(this.series.getEpochDay(i), this.series.getHigh(i), this.series.getLow(i),
+				this.series.getClose(i));
+	}
+
+	private static void assertSameValues(final Indicators expected, final Indicators actual, final int i) {
+		Assert.assertEquals(expected.sma(20, i), actual.sma(20, i), 1e-9);
+		Assert.assertEquals(expected.ema(26, i), actual.ema(26, i), 0);
+		Assert.assertEquals(expected.macdSignal(12, 26, 9, i), actual.macdSignal(12, 26, 9, i), 0);
+		Assert.assertEquals(expected.lowestLow(2016, i), actual.lowestLow(2016, i), 0);
+		Assert.assertEquals(expected.stochasticK(14, i), actual.stochasticK(14, i), 0);
+	}
+
+	@Test
+	public void testMatchesTheGraphAtEveryBar() {
+		final IndicatorGraph graph = new IndicatorGraph(this.series);
+		final IndicatorState state = this.engine.newState("VOD");
+		for (int i = 0; i <= this.series.getEndIndex(); i++) {
+			final Indicators next = state.next(this.series.getHigh(i), this.series.getLow(i),
+					this.series.getClose(i));
+			Assert.assertEquals(i, next.getEndIndex());
+			Assert.assertEquals("next bar " + i, this.engine.evaluate(graph, i), this.engine.evaluate(next, i));
+			assertSameValues(graph, next, i);
+
+			this.add(state, i);
+			Assert.assertEquals("bar " + i, this.engine.evaluate(graph, i), this.engine.evaluate(state, i));
+			assertSameValues(graph, state, i);
+		}
+	}
+
+	@Test
+	public void testCarriesOnAfterSerialisation() throws IOException, ClassNotFoundException {
+		final IndicatorState state = this.engine.newState("VOD");
+		for (int i = 0; i < 400; i++) {
+			this.add(state, i);
+		}
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(state);
+		}
+		final IndicatorState copy;
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			copy = (IndicatorState) in.readObject();
+		}
+
+		Assert.assertTrue(copy.tracksSameAs(state));
+		Assert.assertEquals(400, copy.getBarCount());
+		for (int i = 400; i <= this.series.getEndIndex(); i++) {
+			this.add(state, i);
+			this.add(copy, i);
+			assertSameValues(state, copy, i);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOnlyTheLastBarIsKept() {
+		final IndicatorState state = this.engine.newState("VOD");
+		this.add(state, 0);
+		this.add(state, 1);
+		state.sma(20, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBarsMustBeAddedInOrder() {
+		final IndicatorState state = this.engine.newState("VOD");
+		this.add(state, 1);
+		this.add(state, 0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testIndicatorsAreTrackedBeforeTheFirstBar() {
+		final IndicatorState state = this.engine.newState("VOD");
+		this.add(state, 0);
+		state.trackSma(200);
+	}
+}
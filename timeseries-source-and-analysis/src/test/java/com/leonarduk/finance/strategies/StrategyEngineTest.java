@@ -0,0 +1,98 @@
+package com.leonarduk.finance.strategies;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.strategies.StrategyEngine.Signal;
+
+public class StrategyEngineTest {
+
+	private PrimitiveTimeSeries series;
+
+	@Before
+	public void setUp() {
+		// A noisy walk with swings, so every strategy signals at least once
+		this.series = new PrimitiveTimeSeries("VOD");
+		final Random random = new Random(29);
+		LocalDate date = LocalDate.parse("2015-01-05");
+		double price = 100;
+		for (int i = 0; i < 750; i++) {
+			final double open = price;
+			price = (price * (1 + (random.nextGaussian() / 40))) + (Math.sin(i / 10.0) * 2);
+			this.series.add(date, open, Math.min(open, price) * 0.999, Math.max(open, price) * 1.001, price,
+					price, 1000, "Test");
+			date = date.plusDays(1);
+		}
+	}
+
+	private void assertSameSignals(final AbstractStrategy expected, final GraphStrategy actual) {
+		final IndicatorGraph graph = new IndicatorGraph(this.series);
+		int signals = 0;
+		for (int i = 0; i <= this.series.getEndIndex(); i++) {
+			final boolean enter = expected.getStrategy().shouldEnter(i);
+			final boolean exit = expected.getStrategy().shouldExit(i);
+			Assert.assertEquals(expected.getName() + " enter at " + i, enter, actual.shouldEnter(graph, i));
+			Assert.assertEquals(expected.getName() + " exit at " + i, exit, actual.shouldExit(graph, i));
+			if (enter || exit) {
+				signals++;
+			}
+		}
+		Assert.assertEquals(expected.getName(), actual.getName());
+		Assert.assertTrue(expected.getName() + " never signalled", signals > 0);
+	}
+
+	@Test
+	public void testMatchesTa4jStrategies() {
+		this.assertSameSignals(GlobalExtremaStrategy.buildStrategy(this.series),
+				GlobalExtremaStrategy.buildGraphStrategy());
+		this.assertSameSignals(MovingMomentumStrategy.buildStrategy(this.series, 12, 26, 9),
+				MovingMomentumStrategy.buildGraphStrategy(12, 26, 9));
+		for (final int days : new int[] { 12, 20, 50 }) {
+			this.assertSameSignals(SimpleMovingAverageStrategy.buildStrategy(this.series, days),
+					SimpleMovingAverageStrategy.buildGraphStrategy(days));
+		}
+	}
+
+	@Test
+	public void testEvaluatesEveryStrategyInOrder() {
+		final Map<String, Signal> signals = StrategyEngine.standard().evaluate(this.series,
+				this.series.getEndIndex());
+
+		final List<String> expected = Arrays.asList("Global Extrema", "Moving Momentum", "SMA (12days)",
+				"SMA (20days)", "SMA (50days)");
+		Assert.assertEquals(expected, new ArrayList<>(signals.keySet()));
+	}
+
+	private static void momentum(final IndicatorGraph graph, final int index) {
+		final GraphStrategy momentum = MovingMomentumStrategy.buildGraphStrategy(12, 26, 9);
+		momentum.shouldEnter(graph, index);
+		momentum.shouldExit(graph, index);
+	}
+
+	@Test
+	public void testSharedIndicatorsAreComputedOnce() {
+		final IndicatorGraph graph = new IndicatorGraph(this.series);
+		final int index = this.series.getEndIndex();
+		momentum(graph, index);
+		final int computed = graph.getComputedCount();
+		Assert.assertTrue(computed > 0);
+
+		// A second strategy on the same periods needs nothing new
+		momentum(graph, index);
+		SimpleMovingAverageStrategy.buildGraphStrategy(20).shouldEnter(graph, index);
+		final int withSma = graph.getComputedCount();
+		SimpleMovingAverageStrategy.buildGraphStrategy(20).shouldExit(graph, index);
+		Assert.assertEquals(computed + 1, withSma);
+		Assert.assertEquals(withSma, graph.getComputedCount());
+		Assert.assertSame(graph.ema(12), graph.ema(12));
+	}
+}
@@ -0,0 +1,147 @@
+package com.leonarduk.finance.strategies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
+import com.leonarduk.finance.stockfeed.feed.TestSeries;
+import com.leonarduk.finance.strategies.StrategyEngine.Signal;
+import com.leonarduk.finance.strategies.StrategyOptimiser.Search;
+import com.leonarduk.finance.strategies.StrategyOptimiser.Tuning;
+
+public class StrategyOptimiserTest {
+
+	private final ParameterSpace sma = ParameterSpace.simpleMovingAverage(StrategyOptimiser.TUNED_SMA, 5, 60, 5);
+
+	private final ParameterSpace movingMomentum = ParameterSpace.movingMomentum(
+			StrategyOptimiser.TUNED_MOVING_MOMENTUM, new int[] { 6, 12, 3 }, new int[] { 12, 30, 6 },
+			new int[] { 5, 9, 2 });
+
+	private final List<ForkJoinPool> pools = new ArrayList<>();
+
+	private PrimitiveTimeSeries series;
+
+	@Before
+	public void setUp() {
+		this.series = TestSeries.randomWalk(750);
+	}
+
+	@After
+	public void tearDown() {
+		this.pools.forEach(ForkJoinPool::shutdownNow);
+	}
+
+	private ForkJoinPool pool(final int parallelism) {
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		this.pools.add(pool);
+		return pool;
+	}
+
+	private PrimitiveTimeSeries firstBars(final int bars) {
+		return (PrimitiveTimeSeries) this.series.getSubSeries(0, bars);
+	}
+
+	private StrategyOptimiser grid() {
+		return new StrategyOptimiser(this.pool(4), Search.GRID, 0, 0,
+				Arrays.asList(this.sma, this.movingMomentum));
+	}
+
+	/**
+	 * @return the best parameters, traded over ta4j-matching indicators one set
+	 *         at a time
+	 */
+	private int[] best(final ParameterSpace space) {
+		final int lastBar = this.series.getEndIndex() - 1;
+		int[] best = null;
+		double bestProfit = 0;
+		for (final int[] parameters : space.grid()) {
+			final double profit = StrategyOptimiser.totalProfit(space.build(parameters),
+					new IndicatorGraph(this.series), lastBar);
+			if ((best == null) || (profit > bestProfit)) {
+				best = parameters;
+				bestProfit = profit;
+			}
+		}
+		return best;
+	}
+
+	@Test
+	public void testGridFindsTheMostProfitableParameters() {
+		final Tuning tuning = this.grid().optimise(Instrument.CASH, this.series);
+		Assert.assertArrayEquals(this.best(this.sma), tuning.getParameters(StrategyOptimiser.TUNED_SMA));
+		Assert.assertArrayEquals(this.best(this.movingMomentum),
+				tuning.getParameters(StrategyOptimiser.TUNED_MOVING_MOMENTUM));
+		Assert.assertEquals(2, tuning.getStrategies().size());
+	}
+
+	@Test
+	public void testSharedTablesTradeAsTheGraph() {
+		final SweepIndicators shared = new SweepIndicators(this.series);
+		final int lastBar = this.series.getEndIndex();
+		for (final int[] parameters : this.movingMomentum.grid()) {
+			final GraphStrategy strategy = this.movingMomentum.build(parameters);
+			Assert.assertEquals(Arrays.toString(parameters),
+					StrategyOptimiser.totalProfit(strategy, new IndicatorGraph(this.series), lastBar),
+					StrategyOptimiser.totalProfit(strategy, shared.forCandidate(), lastBar), 0);
+		}
+		for (int i = 0; i <= lastBar; i += 7) {
+			Assert.assertEquals(new IndicatorGraph(this.series).sma(50, i), shared.sma(50, i), 1e-9);
+		}
+	}
+
+	@Test
+	public void testTunedUntilTheSeriesChanges() {
+		final StrategyOptimiser optimiser = this.grid();
+		optimiser.optimise(Instrument.CASH, this.firstBars(500));
+		optimiser.optimise(Instrument.CASH, this.firstBars(500));
+		Assert.assertEquals(1, optimiser.getSweepCount());
+
+		// Only the last bar, which may be a live quote, differs
+		final PrimitiveTimeSeries requoted = this.firstBars(499);
+		requoted.add(this.series.getEpochDay(499), 1, 1, 1, 1, 1, 1000, "Test");
+		optimiser.optimise(Instrument.CASH, requoted);
+		Assert.assertEquals(1, optimiser.getSweepCount());
+
+		optimiser.optimise(Instrument.CASH, this.firstBars(501));
+		Assert.assertEquals(2, optimiser.getSweepCount());
+	}
+
+	@Test
+	public void testRandomSearchTriesASampleOfTheGrid() {
+		final List<ParameterSpace> spaces = Collections.singletonList(this.movingMomentum);
+		final StrategyOptimiser random = new StrategyOptimiser(ForkJoinPool.commonPool(), Search.RANDOM, 10, 42,
+				spaces);
+		final Tuning tuning = random.optimise(Instrument.CASH, this.series);
+		Assert.assertEquals(10, random.getCandidateCount());
+
+		final Tuning again = new StrategyOptimiser(this.pool(1), Search.RANDOM, 10, 42, spaces)
+				.optimise(Instrument.CASH, this.series);
+		Assert.assertArrayEquals(tuning.getParameters(StrategyOptimiser.TUNED_MOVING_MOMENTUM),
+				again.getParameters(StrategyOptimiser.TUNED_MOVING_MOMENTUM));
+	}
+
+	@Test
+	public void testSignalsAreNamedAfterTheSpaces() {
+		final StrategyOptimiser optimiser = this.grid();
+		final Map<String, Signal> signals = optimiser.evaluate(Instrument.CASH, this.series);
+		Assert.assertEquals(Arrays.asList(StrategyOptimiser.TUNED_SMA, StrategyOptimiser.TUNED_MOVING_MOMENTUM),
+				Arrays.asList(signals.keySet().toArray()));
+
+		final Tuning tuning = optimiser.optimise(Instrument.CASH, this.series);
+		final StrategyEngine tuned = new StrategyEngine(
+				Arrays.asList(SimpleMovingAverageStrategy.buildGraphStrategy(
+						tuning.getParameters(StrategyOptimiser.TUNED_SMA)[0])));
+		Assert.assertEquals(tuned.evaluate(this.series, this.series.getEndIndex()).values().iterator().next(),
+				signals.get(StrategyOptimiser.TUNED_SMA));
+	}
+}
@@ -4,7 +4,6 @@ import java.util.Iterator;
 
 import java.time.LocalDate;
 import org.junit.Assert;
-import org.junit.Ignore;
 import org.junit.Test;
 
 public class DateUtilsTest {
@@ -14,7 +13,6 @@ public class DateUtilsTest {
 	private static final String APRIL4 = "2017-04-04";
 
 	@Test
-	@Ignore
 	public final void testGetDiffInWorkDays() {
 //		Assert.assertEquals(2,
 //				DateUtils.getDiffInWorkDays(LocalDate.parse("2013-12-24"), LocalDate.parse("2013-12-27")));
@@ -34,6 +32,21 @@ public class DateUtilsTest {
 				DateUtils.getDiffInWorkDays(LocalDate.parse(DateUtilsTest.APRIL3), LocalDate.parse("2017-04-13")));
 		Assert.assertEquals(10,
 				DateUtils.getDiffInWorkDays(LocalDate.parse(DateUtilsTest.APRIL3), LocalDate.parse("2017-04-17")));
+		Assert.assertEquals(-5, DateUtils.getDiffInWorkDays(LocalDate.parse(DateUtilsTest.APRIL10),
+				LocalDate.parse(DateUtilsTest.APRIL3)));
+	}
+
+	@Test
+	public void testWeekdayCountRoundTrips() {
+		for (LocalDate date = LocalDate.parse("1969-12-01"); date.isBefore(LocalDate.parse("1970-03-01")); date = date
+				.plusDays(1)) {
+			final long count = DateUtils.getWeekdayCount(date.toEpochDay());
+			final boolean weekday = date.getDayOfWeek().getValue() < 6;
+			if (weekday) {
+				Assert.assertEquals(date, LocalDate.ofEpochDay(DateUtils.getWeekdayFromCount(count)));
+			}
+			Assert.assertEquals(weekday ? count + 1 : count, DateUtils.getWeekdayCount(date.plusDays(1).toEpochDay()));
+		}
 	}
 
 	@Test
@@ -0,0 +1,108 @@
+package com.leonarduk.finance.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+	@Test
+	public void testConcurrentCallsShareOneLoad() throws Exception {
+		final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final int callers = 8;
+		final ExecutorService executor = Executors.newFixedThreadPool(callers);
+		try {
+			final List<Future<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < callers; i++) {
+				results.add(executor.submit(() -> singleFlight.execute("VOD", () -> {
+					loads.incrementAndGet();
+					try {
+						release.await(5, TimeUnit.SECONDS);
+					} catch (final InterruptedException e) {
+						throw new IOException(e);
+					}
+					return 42;
+				})));
+			}
+			// Let every caller arrive before the load finishes
+			while (singleFlight.getExecutedCount() + singleFlight.getSharedCount() < callers) {
+				Thread.sleep(5);
+			}
+			release.countDown();
+			for (final Future<Integer> result : results) {
+				Assert.assertEquals(Integer.valueOf(42), result.get(5, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals(callers - 1, singleFlight.getSharedCount());
+		Assert.assertEquals(0, singleFlight.getInFlightCount());
+	}
+
+	@Test
+	public void testNothingIsCachedAfterCompletion() throws IOException {
+		final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+		final AtomicInteger loads = new AtomicInteger();
+		singleFlight.execute("VOD", loads::incrementAndGet);
+		singleFlight.execute("VOD", loads::incrementAndGet);
+		Assert.assertEquals(2, loads.get());
+	}
+
+	@Test(expected = IOException.class)
+	public void testFailureIsRethrown() throws IOException {
+		new SingleFlight<String, Integer>().execute("VOD", () -> {
+			throw new IOException("Feed unavailable");
+		});
+	}
+
+	@Test
+	public void testErrorIsSharedWithCallersWhoJoined() throws Exception {
+		final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+		final CountDownLatch release = new CountDownLatch(1);
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Future<Integer> first = executor.submit(() -> singleFlight.execute("VOD", () -> {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (final InterruptedException e) {
+					throw new IOException(e);
+				}
+				throw new StackOverflowError();
+			}));
+			while (singleFlight.getInFlightCount() == 0) {
+				Thread.sleep(5);
+			}
+			final Future<Integer> joined = executor.submit(() -> singleFlight.execute("VOD", () -> 42));
+			while (singleFlight.getSharedCount() == 0) {
+				Thread.sleep(5);
+			}
+			release.countDown();
+			for (final Future<Integer> result : Arrays.asList(first, joined)) {
+				try {
+					result.get(5, TimeUnit.SECONDS);
+					Assert.fail("Expected the error");
+				} catch (final ExecutionException e) {
+					Assert.assertTrue(e.getCause() instanceof StackOverflowError);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		Assert.assertEquals(0, singleFlight.getInFlightCount());
+	}
+
+}
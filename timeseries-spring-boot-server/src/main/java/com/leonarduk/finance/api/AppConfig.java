@@ -1,20 +1,28 @@
 package com.leonarduk.finance.api;
 
+import java.util.concurrent.ForkJoinPool;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.sql.DataSource;
 
 import com.leonarduk.finance.stockfeed.*;
 import com.leonarduk.finance.stockfeed.feed.alphavantage.AlphavantageFeed;
+import com.leonarduk.finance.strategies.IndicatorStateStore;
+import com.leonarduk.finance.strategies.StrategyEngine;
+import com.leonarduk.finance.strategies.StrategyOptimiser;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import net.sf.log4jdbc.sql.jdbcapi.DataSourceSpy;
 
 @Configuration
+@EnableScheduling
 public class AppConfig {
     @Inject
     private DataSourceProperties dataSourceProperties;
@@ -27,6 +35,36 @@ public class AppConfig {
         }
     }
 
+    @Value("${influxdb.write.batchSize:5000}")
+    private int influxBatchSize;
+
+    @Value("${influxdb.write.flushIntervalMillis:1000}")
+    private long influxFlushIntervalMillis;
+
+    @Value("${influxdb.write.queueCapacity:100000}")
+    private int influxQueueCapacity;
+
+    @Value("${cache.series.maxBytes:268435456}")
+    private long seriesCacheMaxBytes;
+
+    @Value("${indicators.state.location:db/indicators}")
+    private String indicatorStateLocation;
+
+    @Value("${strategies.tuning.search:GRID}")
+    private StrategyOptimiser.Search tuningSearch;
+
+    @Value("${strategies.tuning.samples:100}")
+    private int tuningSamples;
+
+    @Value("${warmup.years:10}")
+    private int warmUpYears;
+
+    @Value("${warmup.threads:4}")
+    private int warmUpThreads;
+
+    @Value("${warmup.instrumentsPerSecond:1.0}")
+    private double warmUpInstrumentsPerSecond;
+
     @Bean
     public DataStore dataStore() {
         //TODO add details for non local DB
@@ -35,7 +73,8 @@ public class AppConfig {
         String token = "fX6n4UJqXg7Aq2OY7MerSxPB-624Sqwua4LVyRadKHlT91q3Wf-RopTm7YHZroT0actf46RrfXs9lR4i08sA2w==";
         String serverUrl = "http://localhost:8086";
 
-        return new InfluxDBDataStore(bucket, org, token, serverUrl);
+        return new InfluxDBDataStore(bucket, org, token, serverUrl, this.influxBatchSize,
+                this.influxFlushIntervalMillis, this.influxQueueCapacity);
     }
 
     @Bean
@@ -44,13 +83,35 @@ public class AppConfig {
     }
 
     @Bean
-    public SnapshotAnalyser snapshotAnalyser(DataStore dataStore){
-        return new SnapshotAnalyser(dataStore);
+    public SeriesCache seriesCache() {
+        return new SeriesCache(this.seriesCacheMaxBytes);
+    }
+
+    @Bean
+    public IndicatorStateStore indicatorStateStore() {
+        return new IndicatorStateStore(StrategyEngine.standard(), this.indicatorStateLocation);
+    }
+
+    @Bean
+    public StrategyOptimiser strategyOptimiser() {
+        return new StrategyOptimiser(ForkJoinPool.commonPool(), this.tuningSearch, this.tuningSamples, 0,
+                StrategyOptimiser.standardSpaces());
+    }
+
+    @Bean
+    public SnapshotAnalyser snapshotAnalyser(IntelligentStockFeed stockFeed, IndicatorStateStore indicatorStateStore,
+            StrategyOptimiser strategyOptimiser) {
+        return new SnapshotAnalyser(stockFeed, indicatorStateStore, strategyOptimiser);
+    }
+
+    @Bean
+    public IntelligentStockFeed stockFeed(DataStore dataStore, SeriesCache seriesCache) {
+        return new IntelligentStockFeed(dataStore, seriesCache);
     }
 
     @Bean
-    public StockFeed stockFeed(DataStore dataStore) {
-        return new IntelligentStockFeed(dataStore);
+    public WarmUpService warmUpService(IntelligentStockFeed stockFeed) {
+        return new WarmUpService(stockFeed, this.warmUpYears, this.warmUpThreads, this.warmUpInstrumentsPerSecond);
     }
 
 
@@ -7,35 +7,34 @@ import java.net.URISyntaxException;
 import java.time.LocalDate;
 import java.time.Period;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.leonarduk.finance.stockfeed.DataStore;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.ta4j.core.AnalysisCriterion;
 import org.ta4j.core.Bar;
 import org.ta4j.core.BaseTradingRecord;
 import org.ta4j.core.Order;
-import org.ta4j.core.Strategy;
 import org.ta4j.core.TimeSeries;
-import org.ta4j.core.TimeSeriesManager;
 import org.ta4j.core.TradingRecord;
-import org.ta4j.core.analysis.criteria.TotalProfitCriterion;
 import org.ta4j.core.num.DoubleNum;
-import org.ta4j.core.num.Num;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.leonarduk.finance.analysis.TraderOrderUtils;
+import com.leonarduk.finance.analysis.ScoreMatrix;
+import com.leonarduk.finance.analysis.WalkForwardBacktester;
 import com.leonarduk.finance.portfolio.Position;
 import com.leonarduk.finance.portfolio.Recommendation;
 import com.leonarduk.finance.portfolio.RecommendedTrade;
@@ -44,13 +43,17 @@ import com.leonarduk.finance.portfolio.ValuationReport;
 import com.leonarduk.finance.stockfeed.Instrument;
 import com.leonarduk.finance.stockfeed.IntelligentStockFeed;
 import com.leonarduk.finance.stockfeed.StockFeed;
-import com.leonarduk.finance.stockfeed.feed.ExtendedHistoricalQuoteTimeSeries;
+import com.leonarduk.finance.stockfeed.feed.PrimitiveTimeSeries;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
 import com.leonarduk.finance.stockfeed.file.InvestmentsFileReader;
 import com.leonarduk.finance.strategies.AbstractStrategy;
 import com.leonarduk.finance.strategies.GlobalExtremaStrategy;
+import com.leonarduk.finance.strategies.IndicatorStateStore;
 import com.leonarduk.finance.strategies.MovingMomentumStrategy;
 import com.leonarduk.finance.strategies.SimpleMovingAverageStrategy;
+import com.leonarduk.finance.strategies.StrategyEngine;
+import com.leonarduk.finance.strategies.StrategyEngine.Signal;
+import com.leonarduk.finance.strategies.StrategyOptimiser;
 import com.leonarduk.finance.utils.DataField;
 import com.leonarduk.finance.utils.FileUtils;
 import com.leonarduk.finance.utils.HtmlTools;
@@ -65,6 +68,14 @@ public class SnapshotAnalyser {
 
 	private final IntelligentStockFeed feed;
 
+	private final StrategyEngine strategyEngine;
+
+	private final IndicatorStateStore indicatorStates;
+
+	private final StrategyOptimiser optimiser;
+
+	private final WalkForwardBacktester backtester = new WalkForwardBacktester();
+
 	private final static Logger logger = LoggerFactory.getLogger(SnapshotAnalyser.class.getName());
 
 	private final static String TYPE = "Type";
@@ -73,11 +84,25 @@ public class SnapshotAnalyser {
 	private final static int years = 20;
 
 	public SnapshotAnalyser(final DataStore dataStore) {
-		this.feed = new IntelligentStockFeed(dataStore);
+		this(new IntelligentStockFeed(dataStore));
 	}
 
 	public SnapshotAnalyser(final IntelligentStockFeed intelligentStockFeed) {
+		this(intelligentStockFeed, new IndicatorStateStore(StrategyEngine.standard()));
+	}
+
+	public SnapshotAnalyser(final IntelligentStockFeed intelligentStockFeed,
+			final IndicatorStateStore indicatorStates) {
+		this(intelligentStockFeed, indicatorStates, new StrategyOptimiser());
+	}
+
+	public SnapshotAnalyser(final IntelligentStockFeed intelligentStockFeed,
+			final IndicatorStateStore indicatorStates, final StrategyOptimiser optimiser) {
 		this.feed = intelligentStockFeed;
+		this.indicatorStates = indicatorStates;
+		this.optimiser = optimiser;
+		this.strategyEngine = indicatorStates.getEngine();
+		intelligentStockFeed.addListener(indicatorStates);
 	}
 
 	private void addPortfolioDetails(final LocalDate fromDate, final LocalDate toDate, final boolean interpolate,
@@ -113,21 +138,25 @@ public class SnapshotAnalyser {
 
 	public List<Valuation> analayzeAllEtfs(final List<Position> stocks, final LocalDate fromDate,
 			final LocalDate toDate, boolean interpolate, boolean clean) throws IOException {
-		return stocks.parallelStream().map(s -> this.analyseStock(s, fromDate, toDate, interpolate, clean))
+		// One bulk fetch for every holding rather than a query per position
+		final Map<Instrument, StockV1> histories = this.feed.getAll(
+				stocks.stream().map(Position::getInstrument).collect(Collectors.toList()), fromDate, toDate,
+				interpolate, clean);
+		return stocks.parallelStream()
+				.map(s -> this.analyseStock(s, Optional.ofNullable(histories.get(s.getInstrument()))))
 				.collect(Collectors.toList());
 	}
 
 	public Valuation analyseStock(final Position stock2, final LocalDate fromDate, final LocalDate toDate,
 			boolean interpolate, boolean clean) {
-		TimeSeries series;
+		return this.analyseStock(stock2, this.feed.get(stock2.getInstrument(), fromDate, toDate, interpolate, clean));
+	}
+
+	private Valuation analyseStock(final Position stock2, final Optional<StockV1> optional) {
+		PrimitiveTimeSeries series;
 		try {
-			Optional<StockV1> stock = stock2.getStock();
-			if (!stock.isPresent()) {
-				stock = feed.getFlatCashSeries(stock2.getInstrument(), 1);
-			}
-			Optional<StockV1> optional = this.feed.get(stock2.getInstrument(), fromDate, toDate, interpolate, clean);
 			if (optional.isPresent()) {
-				series = new ExtendedHistoricalQuoteTimeSeries(optional.get().getHistory());
+				series = PrimitiveTimeSeries.from(stock2.getInstrument().getCode(), optional.get().getHistory());
 			} else {
 				series = null;
 			}
@@ -135,24 +164,21 @@ public class SnapshotAnalyser {
 				throw new IllegalArgumentException("No data");
 			}
 
-			final List<AbstractStrategy> strategies = new ArrayList<>();
-			strategies.add(GlobalExtremaStrategy.buildStrategy(series));
-			strategies.add(MovingMomentumStrategy.buildStrategy(series, 12, 26, 9));
-			strategies.add(SimpleMovingAverageStrategy.buildStrategy(series, 12));
-			strategies.add(SimpleMovingAverageStrategy.buildStrategy(series, 20));
-			strategies.add(SimpleMovingAverageStrategy.buildStrategy(series, 50));
-
 			// IndicatorsToCsv.exportIndicatorsToCsv(series);
 			final TradingRecord tradingRecord = new BaseTradingRecord();
 
 			final Bar mostRecentBar = series.getLastBar();
 			final Valuation valuation = this.createValuation(stock2, mostRecentBar);
-//			for (final AbstractStrategy strategy : strategies) {
-//
-//			}
 
-			strategies.parallelStream().forEach(
-					strategy -> valueStrategy(stock2, series, tradingRecord, mostRecentBar, valuation, strategy));
+			// Kept up to date bar by bar, unless the series ends before the state
+			final int endIndex = series.getEndIndex();
+			final Map<String, Signal> signals = this.indicatorStates.evaluate(stock2.getInstrument(), series)
+					.orElseGet(() -> this.strategyEngine.evaluate(series, endIndex));
+			signals.forEach((name, signal) -> this.valueStrategy(stock2, endIndex, tradingRecord, mostRecentBar,
+					valuation, name, signal));
+			// Periods tuned to this instrument, kept until its history changes
+			this.optimiser.evaluate(stock2.getInstrument(), series).forEach((name, signal) -> this
+					.valueStrategy(stock2, endIndex, tradingRecord, mostRecentBar, valuation, name, signal));
 
 			valuation.addReturn(Period.ofDays(1), this.calculateReturn(series, 1));
 			valuation.addReturn(Period.ofDays(5), this.calculateReturn(series, 5));
@@ -167,30 +193,28 @@ public class SnapshotAnalyser {
 		}
 	}
 
-	private void valueStrategy(final Position stock2, TimeSeries series, final TradingRecord tradingRecord,
-			final Bar mostRecentBar, final Valuation valuation, final AbstractStrategy strategy) {
-		final int endIndex = series.getEndIndex();
-		if (strategy.getStrategy().shouldEnter(endIndex)) {
+	private void valueStrategy(final Position stock2, final int endIndex, final TradingRecord tradingRecord,
+			final Bar mostRecentBar, final Valuation valuation, final String strategyName, final Signal signal) {
+		switch (signal) {
+		case ENTER:
 			// Our strategy should enter
-			valuation.addRecommendation(strategy.getName(),
-					new Recommendation(RecommendedTrade.BUY, strategy, stock2.getInstrument()));
-			final boolean entered = tradingRecord.enter(endIndex, mostRecentBar.getAmount(), DoubleNum.valueOf(10));
-			if (entered) {
-				final Order entry = tradingRecord.getLastEntry();
-				this.showTradeAction(entry, "Enter");
+			valuation.addRecommendation(strategyName,
+					new Recommendation(RecommendedTrade.BUY, strategyName, stock2.getInstrument()));
+			if (tradingRecord.enter(endIndex, mostRecentBar.getAmount(), DoubleNum.valueOf(10))) {
+				this.showTradeAction(tradingRecord.getLastEntry(), "Enter");
 			}
-		} else if (strategy.getStrategy().shouldExit(endIndex)) {
+			break;
+		case EXIT:
 			// Our strategy should exit
-			valuation.addRecommendation(strategy.getName(),
-					new Recommendation(RecommendedTrade.SELL, strategy, stock2.getInstrument()));
-			final boolean exited = tradingRecord.exit(endIndex, mostRecentBar.getClosePrice(), DoubleNum.valueOf(10));
-			if (exited) {
-				final Order exit = tradingRecord.getLastExit();
-				this.showTradeAction(exit, "Exit");
+			valuation.addRecommendation(strategyName,
+					new Recommendation(RecommendedTrade.SELL, strategyName, stock2.getInstrument()));
+			if (tradingRecord.exit(endIndex, mostRecentBar.getClosePrice(), DoubleNum.valueOf(10))) {
+				this.showTradeAction(tradingRecord.getLastExit(), "Exit");
 			}
-		} else {
-			valuation.addRecommendation(strategy.getName(),
-					new Recommendation(RecommendedTrade.HOLD, strategy, stock2.getInstrument()));
+			break;
+		default:
+			valuation.addRecommendation(strategyName,
+					new Recommendation(RecommendedTrade.HOLD, strategyName, stock2.getInstrument()));
 		}
 	}
 
@@ -199,14 +223,22 @@ public class SnapshotAnalyser {
 	 * @return a map (key: strategy, value: name) of trading strategies
 	 */
 	public List<AbstractStrategy> buildStrategiesList(final TimeSeries series) {
+		return this.strategyBuilders().stream().map(builder -> builder.apply(series)).collect(Collectors.toList());
+	}
+
+	/**
+	 * @return a builder for each of the report's strategies, so a backtest
+	 *         can build just the one it runs
+	 */
+	public List<Function<TimeSeries, AbstractStrategy>> strategyBuilders() {
 		// {Moving Momentum=24916, RSI-2=-81064, Global Extrema=23748, CCI
 		// Correction=-28035}
-		final List<AbstractStrategy> strategies = new ArrayList<>();
-		strategies.add(GlobalExtremaStrategy.buildStrategy(series));
-		strategies.add(MovingMomentumStrategy.buildStrategy(series, 12, 26, 9));
-		strategies.add(SimpleMovingAverageStrategy.buildStrategy(series, 12));
-		strategies.add(SimpleMovingAverageStrategy.buildStrategy(series, 20));
-		strategies.add(SimpleMovingAverageStrategy.buildStrategy(series, 50));
+		final List<Function<TimeSeries, AbstractStrategy>> strategies = new ArrayList<>();
+		strategies.add(GlobalExtremaStrategy::buildStrategy);
+		strategies.add(series -> MovingMomentumStrategy.buildStrategy(series, 12, 26, 9));
+		strategies.add(series -> SimpleMovingAverageStrategy.buildStrategy(series, 12));
+		strategies.add(series -> SimpleMovingAverageStrategy.buildStrategy(series, 20));
+		strategies.add(series -> SimpleMovingAverageStrategy.buildStrategy(series, 50));
 		return strategies;
 	}
 
@@ -223,54 +255,32 @@ public class SnapshotAnalyser {
 				.roundDecimal(diff.divide(initialValue, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100)));
 	}
 
-	private void calculateSubseries(final List<AbstractStrategy> strategies, final AnalysisCriterion profitCriterion,
-			final TimeSeries slice, final Map<String, AtomicInteger> scores) {
-		final StringBuilder buf = new StringBuilder("Sub-series: " + slice.getSeriesPeriodDescription() + "\n");
-		for (final AbstractStrategy entry : strategies) {
-			final Strategy strategy = entry.getStrategy();
-			final String name = entry.getName();
-			// For each strategy...
-			TimeSeriesManager manager = new TimeSeriesManager(slice);
-			final TradingRecord tradingRecord = manager.run(strategy);
-			final Num profit = profitCriterion.calculate(slice, tradingRecord);
-			if (profit != DoubleNum.valueOf(1)) {
-				if (DoubleNum.valueOf(1).isLessThan(profit)) {
-					scores.putIfAbsent(name, new AtomicInteger());
-					scores.get(name).incrementAndGet();
-					System.out
-							.println(TraderOrderUtils.getOrdersList(tradingRecord.getTrades(), slice, strategy, name));
-				}
-				if (DoubleNum.valueOf(1).isGreaterThan(profit)) {
-					scores.putIfAbsent(name, new AtomicInteger());
-					scores.get(name).decrementAndGet();
-				}
+	/**
+	 * Walk-forward backtest of the report's strategies over each ticker's
+	 * history. Tickers the feed has no history for are left out.
+	 */
+	public ScoreMatrix backtest(final StockFeed feed, final Collection<String> tickers, final int years)
+			throws IOException {
+		final Map<String, TimeSeries> universe = new LinkedHashMap<>();
+		for (final String ticker : tickers) {
+			final Optional<StockV1> stock = feed.get(Instrument.fromString(ticker), years);
+			if (stock.isPresent()) {
+				universe.put(ticker, TimeseriesUtils.getTimeSeries(stock.get(), 1));
+			}
+			else {
+				SnapshotAnalyser.logger.warn("No history to backtest for " + ticker);
 			}
-			buf.append("\tProfit for " + name + ": " + profit + "\n");
 		}
-
+		return this.backtester.run(universe, this.strategyBuilders());
 	}
 
 	public void computeForStrategies(final Map<String, AtomicInteger> totalscores, final StockFeed feed,
 			final String Ticker) throws IOException {
-		final StockV1 stock = feed.get(Instrument.fromString(Ticker), 2).get();
-		final TimeSeries series = TimeseriesUtils.getTimeSeries(stock, 1);
-//		final List<TimeSeries> subseries = series.getSubSeries(0, 20);
-
-		// Building the map of strategies
-		final List<AbstractStrategy> strategies = this.buildStrategiesList(series);
-
-		// The analysis criterion
-		final AnalysisCriterion profitCriterion = new TotalProfitCriterion();
-		final Map<String, AtomicInteger> scores = new ConcurrentHashMap<>();
-//
-//		for (final TimeSeries slice : subseries) {
-//			// For each sub-series...
-//			this.calculateSubseries(strategies, profitCriterion, slice, scores);
-//		}
-
-		for (final Entry<String, AtomicInteger> timeSeries : scores.entrySet()) {
-			totalscores.putIfAbsent(timeSeries.getKey(), new AtomicInteger());
-			totalscores.get(timeSeries.getKey()).addAndGet(timeSeries.getValue().get());
+		final Map<String, Integer> scores = this.backtest(feed, Collections.singletonList(Ticker), 2).getScores();
+
+		for (final Entry<String, Integer> score : scores.entrySet()) {
+			totalscores.putIfAbsent(score.getKey(), new AtomicInteger());
+			totalscores.get(score.getKey()).addAndGet(score.getValue());
 		}
 		System.out.println(Ticker + scores);
 	}
@@ -383,7 +393,7 @@ public class SnapshotAnalyser {
 			}
 
 			for (final String name : new String[] { "SMA12days", "SMA20days", "SMA50days", "GlobalExtrema",
-					"MovingMomentum", }) {
+					"MovingMomentum", "TunedSMA", "TunedMovingMomentum", }) {
 				fields.add(new DataField(name, valuation.getRecommendation(name)));
 			}
 		}
@@ -3,7 +3,9 @@ package com.leonarduk.finance.api;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import javax.inject.Named;
@@ -24,6 +26,7 @@ import org.ta4j.core.Bar;
 import com.google.common.collect.Lists;
 import com.leonarduk.finance.stockfeed.feed.Commentable;
 import com.leonarduk.finance.stockfeed.feed.alphavantage.AlphavantageFeed;
+import com.leonarduk.finance.stockfeed.feed.alphavantage.ApiKeyScheduler;
 import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
 import com.leonarduk.finance.utils.DataField;
 import com.leonarduk.finance.utils.HtmlTools;
@@ -43,6 +46,12 @@ public class StockFeedEndpoint {
     @Autowired
     private DataStore dataStore;
 
+    @Autowired
+    private SeriesCache seriesCache;
+
+    @Autowired
+    private WarmUpService warmUpService;
+
 	@GET
 	@Produces({ MediaType.TEXT_HTML })
 	@Path("/ticker/{ticker}/")
@@ -125,6 +134,44 @@ public class StockFeedEndpoint {
 		return HtmlTools.createHtmlText(null, sbBody).toString();
 	}
 
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@Path("/cache/stats")
+	public Map<String, Long> getCacheStats() {
+		final Map<String, Long> stats = new LinkedHashMap<>();
+		stats.put("instruments", this.seriesCache.size());
+		stats.put("bytes", this.seriesCache.weight());
+		stats.put("hits", this.seriesCache.getHitCount());
+		stats.put("misses", this.seriesCache.getMissCount());
+		stats.put("evictions", this.seriesCache.getEvictionCount());
+		return stats;
+	}
+
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@Path("/warmup/report")
+	public Response getWarmUpReport() {
+		final Optional<WarmUpReport> report = this.warmUpService.getLastReport();
+		if (report.isPresent()) {
+			return Response.ok(report.get()).build();
+		}
+		return Response.noContent().build();
+	}
+
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@Path("/alphavantage/stats")
+	public Map<String, Long> getAlphavantageStats() {
+		final ApiKeyScheduler scheduler = AlphavantageFeed.getDefaultScheduler();
+		final Map<String, Long> stats = new LinkedHashMap<>();
+		stats.put("calls", scheduler.getCallCount());
+		stats.put("throttled", scheduler.getThrottledCount());
+		stats.put("waitMillis", scheduler.getThrottleWaitMillis());
+		stats.put("maxWaitMillis", scheduler.getMaxWaitMillis());
+		scheduler.getUsage().forEach((key, calls) -> stats.put("key." + key, calls));
+		return stats;
+	}
+
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
 	@Path("/download/ticker/{ticker}/")
@@ -0,0 +1,62 @@
+package com.leonarduk.finance.api;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of one {@link WarmUpService} run
+ */
+public class WarmUpReport {
+
+    private final LocalDateTime started;
+    private final long durationMillis;
+    private final int instruments;
+    private final int succeeded;
+    private final long barsAdded;
+    /**
+     * Instrument code to the reason it failed
+     */
+    private final Map<String, String> failures;
+
+    public WarmUpReport(final LocalDateTime started, final long durationMillis, final int instruments,
+                        final int succeeded, final long barsAdded, final Map<String, String> failures) {
+        this.started = started;
+        this.durationMillis = durationMillis;
+        this.instruments = instruments;
+        this.succeeded = succeeded;
+        this.barsAdded = barsAdded;
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    public LocalDateTime getStarted() {
+        return this.started;
+    }
+
+    public long getDurationMillis() {
+        return this.durationMillis;
+    }
+
+    public int getInstruments() {
+        return this.instruments;
+    }
+
+    public int getSucceeded() {
+        return this.succeeded;
+    }
+
+    public long getBarsAdded() {
+        return this.barsAdded;
+    }
+
+    public Map<String, String> getFailures() {
+        return this.failures;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpReport [started=" + this.started + ", durationMillis=" + this.durationMillis
+                + ", instruments=" + this.instruments + ", succeeded=" + this.succeeded + ", barsAdded="
+                + this.barsAdded + ", failures=" + this.failures.size() + "]";
+    }
+}
@@ -0,0 +1,157 @@
+package com.leonarduk.finance.api;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.IntelligentStockFeed;
+import com.leonarduk.finance.stockfeed.feed.yahoofinance.StockV1;
+
+/**
+ * Loads every known instrument overnight, so the morning's reports and
+ * requests are served from the cache rather than waiting on downloads.
+ * <p>
+ * Instruments are fetched through the {@link IntelligentStockFeed}, which
+ * fills any gaps from the web and writes them to the DataStore. A fixed pool
+ * bounds how many run at once and a rate limiter spaces out the starts.
+ */
+public class WarmUpService {
+
+    public static final Logger log = LoggerFactory.getLogger(WarmUpService.class.getName());
+
+    private final IntelligentStockFeed stockFeed;
+
+    private final int years;
+
+    private final int threads;
+
+    private final double instrumentsPerSecond;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile WarmUpReport lastReport;
+
+    public WarmUpService(final IntelligentStockFeed stockFeed, final int years, final int threads,
+                         final double instrumentsPerSecond) {
+        this.stockFeed = stockFeed;
+        this.years = years;
+        this.threads = threads;
+        this.instrumentsPerSecond = instrumentsPerSecond;
+    }
+
+    @Scheduled(cron = "${warmup.cron:0 30 1 * * *}")
+    public void scheduledRun() {
+        try {
+            this.run();
+        } catch (final IOException e) {
+            log.warn("Warm-up could not load the instrument list: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Warm up the full instrument universe.
+     *
+     * @return the report, or empty if a run was already in progress
+     */
+    public Optional<WarmUpReport> run() throws IOException {
+        return this.run(Instrument.values());
+    }
+
+    public Optional<WarmUpReport> run(final Collection<Instrument> instruments) {
+        if (!this.running.compareAndSet(false, true)) {
+            log.info("Warm-up already running, skipping");
+            return Optional.empty();
+        }
+        try {
+            final WarmUpReport report = this.warmUp(instruments);
+            log.info(report.toString());
+            this.lastReport = report;
+            return Optional.of(report);
+        } finally {
+            this.running.set(false);
+        }
+    }
+
+    private WarmUpReport warmUp(final Collection<Instrument> instruments) {
+        final LocalDateTime started = LocalDateTime.now();
+        final long startNanos = System.nanoTime();
+        final long barsBefore = this.stockFeed.getStoredBarCount();
+
+        final Set<Instrument> distinct = new LinkedHashSet<>(instruments);
+        distinct.remove(Instrument.CASH);
+
+        final LocalDate toDate = LocalDate.now();
+        final LocalDate fromDate = toDate.minusYears(this.years);
+        final RateLimiter rateLimiter = RateLimiter.create(this.instrumentsPerSecond);
+        final Map<String, String> failures = new ConcurrentSkipListMap<>();
+        final AtomicInteger succeeded = new AtomicInteger();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(this.threads,
+                new ThreadFactoryBuilder().setNameFormat("warm-up-%d").setDaemon(true).build());
+        try {
+            final List<Future<?>> tasks = new ArrayList<>();
+            for (final Instrument instrument : distinct) {
+                tasks.add(executor.submit(() -> {
+                    rateLimiter.acquire();
+                    try {
+                        final Optional<StockV1> stock = this.stockFeed.load(instrument, fromDate, toDate, false,
+                                false);
+                        if (stock.isPresent()) {
+                            succeeded.incrementAndGet();
+                        } else {
+                            failures.put(instrument.code(), "No data");
+                        }
+                    } catch (final Exception e) {
+                        failures.put(instrument.code(), Throwables.getRootCause(e).toString());
+                    }
+                }));
+            }
+            for (final Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Warm-up interrupted");
+        } catch (final Exception e) {
+            log.warn("Warm-up failed: " + e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final long durationMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        return new WarmUpReport(started, durationMillis, distinct.size(), succeeded.get(),
+                this.stockFeed.getStoredBarCount() - barsBefore, failures);
+    }
+
+    /**
+     * @return the report from the most recent completed run, if any
+     */
+    public Optional<WarmUpReport> getLastReport() {
+        return Optional.ofNullable(this.lastReport);
+    }
+
+    public boolean isRunning() {
+        return this.running.get();
+    }
+}
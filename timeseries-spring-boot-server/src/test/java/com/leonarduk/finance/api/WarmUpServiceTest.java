@@ -0,0 +1,75 @@
+package com.leonarduk.finance.api;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import com.google.common.collect.Lists;
+import com.leonarduk.finance.stockfeed.AbstractStockFeed;
+import com.leonarduk.finance.stockfeed.Instrument;
+import com.leonarduk.finance.stockfeed.IntelligentStockFeed;
+
+public class WarmUpServiceTest {
+
+	private IntelligentStockFeed stockFeed;
+
+	private WarmUpService service;
+
+	private Instrument found;
+
+	private Instrument missing;
+
+	private Instrument failing;
+
+	@Before
+	public void setUp() throws IOException {
+		this.stockFeed = Mockito.mock(IntelligentStockFeed.class);
+		this.service = new WarmUpService(this.stockFeed, 1, 2, 100.0);
+		this.found = Instrument.fromString("PHGP");
+		this.missing = Instrument.fromString("NOSUCH");
+		this.failing = Instrument.fromString("BROKEN");
+	}
+
+	@Test
+	public void testReportsSuccessesFailuresAndBarsAdded() throws IOException {
+		Mockito.when(this.stockFeed.load(ArgumentMatchers.eq(this.found), ArgumentMatchers.any(LocalDate.class),
+				ArgumentMatchers.any(LocalDate.class), ArgumentMatchers.eq(false), ArgumentMatchers.eq(false)))
+				.thenReturn(Optional.of(AbstractStockFeed.createStock(this.found)));
+		Mockito.when(this.stockFeed.load(ArgumentMatchers.eq(this.missing), ArgumentMatchers.any(LocalDate.class),
+				ArgumentMatchers.any(LocalDate.class), ArgumentMatchers.eq(false), ArgumentMatchers.eq(false)))
+				.thenReturn(Optional.empty());
+		Mockito.when(this.stockFeed.load(ArgumentMatchers.eq(this.failing), ArgumentMatchers.any(LocalDate.class),
+				ArgumentMatchers.any(LocalDate.class), ArgumentMatchers.eq(false), ArgumentMatchers.eq(false)))
+				.thenThrow(new IOException("Read timed out"));
+		Mockito.when(this.stockFeed.getStoredBarCount()).thenReturn(100L, 350L);
+
+		final Optional<WarmUpReport> report = this.service
+				.run(Lists.newArrayList(this.found, this.missing, this.failing, this.found, Instrument.CASH));
+		Assert.assertTrue(report.isPresent());
+		Assert.assertEquals(3, report.get().getInstruments());
+		Assert.assertEquals(1, report.get().getSucceeded());
+		Assert.assertEquals(250, report.get().getBarsAdded());
+		Assert.assertEquals("No data", report.get().getFailures().get(this.missing.code()));
+		Assert.assertEquals("java.io.IOException: Read timed out",
+				report.get().getFailures().get(this.failing.code()));
+		Assert.assertSame(report.get(), this.service.getLastReport().get());
+
+		// Duplicates and cash are dropped before fetching
+		Mockito.verify(this.stockFeed, Mockito.times(1)).load(ArgumentMatchers.eq(this.found),
+				ArgumentMatchers.any(LocalDate.class), ArgumentMatchers.any(LocalDate.class),
+				ArgumentMatchers.eq(false), ArgumentMatchers.eq(false));
+	}
+
+	@Test
+	public void testNoReportBeforeFirstRun() {
+		Assert.assertFalse(this.service.getLastReport().isPresent());
+		Assert.assertFalse(this.service.isRunning());
+	}
+
+}